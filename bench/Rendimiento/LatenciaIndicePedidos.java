@@ -0,0 +1,160 @@
+package Rendimiento;
+
+import Modelo.IndicePedidos;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ *
+ * Latencia de la búsqueda de un pedido por ID (IndicePedidos.leerLinea, la
+ * que usa pedidosDAO.obtenerPedidoLineaPorId) según la cantidad de pedidos
+ * en pedidos.txt: debe quedar plana de 1k a 1M pedidos.
+ *
+ * Funcionamiento:
+ * - Para cada tamaño se genera un pedidos.txt sintético en una carpeta temporal
+ *   (mismo formato que ControllerOrder) y se abre su índice.
+ * - Se informa el costo de la primera búsqueda (arma el índice y escribe
+ *   pedidos.idx), luego la latencia con el índice en memoria (media de varias
+ *   iteraciones y percentiles de llamadas individuales a IDs al azar).
+ * - Como comparación, el recorrido lineal que se hacía antes (leer pedidos.txt
+ *   hasta encontrar el ID); se omite con --sin-recorrido.
+ *
+ * El archivo recién generado está en la caché del sistema operativo: mide la
+ * búsqueda, no el disco.
+ *
+ * Uso (desde la raíz del proyecto):
+ *   ant compile-bench
+ *   java -Xms1g -Xmx1g -cp build/classes:build/bench Rendimiento.LatenciaIndicePedidos [tamaños...] [--sin-recorrido]
+ * Tamaños por defecto: 1000 10000 100000 1000000.
+ */
+public class LatenciaIndicePedidos {
+
+    private static final int LLAMADAS_PERCENTILES = 200_000;
+
+    public static void main(String[] args) throws Exception {
+        boolean recorrido = true;
+        int[] tamanos = {1_000, 10_000, 100_000, 1_000_000};
+
+        int[] pedidos = new int[args.length];
+        int n = 0;
+        for (String a : args) {
+            if ("--sin-recorrido".equals(a)) {
+                recorrido = false;
+            } else {
+                pedidos[n++] = Integer.parseInt(a.replace("_", ""));
+            }
+        }
+        if (n > 0) {
+            tamanos = Arrays.copyOf(pedidos, n);
+        }
+
+        System.out.println("Búsqueda de pedido por ID (IndicePedidos.leerLinea)");
+        System.out.println();
+        for (int tamano : tamanos) {
+            medirTamano(tamano, recorrido);
+            System.out.println();
+        }
+    }
+
+    private static void medirTamano(int cantidad, boolean recorrido) throws Exception {
+        Path carpeta = Files.createTempDirectory("bench-pedidos");
+        try {
+            Path archivo = carpeta.resolve("pedidos.txt");
+            generar(archivo, cantidad);
+            System.out.printf("== %,d pedidos (%,d KB)%n", cantidad, Files.size(archivo) / 1024);
+
+            IndicePedidos indice = IndicePedidos.para(archivo.toString(), ',');
+
+            long t0 = System.nanoTime();
+            Medicion.consumir(indice.leerLinea(1).length());
+            System.out.println("  primera búsqueda (arma el índice): " + Medicion.tiempo(System.nanoTime() - t0));
+
+            int[] ids = idsAlAzar(cantidad, 1 << 16);
+            int mascara = ids.length - 1;
+            System.out.println("  " + Medicion.medir("leerLinea (índice)", 5, 10, 50_000,
+                    i -> indice.leerLinea(ids[i & mascara]).length()));
+
+            long[] ns = new long[LLAMADAS_PERCENTILES];
+            for (int i = 0; i < ns.length; i++) {
+                long a = System.nanoTime();
+                Medicion.consumir(indice.leerLinea(ids[i & mascara]).length());
+                ns[i] = System.nanoTime() - a;
+            }
+            Arrays.sort(ns);
+            System.out.println("  percentiles por llamada: p50 " + Medicion.tiempo(ns[ns.length / 2])
+                    + ", p99 " + Medicion.tiempo(ns[(int) (ns.length * 0.99)])
+                    + ", p99.9 " + Medicion.tiempo(ns[(int) (ns.length * 0.999)]));
+
+            if (recorrido) {
+                // Cada recorrido lee en promedio medio archivo: menos repeticiones cuanto más grande.
+                int repeticiones = Math.max(3, 2_000_000 / cantidad);
+                System.out.println("  " + Medicion.medir("recorrido lineal (antes)", 1, 3, repeticiones,
+                        i -> recorrer(archivo, ids[i & mascara])));
+            }
+        } finally {
+            borrar(carpeta);
+        }
+    }
+
+    /**
+     * pedidos.txt sintético: ID, FECHA, HORA, MESA, CEDULA, ITEMS, SUBTOTAL, IVA, TOTAL.
+     */
+    private static void generar(Path archivo, int cantidad) throws IOException {
+        Random r = new Random(42);
+        try (BufferedWriter w = Files.newBufferedWriter(archivo, StandardCharsets.UTF_8)) {
+            for (int id = 1; id <= cantidad; id++) {
+                int cant = 1 + r.nextInt(4);
+                int precio = 500 + r.nextInt(40) * 100;
+                int sub = cant * precio;
+                int iva = sub * 13 / 100;
+                w.write(id + ",18 de octubre del 2026,12:" + (10 + r.nextInt(50)) + ":00,"
+                        + (1 + r.nextInt(20)) + ",1-" + (1000 + r.nextInt(9000)) + "-" + (1000 + r.nextInt(9000))
+                        + ",P" + (1 + r.nextInt(200)) + "|" + cant + "|" + precio + "|" + sub
+                        + "," + sub + "," + iva + "," + (sub + iva));
+                w.newLine();
+            }
+        }
+    }
+
+    /**
+     * IDs al azar entre 1 y cantidad; tamano es potencia de 2 (se recorre con una máscara).
+     */
+    private static int[] idsAlAzar(int cantidad, int tamano) {
+        Random r = new Random(7);
+        int[] ids = new int[tamano];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = 1 + r.nextInt(cantidad);
+        }
+        return ids;
+    }
+
+    /**
+     * Búsqueda por recorrido, como la hacía pedidosDAO antes del índice.
+     */
+    private static long recorrer(Path archivo, int id) throws IOException {
+        String prefijo = id + ",";
+        try (BufferedReader br = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+            String linea;
+            while ((linea = br.readLine()) != null) {
+                if (linea.startsWith(prefijo)) {
+                    return linea.length();
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static void borrar(Path carpeta) throws IOException {
+        try (Stream<Path> rutas = Files.walk(carpeta)) {
+            rutas.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
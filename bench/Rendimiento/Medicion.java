@@ -0,0 +1,159 @@
+package Rendimiento;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ *
+ * Medición al estilo JMH para los benchmarks de esta carpeta, sin
+ * dependencias: iteraciones de calentamiento (se descartan) y luego
+ * iteraciones medidas, cada una ejecutando la operación muchas veces.
+ *
+ * Funcionamiento:
+ * - medir() ejecuta la operación "repeticiones" veces por iteración y guarda
+ *   el tiempo por operación de cada iteración medida.
+ * - El resultado de cada operación se acumula en un sumidero (consumir()),
+ *   así el JIT no puede eliminar el trabajo.
+ * - Si la JVM lo permite (HotSpot), también informa los bytes asignados por
+ *   operación del hilo actual.
+ *
+ * No reemplaza a JMH (no hace fork por benchmark): se ejecuta cada benchmark
+ * en su propia JVM (-Xms igual a -Xmx para evitar ruido de crecimiento del heap).
+ */
+public final class Medicion {
+
+    /**
+     * Una operación a medir; el resultado se consume para que no se descarte.
+     */
+    @FunctionalInterface
+    public interface Operacion {
+
+        long ejecutar(int i) throws Exception;
+    }
+
+    /**
+     * Resultado de una medición: tiempos por operación (ns) de cada iteración medida.
+     */
+    public static final class Resultado {
+
+        private final String nombre;
+        private final double[] nsPorOperacion;
+        private final double bytesPorOperacion;
+
+        Resultado(String nombre, double[] nsPorOperacion, double bytesPorOperacion) {
+            this.nombre = nombre;
+            this.nsPorOperacion = nsPorOperacion;
+            this.bytesPorOperacion = bytesPorOperacion;
+        }
+
+        public double media() {
+            return Arrays.stream(nsPorOperacion).average().orElse(Double.NaN);
+        }
+
+        public double desviacion() {
+            double m = media();
+            double s = 0;
+            for (double v : nsPorOperacion) {
+                s += (v - m) * (v - m);
+            }
+            return Math.sqrt(s / Math.max(1, nsPorOperacion.length - 1));
+        }
+
+        public double minimo() {
+            return Arrays.stream(nsPorOperacion).min().orElse(Double.NaN);
+        }
+
+        public double bytesPorOperacion() {
+            return bytesPorOperacion;
+        }
+
+        @Override
+        public String toString() {
+            String bytes = (bytesPorOperacion >= 0)
+                    ? String.format(Locale.ROOT, "  %12.1f B/op", bytesPorOperacion) : "";
+            return String.format(Locale.ROOT, "%-44s %14s ± %-12s (min %s)%s", nombre,
+                    tiempo(media()), tiempo(desviacion()), tiempo(minimo()), bytes);
+        }
+    }
+
+    private static volatile long sumidero;
+
+    private static final ThreadMXBean HILOS = ManagementFactory.getThreadMXBean();
+
+    private Medicion() {
+    }
+
+    /**
+     * Mide una operación.
+     *
+     * @param nombre nombre en el informe
+     * @param calentamiento iteraciones que se descartan
+     * @param iteraciones iteraciones medidas
+     * @param repeticiones operaciones por iteración
+     * @param op operación (recibe el número de repetición)
+     */
+    public static Resultado medir(String nombre, int calentamiento, int iteraciones, int repeticiones,
+            Operacion op) throws Exception {
+        for (int it = 0; it < calentamiento; it++) {
+            correr(op, repeticiones);
+        }
+
+        double[] ns = new double[iteraciones];
+        long bytesAntes = bytesAsignados();
+        for (int it = 0; it < iteraciones; it++) {
+            long t0 = System.nanoTime();
+            correr(op, repeticiones);
+            ns[it] = (System.nanoTime() - t0) / (double) repeticiones;
+        }
+        long bytesDespues = bytesAsignados();
+        double bytes = (bytesAntes < 0 || bytesDespues < 0)
+                ? -1 : (bytesDespues - bytesAntes) / ((double) iteraciones * repeticiones);
+        return new Resultado(nombre, ns, bytes);
+    }
+
+    /**
+     * Acumula un valor en el sumidero (para resultados calculados fuera de medir()).
+     */
+    public static void consumir(long v) {
+        sumidero += v;
+    }
+
+    /**
+     * Tiempo legible: ns, µs, ms o s según la magnitud.
+     */
+    public static String tiempo(double ns) {
+        if (ns < 1_000) {
+            return String.format(Locale.ROOT, "%.1f ns", ns);
+        }
+        if (ns < 1_000_000) {
+            return String.format(Locale.ROOT, "%.2f µs", ns / 1_000);
+        }
+        if (ns < 1_000_000_000) {
+            return String.format(Locale.ROOT, "%.2f ms", ns / 1_000_000);
+        }
+        return String.format(Locale.ROOT, "%.2f s", ns / 1_000_000_000);
+    }
+
+    private static void correr(Operacion op, int repeticiones) throws Exception {
+        long acumulado = 0;
+        for (int i = 0; i < repeticiones; i++) {
+            acumulado += op.ejecutar(i);
+        }
+        sumidero += acumulado;
+    }
+
+    /**
+     * Bytes asignados por el hilo actual, o -1 si la JVM no lo informa.
+     */
+    private static long bytesAsignados() {
+        if (HILOS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hs = (com.sun.management.ThreadMXBean) HILOS;
+            if (hs.isThreadAllocatedMemorySupported() && hs.isThreadAllocatedMemoryEnabled()) {
+                return hs.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,212 @@
+package Rendimiento;
+
+import Utils.LectorMapeado;
+import Utils.TokenizadorCampos;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ *
+ * TokenizadorCampos contra String.split sobre un archivo de 1M líneas, con el
+ * recorrido típico de los DAOs y controladores: filtrar los pedidos de una
+ * mesa y sumar su total (columnas MESA y TOTAL de pedidos.txt).
+ *
+ * Funcionamiento:
+ * - Se genera un pedidos.txt sintético (separador ',') y un facturas.txt
+ *   (separador '|', que split trata como expresión escapada) en una carpeta temporal.
+ * - Líneas ya en memoria: separar cada línea con split y con TokenizadorCampos
+ *   (mide solo la separación y la conversión de campos).
+ * - Archivo completo: BufferedReader + split (como antes), BufferedReader +
+ *   TokenizadorCampos y LectorMapeado (TokenizadorCampos sobre los bytes, sin
+ *   crear un String por línea).
+ * - Cada caso: iteraciones de calentamiento y medidas (Medicion), una pasada
+ *   completa por operación, con tiempo y bytes asignados por pasada.
+ *
+ * Uso (desde la raíz del proyecto):
+ *   ant compile-bench
+ *   java -Xms2g -Xmx2g -cp build/classes:build/bench Rendimiento.TokenizadorVsSplit [líneas]
+ * Líneas por defecto: 1000000.
+ */
+public class TokenizadorVsSplit {
+
+    private static final int CALENTAMIENTO = 5;
+    private static final int ITERACIONES = 10;
+    private static final String MESA = "7";
+
+    public static void main(String[] args) throws Exception {
+        int lineas = (args.length > 0) ? Integer.parseInt(args[0].replace("_", "")) : 1_000_000;
+
+        Path carpeta = Files.createTempDirectory("bench-tokenizador");
+        Path pedidos = carpeta.resolve("pedidos.txt");
+        Path facturas = carpeta.resolve("facturas.txt");
+        try {
+            generarPedidos(pedidos, lineas);
+            generarFacturas(facturas, lineas);
+            System.out.printf("Filtrar por mesa y sumar el total, %,d líneas (pedidos.txt %,d KB)%n%n",
+                    lineas, Files.size(pedidos) / 1024);
+
+            String[] enMemoria = Files.readAllLines(pedidos, StandardCharsets.UTF_8).toArray(new String[0]);
+            String[] facturasEnMemoria = Files.readAllLines(facturas, StandardCharsets.UTF_8).toArray(new String[0]);
+            verificar(enMemoria, pedidos);
+
+            System.out.println("Líneas en memoria (pedidos.txt, ',')");
+            imprimir("String.split(\",\", -1)", i -> sumarConSplit(enMemoria));
+            imprimir("TokenizadorCampos.separar", i -> sumarConTokenizador(enMemoria));
+            System.out.println();
+
+            System.out.println("Líneas en memoria (facturas.txt, '|')");
+            imprimir("String.split(\"\\\\|\", -1)", i -> totalFacturasConSplit(facturasEnMemoria));
+            imprimir("TokenizadorCampos.separar", i -> totalFacturasConTokenizador(facturasEnMemoria));
+            System.out.println();
+
+            System.out.println("Archivo completo (pedidos.txt)");
+            imprimir("BufferedReader + split (antes)", i -> leerConSplit(pedidos));
+            imprimir("BufferedReader + TokenizadorCampos", i -> leerConTokenizador(pedidos));
+            imprimir("LectorMapeado (bytes, sin String por línea)", i -> leerMapeado(pedidos));
+        } finally {
+            Files.deleteIfExists(pedidos);
+            Files.deleteIfExists(facturas);
+            Files.deleteIfExists(carpeta);
+        }
+    }
+
+    private static void imprimir(String nombre, Medicion.Operacion op) throws Exception {
+        System.out.println("  " + Medicion.medir(nombre, CALENTAMIENTO, ITERACIONES, 1, op));
+    }
+
+    /**
+     * Todas las variantes deben dar el mismo resultado.
+     */
+    private static void verificar(String[] lineas, Path archivo) throws IOException {
+        long esperado = sumarConSplit(lineas);
+        if (sumarConTokenizador(lineas) != esperado || leerConSplit(archivo) != esperado
+                || leerConTokenizador(archivo) != esperado || leerMapeado(archivo) != esperado) {
+            throw new IllegalStateException("Las variantes no coinciden");
+        }
+    }
+
+    /* ---------------- pedidos: ID,FECHA,HORA,MESA,CEDULA,ITEMS,SUBTOTAL,IVA,TOTAL ---------------- */
+
+    private static long sumarConSplit(String[] lineas) {
+        long total = 0;
+        for (String linea : lineas) {
+            String[] p = linea.split(",", -1);
+            if (p.length >= 9 && p[3].trim().equals(MESA)) {
+                total += Integer.parseInt(p[8].trim());
+            }
+        }
+        return total;
+    }
+
+    private static long sumarConTokenizador(String[] lineas) {
+        TokenizadorCampos t = new TokenizadorCampos(',');
+        long total = 0;
+        for (String linea : lineas) {
+            if (t.separar(linea) >= 9 && t.esIgual(3, MESA)) {
+                total += t.entero(8, 0);
+            }
+        }
+        return total;
+    }
+
+    private static long leerConSplit(Path archivo) throws IOException {
+        long total = 0;
+        try (BufferedReader br = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+            String linea;
+            while ((linea = br.readLine()) != null) {
+                String[] p = linea.split(",", -1);
+                if (p.length >= 9 && p[3].trim().equals(MESA)) {
+                    total += Integer.parseInt(p[8].trim());
+                }
+            }
+        }
+        return total;
+    }
+
+    private static long leerConTokenizador(Path archivo) throws IOException {
+        TokenizadorCampos t = new TokenizadorCampos(',');
+        long total = 0;
+        try (BufferedReader br = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+            String linea;
+            while ((linea = br.readLine()) != null) {
+                if (t.separar(linea) >= 9 && t.esIgual(3, MESA)) {
+                    total += t.entero(8, 0);
+                }
+            }
+        }
+        return total;
+    }
+
+    private static long leerMapeado(Path archivo) throws IOException {
+        long[] total = {0};
+        LectorMapeado.para(archivo.toString()).recorrer(',', (t, offset) -> {
+            if (t.cantidad() >= 9 && t.esIgual(3, MESA)) {
+                total[0] += t.entero(8, 0);
+            }
+            return true;
+        });
+        return total[0];
+    }
+
+    /* ---------------- facturas: ID_FACTURA|...|ID_PEDIDO|...|TOTAL|METODO_PAGO ---------------- */
+
+    private static long totalFacturasConSplit(String[] lineas) {
+        long total = 0;
+        for (String linea : lineas) {
+            String[] p = linea.split("\\|", -1);
+            if (p.length >= 11) {
+                total += Integer.parseInt(p[0].trim()) + Integer.parseInt(p[9].trim());
+            }
+        }
+        return total;
+    }
+
+    private static long totalFacturasConTokenizador(String[] lineas) {
+        TokenizadorCampos t = new TokenizadorCampos('|');
+        long total = 0;
+        for (String linea : lineas) {
+            if (t.separar(linea) >= 11) {
+                total += t.entero(0, 0) + t.entero(9, 0);
+            }
+        }
+        return total;
+    }
+
+    /* ---------------- datos sintéticos ---------------- */
+
+    private static void generarPedidos(Path archivo, int cantidad) throws IOException {
+        Random r = new Random(42);
+        try (BufferedWriter w = Files.newBufferedWriter(archivo, StandardCharsets.UTF_8)) {
+            for (int id = 1; id <= cantidad; id++) {
+                int cant = 1 + r.nextInt(4);
+                int precio = 500 + r.nextInt(40) * 100;
+                int sub = cant * precio;
+                int iva = sub * 13 / 100;
+                w.write(id + ",18 de octubre del 2026,12:" + (10 + r.nextInt(50)) + ":00,"
+                        + (1 + r.nextInt(20)) + ",1-" + (1000 + r.nextInt(9000)) + "-" + (1000 + r.nextInt(9000))
+                        + ",P" + (1 + r.nextInt(200)) + "|" + cant + "|" + precio + "|" + sub
+                        + "," + sub + "," + iva + "," + (sub + iva));
+                w.newLine();
+            }
+        }
+    }
+
+    private static void generarFacturas(Path archivo, int cantidad) throws IOException {
+        Random r = new Random(43);
+        try (BufferedWriter w = Files.newBufferedWriter(archivo, StandardCharsets.UTF_8)) {
+            for (int id = 1; id <= cantidad; id++) {
+                int sub = 500 + r.nextInt(100) * 100;
+                int iva = sub * 13 / 100;
+                w.write(id + "|18/10/2026|12:" + (10 + r.nextInt(50)) + ":00|" + (id + r.nextInt(3))
+                        + "|1-1234-5678|Cliente " + r.nextInt(1000) + "|" + (1 + r.nextInt(20))
+                        + "|" + sub + "|" + iva + "|" + (sub + iva) + "|EFECTIVO");
+                w.newLine();
+            }
+        }
+    }
+}
@@ -6,6 +6,8 @@ import Vista.GestionCliente;
 import Vista.Mensajes;
 import Modelo.ClientsDAO;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import javax.swing.SwingUtilities;
 import javax.swing.WindowConstants;
 import javax.swing.table.DefaultTableModel;
 import javax.swing.text.AbstractDocument;
@@ -283,8 +285,8 @@ public class ControllerClients {
      *
      * Flujo:
      * - Obtiene el cliente seleccionado.
-     * - Llama ClientsDAO.eliminarDeLista(cedula).
-     * - Si elimina, recarga la tabla.
+     * - Llama ClientsDAO.eliminarDeListaAsync(cedula) (no espera el disco en el EDT).
+     * - Cuando quedó guardado, recarga la tabla (de vuelta en el EDT).
      */
     private void eliminarCliente() {
         Clients c = seleccionarClienteDeTabla();
@@ -292,18 +294,17 @@ public class ControllerClients {
             return;
         }
 
-        try {
-            boolean ok = cdao.eliminarDeLista(c.getCedula());
-            if (!ok) {
-                msj.message("No se pudo eliminar.");
-                return;
-            }
+        cdao.eliminarDeListaAsync(c.getCedula()).exceptionally(ex -> false).thenAccept(ok -> {
+            SwingUtilities.invokeLater(() -> {
+                if (!ok) {
+                    msj.message("No se pudo eliminar.");
+                    return;
+                }
 
-            loadTabledata();
-            msj.message("Cliente eliminado.");
-        } catch (Exception ex) {
-            msj.message("Error eliminando.");
-        }
+                loadTabledata();
+                msj.message("Cliente eliminado.");
+            });
+        });
     }
 
     /**
@@ -336,11 +337,9 @@ public class ControllerClients {
                 return null;
             }
 
-            ArrayList<Clients> ListCliente = cdao.getAll();
-            for (Clients c : ListCliente) {
-                if (c != null && cedula.equals(c.getCedula())) {
-                    return c;
-                }
+            Clients c = cdao.buscarPorCedula(cedula);
+            if (c != null) {
+                return c;
             }
 
             msj.message("Cliente no encontrado.");
@@ -358,9 +357,9 @@ public class ControllerClients {
      * Flujo:
      * - Lee los datos del formulario.
      * - Convierte visitas a entero y total a double.
-     * - Si editando=false: agrega con ClientsDAO.addLista(...)
-     * - Si editando=true: modifica con ClientsDAO.modificarEnLista(...)
-     * - Recarga la tabla y cierra ventana.
+     * - Si editando=false: agrega con ClientsDAO.addListaAsync(...)
+     * - Si editando=true: modifica con ClientsDAO.modificarEnListaAsync(...)
+     * - Cuando quedó guardado (de vuelta en el EDT): recarga la tabla y cierra ventana.
      *
      * @param gestioncliente ventana GestionCliente
      */
@@ -400,29 +399,26 @@ public class ControllerClients {
                 return;
             }
 
-            boolean ok;
+            boolean nuevo = !editando;
+            CompletableFuture<Boolean> guardado = nuevo
+                    ? cdao.addListaAsync(type, visitas, ultimaVisita, total, cedula, name)
+                    : cdao.modificarEnListaAsync(type, visitas, ultimaVisita, total, cedulaEditando, name);
 
-            if (!editando) {
-                ok = cdao.addLista(type, visitas, ultimaVisita, total, cedula, name);
-                if (!ok) {
-                    msj.message("Cédula repetida o error guardando.");
-                    return;
-                }
-                msj.message("Cliente guardado.");
-            } else {
-                ok = cdao.modificarEnLista(type, visitas, ultimaVisita, total, cedulaEditando, name);
-                if (!ok) {
-                    msj.message("No se pudo modificar.");
-                    return;
-                }
-                msj.message("Cliente modificado.");
-            }
+            guardado.exceptionally(ex -> false).thenAccept(ok -> {
+                SwingUtilities.invokeLater(() -> {
+                    if (!ok) {
+                        msj.message(nuevo ? "Cédula repetida o error guardando." : "No se pudo modificar.");
+                        return;
+                    }
+                    msj.message(nuevo ? "Cliente guardado." : "Cliente modificado.");
 
-            loadTabledata();
-            cerrarVentana(gestioncliente);
+                    loadTabledata();
+                    cerrarVentana(gestioncliente);
 
-            editando = false;
-            cedulaEditando = "";
+                    editando = false;
+                    cedulaEditando = "";
+                });
+            });
 
         } catch (Exception ex) {
             msj.message("Error guardando.");
@@ -7,6 +7,7 @@ import Modelo.pedidosDAO;
 import Modelo.productosDAO;
 import Vista.GestionFacturacion;
 import Modelo.PagosFacturaDetalleDAO;
+import Utils.TokenizadorCampos;
 import javax.swing.*;
 import javax.swing.event.TableModelEvent;
 import javax.swing.table.DefaultTableModel;
@@ -14,7 +15,7 @@ import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.List;
-import Modelo.ClientsDAO;
+import Modelo.UnidadCobro;
 import java.util.Date;
 import java.text.SimpleDateFormat;
 
@@ -234,7 +235,21 @@ public class ControllerFacturacion {
         if (c == null) {
             return "";
         }
-        return c.trim().replaceAll("[^0-9]", "");
+        StringBuilder sb = new StringBuilder(c.length());
+        for (int i = 0; i < c.length(); i++) {
+            char ch = c.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                sb.append(ch);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * true si el valor leído con TokenizadorCampos.largo cabe en un int.
+     */
+    private static boolean esEntero(long valor) {
+        return valor >= Integer.MIN_VALUE && valor <= Integer.MAX_VALUE;
     }
 
     /**
@@ -274,8 +289,9 @@ public class ControllerFacturacion {
      * pago agregado. - En modo por productos: exige que no queden productos
      * pendientes. - En modo completo: valida monto suficiente y reglas de
      * vuelto (solo con efectivo). - Crea o reutiliza factura (si ya existía
-     * para el pedido). - Guarda cada pago y, si aplica, el detalle de productos
-     * pagados por pago. - Muestra confirmación y limpia la factura completa.
+     * para el pedido). - Guarda factura, pagos, detalle de productos pagados
+     * por pago y visita del cliente como un solo cobro (UnidadCobro). - Muestra
+     * confirmación y limpia la factura completa.
      */
     private void procesarPago() {
         vista.getBtnRealizarPedido().setEnabled(false);
@@ -337,9 +353,14 @@ public class ControllerFacturacion {
             int idFactura;
             boolean facturaNueva = false;
 
-            // Busca factura existente si el pedido es individual (>0)
+            // Factura, pagos, detalle y visita del cliente se guardan juntos (todo o nada).
+            UnidadCobro cobro = new UnidadCobro(facturaDAO, pagosDAO, pagosDetalleDAO);
+
+            // Busca factura existente si el pedido es individual (>0). Antes se
+            // aplican los cobros que otra caja dejó confirmados y sin aplicar.
             String[] facturaExistente = null;
             if (idPedidoActual > 0) {
+                cobro.recuperar();
                 facturaExistente = facturaDAO.buscarFacturaPorIdPedido(idPedidoActual);
             }
 
@@ -366,7 +387,7 @@ public class ControllerFacturacion {
 
                 int idPedidoParaFactura = (idPedidoActual > 0) ? idPedidoActual : 0;
 
-                facturaDAO.guardarFactura(
+                cobro.factura(
                         idFactura, fecha, hora, idPedidoParaFactura,
                         cedulaCliente, nombreCliente, mesa,
                         subtotalAPagar, ivaAPagar, totalAPagar, metodoFactura
@@ -380,7 +401,7 @@ public class ControllerFacturacion {
                 String ref = String.valueOf(modeloPagos.getValueAt(i, 2));
                 String cedulaPagador = String.valueOf(modeloPagos.getValueAt(i, 3));
 
-                pagosDAO.guardarPago(idFactura, met, monto, ref, cedulaPagador);
+                cobro.pago(idFactura, met, monto, ref, cedulaPagador);
 
                 // En modo por productos, si hay filas asociadas a este pago,
                 // se registra el detalle para auditoría / trazabilidad.
@@ -402,7 +423,7 @@ public class ControllerFacturacion {
 
                             int idPedidoDetalle = (idPedidoActual > 0) ? idPedidoActual : 0;
 
-                            pagosDetalleDAO.guardarDetalle(
+                            cobro.detalle(
                                     idFactura,
                                     idPedidoDetalle,
                                     met,
@@ -418,35 +439,23 @@ public class ControllerFacturacion {
                 }
             }
 
+            // Visita del cliente (la cédula viene en el campo cliente), si está registrado
+            String cedula = normalizarCedula(vista.getTxtCliente().getText().trim());
+            if (!cedula.isEmpty()) {
+                String fechaHoy = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
+                cobro.visitaCliente(cedula, (double) totalPedido, fechaHoy);
+            }
+
+            if (!cobro.confirmar()) {
+                JOptionPane.showMessageDialog(vista,
+                        "No se pudo guardar la factura #" + idFactura + ". Intente de nuevo.");
+                return;
+            }
+
             String msg = "Factura #" + idFactura + (facturaNueva ? " generada" : " actualizada") + " con éxito\n"
                     + "Total: ₡" + df.format(totalPedido);
 
             JOptionPane.showMessageDialog(vista, msg);
-            //
-            try {
-                String cedula = vista.getTxtCliente().getText().trim(); // aquí viene la cédula
-
-                if (!cedula.isEmpty()) {
-
-                    // Normaliza a solo números (método ya existe en este controlador)
-                    String cedNorm = normalizarCedula(cedula);
-
-                    if (!cedNorm.isEmpty()) {
-
-                        // Total real pagado (ya calculado en este controlador)
-                        double monto = (double) totalPedido;
-
-                        // Fecha actual para "ultima visita"
-                        String fechaHoy = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
-
-                        ClientsDAO cdao = new ClientsDAO();
-                        cdao.sumarVisitaYTotal(cedNorm, monto, fechaHoy);
-                    }
-                }
-            } catch (Exception ex) {
-                System.out.println("No se pudo actualizar cliente: " + ex.getMessage());
-            }
-            //
             limpiarFacturaCompleta();
 
         } catch (Exception e) {
@@ -575,8 +584,8 @@ public class ControllerFacturacion {
                 return;
             }
 
-            String[] partes = lineaPedido.split(",", -1);
-            if (partes.length < 9) {
+            TokenizadorCampos partes = new TokenizadorCampos(',');
+            if (partes.separar(lineaPedido) < 9) {
                 JOptionPane.showMessageDialog(vista,
                         "Pedido #" + idPedido + " tiene formato inválido.\nVerifique pedidos.txt");
                 return;
@@ -585,17 +594,23 @@ public class ControllerFacturacion {
             this.idPedidoActual = idPedido;
 
             try {
-                vista.getTxtFecha().setText(partes[1].trim());
-                vista.getTxtHora().setText(partes[2].trim());
-                vista.getTxtMesaTipo().setText(partes[3].trim());
-                vista.getTxtCliente().setText(partes[4].trim());
+                vista.getTxtFecha().setText(partes.texto(1));
+                vista.getTxtHora().setText(partes.texto(2));
+                vista.getTxtMesaTipo().setText(partes.texto(3));
+                vista.getTxtCliente().setText(partes.texto(4));
 
                 // Items vienen codificados como: id|cant|precio|total;id|cant|precio|total;...
-                cargarItemsDesdeLineaPedido(partes[5].trim());
+                cargarItemsDesdeLineaPedido(partes.texto(5));
 
-                subtotalPedido = Integer.parseInt(partes[6].trim());
-                ivaPedido = Integer.parseInt(partes[7].trim());
-                totalPedido = Integer.parseInt(partes[8].trim());
+                long sub = partes.largo(6, Long.MIN_VALUE);
+                long iva = partes.largo(7, Long.MIN_VALUE);
+                long total = partes.largo(8, Long.MIN_VALUE);
+                if (!esEntero(sub) || !esEntero(iva) || !esEntero(total)) {
+                    throw new NumberFormatException();
+                }
+                subtotalPedido = (int) sub;
+                ivaPedido = (int) iva;
+                totalPedido = (int) total;
 
             } catch (Exception ex) {
                 subtotalPedido = 0;
@@ -608,7 +623,7 @@ public class ControllerFacturacion {
             }
 
             // En modo ID, solo se permite pagar con la cédula del pedido
-            cedulasPermitidas.add(normalizarCedula(partes[4].trim()));
+            cedulasPermitidas.add(normalizarCedula(partes.texto(4)));
             modoMesaCargado = false;
 
             vista.getTxtSubTotal().setText("₡" + df.format(subtotalPedido));
@@ -666,6 +681,7 @@ public class ControllerFacturacion {
             int sub = 0;
             int iva = 0;
             int total = 0;
+            TokenizadorCampos partes = new TokenizadorCampos(',');
 
             // Recorre los pedidos de la mesa para unir items y sumar montos
             for (String linea : lineas) {
@@ -673,21 +689,20 @@ public class ControllerFacturacion {
                     continue;
                 }
 
-                String[] partes = linea.split(",", -1);
-                if (partes.length < 9) {
+                if (partes.separar(linea) < 9) {
                     continue;
                 }
 
                 if (fecha.isEmpty()) {
-                    fecha = partes[1].trim();
+                    fecha = partes.texto(1);
                 }
                 if (hora.isEmpty()) {
-                    hora = partes[2].trim();
+                    hora = partes.texto(2);
                 }
 
-                cedulasPermitidas.add(normalizarCedula(partes[4].trim()));
+                cedulasPermitidas.add(normalizarCedula(partes.texto(4)));
 
-                String items = partes[5].trim();
+                String items = partes.texto(5);
                 if (!items.isEmpty()) {
                     if (itemsAll.length() > 0 && itemsAll.charAt(itemsAll.length() - 1) != ';') {
                         itemsAll.append(";");
@@ -698,11 +713,20 @@ public class ControllerFacturacion {
                     }
                 }
 
-                try {
-                    sub += Integer.parseInt(partes[6].trim());
-                    iva += Integer.parseInt(partes[7].trim());
-                    total += Integer.parseInt(partes[8].trim());
-                } catch (Exception ignored) {
+                // Igual que antes: si un monto no es válido, se suman solo los anteriores a él.
+                int s6 = partes.entero(6, Integer.MIN_VALUE);
+                if (s6 == Integer.MIN_VALUE) {
+                    continue;
+                }
+                sub += s6;
+                int s7 = partes.entero(7, Integer.MIN_VALUE);
+                if (s7 == Integer.MIN_VALUE) {
+                    continue;
+                }
+                iva += s7;
+                int s8 = partes.entero(8, Integer.MIN_VALUE);
+                if (s8 != Integer.MIN_VALUE) {
+                    total += s8;
                 }
             }
 
@@ -757,23 +781,27 @@ public class ControllerFacturacion {
             return;
         }
 
-        String[] items = itemsStr.split(";");
+        TokenizadorCampos items = new TokenizadorCampos(';');
+        TokenizadorCampos p = new TokenizadorCampos('|');
+        int cantidadItems = items.separar(itemsStr);
 
-        for (String it : items) {
-            if (it == null || it.isBlank()) {
+        for (int i = 0; i < cantidadItems; i++) {
+            if (items.vacio(i)) {
                 continue;
             }
 
-            String[] p = it.split("\\|");
-            if (p.length < 4) {
+            if (p.separar(itemsStr, items.inicio(i), items.fin(i)) < 4) {
                 continue;
             }
 
             try {
-                String idProd = p[0].trim();
-                int cant = Integer.parseInt(p[1].trim());
-                int precio = Integer.parseInt(p[2].trim());
-                int total = Integer.parseInt(p[3].trim());
+                String idProd = p.texto(0);
+                int cant = p.entero(1, Integer.MIN_VALUE);
+                int precio = p.entero(2, Integer.MIN_VALUE);
+                int total = p.entero(3, Integer.MIN_VALUE);
+                if (cant == Integer.MIN_VALUE || precio == Integer.MIN_VALUE || total == Integer.MIN_VALUE) {
+                    continue;
+                }
 
                 // Nombre por defecto si no se encuentra en catálogo
                 String nombre = "Producto " + idProd;
@@ -2,6 +2,8 @@ package Control;
 
 import Modelo.Tables;
 import Modelo.TablesDAO;
+import Modelo.pedidosDAO;
+import Utils.TokenizadorCampos;
 import Vista.GestionMesas;
 import Vista.ObjetoMesa;
 import java.awt.Color;
@@ -34,6 +36,11 @@ public class ControllerGestionMesas {
      */
     private TablesDAO tablesDAO;
 
+    /**
+     * DAO de pedidos para consultar los pedidos de cada mesa por índice.
+     */
+    private pedidosDAO pedidosDao;
+
     /**
      * Constructor: recibe la vista GestionMesas, carga el estado inicial de las mesas
      * y registra los listeners de clic en cada panel.
@@ -43,6 +50,7 @@ public class ControllerGestionMesas {
     public ControllerGestionMesas(GestionMesas vista) {
         this.vista = vista;
         this.tablesDAO = TablesDAO.getInstancia();
+        this.pedidosDao = new pedidosDAO();
 
         actualizarMesas();
         configurarClicks();
@@ -133,10 +141,8 @@ public class ControllerGestionMesas {
      * Cuenta la cantidad de personas distintas en una mesa leyendo "pedidos.txt".
      *
      * Lógica:
-     * - Lee cada línea del archivo "pedidos.txt".
-     * - Ignora líneas vacías.
-     * - Valida que la línea tenga al menos 9 campos (formato CSV de pedidos).
-     * - Compara el número de mesa (columna 3).
+     * - Obtiene solo las líneas de esa mesa con el índice por mesa de pedidosDAO
+     *   (ya validadas: al menos 9 campos y mesa igual a numeroMesa).
      * - Extrae la cédula del cliente (columna 4).
      * - Cuenta cédulas únicas usando una lista (sin HashSet).
      *
@@ -146,30 +152,19 @@ public class ControllerGestionMesas {
     private int contarPersonasEnMesa(String numeroMesa) {
 
         java.util.ArrayList<String> cedulasUnicas = new java.util.ArrayList<>();
+        TokenizadorCampos campos = new TokenizadorCampos(',');
 
-        try (java.io.BufferedReader br = new java.io.BufferedReader(new java.io.FileReader("pedidos.txt"))) {
-
-            String linea;
-
-            while ((linea = br.readLine()) != null) {
+        try {
+            for (String linea : pedidosDao.obtenerPedidosLineasPorMesa(numeroMesa)) {
 
-                if (linea.trim().isEmpty()) {
+                campos.separar(linea);
+                if (campos.vacio(4)) {
                     continue;
                 }
 
-                String[] partes = linea.split(",", -1);
-                if (partes.length < 9) {
-                    continue;
-                }
-
-                String mesaTxt = partes[3].trim();
-                String cedula = partes[4].trim();
-
-                if (mesaTxt.equalsIgnoreCase(numeroMesa)) {
-
-                    if (!cedula.isEmpty() && !cedulasUnicas.contains(cedula)) {
-                        cedulasUnicas.add(cedula);
-                    }
+                String cedula = campos.texto(4);
+                if (!cedulasUnicas.contains(cedula)) {
+                    cedulasUnicas.add(cedula);
                 }
             }
 
@@ -15,17 +15,20 @@ package Control;
  * - Cargar y mostrar productos en el panel GestionInventario.
  * - Filtrar productos por categoría.
  * - Abrir la gestión de productos (agregar/editar) cuando corresponda.
- * - Refrescar la vista cuando hay cambios de stock (callbacks del DAO).
+ * - Refrescar la vista cuando hay cambios (lotes de CambioProductos del DAO):
+ *   solo se rearman las tarjetas de los productos que cambiaron.
  *
  * Notas:
  * - Los mensajes al usuario se muestran mediante la clase Mensajes.
  * - Las actualizaciones visuales deben ejecutarse en el hilo de Swing (EDT) cuando aplique.
  */
+import Modelo.CambioProductos;
 import Modelo.Product;
 import Modelo.productosDAO;
 import Vista.GestionInventario;
 import Vista.panelProduct;
-import javax.swing.SwingUtilities;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  *
@@ -36,16 +39,18 @@ public class ControllerInventario {
     private GestionInventario vista;
     private productosDAO dao;
 
+    /**
+     * Tarjetas mostradas (ID -> tarjeta) y categoría con la que se armaron.
+     */
+    private final Map<String, panelProduct> tarjetas = new HashMap<>();
+    private String categoriaMostrada = null;
+
     public ControllerInventario(GestionInventario vista) {
 
         this.vista = vista;
         this.dao = productosDAO.getInstancia();
         
-         this.dao.addStockChangeCallback(() -> {
-        SwingUtilities.invokeLater(() -> {
-            filtrarPorCategoria();
-        });
-    });
+        this.dao.agregarEscucha(this::aplicarCambios);
 
         this.vista.getBtnAdd().addActionListener(e -> agregarProducto());
         this.vista.getCmbCategory().addActionListener(e -> filtrarPorCategoria());
@@ -91,16 +96,59 @@ public class ControllerInventario {
 
         javax.swing.JPanel cont = vista.getJpanelProducts();
         cont.removeAll();
+        tarjetas.clear();
 
-        for (Product p : dao.obtenerTodosLosProductos()) {
+        java.util.List<Product> productos = cat.equalsIgnoreCase("Todos los productos")
+                ? dao.obtenerTodosLosProductos()
+                : dao.obtenerProductosPorCategoria(cat);
+
+        for (Product p : productos) {
+            panelProduct tarjeta = new panelProduct(p);
+            tarjetas.put(p.getIdProduct(), tarjeta);
+            cont.add(tarjeta);
+        }
+        categoriaMostrada = cat;
 
-            if (!cat.equalsIgnoreCase("Todos los productos")) {
-                if (!p.getCategory().equalsIgnoreCase(cat)) {
-                    continue;
+        cont.revalidate();
+        cont.repaint();
+    }
+
+    /**
+     * Lote de cambios del DAO (en el EDT): rearma en su lugar las tarjetas de
+     * los productos editados o con stock nuevo y quita las eliminadas. Si hay
+     * una recarga completa o un producto que se tiene que agregar (alta o
+     * cambio de categoría), arma el panel de nuevo.
+     */
+    private void aplicarCambios(CambioProductos cambio) {
+        String cat = vista.getCmbCategory().getSelectedItem().toString();
+        if (cambio.esRecargaCompleta() || !cat.equals(categoriaMostrada)) {
+            recargarInventario(cat);
+            return;
+        }
+
+        javax.swing.JPanel cont = vista.getJpanelProducts();
+        for (Map.Entry<String, CambioProductos.Tipo> e : cambio.cambios().entrySet()) {
+            Product p = (e.getValue() == CambioProductos.Tipo.ELIMINADO) ? null : dao.buscarProductoPorId(e.getKey());
+            boolean mostrar = p != null && (cat.equalsIgnoreCase("Todos los productos")
+                    || cat.equalsIgnoreCase(p.getCategory()));
+            panelProduct anterior = tarjetas.get(e.getKey());
+
+            if (anterior == null) {
+                if (mostrar) {
+                    recargarInventario(cat);
+                    return;
                 }
+                continue;
             }
 
-            cont.add(new panelProduct(p));
+            int pos = cont.getComponentZOrder(anterior);
+            cont.remove(anterior);
+            tarjetas.remove(e.getKey());
+            if (mostrar) {
+                panelProduct tarjeta = new panelProduct(p);
+                tarjetas.put(p.getIdProduct(), tarjeta);
+                cont.add(tarjeta, pos);
+            }
         }
 
         cont.revalidate();
@@ -2,12 +2,10 @@ package Control;
 
 import Modelo.Tables;
 import Modelo.TablesDAO;
+import Modelo.pedidosDAO;
+import Utils.TokenizadorCampos;
 import Vista.ObjetoMesa;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
@@ -19,7 +17,8 @@ import javax.swing.table.DefaultTableModel;
  *
  * En esta clase se controla la lógica del detalle de mesa (ObjetoMesa).
  * Se encarga de:
- * - Cargar en la tabla TableInformacionMesa los pedidos asociados a una mesa desde "pedidos.txt".
+ * - Cargar en la tabla TableInformacionMesa los pedidos asociados a una mesa desde "pedidos.txt"
+ *   (usando el índice por mesa de pedidosDAO).
  * - Construir y mostrar un panel resumen (copia visual) en jPanelCargarMesa con:
  *   - Título (MESA # o PARA LLEVAR), estado (LIBRE/OCUPADA/LLENA) y personas/capacidad.
  * - Gestionar acciones de mesa:
@@ -57,6 +56,11 @@ public class ControllerObjetoMesa {
      */
     private final TablesDAO tablesDAO;
 
+    /**
+     * DAO de pedidos: consultas por mesa indexadas y reescritura al cerrar mesa / sacar persona.
+     */
+    private final pedidosDAO pedidosDao;
+
     /**
      * Archivo base donde se almacenan los pedidos (formato CSV).
      */
@@ -81,6 +85,7 @@ public class ControllerObjetoMesa {
         this.ventana = ventana;
         this.controllerMesas = controllerMesas;
         this.tablesDAO = TablesDAO.getInstancia();
+        this.pedidosDao = new pedidosDAO();
 
         // Eventos botones
         this.vista.getjBtnCerrarMesa().addActionListener(e -> cerrarMesa());
@@ -106,10 +111,8 @@ public class ControllerObjetoMesa {
      *
      * Flujo:
      * - Asegura que exista el archivo pedidos.txt.
-     * - Lee cada línea del archivo.
-     * - Ignora líneas vacías.
-     * - Valida que existan al menos 9 columnas.
-     * - Filtra por la mesa correspondiente (numeroMesa).
+     * - Obtiene del índice por mesa solo las líneas de esta mesa
+     *   (pedidosDAO ya valida las 9 columnas y el filtro de mesa).
      * - Agrega filas al DefaultTableModel y lo asigna a la JTable.
      */
     private void cargarTablaInformacionMesa() {
@@ -126,35 +129,18 @@ public class ControllerObjetoMesa {
 
         asegurarArchivoPedidos();
 
-        try (BufferedReader br = new BufferedReader(new FileReader(ARCHIVO_PEDIDOS))) {
-            String linea;
-
-            while ((linea = br.readLine()) != null) {
+        TokenizadorCampos partes = new TokenizadorCampos(',');
 
-                if (linea.trim().isEmpty()) {
-                    continue;
-                }
+        for (String linea : pedidosDao.obtenerPedidosLineasPorMesa(filtroMesa)) {
 
-                String[] partes = linea.split(",", -1);
-                if (partes.length < 9) {
-                    continue;
-                }
+            partes.separar(linea);
 
-                String numeroMesaTxt = partes[3].trim();
-                if (!numeroMesaTxt.equalsIgnoreCase(filtroMesa)) {
-                    continue;
-                }
+            String idPedido = partes.texto(0);
+            String fecha = (partes.texto(1) + " " + partes.texto(2)).trim();
+            String cedula = partes.texto(4);
+            String totalConIva = partes.texto(8);
 
-                String idPedido = partes[0].trim();
-                String fecha = (partes[1].trim() + " " + partes[2].trim()).trim();
-                String cedula = partes[4].trim();
-                String totalConIva = partes[8].trim();
-
-                modelo.addRow(new Object[]{idPedido, fecha, cedula, "₡" + totalConIva});
-            }
-
-        } catch (IOException e) {
-            System.out.println("Error leyendo pedidos.txt: " + e.getMessage());
+            modelo.addRow(new Object[]{idPedido, fecha, cedula, "₡" + totalConIva});
         }
 
         vista.getTableInformacionMesa().setModel(modelo);
@@ -252,8 +238,7 @@ public class ControllerObjetoMesa {
      * Cuenta la cantidad de cédulas únicas asociadas a una mesa en pedidos.txt.
      *
      * Lógica:
-     * - Lee cada línea de pedidos.txt.
-     * - Filtra por la mesa (columna 3).
+     * - Obtiene las líneas de la mesa desde el índice por mesa de pedidosDAO.
      * - Toma la cédula (columna 4).
      * - Cuenta cédulas únicas usando una lista (sin HashSet).
      *
@@ -263,34 +248,19 @@ public class ControllerObjetoMesa {
     private int contarCedulasUnicasPorMesa(String numeroMesa) {
 
         java.util.ArrayList<String> cedulasUnicas = new java.util.ArrayList<>();
+        TokenizadorCampos campos = new TokenizadorCampos(',');
 
-        try (BufferedReader br = new BufferedReader(new FileReader(ARCHIVO_PEDIDOS))) {
+        for (String linea : pedidosDao.obtenerPedidosLineasPorMesa(numeroMesa)) {
 
-            String linea;
-
-            while ((linea = br.readLine()) != null) {
-
-                if (linea.trim().isEmpty()) {
-                    continue;
-                }
-
-                String[] partes = linea.split(",", -1);
-                if (partes.length < 9) {
-                    continue;
-                }
-
-                String mesaTxt = partes[3].trim();
-                String cedula = partes[4].trim();
-
-                if (mesaTxt.equalsIgnoreCase(numeroMesa)) {
-                    if (!cedula.isEmpty() && !cedulasUnicas.contains(cedula)) {
-                        cedulasUnicas.add(cedula);
-                    }
-                }
+            campos.separar(linea);
+            if (campos.vacio(4)) {
+                continue;
             }
 
-        } catch (IOException e) {
-            System.out.println("Error contando cédulas únicas: " + e.getMessage());
+            String cedula = campos.texto(4);
+            if (!cedulasUnicas.contains(cedula)) {
+                cedulasUnicas.add(cedula);
+            }
         }
 
         return cedulasUnicas.size();
@@ -321,7 +291,7 @@ public class ControllerObjetoMesa {
 
         asegurarArchivoPedidos();
 
-        boolean seBorroAlgo = reescribirPedidosExcluyendoMesa(filtroMesa);
+        boolean seBorroAlgo = pedidosDao.eliminarPedidosDeMesa(filtroMesa);
 
         cargarTablaInformacionMesa();
         cargarPanelMesa();
@@ -378,7 +348,7 @@ public class ControllerObjetoMesa {
 
         asegurarArchivoPedidos();
 
-        boolean seBorro = reescribirPedidosExcluyendoMesaYCedula(filtroMesa, cedula);
+        boolean seBorro = pedidosDao.eliminarPedidosDeMesaYCedula(filtroMesa, cedula);
 
         cargarTablaInformacionMesa();
         cargarPanelMesa();
@@ -393,119 +363,6 @@ public class ControllerObjetoMesa {
         );
     }
 
-    /**
-     * Reescribe pedidos.txt excluyendo todas las líneas de la mesa indicada.
-     *
-     * Implementación:
-     * - Lee pedidos.txt y escribe a un temporal (pedidos_tmp.txt).
-     * - Omite las líneas donde la mesa coincide.
-     * - Reemplaza el archivo original por el temporal.
-     *
-     * @param filtroMesa mesa a eliminar (por ejemplo "1", "2"... o "LLEVAR")
-     * @return true si borró al menos una línea; false en caso contrario
-     */
-    private boolean reescribirPedidosExcluyendoMesa(String filtroMesa) {
-
-        File original = new File(ARCHIVO_PEDIDOS);
-        File temp = new File("pedidos_tmp.txt");
-
-        boolean borro = false;
-
-        try (BufferedReader br = new BufferedReader(new FileReader(original)); BufferedWriter bw = new BufferedWriter(new FileWriter(temp))) {
-
-            String linea;
-            while ((linea = br.readLine()) != null) {
-
-                if (linea.trim().isEmpty()) {
-                    continue;
-                }
-
-                String[] partes = linea.split(",", -1);
-                if (partes.length < 9) {
-                    continue;
-                }
-
-                String mesa = partes[3].trim();
-                if (mesa.equalsIgnoreCase(filtroMesa)) {
-                    borro = true;
-                    continue; // no escribir
-                }
-
-                bw.write(linea);
-                bw.newLine();
-            }
-
-        } catch (IOException e) {
-            System.out.println("Error reescribiendo pedidos: " + e.getMessage());
-        }
-
-        reemplazarArchivo(original, temp);
-        return borro;
-    }
-
-    /**
-     * Reescribe pedidos.txt excluyendo una sola persona:
-     * - Omite líneas donde mesa == filtroMesa y cliente == cedula.
-     *
-     * @param filtroMesa mesa objetivo
-     * @param cedula cédula a eliminar de la mesa
-     * @return true si borró al menos una línea; false en caso contrario
-     */
-    private boolean reescribirPedidosExcluyendoMesaYCedula(String filtroMesa, String cedula) {
-
-        File original = new File(ARCHIVO_PEDIDOS);
-        File temp = new File("pedidos_tmp.txt");
-
-        boolean borro = false;
-
-        try (BufferedReader br = new BufferedReader(new FileReader(original)); BufferedWriter bw = new BufferedWriter(new FileWriter(temp))) {
-
-            String linea;
-            while ((linea = br.readLine()) != null) {
-
-                if (linea.trim().isEmpty()) {
-                    continue;
-                }
-
-                String[] partes = linea.split(",", -1);
-                if (partes.length < 9) {
-                    continue;
-                }
-
-                String mesa = partes[3].trim();
-                String cliente = partes[4].trim();
-
-                if (mesa.equalsIgnoreCase(filtroMesa) && cliente.equalsIgnoreCase(cedula)) {
-                    borro = true;
-                    continue;
-                }
-
-                bw.write(linea);
-                bw.newLine();
-            }
-
-        } catch (IOException e) {
-            System.out.println("Error reescribiendo pedidos: " + e.getMessage());
-        }
-
-        reemplazarArchivo(original, temp);
-        return borro;
-    }
-
-    /**
-     * Reemplaza el archivo original por el temporal.
-     * Se usa delete + renameTo para evitar fallos en Windows al sobrescribir.
-     *
-     * @param original archivo original (pedidos.txt)
-     * @param temp archivo temporal (pedidos_tmp.txt)
-     */
-    private void reemplazarArchivo(File original, File temp) {
-        if (original.exists()) {
-            original.delete();
-        }
-        temp.renameTo(original);
-    }
-
     /**
      * Verifica/crea el archivo pedidos.txt si no existe.
      */
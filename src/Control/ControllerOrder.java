@@ -1,14 +1,16 @@
 package Control;
 
+import Modelo.CambioProductos;
 import Modelo.Clients;
 import Modelo.ClientsDAO;
 import Modelo.ItemPedido;
 import Modelo.Product;
 import Modelo.pedidosDAO;
 import Modelo.productosDAO;
+import Utils.LectorMapeado;
+import Vista.GrillaProductos;
 import Vista.Mensajes;
 import Vista.OrderItemCard;
-import Vista.ProductCard;
 import Vista.orders;
 import java.util.ArrayList;
 import java.util.List;
@@ -27,7 +29,7 @@ import javax.swing.*;
  * - Controlar selección de mesas y su capacidad (máx. 4 personas por mesa).
  * - Buscar y mostrar información del cliente.
  * - Generar pedidos y persistirlos en "pedidos.txt".
- * - Descontar stock y notificar cambios mediante callbacks del DAO.
+ * - Descontar stock y recibir los cambios del catálogo (CambioProductos) del DAO.
  *
  * Notas de arquitectura:
  * - No se utilizan salidas directas a consola (System.out/System.err).
@@ -59,6 +61,18 @@ public class ControllerOrder {
 
     private java.util.List<JButton> botonesMesa = new java.util.ArrayList<>();
 
+    /**
+     * Espera desde la última tecla en la búsqueda antes de filtrar.
+     */
+    private static final int ESPERA_BUSQUEDA_MS = 150;
+
+    /**
+     * Grilla virtualizada de productos (pinta solo las celdas visibles).
+     */
+    private final GrillaProductos grilla = new GrillaProductos(3, 14);
+
+    private final Timer filtroBusqueda = new Timer(ESPERA_BUSQUEDA_MS, e -> cargarProductos());
+
     /**
      * Constructor: inicializa el controlador con la vista Orders,
      * registra listeners y carga información inicial de pedidos/productos.
@@ -71,14 +85,11 @@ public class ControllerOrder {
         }
 
         this.vista = vista;
-        this.clientsDAO = new ClientsDAO();
+        this.clientsDAO = ClientsDAO.getInstancia();
         this.dao = productosDAO.getInstancia();
 
-        // Callback: cuando cambia stock, recargar productos y resumen (sin imprimir en consola)
-        this.dao.addStockChangeCallback(() -> SwingUtilities.invokeLater(() -> {
-            cargarProductos();
-            recargarResumen();
-        }));
+        // Cambios del catálogo: llegan en lotes (en el EDT), un solo repintado por lote
+        this.dao.agregarEscucha(this::aplicarCambios);
 
         this.vista.getBtnSearch().addActionListener(e -> buscarCliente());
         this.vista.getBtnPedir().addActionListener(e -> realizarPedido());
@@ -87,17 +98,19 @@ public class ControllerOrder {
 
         vista.getBtnClean().addActionListener(e -> limpiarPedidoUI());
 
+        // Búsqueda: se filtra cuando se deja de escribir (una vez por ráfaga de teclas)
+        filtroBusqueda.setRepeats(false);
         vista.getTxtBuscarProducto().getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
             public void insertUpdate(javax.swing.event.DocumentEvent e) {
-                cargarProductos();
+                filtroBusqueda.restart();
             }
 
             public void removeUpdate(javax.swing.event.DocumentEvent e) {
-                cargarProductos();
+                filtroBusqueda.restart();
             }
 
             public void changedUpdate(javax.swing.event.DocumentEvent e) {
-                cargarProductos();
+                filtroBusqueda.restart();
             }
         });
 
@@ -143,39 +156,29 @@ public class ControllerOrder {
             return;
         }
 
-        try (java.io.BufferedReader br = new java.io.BufferedReader(new java.io.FileReader(f))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty()) {
-                    continue;
-                }
-
-                // Formato: ID,FECHA,HORA,MESA,CEDULA,ITEMS,SUBTOTAL,IVA,TOTAL
-                String[] p = line.split(",", 9);
-                if (p.length < 5) {
-                    continue;
-                }
-
-                String mesa = p[3].trim();
-                String ced = p[4].trim();
-
-                if (ced.isEmpty()) {
-                    continue;
+        try {
+            // Formato: ID,FECHA,HORA,MESA,CEDULA,ITEMS,SUBTOTAL,IVA,TOTAL
+            // Se recorre sobre los bytes del archivo: solo se decodifica la cédula.
+            LectorMapeado.para("pedidos.txt").recorrer(',', (p, offset) -> {
+                if (p.cantidad() < 5 || p.vacio(4)) {
+                    return true;
                 }
-                if (esLlevar(mesa)) {
-                    continue;
+                if (p.esIgualIgnorandoMayusculas(3, "LLEVAR")) {
+                    return true;
                 }
 
-                int idx = idMesa(mesa);
-                if (idx < 0) {
-                    continue;
+                // Igual que idMesa(): número de mesa 1..5 -> índice 0..4
+                int idx = p.entero(3, 0) - 1;
+                if (idx < 0 || idx >= 5) {
+                    return true;
                 }
 
+                String ced = p.texto(4);
                 if (!cedulasPorMesa[idx].contains(ced)) {
                     cedulasPorMesa[idx].add(ced);
                 }
-            }
+                return true;
+            });
         } catch (Exception e) {
            
         }
@@ -345,19 +348,20 @@ public class ControllerOrder {
     }
 
     private void configurarProductos() {
-        JPanel cont = vista.getPanelProductos();
-
-        
-        cont.setBorder(BorderFactory.createEmptyBorder(14, 14, 14, 14));
+        grilla.setBorder(BorderFactory.createEmptyBorder(14, 14, 14, 14));
+        grilla.setBackground(vista.getPanelProductos().getBackground());
+        grilla.setAlHacerClic(p -> {
+            Product actual = dao.buscarProductoPorId(p.getIdProduct());
+            if (actual != null) {
+                agregar(actual);
+            }
+        });
 
         JScrollPane sp = vista.getScrollProductos();
-        sp.setViewportView(cont);
+        sp.setViewportView(grilla);
         sp.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
         sp.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED);
         sp.getVerticalScrollBar().setUnitIncrement(16);
-
-        // con GridLayout solo una vez
-        cont.setLayout(new java.awt.GridLayout(0, 3, 14, 14));
     }
 
     private void configurarPedidos() {
@@ -382,13 +386,22 @@ public class ControllerOrder {
     }
 
     /* ---------------------- productos ---------------------- */
+    /**
+     * Muestra en la grilla los productos de la categoría y la búsqueda
+     * actuales, con los sin stock al final. Solo arma la lista: la grilla pinta
+     * las celdas visibles.
+     */
     private void cargarProductos() {
+        filtroBusqueda.stop();
         String txt = vista.getTxtBuscarProducto().getText().trim().toLowerCase();
 
-        JPanel cont = vista.getPanelProductos();
-        cont.removeAll();
+        List<Product> lista = categoriaActual.equalsIgnoreCase("Todos")
+                ? dao.obtenerTodosLosProductos()
+                : dao.obtenerProductosPorCategoria(categoriaActual);
 
-        List<Product> lista = new ArrayList<>(dao.obtenerTodosLosProductos());
+        if (!txt.isEmpty()) {
+            lista.removeIf(p -> !p.getNameProduct().toLowerCase().contains(txt));
+        }
 
         // sin stock al final
         lista.sort((a, b) -> {
@@ -397,26 +410,26 @@ public class ControllerOrder {
             return Boolean.compare(!aOk, !bOk);
         });
 
-        for (Product p : lista) {
-            if (!categoriaActual.equalsIgnoreCase("Todos")
-                    && !p.getCategory().equalsIgnoreCase(categoriaActual)) {
-                continue;
-            }
-
-            if (!txt.isEmpty() && !p.getNameProduct().toLowerCase().contains(txt)) {
-                continue;
-            }
-
-            ProductCard card = new ProductCard(p, () -> agregar(p));
+        grilla.setProductos(lista);
+    }
 
-            card.setBackground(p.getCant() <= 0 ? COLOR_MESA_LLENA : new java.awt.Color(80, 200, 120));
-            card.setOpaque(true);
+    /**
+     * Lote de cambios del DAO: vuelve a armar la lista de la grilla una vez por
+     * lote y el resumen solo si cambió algún producto del carrito.
+     */
+    private void aplicarCambios(CambioProductos cambio) {
+        cargarProductos();
 
-            cont.add(card);
+        boolean enCarrito = cambio.esRecargaCompleta();
+        for (ItemPedido it : carrito) {
+            if (cambio.tipo(it.getPro().getIdProduct()) != null) {
+                enCarrito = true;
+                break;
+            }
+        }
+        if (enCarrito) {
+            recargarResumen();
         }
-
-        cont.revalidate();
-        cont.repaint();
     }
 
     private void agregar(Product p) {
@@ -693,6 +706,7 @@ public class ControllerOrder {
         int totalTemp = subtotalTemp + ivaTemp;
 
         // Validación de capacidad mesa
+        java.util.List<String> cedulasMesa = null;
         if (!esLlevar(mesaActual)) {
             int idx = idMesa(mesaActual);
             if (idx < 0) {
@@ -700,19 +714,30 @@ public class ControllerOrder {
                 return;
             }
 
-            String ced = clienteActual.getCedula();
-            java.util.List<String> lista = cedulasPorMesa[idx];
-            boolean yaEsta = lista.contains(ced);
-
-            if (!yaEsta && lista.size() >= 4) {
+            cedulasMesa = cedulasPorMesa[idx];
+            if (!cedulasMesa.contains(clienteActual.getCedula()) && cedulasMesa.size() >= 4) {
                 mensajes.message("Mesa " + mesaActual + " está llena (máx 4 personas).");
                 marcarMesaLlena(mesaActual);
                 return;
             }
+        }
+
+        // Descontar stock antes de guardar el pedido: una sola escritura para todo el
+        // pedido, y si otra caja vendió las unidades (o no se pudo guardar) no se guarda nada.
+        java.util.Map<String, Integer> descuentos = new java.util.LinkedHashMap<>();
+        for (ItemPedido it : carrito) {
+            descuentos.merge(it.getPro().getIdProduct(), it.getCant(), Integer::sum);
+        }
+        if (!dao.descontarStock(descuentos, "PEDIDO " + idPedido)) {
+            mensajes.message(mensajeSinStock(descuentos));
+            return;
+        }
 
-            if (!yaEsta) {
-                lista.add(ced);
-                if (lista.size() >= 4) {
+        if (cedulasMesa != null) {
+            String ced = clienteActual.getCedula();
+            if (!cedulasMesa.contains(ced)) {
+                cedulasMesa.add(ced);
+                if (cedulasMesa.size() >= 4) {
                     marcarMesaLlena(mesaActual);
                 }
             }
@@ -753,14 +778,12 @@ public class ControllerOrder {
                 + items + ","
                 + subtotal + "," + iva + "," + total;
 
-        pedidosDAO.guardarLinea(linea);
-
-        // Descontar stock
-        for (ItemPedido it : carrito) {
-            Product p = it.getPro();
-            p.setCant(p.getCant() - it.getCant());
-            dao.actualizarProducto(p);
-        }
+        // Se escribe en el hilo de persistencia; las consultas de pedidos esperan a que termine.
+        pedidosDAO.guardarLineaAsync(linea).thenAccept(ok -> {
+            if (!ok) {
+                SwingUtilities.invokeLater(() -> mensajes.message("No se pudo guardar el pedido " + idPedido + "."));
+            }
+        });
 
         carrito.clear();
         recargarResumen();
@@ -783,6 +806,25 @@ public class ControllerOrder {
         }
     }
 
+    /**
+     * Mensaje cuando no se pudo descontar el stock del pedido: los productos que
+     * ya no alcanzan (otra caja pudo venderlos), o que no se pudo guardar.
+     */
+    private String mensajeSinStock(java.util.Map<String, Integer> descuentos) {
+        StringBuilder faltan = new StringBuilder();
+        for (java.util.Map.Entry<String, Integer> e : descuentos.entrySet()) {
+            Product p = dao.buscarProductoPorId(e.getKey());
+            if (p == null || p.getCant() < e.getValue()) {
+                faltan.append("\n- ").append(p == null ? e.getKey() : p.getNameProduct())
+                        .append(" (disponible: ").append(p == null ? 0 : p.getCant()).append(")");
+            }
+        }
+        if (faltan.length() == 0) {
+            return "No se pudo guardar el descuento de stock. El pedido no se realizó.";
+        }
+        return "No hay stock suficiente; el pedido no se realizó:" + faltan;
+    }
+
     /* ---------------------- facturación ---------------------- */
     private void abrirFacturacion(int idPedido, Clients cliente, String mesa,
             List<ItemPedido> items, int subtotal, int iva, int total) {
@@ -2,8 +2,8 @@ package Control;
 
 import Vista.Reports;
 import Vista.Mensajes;
-import java.io.BufferedReader;
-import java.io.FileReader;
+import Modelo.RegistroParticionado;
+import Utils.LectorMapeado;
 import java.io.IOException;
 import javax.swing.table.DefaultTableModel;
 import java.io.File;
@@ -16,8 +16,8 @@ import Control.ControllerReportesNegocio;
  *
  * @author Jefferson Granados En esta clase se controla la lógica del módulo de
  * reportes. Se encarga de: - Cargar la tabla de pedidos desde el archivo
- * "pedidos.txt". - Cargar la tabla de pagos/facturas desde el archivo
- * "pagos_factura.txt". - Refrescar automáticamente las tablas cuando detecta
+ * "pedidos.txt". - Cargar la tabla de pagos/facturas desde las particiones
+ * diarias de "pagos_factura". - Refrescar automáticamente las tablas cuando detecta
  * cambios en los archivos. - Permitir la búsqueda de un pedido por ID y mostrar
  * su detalle en pantalla.
  *
@@ -35,10 +35,10 @@ public class ControllerReports {
     private static final String ARCHIVO_PEDIDOS = "pedidos.txt";
 
     /**
-     * Archivo donde se almacenan los pagos asociados a facturas (formato
-     * separado por '|').
+     * Pagos asociados a facturas (formato separado por '|'), una partición por
+     * día (ver RegistroParticionado).
      */
-    private static final String ARCHIVO_PAGOS_FACTURA = "pagos_factura.txt";
+    private final RegistroParticionado pagosFactura = RegistroParticionado.para("pagos_factura.txt");
 
     /**
      * Timer para refrescar automáticamente cuando los archivos cambian.
@@ -52,7 +52,8 @@ public class ControllerReports {
     private long lastPedidos = 0;
 
     /**
-     * Marca de última modificación del archivo de pagos para detectar cambios.
+     * Marca de última modificación de la partición de pagos más nueva para
+     * detectar cambios.
      */
     private long lastPagos = 0;
 
@@ -83,21 +84,20 @@ public class ControllerReports {
 
     /**
      * Inicia un Timer que revisa cada 1 segundo si los archivos fueron
-     * modificados. Si detecta cambios en "pedidos.txt" o "pagos_factura.txt",
-     * recarga las tablas.
+     * modificados. Si detecta cambios en "pedidos.txt" o en la partición de
+     * pagos más nueva, recarga las tablas.
      *
      * Se apoya en lastModified() para comparar cambios.
      */
     private void iniciarAutoRefresh() {
         File fPedidos = new File(ARCHIVO_PEDIDOS);
-        File fPagos = new File(ARCHIVO_PAGOS_FACTURA);
 
         lastPedidos = fPedidos.exists() ? fPedidos.lastModified() : 0;
-        lastPagos = fPagos.exists() ? fPagos.lastModified() : 0;
+        lastPagos = pagosFactura.ultimaModificacion();
 
         refreshTimer = new Timer(1000, e -> {
             long modPedidos = fPedidos.exists() ? fPedidos.lastModified() : 0;
-            long modPagos = fPagos.exists() ? fPagos.lastModified() : 0;
+            long modPagos = pagosFactura.ultimaModificacion();
 
             // Si cambió el archivo de pedidos, recargar tabla
             if (modPedidos != lastPedidos) {
@@ -138,9 +138,10 @@ public class ControllerReports {
      * Carga los pedidos desde el archivo "pedidos.txt" y los coloca en la tabla
      * de pedidos.
      *
-     * - Lee cada línea del archivo. - Ignora líneas vacías. - Separa por coma
-     * (CSV). - Si faltan campos mínimos, ignora la línea. - Arma un
-     * DefaultTableModel con columnas específicas.
+     * - Recorre el archivo con LectorMapeado (sobre los bytes, sin decodificar
+     * cada línea). - Ignora líneas vacías. - Separa por coma (CSV). - Si faltan
+     * campos mínimos, ignora la línea. - Arma un DefaultTableModel con columnas
+     * específicas.
      */
     private void cargarTablaPedidos() {
 
@@ -148,41 +149,34 @@ public class ControllerReports {
                 new String[]{"ID Pedido", "Fecha", "Hora", "Mesa", "Cliente/Cedula", "Total", "Estado"}, 0
         );
 
-        try (BufferedReader br = new BufferedReader(new FileReader(ARCHIVO_PEDIDOS))) {
-
-            String linea;
-            while ((linea = br.readLine()) != null) {
-
-                // Ignorar líneas vacías
-                if (linea.trim().isEmpty()) {
-                    continue;
-                }
+        try {
+            // Recorre pedidos.txt sobre sus bytes: solo se decodifican las columnas de la tabla.
+            LectorMapeado.para(ARCHIVO_PEDIDOS).recorrer(',', (p, offset) -> {
 
                 // Formato esperado: CSV con al menos 9 columnas
-                String[] p = linea.split(",", -1);
-
-                // Validación mínima de estructura
-                if (p.length < 9) {
-                    continue;
+                // (las líneas vacías quedan con un solo campo y se ignoran)
+                if (p.cantidad() < 9) {
+                    return true;
                 }
 
                 // Campos visibles en tabla
-                String idPedido = p[0].trim();
-                String fecha = p[1].trim();
-                String hora = p[2].trim();
-                String mesa = p[3].trim();
-                String cliente = p[4].trim();
+                String idPedido = p.texto(0);
+                String fecha = p.texto(1);
+                String hora = p.texto(2);
+                String mesa = p.texto(3);
+                String cliente = p.texto(4);
 
                 // Total se muestra con símbolo de colón y se toma desde la columna 8
-                String total = "₡" + p[8].trim();
+                String total = "₡" + p.texto(8);
 
                 // Estado: si viene en columna 9 lo usa; si no, muestra "Pendiente"
-                String estado = (p.length > 9 && !p[9].trim().isEmpty()) ? p[9].trim() : "Pendiente";
+                String estado = p.vacio(9) ? "Pendiente" : p.texto(9);
 
                 modelo.addRow(new Object[]{
                     idPedido, fecha, hora, mesa, cliente, total, estado
                 });
-            }
+                return true;
+            });
 
         } catch (IOException e) {
 
@@ -192,11 +186,12 @@ public class ControllerReports {
     }
 
     /**
-     * Carga los registros de pagos/facturas desde "pagos_factura.txt" y los
+     * Carga los registros de pagos/facturas de todas las particiones y los
      * coloca en la tabla.
      *
-     * - Ignora líneas vacías. - Ignora encabezado si inicia con "ID_FACTURA". -
-     * Separa por '|'. - Requiere al menos 5 campos: ID_Factura, Metodo, Monto,
+     * - Recorre las particiones con LectorMapeado (RegistroParticionado). -
+     * Ignora líneas vacías. - Ignora el encabezado de cada partición (inicia
+     * con "ID_FACTURA"). - Separa por '|'. - Requiere al menos 5 campos: ID_Factura, Metodo, Monto,
      * Referencia, Cedula.
      */
     private void cargarTablaPagosFactura() {
@@ -205,36 +200,30 @@ public class ControllerReports {
                 new String[]{"ID_Factura", "Metodo", "Monto", "Referencia", "Cedula"}, 0
         );
 
-        try (BufferedReader br = new BufferedReader(new FileReader(ARCHIVO_PAGOS_FACTURA))) {
-
-            String linea;
-            while ((linea = br.readLine()) != null) {
+        try {
+            // Historial completo: se recorren todas las particiones (sin límite de fechas).
+            pagosFactura.recorrer(null, null, '|', (p, offset) -> {
 
-                linea = linea.trim();
-                if (linea.isEmpty()) {
-                    continue;
+                if (p.cantidad() < 5) {
+                    return true;
                 }
 
                 // Omitir encabezado del archivo si existe
-                if (linea.toUpperCase().startsWith("ID_FACTURA")) {
-                    continue;
+                if (p.esIgualIgnorandoMayusculas(0, "ID_FACTURA")) {
+                    return true;
                 }
 
-                String[] p = linea.split("\\|", -1);
-                if (p.length < 5) {
-                    continue;
-                }
-
-                String idFactura = p[0].trim();
-                String metodo = p[1].trim();
-                String monto = "₡" + p[2].trim();
-                String referencia = p[3].trim();
-                String cedula = p[4].trim();
+                String idFactura = p.texto(0);
+                String metodo = p.texto(1);
+                String monto = "₡" + p.texto(2);
+                String referencia = p.texto(3);
+                String cedula = p.texto(4);
 
                 modelo.addRow(new Object[]{
                     idFactura, metodo, monto, referencia, cedula
                 });
-            }
+                return true;
+            });
 
         } catch (IOException e) {
 
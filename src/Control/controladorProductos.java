@@ -2,6 +2,7 @@ package Control;
 
 import Modelo.Product;
 import Modelo.productosDAO;
+import Utils.CacheImagenes;
 import Vista.GestionProductos;
 import Vista.Mensajes;
 import java.awt.event.ActionEvent;
@@ -94,6 +95,9 @@ public class controladorProductos {
                     boolean actualizado = dao.actualizarProducto(nuevo);
 
                     if (actualizado) {
+                        if (!imagen.equals(existente.getImage())) {
+                            CacheImagenes.getInstancia().regenerar("/img/" + imagen);
+                        }
                         mensajes.message("Producto modificado correctamente");
                         vista.limpiarFormulario();
                         vista.dispose();
@@ -107,6 +111,7 @@ public class controladorProductos {
                 boolean guardado = dao.insertarProducto(nuevo);
 
                 if (guardado) {
+                    CacheImagenes.getInstancia().regenerar("/img/" + imagen);
                     mensajes.message("Producto guardado correctamente");
                     vista.limpiarFormulario();
                     vista.dispose();
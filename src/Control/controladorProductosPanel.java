@@ -1,16 +1,16 @@
 package Control;
 
+import Modelo.CambioProductos;
 import Modelo.productosDAO;
+import Utils.CacheImagenes;
 import Vista.GestionProductos;
 import java.awt.event.ActionEvent;
+import java.util.Map;
 import javax.swing.JOptionPane;
 import javax.swing.table.DefaultTableModel;
 import Vista.Products;
 import java.awt.Font;
-import java.awt.Image;
-import java.net.URL;
 import javax.swing.Icon;
-import javax.swing.ImageIcon;
 import javax.swing.SwingConstants;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.JTableHeader;
@@ -34,18 +34,14 @@ public class controladorProductosPanel {
 
     /**
      * Constructor: configura listeners, modelo de tabla, renderers y carga inicial.
-     * También se suscribe a cambios de stock para recargar la tabla automáticamente.
+     * También se suscribe a los cambios del catálogo para actualizar las filas afectadas.
      */
     public controladorProductosPanel(Products vista, ControllerInventario invCtrl) {
         this.vista = vista;
         this.dao = productosDAO.getInstancia();
         this.invCtrl = invCtrl;
 
-        this.dao.addStockChangeCallback(() -> {
-            javax.swing.SwingUtilities.invokeLater(() -> {
-                recargarSinFiltro();
-            });
-        });
+        this.dao.agregarEscucha(this::aplicarCambios);
 
         this.vista.getBtnNuevoProducto().addActionListener(this::nuevoProducto);
         this.vista.getBtnModificarProducto().addActionListener(this::modificarProducto);
@@ -171,14 +167,8 @@ public class controladorProductosPanel {
             gp.getTxtCantidad().setText(String.valueOf(producto.getCant()));
             gp.getTxtImagen().setText(producto.getImage());
 
-            URL imgUrl = gp.getClass().getResource("/img/" + producto.getImage());
-            if (imgUrl != null) {
-                ImageIcon icon = new ImageIcon(imgUrl);
-                Image img = icon.getImage().getScaledInstance(135, 135, Image.SCALE_SMOOTH);
-                gp.getLblPreviewImg().setIcon(new ImageIcon(img));
-            } else {
-                gp.getLblPreviewImg().setIcon(null);
-            }
+            gp.getLblPreviewImg().setIcon(
+                    CacheImagenes.getInstancia().icono("/img/" + producto.getImage(), 135, 135));
 
             new controladorProductos(gp);
 
@@ -261,15 +251,7 @@ public class controladorProductosPanel {
         modelo.setRowCount(0);
 
         for (Modelo.Product p : dao.obtenerTodosLosProductos()) {
-            modelo.addRow(new Object[]{
-                p.getIdProduct(),
-                p.getNameProduct(),
-                p.getCategory(),
-                p.getPrice(),
-                p.getCant(),
-                p.getStatus(),
-                cargarIcono(p.getImage())
-            });
+            modelo.addRow(filaDe(p));
         }
 
         modelo.fireTableDataChanged();
@@ -282,23 +264,77 @@ public class controladorProductosPanel {
     }
 
     /**
-     * Carga un Icon desde /img/ y lo escala para mostrarlo en la tabla.
-     * Si no existe imagen, retorna null.
+     * Valores de la fila de un producto en la tabla.
      */
-    private Icon cargarIcono(String nombreImg) {
-        if (nombreImg == null || nombreImg.isBlank()) {
-            return null;
+    private Object[] filaDe(Modelo.Product p) {
+        return new Object[]{
+            p.getIdProduct(),
+            p.getNameProduct(),
+            p.getCategory(),
+            p.getPrice(),
+            p.getCant(),
+            p.getStatus(),
+            cargarIcono(p.getImage())
+        };
+    }
+
+    /**
+     * Lote de cambios del DAO (en el EDT): actualiza, agrega o quita solo las
+     * filas de los productos que cambiaron, respetando el filtro por ID. Una
+     * recarga completa vuelve a cargar la tabla sin filtro.
+     */
+    private void aplicarCambios(CambioProductos cambio) {
+        if (cambio.esRecargaCompleta()) {
+            recargarSinFiltro();
+            return;
         }
 
-        URL url = getClass().getResource("/img/" + nombreImg);
-        if (url == null) {
-            return null;
+        DefaultTableModel modelo = (DefaultTableModel) vista.getTableProductos().getModel();
+        String texto = vista.getTxtProductoSeleccionado().getText().trim();
+        cargandoTabla = true;
+
+        for (Map.Entry<String, CambioProductos.Tipo> e : cambio.cambios().entrySet()) {
+            String id = e.getKey();
+            int fila = -1;
+            for (int i = 0; i < modelo.getRowCount(); i++) {
+                if (id.equals(String.valueOf(modelo.getValueAt(i, 0)))) {
+                    fila = i;
+                    break;
+                }
+            }
+
+            Modelo.Product p = (e.getValue() == CambioProductos.Tipo.ELIMINADO) ? null : dao.buscarProductoPorId(id);
+            boolean mostrar = p != null && (texto.isEmpty() || p.getIdProduct().contains(texto));
+
+            if (!mostrar) {
+                if (fila >= 0) {
+                    modelo.removeRow(fila);
+                }
+            } else if (fila < 0) {
+                modelo.addRow(filaDe(p));
+            } else if (e.getValue() == CambioProductos.Tipo.STOCK) {
+                modelo.setValueAt(p.getCant(), fila, 4);
+                modelo.setValueAt(p.getStatus(), fila, 5);
+            } else {
+                Object[] valores = filaDe(p);
+                for (int c = 1; c < valores.length; c++) {
+                    modelo.setValueAt(valores[c], fila, c);
+                }
+            }
         }
 
-        Image img = new ImageIcon(url).getImage()
-                .getScaledInstance(80, 80, Image.SCALE_SMOOTH);
+        cargandoTabla = false;
+    }
 
-        return new ImageIcon(img);
+    /**
+     * Icon de /img/ a 80x80 para la tabla, desde el caché compartido (no se
+     * vuelve a decodificar al filtrar o recargar). Si no existe imagen, retorna null.
+     */
+    private Icon cargarIcono(String nombreImg) {
+        if (nombreImg == null || nombreImg.isBlank()) {
+            return null;
+        }
+        return CacheImagenes.getInstancia().icono("/img/" + nombreImg, 80, 80);
     }
 
     /**
@@ -322,30 +358,14 @@ public class controladorProductosPanel {
 
         if (texto.isEmpty()) {
             for (Modelo.Product p : dao.obtenerTodosLosProductos()) {
-                modelo.addRow(new Object[]{
-                    p.getIdProduct(),
-                    p.getNameProduct(),
-                    p.getCategory(),
-                    p.getPrice(),
-                    p.getCant(),
-                    p.getStatus(),
-                    cargarIcono(p.getImage())
-                });
+                modelo.addRow(filaDe(p));
             }
             return;
         }
 
         for (Modelo.Product p : dao.obtenerTodosLosProductos()) {
             if (p.getIdProduct().contains(texto)) {
-                modelo.addRow(new Object[]{
-                    p.getIdProduct(),
-                    p.getNameProduct(),
-                    p.getCategory(),
-                    p.getPrice(),
-                    p.getCant(),
-                    p.getStatus(),
-                    cargarIcono(p.getImage())
-                });
+                modelo.addRow(filaDe(p));
             }
         }
     }
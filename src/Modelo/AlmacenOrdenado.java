@@ -0,0 +1,289 @@
+package Modelo;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *
+ * Base de las implementaciones de AlmacenRegistros: cada una guarda "árboles"
+ * ordenados por clave (el de datos y uno por índice secundario) y esta clase
+ * arma sobre ellos put/get/recorrer y el mantenimiento de los índices.
+ *
+ * Funcionamiento:
+ * - Un índice secundario es otro árbol cuyas claves son VALOR + '\0' + CLAVE
+ *   (sin datos): buscar por valor es recorrer el rango de ese prefijo.
+ * - put() y eliminar() cambian el árbol de datos y los índices dentro de una
+ *   misma transacción (iniciar/confirmar), con el bloqueo del almacén tomado.
+ * - Antes de cada operación, con el bloqueo tomado, la implementación se pone
+ *   al día si otra caja confirmó cambios (ponerAlDia()).
+ *
+ * Una instancia por archivo (ver para()); la implementación se elige con la
+ * propiedad "pos.almacen" (texto por defecto, o paginado).
+ */
+public abstract class AlmacenOrdenado implements AlmacenRegistros {
+
+    private static final Map<Path, AlmacenOrdenado> INSTANCIAS = new ConcurrentHashMap<>();
+
+    private static final String IMPLEMENTACION = System.getProperty("pos.almacen", "texto").trim().toLowerCase();
+
+    /**
+     * Árbol de los registros.
+     */
+    protected static final String DATOS = "datos";
+
+    /**
+     * Prefijo de los árboles de índices secundarios.
+     */
+    protected static final String PREFIJO_INDICE = "indice.";
+
+    private static final String[] SIN_CAMPOS = new String[0];
+    private static final char FIN_VALOR = '\0';
+
+    protected final int columnaClave;
+    protected final CoordinacionArchivos coordinacion;
+
+    private final Map<String, ClaveIndice> indices = new LinkedHashMap<>();
+
+    /**
+     * Cambios vistos (propios o de otra caja), para version().
+     */
+    private volatile long cambios = 0;
+
+    static AlmacenRegistros para(String archivoTexto, char separador, int columnaClave) {
+        Path path = Paths.get(archivoTexto).toAbsolutePath().normalize();
+        return INSTANCIAS.computeIfAbsent(path, p -> "paginado".equals(IMPLEMENTACION)
+                ? new AlmacenPaginado(p, separador, columnaClave)
+                : new AlmacenTexto(p, separador, columnaClave));
+    }
+
+    protected AlmacenOrdenado(int columnaClave, CoordinacionArchivos coordinacion) {
+        this.columnaClave = columnaClave;
+        this.coordinacion = coordinacion;
+    }
+
+    @Override
+    public void put(String[] campos) throws IOException {
+        if (campos.length <= columnaClave) {
+            throw new IllegalArgumentException("El registro no tiene la columna clave " + columnaClave);
+        }
+        String clave = campos[columnaClave];
+
+        coordinacion.conBloqueo(() -> {
+            actualizar();
+            String[] anterior = indices.isEmpty() ? null : leerRegistro(DATOS, clave);
+
+            iniciar();
+            try {
+                escribirRegistro(DATOS, clave, campos);
+                actualizarIndices(clave, anterior, campos);
+                confirmar();
+            } catch (IOException | RuntimeException e) {
+                abortar();
+                throw e;
+            }
+            cambios++;
+        });
+    }
+
+    @Override
+    public String[] get(String clave) throws IOException {
+        return coordinacion.conBloqueo(() -> {
+            actualizar();
+            String[] campos = leerRegistro(DATOS, clave);
+            return (campos != null) ? campos.clone() : null;
+        });
+    }
+
+    @Override
+    public boolean eliminar(String clave) throws IOException {
+        return coordinacion.conBloqueo(() -> {
+            actualizar();
+            String[] anterior = leerRegistro(DATOS, clave);
+            if (anterior == null) {
+                return false;
+            }
+
+            iniciar();
+            try {
+                escribirRegistro(DATOS, clave, null);
+                actualizarIndices(clave, anterior, null);
+                confirmar();
+            } catch (IOException | RuntimeException e) {
+                abortar();
+                throw e;
+            }
+            cambios++;
+            return true;
+        });
+    }
+
+    @Override
+    public void recorrer(String desde, String hasta, Visitante visitante) throws IOException {
+        coordinacion.conBloqueo(() -> {
+            actualizar();
+            recorrerArbol(DATOS, desde, hasta, (clave, campos) -> visitante.visitar(clave, campos.clone()));
+        });
+    }
+
+    @Override
+    public void definirIndice(String nombre, ClaveIndice clave) throws IOException {
+        coordinacion.conBloqueo(() -> {
+            actualizar();
+            indices.put(nombre, clave);
+
+            String arbol = PREFIJO_INDICE + nombre;
+            if (existeArbol(arbol)) {
+                return;
+            }
+
+            iniciar();
+            try {
+                crearArbol(arbol);
+                List<String[]> entradas = new ArrayList<>();
+                recorrerArbol(DATOS, null, null, (k, campos) -> {
+                    String valor = clave.de(campos);
+                    if (valor != null) {
+                        entradas.add(new String[]{claveIndice(valor, k)});
+                    }
+                    return true;
+                });
+                for (String[] e : entradas) {
+                    escribirRegistro(arbol, e[0], SIN_CAMPOS);
+                }
+                confirmar();
+            } catch (IOException | RuntimeException e) {
+                abortar();
+                throw e;
+            }
+        });
+    }
+
+    @Override
+    public List<String> buscarPorIndice(String nombre, String valor) throws IOException {
+        List<String> res = new ArrayList<>();
+        String prefijo = valor + FIN_VALOR;
+
+        coordinacion.conBloqueo(() -> {
+            actualizar();
+            if (!indices.containsKey(nombre)) {
+                throw new IllegalArgumentException("Índice no definido: " + nombre);
+            }
+            recorrerArbol(PREFIJO_INDICE + nombre, prefijo, valor + (char) (FIN_VALOR + 1), (k, campos) -> {
+                res.add(k.substring(prefijo.length()));
+                return true;
+            });
+        });
+        return res;
+    }
+
+    @Override
+    public long version() throws IOException {
+        if (coordinacion.huboCambioExterno()) {
+            coordinacion.conBloqueo(this::actualizar);
+        }
+        return cambios;
+    }
+
+    @Override
+    public <T, E extends Exception> T conBloqueo(CoordinacionArchivos.Trabajo<T, E> trabajo) throws E {
+        return coordinacion.conBloqueo(trabajo);
+    }
+
+    @Override
+    public <E extends Exception> void conBloqueo(CoordinacionArchivos.Tarea<E> tarea) throws E {
+        coordinacion.conBloqueo(tarea);
+    }
+
+    /**
+     * Índices definidos (nombre -> extractor), para las implementaciones que
+     * los arman en memoria al cargar.
+     */
+    protected Map<String, ClaveIndice> indices() {
+        return indices;
+    }
+
+    /**
+     * Clave de una entrada de índice: VALOR + '\0' + CLAVE.
+     */
+    protected static String claveIndice(String valor, String clave) {
+        return valor + FIN_VALOR + clave;
+    }
+
+    /**
+     * Campos vacíos de una entrada de índice.
+     */
+    protected static String[] sinCampos() {
+        return SIN_CAMPOS;
+    }
+
+    private void actualizar() throws IOException {
+        if (ponerAlDia()) {
+            cambios++;
+        }
+    }
+
+    private void actualizarIndices(String clave, String[] anterior, String[] nuevo) throws IOException {
+        for (Map.Entry<String, ClaveIndice> e : indices.entrySet()) {
+            String arbol = PREFIJO_INDICE + e.getKey();
+            String antes = (anterior != null) ? e.getValue().de(anterior) : null;
+            String despues = (nuevo != null) ? e.getValue().de(nuevo) : null;
+            if (antes != null && antes.equals(despues)) {
+                continue;
+            }
+            if (antes != null) {
+                escribirRegistro(arbol, claveIndice(antes, clave), null);
+            }
+            if (despues != null) {
+                escribirRegistro(arbol, claveIndice(despues, clave), SIN_CAMPOS);
+            }
+        }
+    }
+
+    /**
+     * Con el bloqueo tomado: si otra caja confirmó cambios, los incorpora.
+     *
+     * @return true si había cambios de otra caja
+     */
+    protected abstract boolean ponerAlDia() throws IOException;
+
+    /**
+     * Registro de un árbol, o null si no existe. No se debe modificar.
+     */
+    protected abstract String[] leerRegistro(String arbol, String clave) throws IOException;
+
+    /**
+     * Escribe (o borra, con campos null) un registro dentro de la transacción en curso.
+     */
+    protected abstract void escribirRegistro(String arbol, String clave, String[] campos) throws IOException;
+
+    /**
+     * Recorre un árbol en orden de clave, en [desde, hasta).
+     */
+    protected abstract void recorrerArbol(String arbol, String desde, String hasta, Visitante visitante)
+            throws IOException;
+
+    protected abstract boolean existeArbol(String arbol) throws IOException;
+
+    /**
+     * Crea un árbol vacío dentro de la transacción en curso.
+     */
+    protected abstract void crearArbol(String arbol) throws IOException;
+
+    protected abstract void iniciar() throws IOException;
+
+    /**
+     * Hace durables los cambios de la transacción y los publica a las demás cajas.
+     */
+    protected abstract void confirmar() throws IOException;
+
+    /**
+     * Descarta los cambios de la transacción.
+     */
+    protected abstract void abortar();
+}
@@ -0,0 +1,523 @@
+package Modelo;
+
+import Utils.TokenizadorCampos;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * AlmacenRegistros en un archivo de páginas con árboles B+ ("Tables.txt" ->
+ * "Tables.db" + "Tables.wal"), para instalaciones con muchos registros donde
+ * cargar y reescribir el archivo de texto completo es caro.
+ *
+ * Formato (páginas de PoolPaginas.PAGINA bytes):
+ * - Página 0 (meta): MAGICO, versión, cantidad de árboles y por cada uno
+ *   su nombre y su página raíz. El árbol de datos y cada índice secundario son
+ *   árboles del mismo archivo.
+ * - Hoja: tipo, cantidad, siguiente hoja, y (clave, valor) en orden.
+ * - Nodo interno: tipo, cantidad, primer hijo, y (clave, hijo) en orden; el
+ *   hijo que sigue a una clave tiene las claves mayores o iguales a ella.
+ *
+ * Funcionamiento:
+ * - Claves y campos van en UTF-8; las claves se comparan byte a byte (mismo
+ *   orden que String.compareTo para texto sin caracteres fuera del BMP).
+ * - Insertar baja hasta la hoja; si la página no alcanza se parte en dos y la
+ *   clave separadora sube (si se parte la raíz, se crea una raíz nueva).
+ * - Eliminar saca la entrada de la hoja sin fusionar páginas: las hojas que
+ *   quedan vacías se vuelven a llenar con las claves de su rango.
+ * - Cada transacción pasa por el write-ahead log de PoolPaginas.
+ * - La primera vez (sin ".db") se importan los registros del archivo de texto.
+ *
+ * Límite: clave más campos de un registro no pueden pasar MAX_ENTRADA bytes.
+ */
+class AlmacenPaginado extends AlmacenOrdenado {
+
+    private static final int MAGICO = 0x504F5342;
+    private static final int VERSION_FORMATO = 1;
+
+    private static final byte HOJA = 1;
+    private static final byte INTERNO = 2;
+    private static final int CABECERA = 7;
+
+    /**
+     * Bytes máximos de clave + campos: con entradas de este tamaño una página
+     * partida en dos siempre entra.
+     */
+    static final int MAX_ENTRADA = (PoolPaginas.PAGINA - 64) / 4;
+
+    /**
+     * Separador de campos en los valores (no aparece en los archivos de texto).
+     */
+    private static final char SEP_CAMPOS = '\u001F';
+
+    private final Path archivoTexto;
+    private final char separador;
+    private final PoolPaginas paginas;
+
+    /**
+     * Raíz de cada árbol (copia de la página meta).
+     */
+    private final Map<String, Integer> raices = new LinkedHashMap<>();
+    private final TokenizadorCampos camposValor = new TokenizadorCampos(SEP_CAMPOS);
+    private boolean abierto = false;
+
+    /**
+     * Un nodo del árbol, leído de su página.
+     */
+    private static final class Nodo {
+
+        boolean hoja;
+        /**
+         * Hoja: siguiente hoja (0 si es la última). Interno: primer hijo.
+         */
+        int enlace;
+        final List<byte[]> claves = new ArrayList<>();
+        /**
+         * Hoja: valor de cada clave.
+         */
+        final List<byte[]> valores = new ArrayList<>();
+        /**
+         * Interno: hijo que sigue a cada clave.
+         */
+        final List<Integer> hijos = new ArrayList<>();
+
+        int tamano() {
+            int t = CABECERA;
+            for (int i = 0; i < claves.size(); i++) {
+                t += 2 + claves.get(i).length + (hoja ? 2 + valores.get(i).length : 4);
+            }
+            return t;
+        }
+
+        int hijo(int i) {
+            return (i == 0) ? enlace : hijos.get(i - 1);
+        }
+    }
+
+    /**
+     * Resultado de partir un nodo: clave que sube y página nueva (derecha).
+     */
+    private static final class Division {
+
+        final byte[] clave;
+        final int pagina;
+
+        Division(byte[] clave, int pagina) {
+            this.clave = clave;
+            this.pagina = pagina;
+        }
+    }
+
+    AlmacenPaginado(Path archivoTexto, char separador, int columnaClave) {
+        super(columnaClave, CoordinacionArchivos.para(archivoTexto.toString()));
+        this.archivoTexto = archivoTexto;
+        this.separador = separador;
+
+        String nombre = archivoTexto.getFileName().toString();
+        int punto = nombre.lastIndexOf('.');
+        String base = (punto > 0) ? nombre.substring(0, punto) : nombre;
+        this.paginas = new PoolPaginas(archivoTexto.resolveSibling(base + ".db"),
+                archivoTexto.resolveSibling(base + ".wal"), coordinacion);
+    }
+
+    @Override
+    protected boolean ponerAlDia() throws IOException {
+        if (!abierto) {
+            abrir();
+            return false;
+        }
+        if (!paginas.ponerAlDia()) {
+            return false;
+        }
+        leerMeta();
+        return true;
+    }
+
+    private void abrir() throws IOException {
+        paginas.abrir();
+
+        if (paginas.cantidad() == 0) {
+            paginas.iniciar();
+            try {
+                paginas.nueva();
+                crearArbol(DATOS);
+                importarTexto();
+                paginas.confirmar();
+            } catch (IOException | RuntimeException e) {
+                paginas.abortar();
+                throw e;
+            }
+        } else {
+            leerMeta();
+        }
+        abierto = true;
+    }
+
+    /**
+     * Carga los registros del archivo de texto, si existe (primera apertura).
+     */
+    private void importarTexto() throws IOException {
+        try (BufferedReader br = Files.newBufferedReader(archivoTexto, StandardCharsets.UTF_8)) {
+            TokenizadorCampos t = new TokenizadorCampos(separador);
+            String linea;
+            while ((linea = br.readLine()) != null) {
+                if (linea.trim().isEmpty() || t.separar(linea) <= columnaClave) {
+                    continue;
+                }
+                String[] campos = t.textos();
+                escribirRegistro(DATOS, campos[columnaClave], campos);
+            }
+        } catch (NoSuchFileException e) {
+            // Instalación nueva.
+        }
+    }
+
+    @Override
+    protected String[] leerRegistro(String arbol, String clave) throws IOException {
+        Integer raiz = raices.get(arbol);
+        if (raiz == null) {
+            return null;
+        }
+        byte[] k = clave.getBytes(StandardCharsets.UTF_8);
+
+        Nodo n = leerNodo(raiz);
+        while (!n.hoja) {
+            n = leerNodo(n.hijo(posicionHijo(n, k)));
+        }
+        int i = buscar(n.claves, k);
+        return (i >= 0) ? decodificar(n.valores.get(i)) : null;
+    }
+
+    @Override
+    protected void escribirRegistro(String arbol, String clave, String[] campos) throws IOException {
+        int raiz = raices.get(arbol);
+        byte[] k = clave.getBytes(StandardCharsets.UTF_8);
+
+        if (campos == null) {
+            eliminarDe(raiz, k);
+            return;
+        }
+
+        byte[] v = codificar(campos);
+        if (k.length + v.length > MAX_ENTRADA) {
+            throw new IllegalArgumentException("Registro demasiado grande (" + (k.length + v.length)
+                    + " bytes, máximo " + MAX_ENTRADA + "): " + clave);
+        }
+
+        Division d = insertar(raiz, k, v);
+        if (d != null) {
+            // Se partió la raíz: el árbol crece un nivel.
+            Nodo nueva = new Nodo();
+            nueva.hoja = false;
+            nueva.enlace = raiz;
+            nueva.claves.add(d.clave);
+            nueva.hijos.add(d.pagina);
+            int num = paginas.nueva();
+            escribirNodo(num, nueva);
+            raices.put(arbol, num);
+            escribirMeta();
+        }
+    }
+
+    @Override
+    protected void recorrerArbol(String arbol, String desde, String hasta, Visitante visitante) throws IOException {
+        Integer raiz = raices.get(arbol);
+        if (raiz == null) {
+            return;
+        }
+        byte[] d = (desde != null) ? desde.getBytes(StandardCharsets.UTF_8) : null;
+        byte[] h = (hasta != null) ? hasta.getBytes(StandardCharsets.UTF_8) : null;
+
+        Nodo n = leerNodo(raiz);
+        while (!n.hoja) {
+            n = leerNodo(n.hijo((d != null) ? posicionHijo(n, d) : 0));
+        }
+
+        int i = 0;
+        if (d != null) {
+            i = buscar(n.claves, d);
+            if (i < 0) {
+                i = -i - 1;
+            }
+        }
+
+        while (true) {
+            for (; i < n.claves.size(); i++) {
+                byte[] k = n.claves.get(i);
+                if (h != null && Arrays.compareUnsigned(k, h) >= 0) {
+                    return;
+                }
+                if (!visitante.visitar(new String(k, StandardCharsets.UTF_8), decodificar(n.valores.get(i)))) {
+                    return;
+                }
+            }
+            if (n.enlace == 0) {
+                return;
+            }
+            n = leerNodo(n.enlace);
+            i = 0;
+        }
+    }
+
+    @Override
+    protected boolean existeArbol(String arbol) {
+        return raices.containsKey(arbol);
+    }
+
+    @Override
+    protected void crearArbol(String arbol) throws IOException {
+        Nodo hoja = new Nodo();
+        hoja.hoja = true;
+        int num = paginas.nueva();
+        escribirNodo(num, hoja);
+        raices.put(arbol, num);
+        escribirMeta();
+    }
+
+    @Override
+    protected void iniciar() {
+        paginas.iniciar();
+    }
+
+    @Override
+    protected void confirmar() throws IOException {
+        paginas.confirmar();
+    }
+
+    @Override
+    protected void abortar() {
+        paginas.abortar();
+        try {
+            leerMeta();
+        } catch (IOException e) {
+            abierto = false;
+        }
+    }
+
+    /**
+     * Aciertos y fallos del buffer pool (para diagnóstico).
+     */
+    String estadisticas() {
+        return paginas.estadisticas();
+    }
+
+    private Division insertar(int pagina, byte[] k, byte[] v) throws IOException {
+        Nodo n = leerNodo(pagina);
+
+        if (n.hoja) {
+            int i = buscar(n.claves, k);
+            if (i >= 0) {
+                n.valores.set(i, v);
+            } else {
+                n.claves.add(-i - 1, k);
+                n.valores.add(-i - 1, v);
+            }
+        } else {
+            int i = posicionHijo(n, k);
+            Division d = insertar(n.hijo(i), k, v);
+            if (d == null) {
+                return null;
+            }
+            n.claves.add(i, d.clave);
+            n.hijos.add(i, d.pagina);
+        }
+
+        if (n.tamano() <= PoolPaginas.PAGINA) {
+            escribirNodo(pagina, n);
+            return null;
+        }
+        return partir(pagina, n);
+    }
+
+    /**
+     * Parte un nodo lleno por la mitad (en bytes) y escribe las dos mitades.
+     */
+    private Division partir(int pagina, Nodo n) throws IOException {
+        int total = n.tamano() - CABECERA;
+        int acumulado = 0;
+        int m = 0;
+        while (m < n.claves.size() - 1 && acumulado < total / 2) {
+            acumulado += 2 + n.claves.get(m).length + (n.hoja ? 2 + n.valores.get(m).length : 4);
+            m++;
+        }
+        m = Math.max(1, m);
+
+        Nodo derecha = new Nodo();
+        derecha.hoja = n.hoja;
+        int numDerecha = paginas.nueva();
+        byte[] separadora;
+
+        if (n.hoja) {
+            derecha.claves.addAll(n.claves.subList(m, n.claves.size()));
+            derecha.valores.addAll(n.valores.subList(m, n.valores.size()));
+            n.claves.subList(m, n.claves.size()).clear();
+            n.valores.subList(m, n.valores.size()).clear();
+            derecha.enlace = n.enlace;
+            n.enlace = numDerecha;
+            separadora = derecha.claves.get(0);
+        } else {
+            separadora = n.claves.get(m);
+            derecha.enlace = n.hijos.get(m);
+            derecha.claves.addAll(n.claves.subList(m + 1, n.claves.size()));
+            derecha.hijos.addAll(n.hijos.subList(m + 1, n.hijos.size()));
+            n.claves.subList(m, n.claves.size()).clear();
+            n.hijos.subList(m, n.hijos.size()).clear();
+        }
+
+        escribirNodo(pagina, n);
+        escribirNodo(numDerecha, derecha);
+        return new Division(separadora, numDerecha);
+    }
+
+    private void eliminarDe(int raiz, byte[] k) throws IOException {
+        int pagina = raiz;
+        Nodo n = leerNodo(pagina);
+        while (!n.hoja) {
+            pagina = n.hijo(posicionHijo(n, k));
+            n = leerNodo(pagina);
+        }
+        int i = buscar(n.claves, k);
+        if (i >= 0) {
+            n.claves.remove(i);
+            n.valores.remove(i);
+            escribirNodo(pagina, n);
+        }
+    }
+
+    /**
+     * Hijo de un nodo interno donde está (o iría) la clave: la cantidad de
+     * claves del nodo menores o iguales a ella.
+     */
+    private static int posicionHijo(Nodo n, byte[] k) {
+        int i = buscar(n.claves, k);
+        return (i >= 0) ? i + 1 : -i - 1;
+    }
+
+    /**
+     * Búsqueda binaria, con el mismo resultado que Collections.binarySearch.
+     */
+    private static int buscar(List<byte[]> claves, byte[] k) {
+        int bajo = 0;
+        int alto = claves.size() - 1;
+        while (bajo <= alto) {
+            int medio = (bajo + alto) >>> 1;
+            int c = Arrays.compareUnsigned(claves.get(medio), k);
+            if (c < 0) {
+                bajo = medio + 1;
+            } else if (c > 0) {
+                alto = medio - 1;
+            } else {
+                return medio;
+            }
+        }
+        return -(bajo + 1);
+    }
+
+    private Nodo leerNodo(int num) throws IOException {
+        ByteBuffer b = ByteBuffer.wrap(paginas.leer(num));
+        Nodo n = new Nodo();
+        byte tipo = b.get();
+        if (tipo != HOJA && tipo != INTERNO) {
+            throw new IOException("Página " + num + " dañada en el almacén de " + archivoTexto.getFileName());
+        }
+        n.hoja = tipo == HOJA;
+        int cantidad = b.getShort() & 0xFFFF;
+        n.enlace = b.getInt();
+
+        for (int i = 0; i < cantidad; i++) {
+            byte[] k = new byte[b.getShort() & 0xFFFF];
+            b.get(k);
+            n.claves.add(k);
+            if (n.hoja) {
+                byte[] v = new byte[b.getShort() & 0xFFFF];
+                b.get(v);
+                n.valores.add(v);
+            } else {
+                n.hijos.add(b.getInt());
+            }
+        }
+        return n;
+    }
+
+    private void escribirNodo(int num, Nodo n) throws IOException {
+        byte[] p = paginas.modificar(num);
+        Arrays.fill(p, (byte) 0);
+        ByteBuffer b = ByteBuffer.wrap(p);
+        b.put(n.hoja ? HOJA : INTERNO);
+        b.putShort((short) n.claves.size());
+        b.putInt(n.enlace);
+
+        for (int i = 0; i < n.claves.size(); i++) {
+            byte[] k = n.claves.get(i);
+            b.putShort((short) k.length).put(k);
+            if (n.hoja) {
+                byte[] v = n.valores.get(i);
+                b.putShort((short) v.length).put(v);
+            } else {
+                b.putInt(n.hijos.get(i));
+            }
+        }
+    }
+
+    private void leerMeta() throws IOException {
+        raices.clear();
+        if (paginas.cantidad() == 0) {
+            return;
+        }
+
+        ByteBuffer b = ByteBuffer.wrap(paginas.leer(0));
+        if (b.getInt() != MAGICO || b.getInt() != VERSION_FORMATO) {
+            throw new IOException("Formato desconocido en el almacén de " + archivoTexto.getFileName());
+        }
+        int arboles = b.getShort() & 0xFFFF;
+        for (int i = 0; i < arboles; i++) {
+            byte[] nombre = new byte[b.getShort() & 0xFFFF];
+            b.get(nombre);
+            raices.put(new String(nombre, StandardCharsets.UTF_8), b.getInt());
+        }
+    }
+
+    private void escribirMeta() throws IOException {
+        byte[] p = paginas.modificar(0);
+        Arrays.fill(p, (byte) 0);
+        ByteBuffer b = ByteBuffer.wrap(p);
+        b.putInt(MAGICO).putInt(VERSION_FORMATO).putShort((short) raices.size());
+        for (Map.Entry<String, Integer> e : raices.entrySet()) {
+            byte[] nombre = e.getKey().getBytes(StandardCharsets.UTF_8);
+            b.putShort((short) nombre.length).put(nombre).putInt(e.getValue());
+        }
+    }
+
+    /**
+     * Campos -> bytes: cada campo precedido por SEP_CAMPOS (sin campos = vacío).
+     */
+    private static byte[] codificar(String[] campos) {
+        StringBuilder sb = new StringBuilder(64);
+        for (String c : campos) {
+            sb.append(SEP_CAMPOS).append(c);
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Bytes -> campos. Solo se llama bajo el bloqueo del almacén (conBloqueo),
+     * así que el tokenizador se reutiliza.
+     */
+    private String[] decodificar(byte[] valor) {
+        if (valor.length == 0) {
+            return sinCampos();
+        }
+        camposValor.separar(ByteBuffer.wrap(valor), 1, valor.length);
+        return camposValor.textos();
+    }
+}
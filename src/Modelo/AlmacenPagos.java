@@ -0,0 +1,319 @@
+package Modelo;
+
+import Utils.MapaEnteroLargo;
+import Utils.TokenizadorCampos;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *
+ * Almacén en memoria de un archivo de pagos (una partición diaria de
+ * pagos_factura o pagos_factura_detalle, o el archivo único anterior),
+ * agrupado por ID_FACTURA (primera columna).
+ *
+ * Funcionamiento:
+ * - El archivo se lee una sola vez, en la primera consulta.
+ * - Los registros quedan agrupados por factura (mapa de int a grupo), así
+ *   listar los pagos de una factura cuesta la cantidad de pagos de esa factura.
+ * - Cada append pasa por agregar(): escribe la línea (EscritorAnexos, con el
+ *   archivo abierto de forma permanente) y sigue la cola del archivo
+ *   desde el último byte leído, por lo que también incorpora líneas agregadas por
+ *   otra parte antes de la escritura.
+ * - Las consultas no tocan el sistema de archivos, salvo cuando otra caja
+ *   publicó un cambio en el archivo (CoordinacionArchivos): ahí se sigue la cola
+ *   antes de responder.
+ *
+ * Si la partición se archivó (ArchivoFrio), se lee desde el archivo comprimido
+ * con los mismos offsets.
+ *
+ * Mantiene las reglas de los DAOs originales: se omite la primera línea
+ * (encabezado), las líneas vacías, las de menos columnas de las requeridas y
+ * las que no tienen un ID_FACTURA numérico.
+ */
+public class AlmacenPagos {
+
+    private static final Map<Path, AlmacenPagos> INSTANCIAS = new ConcurrentHashMap<>();
+
+    private final Path archivo;
+    private final String encabezado;
+    private final int columnasMin;
+    private final EscritorAnexos escritor;
+    private final CoordinacionArchivos coordinacion;
+
+    /**
+     * ID_FACTURA -> número de grupo en "grupos".
+     */
+    private final MapaEnteroLargo grupoPorFactura = new MapaEnteroLargo();
+    private Grupo[] grupos = new Grupo[64];
+    private int cantidadGrupos = 0;
+
+    /**
+     * Separador de líneas reutilizado al incorporar (siempre bajo el lock del almacén).
+     */
+    private final TokenizadorCampos tokenizador = new TokenizadorCampos('|');
+
+    private boolean cargado = false;
+
+    /**
+     * Bytes del archivo ya incorporados (siempre al final de una línea completa).
+     */
+    private long largoLeido = 0;
+
+    /**
+     * Retorna el almacén compartido para el archivo indicado.
+     *
+     * @param archivo ruta del archivo de pagos
+     * @param encabezado encabezado que se escribe si el archivo está vacío
+     * @param columnasMin columnas mínimas para considerar válido un registro
+     */
+    public static AlmacenPagos para(String archivo, String encabezado, int columnasMin) {
+        Path path = Paths.get(archivo).toAbsolutePath().normalize();
+        return INSTANCIAS.computeIfAbsent(path, p -> new AlmacenPagos(p, encabezado, columnasMin));
+    }
+
+    /**
+     * Registros de una factura en un registro particionado por día.
+     * Una factura puede recibir pagos en días distintos (no necesariamente
+     * seguidos): se revisan todas las particiones cuyo rango de ID_FACTURA la
+     * contiene (RangosParticiones), en orden cronológico. Una factura sin pagos
+     * anteriores revisa solo la partición de hoy.
+     *
+     * @param registro registro particionado de pagos
+     * @param encabezado encabezado de cada partición
+     * @param columnasMin columnas mínimas para considerar válido un registro
+     * @param idFactura ID de la factura
+     * @return registros en el orden en que se guardaron; lista vacía si no hay
+     */
+    public static List<String[]> listarPorFactura(RegistroParticionado registro, String encabezado,
+            int columnasMin, int idFactura) {
+        List<String[]> res = new ArrayList<>();
+        for (RegistroParticionado.Particion p : RangosParticiones.para(registro, '|', 0).candidatas(0, idFactura)) {
+            res.addAll(para(p.getRuta(), encabezado, columnasMin).listarPorFactura(idFactura));
+        }
+        return res;
+    }
+
+    private AlmacenPagos(Path archivo, String encabezado, int columnasMin) {
+        this.archivo = archivo;
+        this.encabezado = encabezado;
+        this.columnasMin = columnasMin;
+        this.escritor = EscritorAnexos.para(archivo.toString());
+        this.coordinacion = CoordinacionArchivos.para(archivo.toString());
+    }
+
+    /**
+     * Retorna los registros de una factura, en el orden en que se guardaron.
+     *
+     * @param idFactura ID de la factura
+     * @return copia de los registros (campos separados); lista vacía si no hay
+     */
+    public synchronized List<String[]> listarPorFactura(int idFactura) {
+        if (!cargado) {
+            seguirCola();
+        } else if (coordinacion.huboCambioExterno()) {
+            actualizarDesdeDisco();
+        }
+
+        long num = grupoPorFactura.get(idFactura);
+        if (num == MapaEnteroLargo.AUSENTE) {
+            return new ArrayList<>();
+        }
+
+        Grupo g = grupos[(int) num];
+        List<String[]> res = new ArrayList<>(g.cantidad);
+        for (int i = 0; i < g.cantidad; i++) {
+            res.add(g.registros[i].clone());
+        }
+        return res;
+    }
+
+    /**
+     * Agrega una línea al final del archivo y la incorpora al almacén.
+     * Si el archivo está vacío (o no existía), escribe primero el encabezado.
+     *
+     * @param linea registro ya formateado (sin salto de línea)
+     * @return true si se escribió correctamente
+     */
+    public boolean agregar(String linea) {
+        return agregar(linea, true);
+    }
+
+    /**
+     * Igual que agregar(linea); con confirmar en false no espera el fsync (la
+     * línea ya es durable por otro medio, por ejemplo DiarioCobros).
+     */
+    boolean agregar(String linea, boolean confirmar) {
+        String salto = System.lineSeparator();
+
+        synchronized (this) {
+            try {
+                if (escritor.largo() < largoLeido) {
+                    // El archivo se recortó: volver a leerlo completo.
+                    limpiar();
+                }
+                escritor.escribir((encabezado + salto).getBytes(StandardCharsets.UTF_8),
+                        (linea + salto).getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                return false;
+            }
+
+            seguirCola();
+        }
+
+        if (!confirmar) {
+            return true;
+        }
+        // Fuera del lock, para que varios appends compartan el mismo fsync.
+        try {
+            escritor.confirmar();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Incorpora lo que agregaron otras cajas (o vuelve a leer todo si el archivo
+     * se recortó).
+     */
+    private void actualizarDesdeDisco() {
+        coordinacion.marcarAlDia();
+        long largo;
+        try {
+            largo = Files.size(archivo);
+        } catch (IOException e) {
+            ArchivoFrio frio = ArchivoFrio.abrir(archivo);
+            largo = (frio != null) ? frio.largo() : 0;
+        }
+        if (largo < largoLeido) {
+            limpiar();
+        }
+        seguirCola();
+    }
+
+    /**
+     * Lee las líneas completas desde el último byte incorporado hasta el final.
+     */
+    private void seguirCola() {
+        cargado = true;
+        boolean omitirPrimera = (largoLeido == 0);
+
+        try (InputStream raw = abrirDesde(largoLeido);
+                BufferedInputStream in = new BufferedInputStream(raw, 64 * 1024)) {
+
+            byte[] linea = new byte[128];
+            int largo = 0;
+            long offset = largoLeido;
+
+            int b;
+            while ((b = in.read()) != -1) {
+                offset++;
+                if (b != '\n') {
+                    if (largo == linea.length) {
+                        linea = Arrays.copyOf(linea, largo * 2);
+                    }
+                    linea[largo++] = (byte) b;
+                    continue;
+                }
+
+                if (omitirPrimera) {
+                    omitirPrimera = false;
+                } else {
+                    incorporar(new String(linea, 0, largo, StandardCharsets.UTF_8));
+                }
+                largo = 0;
+                largoLeido = offset;
+            }
+        } catch (NoSuchFileException e) {
+            // Todavía no existe: se crea con el primer agregar().
+        } catch (IOException e) {
+            // Se conserva lo que se pudo leer.
+        }
+    }
+
+    /**
+     * Abre el archivo en el offset indicado; si ya no existe, desde su ArchivoFrio.
+     */
+    private InputStream abrirDesde(long offset) throws IOException {
+        InputStream in;
+        try {
+            in = Files.newInputStream(archivo);
+        } catch (NoSuchFileException e) {
+            ArchivoFrio frio = ArchivoFrio.abrir(archivo);
+            if (frio == null) {
+                throw e;
+            }
+            return frio.abrirDesde(offset);
+        }
+        try {
+            in.skipNBytes(offset);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+
+    private void incorporar(String linea) {
+        linea = linea.trim();
+        if (linea.isEmpty()) {
+            return;
+        }
+
+        TokenizadorCampos t = tokenizador;
+        if (t.separar(linea) < columnasMin) {
+            return;
+        }
+
+        long id = t.largo(0, Long.MIN_VALUE);
+        if (id < Integer.MIN_VALUE || id > Integer.MAX_VALUE) {
+            return;
+        }
+        int idFactura = (int) id;
+
+        long num = grupoPorFactura.get(idFactura);
+        if (num == MapaEnteroLargo.AUSENTE) {
+            if (cantidadGrupos == grupos.length) {
+                grupos = Arrays.copyOf(grupos, cantidadGrupos * 2);
+            }
+            num = cantidadGrupos;
+            grupos[cantidadGrupos++] = new Grupo();
+            grupoPorFactura.put(idFactura, num);
+        }
+        grupos[(int) num].agregar(t.textos());
+    }
+
+    private void limpiar() {
+        grupoPorFactura.clear();
+        Arrays.fill(grupos, 0, cantidadGrupos, null);
+        cantidadGrupos = 0;
+        largoLeido = 0;
+    }
+
+    /**
+     * Registros de una factura.
+     */
+    private static final class Grupo {
+
+        private String[][] registros = new String[2][];
+        private int cantidad = 0;
+
+        void agregar(String[] partes) {
+            if (cantidad == registros.length) {
+                registros = Arrays.copyOf(registros, cantidad * 2);
+            }
+            registros[cantidad++] = partes;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package Modelo;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ *
+ * Almacenamiento de registros por clave, para los DAOs que guardan una tabla
+ * de registros (usuarios, mesas, ...) sin depender del formato en disco.
+ *
+ * Un registro es un arreglo de campos (como una línea separada del archivo de
+ * texto); su clave es una de las columnas (columnaClave).
+ *
+ * Implementaciones (propiedad del sistema "pos.almacen"):
+ * - texto (por defecto): el archivo de texto de siempre, una línea por
+ *   registro con los campos separados (AlmacenTexto).
+ * - paginado: árbol B+ en páginas de tamaño fijo, con buffer pool y
+ *   write-ahead log (AlmacenPaginado). La primera vez importa el archivo de
+ *   texto existente.
+ *
+ * Índices secundarios: definirIndice() registra una función que extrae el
+ * valor indexado de cada registro; el almacén mantiene el índice en cada
+ * put() y eliminar() y buscarPorIndice() retorna las claves con ese valor.
+ *
+ * Todas las operaciones se hacen con el bloqueo del almacén
+ * (CoordinacionArchivos), así varias cajas pueden compartirlo.
+ */
+public interface AlmacenRegistros {
+
+    /**
+     * Acción por cada registro de un recorrido; retorna false para detenerlo.
+     * No debe modificar el almacén.
+     */
+    interface Visitante {
+
+        boolean visitar(String clave, String[] campos);
+    }
+
+    /**
+     * Extrae el valor indexado de un registro (null si el registro no se indexa).
+     */
+    interface ClaveIndice {
+
+        String de(String[] campos);
+    }
+
+    /**
+     * Retorna el almacén compartido para una tabla, con la implementación
+     * elegida en "pos.almacen".
+     *
+     * @param archivoTexto archivo de texto de la tabla (por ejemplo "Users.txt")
+     * @param separador separador de columnas del archivo de texto
+     * @param columnaClave columna con la clave de cada registro
+     */
+    static AlmacenRegistros para(String archivoTexto, char separador, int columnaClave) {
+        return AlmacenOrdenado.para(archivoTexto, separador, columnaClave);
+    }
+
+    /**
+     * Guarda un registro (lo agrega o reemplaza el de la misma clave).
+     *
+     * @param campos campos del registro; la clave es campos[columnaClave]
+     * @throws IOException si falla la escritura
+     */
+    void put(String[] campos) throws IOException;
+
+    /**
+     * Retorna el registro con la clave indicada, o null si no existe.
+     *
+     * @throws IOException si falla la lectura
+     */
+    String[] get(String clave) throws IOException;
+
+    /**
+     * Elimina el registro con la clave indicada.
+     *
+     * @return true si existía
+     * @throws IOException si falla la escritura
+     */
+    boolean eliminar(String clave) throws IOException;
+
+    /**
+     * Recorre los registros con clave en [desde, hasta), en orden de clave.
+     *
+     * @param desde primera clave (inclusive), o null para no limitar
+     * @param hasta clave final (exclusive), o null para no limitar
+     * @param visitante acción por cada registro
+     * @throws IOException si falla la lectura
+     */
+    void recorrer(String desde, String hasta, Visitante visitante) throws IOException;
+
+    /**
+     * Define (o vuelve a registrar) un índice secundario. Si el índice no
+     * existía, se arma con los registros actuales.
+     *
+     * @param nombre nombre del índice
+     * @param clave valor indexado de cada registro
+     * @throws IOException si falla la lectura o escritura
+     */
+    void definirIndice(String nombre, ClaveIndice clave) throws IOException;
+
+    /**
+     * Claves de los registros cuyo valor en el índice es el indicado, en orden de clave.
+     *
+     * @throws IOException si falla la lectura
+     */
+    List<String> buscarPorIndice(String nombre, String valor) throws IOException;
+
+    /**
+     * Número que cambia con cada cambio del almacén (de esta caja o de otra).
+     * Sirve para saber si una copia en memoria quedó vieja. Los cambios de otra
+     * caja se consultan en disco como mucho cada "pos.coordinacion.ms" (con el
+     * bloqueo tomado, después de put() o eliminar(), ya están incluidos).
+     */
+    long version() throws IOException;
+
+    /**
+     * Hace un trabajo con el bloqueo del almacén tomado, para hacer varias
+     * operaciones juntas sin que otra caja cambie algo en el medio. Se puede anidar.
+     *
+     * @return lo que retorna el trabajo
+     */
+    <T, E extends Exception> T conBloqueo(CoordinacionArchivos.Trabajo<T, E> trabajo) throws E;
+
+    /**
+     * Igual que conBloqueo(Trabajo), para un trabajo sin resultado.
+     */
+    <E extends Exception> void conBloqueo(CoordinacionArchivos.Tarea<E> tarea) throws E;
+}
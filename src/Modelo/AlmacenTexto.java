@@ -0,0 +1,209 @@
+package Modelo;
+
+import Utils.TokenizadorCampos;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ *
+ * AlmacenRegistros sobre el archivo de texto de siempre: una línea por
+ * registro, con los campos separados (por ejemplo "Users.txt" o "Tables.txt").
+ *
+ * Funcionamiento:
+ * - El archivo se carga completo en memoria (TreeMap por clave). Si hay dos
+ *   líneas con la misma clave, vale la última.
+ * - Los índices secundarios viven solo en memoria y se arman al cargar.
+ * - Un registro nuevo se agrega al final del archivo (EscritorAnexos); cambiar
+ *   o eliminar uno reescribe el archivo en un temporal que se mueve encima,
+ *   en orden de clave.
+ * - Si otra caja cambió el archivo, se vuelve a cargar antes de la operación.
+ *
+ * Las líneas vacías o sin la columna clave se ignoran (y no se conservan al
+ * reescribir).
+ */
+class AlmacenTexto extends AlmacenOrdenado {
+
+    private final Path archivo;
+    private final char separador;
+    private final EscritorAnexos escritor;
+
+    private final Map<String, NavigableMap<String, String[]>> arboles = new HashMap<>();
+    private boolean cargado = false;
+
+    /**
+     * Registros nuevos de la transacción en curso (se agregan al final).
+     */
+    private final List<String[]> anexos = new ArrayList<>();
+
+    /**
+     * true si la transacción cambió o eliminó registros (hay que reescribir).
+     */
+    private boolean reescribir = false;
+
+    AlmacenTexto(Path archivo, char separador, int columnaClave) {
+        super(columnaClave, CoordinacionArchivos.para(archivo.toString()));
+        this.archivo = archivo;
+        this.separador = separador;
+        this.escritor = EscritorAnexos.para(archivo.toString());
+    }
+
+    @Override
+    protected boolean ponerAlDia() throws IOException {
+        if (cargado && !coordinacion.huboCambioExternoAhora()) {
+            return false;
+        }
+        boolean externo = cargado;
+        cargar();
+        return externo;
+    }
+
+    private void cargar() throws IOException {
+        cargado = false;
+        coordinacion.marcarAlDia();
+
+        NavigableMap<String, String[]> datos = new TreeMap<>();
+        try (BufferedReader br = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+            TokenizadorCampos t = new TokenizadorCampos(separador);
+            String linea;
+            while ((linea = br.readLine()) != null) {
+                if (linea.trim().isEmpty() || t.separar(linea) <= columnaClave) {
+                    continue;
+                }
+                String[] campos = t.textos();
+                datos.put(campos[columnaClave], campos);
+            }
+        } catch (NoSuchFileException e) {
+            // Todavía no hay registros.
+        }
+
+        arboles.clear();
+        arboles.put(DATOS, datos);
+        for (Map.Entry<String, ClaveIndice> e : indices().entrySet()) {
+            NavigableMap<String, String[]> indice = new TreeMap<>();
+            for (Map.Entry<String, String[]> r : datos.entrySet()) {
+                String valor = e.getValue().de(r.getValue());
+                if (valor != null) {
+                    indice.put(claveIndice(valor, r.getKey()), sinCampos());
+                }
+            }
+            arboles.put(PREFIJO_INDICE + e.getKey(), indice);
+        }
+        cargado = true;
+    }
+
+    @Override
+    protected String[] leerRegistro(String arbol, String clave) {
+        NavigableMap<String, String[]> m = arboles.get(arbol);
+        return (m != null) ? m.get(clave) : null;
+    }
+
+    @Override
+    protected void escribirRegistro(String arbol, String clave, String[] campos) {
+        NavigableMap<String, String[]> m = arboles.get(arbol);
+        if (campos == null) {
+            if (m.remove(clave) != null && DATOS.equals(arbol)) {
+                reescribir = true;
+            }
+            return;
+        }
+
+        String[] copia = campos.clone();
+        if (m.put(clave, copia) != null) {
+            reescribir |= DATOS.equals(arbol);
+        } else if (DATOS.equals(arbol)) {
+            anexos.add(copia);
+        }
+    }
+
+    @Override
+    protected void recorrerArbol(String arbol, String desde, String hasta, Visitante visitante) {
+        NavigableMap<String, String[]> m = arboles.get(arbol);
+        if (m == null) {
+            return;
+        }
+        if (desde != null) {
+            m = m.tailMap(desde, true);
+        }
+        if (hasta != null) {
+            m = m.headMap(hasta, false);
+        }
+        for (Map.Entry<String, String[]> e : m.entrySet()) {
+            if (!visitante.visitar(e.getKey(), e.getValue())) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    protected boolean existeArbol(String arbol) {
+        return arboles.containsKey(arbol);
+    }
+
+    @Override
+    protected void crearArbol(String arbol) {
+        arboles.put(arbol, new TreeMap<>());
+    }
+
+    @Override
+    protected void iniciar() {
+        anexos.clear();
+        reescribir = false;
+    }
+
+    @Override
+    protected void confirmar() throws IOException {
+        String salto = System.lineSeparator();
+
+        if (reescribir) {
+            Path tmp = archivo.resolveSibling(archivo.getFileName() + ".tmp");
+            try (BufferedWriter bw = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (String[] campos : arboles.get(DATOS).values()) {
+                    bw.write(linea(campos));
+                    bw.write(salto);
+                }
+            }
+
+            try {
+                Files.move(tmp, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, archivo, StandardCopyOption.REPLACE_EXISTING);
+            }
+            escritor.reabrir();
+            coordinacion.publicarReemplazo();
+        } else if (!anexos.isEmpty()) {
+            StringBuilder sb = new StringBuilder(64 * anexos.size());
+            for (String[] campos : anexos) {
+                sb.append(linea(campos)).append(salto);
+            }
+            escritor.anexar(null, sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        anexos.clear();
+        reescribir = false;
+    }
+
+    @Override
+    protected void abortar() {
+        anexos.clear();
+        reescribir = false;
+        // La memoria puede tener cambios que no llegaron al archivo.
+        cargado = false;
+    }
+
+    private String linea(String[] campos) {
+        return String.join(String.valueOf(separador), campos);
+    }
+}
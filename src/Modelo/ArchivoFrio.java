@@ -0,0 +1,499 @@
+package Modelo;
+
+import Utils.LectorMapeado;
+import Utils.TokenizadorCampos;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ *
+ * Archivo frío: una partición cerrada (RegistroParticionado) comprimida por
+ * bloques con java.util.zip.
+ *
+ * La partición "2026-10-17.log" se reemplaza por "2026-10-17.log.z":
+ * - Bloques: tramos de líneas completas de hasta BLOQUE bytes, cada uno
+ *   comprimido por separado (Deflater).
+ * - Índice de bloques al final: por bloque, su posición y largo comprimido y
+ *   el offset y largo que ocupaba en el archivo original.
+ * - Cola fija: posición del índice, cantidad de bloques, largo original y MAGICO.
+ *
+ * Funcionamiento:
+ * - Los offsets siguen siendo los del archivo original, así los índices ya
+ *   armados (IndiceFacturas) siguen sirviendo: leer(offset, largo) busca el
+ *   bloque en el índice y descomprime solo ese bloque.
+ * - recorrer() y abrirDesde() descomprimen bloque por bloque, para reportes e
+ *   índices que recorren la partición completa.
+ * - Se guarda el último bloque descomprimido, porque las lecturas suelen caer
+ *   en el mismo bloque que la anterior.
+ * - No queda ningún archivo abierto: cada bloque que hay que descomprimir abre
+ *   y cierra su canal (el costo es chico al lado de descomprimir), así un
+ *   reporte de todo el historial no agota los descriptores del proceso. Se
+ *   guardan en memoria (índice de bloques y último bloque) las últimas
+ *   "pos.frio.abiertos" particiones leídas (64 por defecto).
+ * - comprimir() escribe un temporal, lo mueve en un solo paso y recién
+ *   entonces borra la partición original; todo con el bloqueo de la partición
+ *   (CoordinacionArchivos), así otra caja no la comprime al mismo tiempo.
+ *
+ * Quien lee una partición revisa primero el archivo original y, si ya no
+ * existe, usa abrir(): la partición se lee igual que antes.
+ */
+public class ArchivoFrio {
+
+    private static final int MAX_ABIERTOS = Integer.getInteger("pos.frio.abiertos", 64);
+
+    /**
+     * Particiones leídas, de la menos a la más reciente (orden de acceso).
+     */
+    private static final Map<Path, ArchivoFrio> INSTANCIAS = new LinkedHashMap<Path, ArchivoFrio>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, ArchivoFrio> mayor) {
+            return size() > MAX_ABIERTOS;
+        }
+    };
+
+    private static final String EXTENSION = ".z";
+
+    /**
+     * Largo máximo (sin comprimir) de un bloque; un bloque nunca parte una línea.
+     */
+    private static final int BLOQUE = 64 * 1024;
+
+    private static final int MAGICO = 0x504F535A; // "POSZ"
+    private static final int LARGO_ENTRADA = 24;
+    private static final int LARGO_COLA = 24;
+
+    private final Path archivo;
+
+    /**
+     * Índice de bloques: posición comprimida, largo comprimido, offset y largo originales.
+     */
+    private final long[] posiciones;
+    private final int[] largosComprimidos;
+    private final long[] inicios;
+    private final int[] largos;
+    private final long largoOriginal;
+
+    private int bloqueEnCache = -1;
+    private byte[] datosEnCache = null;
+
+    /**
+     * Retorna el archivo frío de una partición, o null si la partición no está
+     * archivada (o el archivo está incompleto).
+     *
+     * @param particion ruta original de la partición (sin ".z")
+     */
+    public static ArchivoFrio abrir(Path particion) {
+        Path original = particion.toAbsolutePath().normalize();
+        synchronized (INSTANCIAS) {
+            ArchivoFrio frio = INSTANCIAS.get(original);
+            if (frio != null) {
+                return frio;
+            }
+
+            Path archivo = ruta(original);
+            if (!Files.exists(archivo)) {
+                return null;
+            }
+            try {
+                frio = new ArchivoFrio(archivo);
+            } catch (IOException e) {
+                System.out.println("Error abriendo " + archivo + ": " + e.getMessage());
+                return null;
+            }
+            INSTANCIAS.put(original, frio);
+            return frio;
+        }
+    }
+
+    /**
+     * Igual que abrir(Path), con la ruta como texto.
+     */
+    public static ArchivoFrio abrir(String particion) {
+        return abrir(Paths.get(particion));
+    }
+
+    /**
+     * true si la partición ya está archivada.
+     */
+    public static boolean estaArchivada(Path particion) {
+        return Files.exists(ruta(particion.toAbsolutePath().normalize()));
+    }
+
+    /**
+     * Comprime una partición cerrada y borra el archivo original.
+     * Si ya estaba archivada (por otra caja) no hace nada.
+     *
+     * @param particion ruta de la partición
+     * @return bytes liberados (original menos comprimido), o -1 si no se archivó
+     * @throws IOException si falla la escritura
+     */
+    public static long comprimir(String particion) throws IOException {
+        Path original = Paths.get(particion).toAbsolutePath().normalize();
+        Path destino = ruta(original);
+        Path tmp = destino.resolveSibling(destino.getFileName() + ".tmp");
+        CoordinacionArchivos coordinacion = CoordinacionArchivos.para(original.toString());
+
+        try {
+            return coordinacion.conBloqueo(() -> {
+                if (!Files.exists(original) || Files.exists(destino)) {
+                    return -1L;
+                }
+
+                long largoOriginal;
+                long largoComprimido;
+                try (FileChannel in = FileChannel.open(original, StandardOpenOption.READ);
+                        FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    largoOriginal = in.size();
+                    largoComprimido = escribirBloques(in, out);
+                    out.force(true);
+                }
+
+                try {
+                    Files.move(tmp, destino, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    Files.move(tmp, destino, StandardCopyOption.REPLACE_EXISTING);
+                }
+
+                // Los canales abiertos sobre el original se cierran antes de borrarlo.
+                EscritorAnexos.para(original.toString()).reabrir();
+                Files.delete(original);
+                LectorMapeado.liberar(original.toString());
+                coordinacion.publicarReemplazo();
+                return largoOriginal - largoComprimido;
+            });
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private ArchivoFrio(Path archivo) throws IOException {
+        this.archivo = archivo;
+
+        try (FileChannel ch = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            long tam = ch.size();
+            if (tam < LARGO_COLA) {
+                throw new IOException("archivo incompleto");
+            }
+            ByteBuffer cola = leerExacto(ch, tam - LARGO_COLA, LARGO_COLA);
+            long inicioIndice = cola.getLong();
+            int cantidad = cola.getInt();
+            this.largoOriginal = cola.getLong();
+            if (cola.getInt() != MAGICO || cantidad < 0
+                    || inicioIndice + (long) cantidad * LARGO_ENTRADA != tam - LARGO_COLA) {
+                throw new IOException("formato no reconocido");
+            }
+
+            posiciones = new long[cantidad];
+            largosComprimidos = new int[cantidad];
+            inicios = new long[cantidad];
+            largos = new int[cantidad];
+
+            ByteBuffer indice = leerExacto(ch, inicioIndice, cantidad * LARGO_ENTRADA);
+            for (int i = 0; i < cantidad; i++) {
+                posiciones[i] = indice.getLong();
+                largosComprimidos[i] = indice.getInt();
+                inicios[i] = indice.getLong();
+                largos[i] = indice.getInt();
+            }
+        }
+    }
+
+    /**
+     * Largo que tenía el archivo original.
+     */
+    public long largo() {
+        return largoOriginal;
+    }
+
+    /**
+     * Lee un tramo del archivo original (normalmente una línea de un índice).
+     *
+     * @param offset posición en el archivo original
+     * @param largo cantidad de bytes
+     * @return los bytes, o null si el tramo no existe
+     * @throws IOException si falla la lectura
+     */
+    public byte[] leer(long offset, int largo) throws IOException {
+        if (offset < 0 || largo < 0 || offset + largo > largoOriginal) {
+            return null;
+        }
+        byte[] res = new byte[largo];
+        int copiados = 0;
+        int b = buscarBloque(offset);
+
+        while (copiados < largo && b < inicios.length) {
+            byte[] datos = bloque(b);
+            int desde = (int) (offset + copiados - inicios[b]);
+            int n = Math.min(largo - copiados, datos.length - desde);
+            System.arraycopy(datos, desde, res, copiados, n);
+            copiados += n;
+            b++;
+        }
+        return (copiados == largo) ? res : null;
+    }
+
+    /**
+     * Flujo con el contenido original desde un offset; descomprime de a un bloque.
+     *
+     * @param offset posición en el archivo original
+     */
+    public InputStream abrirDesde(long offset) {
+        return new Flujo(offset);
+    }
+
+    /**
+     * Recorre todas las líneas, igual que LectorMapeado.recorrer() sobre el
+     * archivo original (mismos offsets).
+     *
+     * @param separador separador de columnas
+     * @param visitante acción por cada línea
+     * @return cantidad de líneas visitadas
+     * @throws IOException si falla la lectura
+     */
+    public long recorrer(char separador, LectorMapeado.Visitante visitante) throws IOException {
+        TokenizadorCampos campos = new TokenizadorCampos(separador);
+        long lineas = 0;
+
+        for (int b = 0; b < inicios.length; b++) {
+            ByteBuffer buf = ByteBuffer.wrap(bloque(b));
+            int fin = buf.limit();
+            int inicio = 0;
+
+            // Cada bloque termina en un salto de línea, salvo el último si el original no lo tenía.
+            while (inicio < fin) {
+                int salto = inicio;
+                while (salto < fin && buf.get(salto) != '\n') {
+                    salto++;
+                }
+                int finLinea = salto;
+                if (finLinea > inicio && buf.get(finLinea - 1) == '\r') {
+                    finLinea--;
+                }
+
+                lineas++;
+                campos.separar(buf, inicio, finLinea);
+                if (!visitante.visitar(campos, inicios[b] + inicio)) {
+                    return lineas;
+                }
+                inicio = salto + 1;
+            }
+        }
+        return lineas;
+    }
+
+    @Override
+    public String toString() {
+        return archivo.toString();
+    }
+
+    /**
+     * Contenido descomprimido de un bloque (el último se guarda en memoria).
+     */
+    private synchronized byte[] bloque(int b) throws IOException {
+        if (b == bloqueEnCache) {
+            return datosEnCache;
+        }
+
+        ByteBuffer comprimido;
+        try (FileChannel ch = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            comprimido = leerExacto(ch, posiciones[b], largosComprimidos[b]);
+        }
+        byte[] datos = new byte[largos[b]];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(comprimido.array());
+            int n = 0;
+            while (n < datos.length && !inflater.finished()) {
+                int leidos = inflater.inflate(datos, n, datos.length - n);
+                if (leidos == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += leidos;
+            }
+            if (n != datos.length) {
+                throw new IOException("bloque " + b + " dañado en " + archivo);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("bloque " + b + " dañado en " + archivo, e);
+        } finally {
+            inflater.end();
+        }
+
+        bloqueEnCache = b;
+        datosEnCache = datos;
+        return datos;
+    }
+
+    /**
+     * Último bloque que empieza en o antes del offset (búsqueda binaria).
+     */
+    private int buscarBloque(long offset) {
+        int pos = Arrays.binarySearch(inicios, offset);
+        return (pos >= 0) ? pos : Math.max(0, -pos - 2);
+    }
+
+    private ByteBuffer leerExacto(FileChannel ch, long posicion, int largo) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(largo);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, posicion + buf.position()) < 0) {
+                throw new IOException("fin inesperado de " + archivo);
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Escribe los bloques comprimidos, el índice y la cola.
+     *
+     * @return largo del archivo comprimido
+     */
+    private static long escribirBloques(FileChannel in, FileChannel out) throws IOException {
+        long largo = in.size();
+        ByteBuffer entrada = ByteBuffer.allocate(BLOQUE);
+        byte[] salida = new byte[BLOQUE + BLOQUE / 2];
+        ByteBuffer indice = ByteBuffer.allocate(LARGO_ENTRADA * 64);
+        int cantidad = 0;
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            long inicio = 0;
+            long posicion = 0;
+
+            while (inicio < largo) {
+                byte[] plano = leerTramo(in, inicio, largo, entrada);
+
+                deflater.reset();
+                deflater.setInput(plano);
+                deflater.finish();
+                ByteBuffer comprimido = ByteBuffer.allocate(plano.length + 64);
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(salida);
+                    if (comprimido.remaining() < n) {
+                        ByteBuffer mayor = ByteBuffer.allocate((comprimido.capacity() + n) * 2);
+                        comprimido.flip();
+                        comprimido = mayor.put(comprimido);
+                    }
+                    comprimido.put(salida, 0, n);
+                }
+                comprimido.flip();
+                int largoComprimido = comprimido.remaining();
+                while (comprimido.hasRemaining()) {
+                    out.write(comprimido);
+                }
+
+                if (indice.remaining() < LARGO_ENTRADA) {
+                    ByteBuffer mayor = ByteBuffer.allocate(indice.capacity() * 2);
+                    indice.flip();
+                    indice = mayor.put(indice);
+                }
+                indice.putLong(posicion).putInt(largoComprimido).putLong(inicio).putInt(plano.length);
+                cantidad++;
+
+                posicion += largoComprimido;
+                inicio += plano.length;
+            }
+
+            indice.flip();
+            while (indice.hasRemaining()) {
+                out.write(indice);
+            }
+
+            ByteBuffer cola = ByteBuffer.allocate(LARGO_COLA);
+            cola.putLong(posicion).putInt(cantidad).putLong(largo).putInt(MAGICO).flip();
+            while (cola.hasRemaining()) {
+                out.write(cola);
+            }
+            return out.size();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Lee el próximo bloque de líneas completas: hasta BLOQUE bytes cortando en
+     * el último salto de línea (o más, si una sola línea es más larga).
+     */
+    private static byte[] leerTramo(FileChannel in, long inicio, long largo, ByteBuffer buf) throws IOException {
+        buf.clear();
+        buf.limit((int) Math.min(buf.capacity(), largo - inicio));
+        while (buf.hasRemaining()) {
+            if (in.read(buf, inicio + buf.position()) < 0) {
+                break;
+            }
+        }
+        int leidos = buf.position();
+        if (inicio + leidos >= largo) {
+            return Arrays.copyOf(buf.array(), leidos);
+        }
+
+        for (int i = leidos - 1; i >= 0; i--) {
+            if (buf.get(i) == '\n') {
+                return Arrays.copyOf(buf.array(), i + 1);
+            }
+        }
+
+        // Línea más larga que el bloque: se extiende hasta su salto de línea.
+        return leerTramo(in, inicio, largo, ByteBuffer.allocate(buf.capacity() * 2));
+    }
+
+    private static Path ruta(Path original) {
+        return original.resolveSibling(original.getFileName() + EXTENSION);
+    }
+
+    /**
+     * Flujo secuencial sobre el contenido original.
+     */
+    private final class Flujo extends InputStream {
+
+        private long offset;
+
+        Flujo(long offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] uno = new byte[1];
+            return (read(uno, 0, 1) < 0) ? -1 : (uno[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] destino, int desde, int cantidad) throws IOException {
+            if (cantidad == 0) {
+                return 0;
+            }
+            if (offset >= largoOriginal) {
+                return -1;
+            }
+            int b = buscarBloque(offset);
+            byte[] datos = bloque(b);
+            int pos = (int) (offset - inicios[b]);
+            int n = Math.min(cantidad, datos.length - pos);
+            System.arraycopy(datos, pos, destino, desde, n);
+            offset += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long saltados = Math.max(0, Math.min(n, largoOriginal - offset));
+            offset += saltados;
+            return saltados;
+        }
+    }
+}
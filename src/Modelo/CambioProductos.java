@@ -0,0 +1,114 @@
+package Modelo;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *
+ * Lote de cambios del catálogo de productos que productosDAO entrega a sus
+ * escuchas: qué IDs cambiaron y cómo.
+ *
+ * Funcionamiento:
+ * - productosDAO junta los cambios de una ventana corta
+ *   ("pos.productos.eventos.ms") y los entrega en un solo lote, en el EDT.
+ * - Si un mismo producto cambia varias veces en la ventana, queda un solo
+ *   tipo: alta + edición = alta, alta + baja = nada, baja + alta = edición,
+ *   edición o stock + stock = edición o stock, cualquiera + baja = baja.
+ * - Cuando no se sabe qué cambió (recarga desde archivo o foto nueva de otra
+ *   caja), el lote es una recarga completa y la vista se arma de nuevo.
+ */
+public class CambioProductos {
+
+    /**
+     * Cómo cambió un producto.
+     */
+    public enum Tipo {
+        INSERTADO, ACTUALIZADO, ELIMINADO, STOCK
+    }
+
+    /**
+     * Recibe los lotes de cambios (en el EDT).
+     */
+    public interface Escucha {
+
+        void productosCambiados(CambioProductos cambio);
+    }
+
+    /**
+     * ID (como está en el producto) -> tipo de cambio, en orden de llegada.
+     */
+    private final Map<String, Tipo> cambios;
+    private final boolean recargaCompleta;
+
+    CambioProductos(Map<String, Tipo> cambios, boolean recargaCompleta) {
+        this.cambios = Collections.unmodifiableMap(new LinkedHashMap<>(cambios));
+        this.recargaCompleta = recargaCompleta;
+    }
+
+    /**
+     * true si el catálogo se recargó y hay que volver a armar la vista completa.
+     */
+    public boolean esRecargaCompleta() {
+        return recargaCompleta;
+    }
+
+    /**
+     * IDs de los productos que cambiaron (vacío si es recarga completa).
+     */
+    public Set<String> ids() {
+        return cambios.keySet();
+    }
+
+    /**
+     * Tipo de cambio de un producto, o null si no cambió.
+     */
+    public Tipo tipo(String id) {
+        return cambios.get(id);
+    }
+
+    /**
+     * Todos los cambios (ID -> tipo), en orden de llegada.
+     */
+    public Map<String, Tipo> cambios() {
+        return cambios;
+    }
+
+    /**
+     * true si solo cambió el stock de productos existentes.
+     */
+    public boolean soloStock() {
+        if (recargaCompleta) {
+            return false;
+        }
+        for (Tipo t : cambios.values()) {
+            if (t != Tipo.STOCK) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Junta un cambio nuevo con el que ya tenía el producto en la ventana.
+     *
+     * @return el tipo resultante, o null si se anulan (alta y baja)
+     */
+    static Tipo combinar(Tipo anterior, Tipo nuevo) {
+        if (anterior == null) {
+            return nuevo;
+        }
+        switch (nuevo) {
+            case ELIMINADO:
+                return (anterior == Tipo.INSERTADO) ? null : Tipo.ELIMINADO;
+            case INSERTADO:
+                return (anterior == Tipo.ELIMINADO) ? Tipo.ACTUALIZADO : Tipo.INSERTADO;
+            case ACTUALIZADO:
+                return (anterior == Tipo.INSERTADO) ? Tipo.INSERTADO : Tipo.ACTUALIZADO;
+            default:
+                // STOCK no cambia un alta ni una edición pendientes.
+                return anterior;
+        }
+    }
+}
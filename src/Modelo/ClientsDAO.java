@@ -1,11 +1,24 @@
 package Modelo;
 
+import Utils.TokenizadorCampos;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *
@@ -14,36 +27,100 @@ import java.util.ArrayList;
  * Clase DAO (Data Access Object) encargada de la persistencia de clientes.
  *
  * Se encarga de: - Cargar los clientes desde el archivo "Clients.txt". -
- * Agregar nuevos clientes al archivo y a la lista en memoria. - Modificar
- * clientes existentes. - Eliminar clientes. - Reescribir el archivo completo
- * cuando hay cambios.
+ * Agregar nuevos clientes. - Modificar clientes existentes. - Eliminar
+ * clientes. - Sumar visitas y montos al pagar.
  *
  * Implementa una persistencia simple basada en archivo de texto con formato
  * CSV:
  *
  * cedula,nombre,tipo,visitas,fecha,total
  *
+ * Existe una sola instancia compartida (getInstancia()): el archivo se lee
+ * una vez y los clientes quedan indexados por cédula en un HashMap, así las
+ * búsquedas no recorren la lista ni tocan el disco.
+ *
+ * Cada cambio se guarda como un registro en el diario (DiarioClientes) y se
+ * aplica en memoria; Clients.txt solo se reescribe en el checkpoint, que corre
+ * en segundo plano y deja en la primera línea la marca "#DIARIO,SEQ" con el
+ * último registro incluido.
+ *
+ * Los cambios se aplican en memoria al momento y el registro se escribe en el
+ * hilo de persistencia (PersistenciaAsincrona); las variantes "Async" no
+ * esperan esa escritura (son las que usa la interfaz, desde el EDT). Ninguna
+ * espera con el lock del DAO tomado.
+ *
+ * Varias cajas pueden compartir los archivos: antes de cada consulta o cambio
+ * se revisa si otra caja publicó cambios en Clients.txt o en el diario
+ * (CoordinacionArchivos) y, si es así, se vuelve a cargar. El checkpoint toma
+ * los bloqueos de los dos archivos, así ningún registro de otra caja queda
+ * fuera de la foto cuando se vacía el diario. Antes toma el del diario de
+ * cobros y no vacía nada si hay cobros sin aplicar: la visita de un cobro se
+ * da por escrita solo si está en el diario (UnidadCobro).
+ *
  * Forma parte del Modelo dentro del patrón MVC.
  */
 public class ClientsDAO {
 
+    private static ClientsDAO instancia;
+
+    static final String ARCHIVO_DIARIO = "clientes_diario.txt";
+    private static final String MARCA_DIARIO = "#DIARIO";
+
+    /**
+     * El checkpoint corre si hay al menos esta cantidad de registros en el diario,
+     * o si hay alguno y pasó este tiempo desde el último.
+     */
+    private static final int CHECKPOINT_CADA_REGISTROS = 200;
+    private static final long CHECKPOINT_CADA_MS = 5 * 60 * 1000L;
+
     /**
      * Lista en memoria que almacena los clientes cargados desde el archivo.
      */
     private ArrayList<Clients> ListCliente;
 
+    /**
+     * Índice de los clientes en memoria por cédula (sin espacios).
+     */
+    private final HashMap<String, Clients> porCedula = new HashMap<>();
+
     /**
      * Nombre del archivo donde se almacenan los clientes.
      */
     private final String FILE_NAME = "Clients.txt";
 
+    private final DiarioClientes diario = new DiarioClientes(ARCHIVO_DIARIO);
+    private final CoordinacionArchivos coordinacion = CoordinacionArchivos.para(FILE_NAME);
+    private final PersistenciaAsincrona persistencia = PersistenciaAsincrona.getInstancia();
+
+    /**
+     * Registros aplicados en memoria que todavía no se escribieron en el diario.
+     */
+    private final AtomicInteger escriturasPendientes = new AtomicInteger();
+
+    /**
+     * Último SEQ del diario incluido en Clients.txt.
+     */
+    private int seqFoto = DiarioClientes.SIN_FOTO;
+    private int registrosSinCheckpoint = 0;
+    private long ultimoCheckpoint = System.currentTimeMillis();
+
     /**
      * Constructor: - Inicializa la lista en memoria. - Carga los datos desde el
-     * archivo.
+     * archivo y el diario. - Programa el checkpoint.
      */
-    public ClientsDAO() {
+    private ClientsDAO() {
         ListCliente = new ArrayList<>();
         cargarDesdeTxt();
+        iniciarCheckpoint();
+    }
+
+    /**
+     * Retorna la única instancia del DAO (Singleton).
+     * Es seguro llamarlo desde cualquier hilo.
+     */
+    public static synchronized ClientsDAO getInstancia() {
+        if (instancia == null) instancia = new ClientsDAO();
+        return instancia;
     }
 
     /**
@@ -51,40 +128,48 @@ public class ClientsDAO {
      * memoria.
      *
      * Flujo: - Limpia la lista actual. - Lee cada línea del archivo. - Separa
-     * por coma (CSV). - Crea objetos Clients y los agrega a la lista.
+     * por coma (CSV, con TokenizadorCampos). - Crea objetos Clients y los agrega a la lista y al
+     * índice por cédula. - Aplica los registros del diario posteriores a la
+     * marca "#DIARIO,SEQ".
      */
-    public void cargarDesdeTxt() {
+    public synchronized void cargarDesdeTxt() {
+        persistencia.esperar(ARCHIVO_DIARIO);
+
+        // Con los dos bloqueos: otra caja no puede hacer un checkpoint entre la
+        // lectura de la foto y la del diario.
+        coordinacion.conBloqueo(() -> diario.conBloqueo(() -> {
+            coordinacion.marcarAlDia();
+            cargarBloqueado();
+        }));
+    }
+
+    private void cargarBloqueado() {
         ListCliente.clear();
+        porCedula.clear();
+        seqFoto = DiarioClientes.SIN_FOTO;
 
         try (BufferedReader br = new BufferedReader(new FileReader(FILE_NAME))) {
+            TokenizadorCampos t = new TokenizadorCampos(',');
             String line;
             while ((line = br.readLine()) != null) {
 
-                String[] parts = line.split(",");
-                if (parts.length == 6) {
-
-                    String cedula = parts[0];
-                    String name = parts[1];
-                    String type = parts[2];
-
-                    int visits = 0;
-                    double total = 0;
+                int campos = t.separar(line);
+                if (campos == 2 && t.esIgual(0, MARCA_DIARIO)) {
+                    seqFoto = t.entero(1, DiarioClientes.SIN_FOTO);
+                    continue;
+                }
 
-                    try {
-                        visits = Integer.parseInt(parts[3]);
-                    } catch (Exception e) {
-                        visits = 0;
-                    }
+                if (campos == 6) {
 
-                    String fecha = parts[4];
+                    String cedula = t.crudo(0);
+                    String name = t.crudo(1);
+                    String type = t.crudo(2);
 
-                    try {
-                        total = Double.parseDouble(parts[5]);
-                    } catch (Exception e) {
-                        total = 0;
-                    }
+                    int visits = t.entero(3, 0);
+                    String fecha = t.crudo(4);
+                    double total = t.decimal(5, 0);
 
-                    ListCliente.add(new Clients(type, visits, fecha, total, cedula, name));
+                    agregarEnMemoria(new Clients(type, visits, fecha, total, cedula, name));
                 }
             }
         } catch (java.io.FileNotFoundException e) {
@@ -92,15 +177,18 @@ public class ClientsDAO {
         } catch (IOException e) {
             System.out.println("Error reading file: " + e.getMessage());
         }
+
+        registrosSinCheckpoint = diario.reproducirDesde(seqFoto, this::aplicar);
     }
 
     /**
      * Retorna la lista completa de clientes en memoria.
      *
-     * @return lista de clientes
+     * @return copia de la lista de clientes (en el orden del archivo)
      */
-    public ArrayList<Clients> getAll() {
-        return ListCliente;
+    public synchronized ArrayList<Clients> getAll() {
+        refrescarSiCambio();
+        return new ArrayList<>(ListCliente);
     }
 
     /* * Suma una visita y un monto al cliente indicado por cédula.
@@ -109,13 +197,13 @@ public class ClientsDAO {
      * porque ahí ya existe un total real.
      *
      * Flujo:
-     * - Busca el cliente en la lista en memoria (ListCliente).
-     * - Si lo encuentra:
+     * - Busca el cliente en el índice en memoria.
+     * - Si lo encuentra, agrega un registro VISITA al diario y lo aplica:
      *   - visits = visits + 1
      *   - total = total + monto
      *   - fecha = fechaUltimaVisita
-     *   - (opcional) ajusta el tipo según visitas
-     * - Luego reescribe el archivo "Clients.txt" para persistir cambios.
+     *   - ajusta el tipo según visitas
+     * - Clients.txt se actualiza después, en el checkpoint.
      *
      * @param cedula cédula del cliente que realizó la compra
      * @param monto total pagado en la compra
@@ -124,202 +212,366 @@ public class ClientsDAO {
      */
 
     public boolean sumarVisitaYTotal(String cedula, double monto, String fechaUltimaVisita) {
+        return sumarVisitaYTotalAsync(cedula, monto, fechaUltimaVisita).join();
+    }
 
-        boolean found = false;
-
-        try {
-            for (Clients c : ListCliente) {
-                if (c != null && c.getCedula().equals(cedula)) {
+    /**
+     * Igual que sumarVisitaYTotal, pero no espera la escritura del diario: el
+     * cliente queda actualizado en memoria antes de retornar.
+     *
+     * @return true cuando el registro quedó escrito; false si no se encontró o falló
+     */
+    public synchronized CompletableFuture<Boolean> sumarVisitaYTotalAsync(String cedula, double monto, String fechaUltimaVisita) {
+        refrescarSiCambio();
 
-                    
-                    c.setVisits(c.getVisits() + 1);
+        if (!porCedula.containsKey(clave(cedula))) {
+            return CompletableFuture.completedFuture(false);
+        }
 
-                    
-                    c.setTotal(c.getTotal() + monto);
+        return registrarAsync(DiarioClientes.Registro.visita(clave(cedula), monto, fechaUltimaVisita));
+    }
 
-                    
-                    c.setFecha(fechaUltimaVisita);
+    /**
+     * Registro VISITA de un cobro (UnidadCobro), con la cédula normalizada.
+     */
+    static DiarioClientes.Registro registroVisita(String cedula, double monto, String fechaUltimaVisita) {
+        return DiarioClientes.Registro.visita(clave(cedula), monto, fechaUltimaVisita);
+    }
 
-                    
-                    if (c.getVisits() >= 5) {
-                        c.setType("FRECUENTE");
-                    } else {
-                        c.setType("INFRECUENTE");
-                    }
+    /**
+     * Suma una visita como parte de un cobro (UnidadCobro): se aplica en memoria
+     * y se escribe en el diario sin fsync, porque el cobro ya es durable en
+     * DiarioCobros. La escritura pasa por el hilo de persistencia (en orden con
+     * los demás registros del diario) y se espera.
+     *
+     * @param visita registro de registroVisita()
+     * @return true si el registro quedó escrito, o si el cliente ya no existe
+     * (no hay a quién sumarle la visita); false si falló la escritura
+     */
+    boolean sumarVisitaEnCobro(DiarioClientes.Registro visita) {
+        return encolarVisitaEnCobro(visita).join();
+    }
 
-                    found = true;
-                    break;
-                }
-            }
-        } catch (Exception ex) {
-            return false;
-        }
+    private synchronized CompletableFuture<Boolean> encolarVisitaEnCobro(DiarioClientes.Registro visita) {
+        refrescarSiCambio();
 
-        if (!found) {
-            return false;
+        if (!porCedula.containsKey(visita.getCedula())) {
+            return CompletableFuture.completedFuture(true);
         }
 
-        return reescribirTxt();
+        aplicar(visita);
+        registrosSinCheckpoint++;
+        escriturasPendientes.incrementAndGet();
+        return persistencia.enviar(ARCHIVO_DIARIO, () -> {
+            try {
+                return diario.escribir(visita);
+            } finally {
+                escriturasPendientes.decrementAndGet();
+            }
+        });
     }
 
     /**
-     * Busca un cliente por cédula leyendo directamente el archivo.
+     * Busca un cliente por cédula en el índice en memoria (sin leer el archivo).
      *
      * @param cedulaBuscada cédula del cliente
      * @return objeto Clients si lo encuentra; null en caso contrario
      */
-    public Clients buscarPorCedula(String cedulaBuscada) {
-
-        try (BufferedReader br = new BufferedReader(new FileReader("Clients.txt"))) {
-            String linea;
-
-            while ((linea = br.readLine()) != null) {
-
-                if (linea.trim().isEmpty()) {
-                    continue;
-                }
-
-                String[] p = linea.split(",");
-                if (p.length < 6) {
-                    continue;
-                }
-
-                String cedula = p[0].trim();
-                if (!cedula.equals(cedulaBuscada)) {
-                    continue;
-                }
-
-                String name = p[1].trim();
-                String type = p[2].trim();
-                int visits = Integer.parseInt(p[3].trim());
-                String fecha = p[4].trim();
-                double total = Double.parseDouble(p[5].trim());
-
-                return new Clients(type, visits, fecha, total, cedula, name);
-            }
-
-        } catch (Exception e) {
-            System.out.println("Error leyendo Clients.txt: " + e.getMessage());
-        }
-
-        return null;
+    public synchronized Clients buscarPorCedula(String cedulaBuscada) {
+        refrescarSiCambio();
+        return porCedula.get(clave(cedulaBuscada));
     }
 
     /**
-     * Verifica si una cédula ya existe en la lista en memoria.
+     * Verifica si una cédula ya existe en el índice en memoria.
      *
      * @param cedula cédula a validar
      * @return true si existe; false si no
      */
-    public boolean cedulaExist(String cedula) {
-        try {
-            for (Clients c : ListCliente) {
-                if (c != null && c.getCedula().equals(cedula)) {
-                    return true;
-                }
-            }
-        } catch (Exception ex) {
-        }
-        return false;
+    public synchronized boolean cedulaExist(String cedula) {
+        refrescarSiCambio();
+        return porCedula.containsKey(clave(cedula));
     }
 
     /**
      * Agrega un nuevo cliente.
      *
-     * Flujo: - Verifica que la cédula no exista. - Escribe el nuevo cliente al
-     * final del archivo. - Lo agrega también a la lista en memoria.
+     * Flujo: - Verifica que la cédula no exista. - Agrega un registro ALTA al
+     * diario. - Lo agrega también a la lista en memoria.
      *
      * @return true si se agregó correctamente; false si hubo error o cédula
      * repetida
      */
     public boolean addLista(String type, int visits, String fecha, double total, String cedula, String name) {
+        return addListaAsync(type, visits, fecha, total, cedula, name).join();
+    }
 
-        if (cedulaExist(cedula)) {
-            return false;
-        }
+    /**
+     * Igual que addLista, pero no espera la escritura del diario: el cliente
+     * queda en memoria antes de retornar.
+     *
+     * @return true cuando el registro quedó escrito; false si la cédula está
+     * repetida o falló
+     */
+    public synchronized CompletableFuture<Boolean> addListaAsync(String type, int visits, String fecha, double total,
+            String cedula, String name) {
+        refrescarSiCambio();
 
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(FILE_NAME, true))) {
-            bw.write(cedula + "," + name + "," + type + "," + visits + "," + fecha + "," + total);
-            bw.newLine();
-        } catch (IOException e) {
-            System.out.println("Error writing file: " + e.getMessage());
-            return false;
+        if (cedulaExist(cedula)) {
+            return CompletableFuture.completedFuture(false);
         }
 
-        ListCliente.add(new Clients(type, visits, fecha, total, cedula, name));
-        return true;
+        return registrarAsync(DiarioClientes.Registro.alta(cedula, name, type, visits, fecha, total));
     }
 
     /**
-     * Modifica un cliente existente en la lista y reescribe el archivo
-     * completo.
+     * Modifica un cliente existente: agrega un registro EDICION al diario y lo
+     * aplica en memoria.
      *
      * @return true si se modificó correctamente; false si no se encontró
      */
     public boolean modificarEnLista(String type, int visits, String fecha, double total, String cedula, String name) {
+        return modificarEnListaAsync(type, visits, fecha, total, cedula, name).join();
+    }
 
-        boolean found = false;
+    /**
+     * Igual que modificarEnLista, pero no espera la escritura del diario.
+     *
+     * @return true cuando el registro quedó escrito; false si no se encontró o falló
+     */
+    public synchronized CompletableFuture<Boolean> modificarEnListaAsync(String type, int visits, String fecha,
+            double total, String cedula, String name) {
+        refrescarSiCambio();
 
-        try {
-            for (Clients c : ListCliente) {
-                if (c != null && c.getCedula().equals(cedula)) {
-                    c.setName(name);
-                    c.setType(type);
-                    c.setVisits(visits);
-                    c.setFecha(fecha);
-                    c.setTotal(total);
-                    found = true;
-                    break;
-                }
-            }
-        } catch (Exception ex) {
-            return false;
+        if (!porCedula.containsKey(clave(cedula))) {
+            return CompletableFuture.completedFuture(false);
         }
 
-        if (!found) {
-            return false;
-        }
-
-        return reescribirTxt();
+        return registrarAsync(DiarioClientes.Registro.edicion(clave(cedula), name, type, visits, fecha, total));
     }
 
     /**
-     * Elimina un cliente de la lista en memoria y reescribe el archivo.
+     * Elimina un cliente: agrega un registro BAJA al diario y lo quita de la
+     * lista en memoria.
      *
      * @param cedula cédula del cliente a eliminar
      * @return true si fue eliminado correctamente
      */
     public boolean eliminarDeLista(String cedula) {
-        boolean removed = false;
+        return eliminarDeListaAsync(cedula).join();
+    }
 
+    /**
+     * Igual que eliminarDeLista, pero no espera la escritura del diario.
+     *
+     * @return true cuando el registro quedó escrito; false si no se encontró o falló
+     */
+    public synchronized CompletableFuture<Boolean> eliminarDeListaAsync(String cedula) {
+        refrescarSiCambio();
+        if (!porCedula.containsKey(clave(cedula))) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        return registrarAsync(DiarioClientes.Registro.baja(clave(cedula)));
+    }
+
+    /**
+     * Escribe en Clients.txt todos los cambios del diario y lo vacía.
+     * Lo ejecuta el checkpoint en segundo plano; también se puede llamar a mano.
+     *
+     * Con los bloqueos de Clients.txt y del diario tomados: si otra caja agregó
+     * registros, primero se vuelve a cargar, así la foto los incluye antes de
+     * vaciar el diario.
+     *
+     * Antes (y antes del lock del DAO, en el mismo orden que un cobro) se toma
+     * el bloqueo del diario de cobros: si una caja se cayó con un cobro
+     * confirmado y sin aplicar, se deja para la próxima, porque al aplicarlo se
+     * busca su visita en este diario.
+     *
+     * @return true si la foto quedó escrita
+     */
+    public boolean checkpoint() {
+        DiarioCobros cobros = DiarioCobros.para(UnidadCobro.ARCHIVO);
         try {
-            for (int i = 0; i < ListCliente.size(); i++) {
-                Clients c = ListCliente.get(i);
-                if (c != null && c.getCedula().equals(cedula)) {
-                    ListCliente.remove(i);
-                    removed = true;
-                    break;
-                }
-            }
-        } catch (Exception ex) {
+            return cobros.conBloqueo(() -> cobros.pendientes().isEmpty() && checkpointSinCobros());
+        } catch (IOException e) {
+            System.out.println("Error revisando cobros pendientes: " + e.getMessage());
             return false;
         }
+    }
 
-        if (!removed) {
+    private synchronized boolean checkpointSinCobros() {
+        // Si hay registros en cola, la foto los incluiría con un SEQ menor al que
+        // van a recibir y se aplicarían dos veces al cargar: se deja para la próxima.
+        if (escriturasPendientes.get() > 0) {
             return false;
         }
 
-        return reescribirTxt();
+        return coordinacion.conBloqueo(() -> diario.conBloqueo(() -> {
+            if (coordinacion.huboCambioExternoAhora() || diario.huboCambioExternoAhora()) {
+                cargarDesdeTxt();
+            }
+
+            int seq = diario.getUltimoSeq();
+            if (!reescribirTxt(seq)) {
+                return false;
+            }
+            coordinacion.publicarReemplazo();
+
+            seqFoto = seq;
+            registrosSinCheckpoint = 0;
+            ultimoCheckpoint = System.currentTimeMillis();
+
+            // Si no se puede vaciar, al cargar se omiten igual los registros con SEQ <= seqFoto.
+            diario.vaciar();
+            diario.marcarAlDia();
+            return true;
+        }));
+    }
+
+    /**
+     * Vuelve a cargar si otra caja publicó cambios en Clients.txt o en el diario.
+     */
+    private void refrescarSiCambio() {
+        if (coordinacion.huboCambioExterno() || diario.huboCambioExterno()) {
+            cargarDesdeTxt();
+        }
+    }
+
+    /**
+     * Aplica un registro en memoria y envía su escritura al hilo de persistencia.
+     * Si la escritura falla, el cambio se conserva en memoria y llega a
+     * Clients.txt con el siguiente checkpoint.
+     */
+    private CompletableFuture<Boolean> registrarAsync(DiarioClientes.Registro registro) {
+        aplicar(registro);
+        registrosSinCheckpoint++;
+        escriturasPendientes.incrementAndGet();
+
+        return persistencia.enviar(ARCHIVO_DIARIO, () -> {
+            try {
+                boolean ok = diario.anexar(registro);
+                if (!ok) {
+                    System.out.println("Error writing client journal");
+                }
+                return ok;
+            } finally {
+                escriturasPendientes.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Aplica un registro del diario a la lista y al índice en memoria.
+     * Se usa al registrar un cambio y al reproducir el diario al cargar.
+     */
+    private void aplicar(DiarioClientes.Registro r) {
+        String cedula = clave(r.getCedula());
+        Clients c = porCedula.get(cedula);
+
+        switch (r.getOperacion()) {
+            case ALTA:
+                if (c == null) {
+                    agregarEnMemoria(new Clients(r.getTipo(), r.getVisitas(), r.getFecha(),
+                            r.getTotal(), r.getCedula(), r.getNombre()));
+                }
+                break;
+
+            case EDICION:
+                if (c != null) {
+                    c.setName(r.getNombre());
+                    c.setType(r.getTipo());
+                    c.setVisits(r.getVisitas());
+                    c.setFecha(r.getFecha());
+                    c.setTotal(r.getTotal());
+                }
+                break;
+
+            case VISITA:
+                if (c != null) {
+                    c.setVisits(c.getVisits() + 1);
+                    c.setTotal(c.getTotal() + r.getTotal());
+                    c.setFecha(r.getFecha());
+
+                    if (c.getVisits() >= 5) {
+                        c.setType("FRECUENTE");
+                    } else {
+                        c.setType("INFRECUENTE");
+                    }
+                }
+                break;
+
+            case BAJA:
+                if (c != null) {
+                    porCedula.remove(cedula);
+                    ListCliente.remove(c);
+
+                    // Si el archivo traía la cédula repetida, la siguiente copia pasa a ser la indexada.
+                    for (Clients otro : ListCliente) {
+                        if (otro != null && clave(otro.getCedula()).equals(cedula)) {
+                            porCedula.put(cedula, otro);
+                            break;
+                        }
+                    }
+                }
+                break;
+        }
+    }
+
+    /**
+     * Agrega un cliente a la lista y al índice por cédula.
+     * Si la cédula se repite en el archivo, la búsqueda retorna la primera.
+     */
+    private void agregarEnMemoria(Clients c) {
+        ListCliente.add(c);
+        porCedula.putIfAbsent(clave(c.getCedula()), c);
+    }
+
+    private static String clave(String cedula) {
+        return cedula == null ? "" : cedula.trim();
+    }
+
+    /**
+     * Programa el checkpoint en un hilo de fondo (daemon).
+     */
+    private void iniciarCheckpoint() {
+        ScheduledExecutorService programador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "checkpoint-clientes");
+            t.setDaemon(true);
+            return t;
+        });
+        programador.scheduleWithFixedDelay(() -> {
+            boolean toca;
+            synchronized (this) {
+                boolean muchos = registrosSinCheckpoint >= CHECKPOINT_CADA_REGISTROS;
+                boolean vencido = registrosSinCheckpoint > 0
+                        && System.currentTimeMillis() - ultimoCheckpoint >= CHECKPOINT_CADA_MS;
+                toca = muchos || vencido;
+            }
+            // Fuera del lock del DAO: checkpoint() toma antes el del diario de cobros.
+            if (toca) {
+                checkpoint();
+            }
+        }, 1, 1, TimeUnit.MINUTES);
     }
 
     /**
      * Reescribe completamente el archivo "Clients.txt" usando la lista en
-     * memoria.
+     * memoria. Escribe un temporal y lo reemplaza, así una falla a mitad de
+     * camino no deja el archivo cortado.
      *
+     * @param seq último SEQ del diario incluido (va en la marca de la primera línea)
      * @return true si la operación fue exitosa
      */
-    private boolean reescribirTxt() {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(FILE_NAME, false))) {
+    private boolean reescribirTxt(int seq) {
+        Path destino = Paths.get(FILE_NAME);
+        Path tmp = destino.resolveSibling(FILE_NAME + ".tmp");
+
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile(), false);
+                BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(fos))) {
+
+            bw.write(MARCA_DIARIO + "," + seq);
+            bw.newLine();
 
             for (Clients c : ListCliente) {
                 if (c == null) {
@@ -331,11 +583,25 @@ public class ClientsDAO {
                 bw.newLine();
             }
 
-            return true;
+            // El diario se vacía después: la foto tiene que estar en disco antes.
+            bw.flush();
+            fos.getFD().sync();
 
         } catch (IOException e) {
             System.out.println("Error rewriting file: " + e.getMessage());
             return false;
         }
+
+        try {
+            try {
+                Files.move(tmp, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, destino, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error rewriting file: " + e.getMessage());
+            return false;
+        }
     }
 }
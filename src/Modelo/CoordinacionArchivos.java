@@ -0,0 +1,345 @@
+package Modelo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *
+ * Coordinación entre procesos (varias cajas) que comparten la carpeta de datos.
+ *
+ * Cada archivo de datos tiene un archivo ".lock" al lado (pedidos.txt ->
+ * pedidos.lock) con este formato binario:
+ * - [0, 8): VERSION (long), sube con cada cambio confirmado en el archivo.
+ * - [8, 16): GENERACION (long), sube cuando el archivo se reemplaza o se vacía.
+ * - [16, 17): byte reservado para el bloqueo de escritura (FileChannel.lock).
+ *
+ * Funcionamiento:
+ * - conBloqueo() hace un trabajo con el bloqueo de escritura del archivo
+ *   tomado: primero un ReentrantLock (entre hilos de este proceso, y permite
+ *   anidar) y después el FileLock sobre el byte reservado (entre procesos), y
+ *   los suelta al terminar aunque el trabajo falle. Cada archivo tiene su
+ *   propio bloqueo, así dos cajas que escriben archivos distintos no se esperan.
+ * - Quien escribe, con el bloqueo tomado, llama a publicarCambio() (append) o
+ *   publicarReemplazo() (archivo reescrito o vaciado).
+ * - Quien guarda el archivo en memoria consulta huboCambioExterno(): compara la
+ *   versión del disco con la última que vio. La lectura de la versión no toma
+ *   el bloqueo (el rango es otro que el del FileLock) y se hace como mucho cada
+ *   "pos.coordinacion.ms" milisegundos (250 por defecto).
+ *
+ * El orden de bloqueo es siempre: lock del DAO/índice -> bloqueo de archivo ->
+ * lock de EscritorAnexos. Si hay que tomar dos archivos, se toman en el orden
+ * de los datos (foto antes que diario o libro).
+ *
+ * Si el sistema de archivos no soporta FileLock, queda solo el bloqueo entre
+ * hilos (el comportamiento de un solo proceso).
+ */
+public class CoordinacionArchivos {
+
+    /**
+     * Trabajo que se hace con el bloqueo tomado y retorna un resultado.
+     */
+    @FunctionalInterface
+    public interface Trabajo<T, E extends Exception> {
+
+        T hacer() throws E;
+    }
+
+    /**
+     * Trabajo que se hace con el bloqueo tomado, sin resultado.
+     */
+    @FunctionalInterface
+    public interface Tarea<E extends Exception> {
+
+        void hacer() throws E;
+    }
+
+    private static final Map<Path, CoordinacionArchivos> INSTANCIAS = new ConcurrentHashMap<>();
+
+    private static final long POS_VERSION = 0;
+    private static final long POS_GENERACION = 8;
+    private static final long POS_BLOQUEO = 16;
+
+    private static final long INTERVALO_CONSULTA_MS = Long.getLong("pos.coordinacion.ms", 250);
+
+    private final Path archivoBloqueo;
+    private final ReentrantLock local = new ReentrantLock();
+
+    private FileChannel ch;
+    private FileLock bloqueoArchivo;
+    private boolean avisoSinFileLock = false;
+
+    /**
+     * El canal falló mientras otro hilo tenía el FileLock en él: se cierra al soltarlo.
+     */
+    private volatile boolean canalVencido = false;
+
+    /**
+     * Última versión del disco que este proceso ya tiene en memoria.
+     */
+    private volatile long versionVista = 0;
+    private volatile long ultimaConsulta = 0;
+
+    /**
+     * Retorna la coordinación compartida para el archivo de datos indicado.
+     *
+     * @param archivoDatos ruta del archivo de datos
+     */
+    public static CoordinacionArchivos para(String archivoDatos) {
+        Path path = Paths.get(archivoDatos).toAbsolutePath().normalize();
+        return INSTANCIAS.computeIfAbsent(path, CoordinacionArchivos::new);
+    }
+
+    private CoordinacionArchivos(Path archivoDatos) {
+        String nombre = archivoDatos.getFileName().toString();
+        int punto = nombre.lastIndexOf('.');
+        String base = (punto > 0) ? nombre.substring(0, punto) : nombre;
+        this.archivoBloqueo = archivoDatos.resolveSibling(base + ".lock");
+        this.versionVista = version();
+    }
+
+    /**
+     * Hace un trabajo con el bloqueo de escritura del archivo tomado (entre
+     * hilos y entre procesos). Se puede anidar en el mismo hilo.
+     *
+     * @return lo que retorna el trabajo
+     * @throws E lo que lance el trabajo (el bloqueo se suelta igual)
+     */
+    public <T, E extends Exception> T conBloqueo(Trabajo<T, E> trabajo) throws E {
+        bloquear();
+        try {
+            return trabajo.hacer();
+        } finally {
+            soltar();
+        }
+    }
+
+    /**
+     * Igual que conBloqueo(Trabajo), para un trabajo sin resultado.
+     */
+    public <E extends Exception> void conBloqueo(Tarea<E> tarea) throws E {
+        bloquear();
+        try {
+            tarea.hacer();
+        } finally {
+            soltar();
+        }
+    }
+
+    private void bloquear() {
+        local.lock();
+        if (local.getHoldCount() == 1) {
+            try {
+                bloqueoArchivo = canal().lock(POS_BLOQUEO, 1, false);
+            } catch (ClosedChannelException e) {
+                // Canal cerrado por una interrupción: reabrir e intentar una vez más.
+                cerrarCanal();
+                try {
+                    bloqueoArchivo = canal().lock(POS_BLOQUEO, 1, false);
+                } catch (IOException ex) {
+                    sinFileLock(ex);
+                }
+            } catch (IOException e) {
+                sinFileLock(e);
+            }
+        }
+    }
+
+    /**
+     * true si el hilo actual tiene el bloqueo.
+     */
+    public boolean estaBloqueado() {
+        return local.isHeldByCurrentThread();
+    }
+
+    /**
+     * Publica un cambio en el archivo (por ejemplo, un append).
+     * Se llama con el bloqueo tomado, después de escribir.
+     */
+    public void publicarCambio() {
+        incrementar(false);
+    }
+
+    /**
+     * Publica que el archivo se reemplazó o se vació: además de la versión sube
+     * la generación, así los demás procesos cierran los canales abiertos sobre
+     * el archivo anterior. Se llama con el bloqueo tomado.
+     */
+    public void publicarReemplazo() {
+        incrementar(true);
+    }
+
+    /**
+     * Versión actual en disco (0 si todavía no hay cambios o no se puede leer).
+     */
+    public long version() {
+        return leer(POS_VERSION, versionVista);
+    }
+
+    /**
+     * Generación actual en disco.
+     *
+     * @param porDefecto valor a retornar si no se puede leer
+     */
+    public long generacion(long porDefecto) {
+        return leer(POS_GENERACION, porDefecto);
+    }
+
+    /**
+     * Indica que la memoria queda al día con el disco. Se llama antes de leer el
+     * archivo, así un cambio confirmado durante la lectura se vuelve a detectar.
+     */
+    public void marcarAlDia() {
+        versionVista = version();
+        ultimaConsulta = System.currentTimeMillis();
+    }
+
+    /**
+     * true si otro proceso confirmó cambios que la memoria no tiene.
+     * Consulta el disco como mucho una vez cada INTERVALO_CONSULTA_MS; entre
+     * consultas retorna false.
+     */
+    public boolean huboCambioExterno() {
+        long ahora = System.currentTimeMillis();
+        if (ahora - ultimaConsulta < INTERVALO_CONSULTA_MS) {
+            return false;
+        }
+        ultimaConsulta = ahora;
+        return version() != versionVista;
+    }
+
+    /**
+     * Igual que huboCambioExterno(), pero siempre consulta el disco. Se usa con
+     * el bloqueo tomado, antes de reescribir el archivo.
+     */
+    public boolean huboCambioExternoAhora() {
+        ultimaConsulta = System.currentTimeMillis();
+        return version() != versionVista;
+    }
+
+    private void soltar() {
+        try {
+            if (local.getHoldCount() == 1 && bloqueoArchivo != null) {
+                try {
+                    bloqueoArchivo.release();
+                } catch (IOException e) {
+                    // Se libera igual al cerrar el canal o terminar el proceso.
+                }
+                bloqueoArchivo = null;
+            }
+            if (local.getHoldCount() == 1 && canalVencido) {
+                cerrarCanal();
+            }
+        } finally {
+            local.unlock();
+        }
+    }
+
+    private void incrementar(boolean reemplazo) {
+        local.lock();
+        try {
+            long v = version();
+            escribir(POS_VERSION, v + 1);
+            if (reemplazo) {
+                escribir(POS_GENERACION, generacion(0) + 1);
+            }
+            // Si había un cambio ajeno sin ver, se sigue detectando.
+            if (v == versionVista) {
+                versionVista = v + 1;
+            }
+        } catch (IOException e) {
+            System.out.println("Error publicando cambio en " + archivoBloqueo + ": " + e.getMessage());
+        } finally {
+            local.unlock();
+        }
+    }
+
+    private long leer(long posicion, long porDefecto) {
+        ByteBuffer buf = ByteBuffer.allocate(8);
+        try {
+            FileChannel c = canal();
+            while (buf.hasRemaining()) {
+                if (c.read(buf, posicion + buf.position()) < 0) {
+                    return 0;
+                }
+            }
+            return buf.getLong(0);
+        } catch (IOException e) {
+            descartarCanal();
+            return porDefecto;
+        }
+    }
+
+    private void escribir(long posicion, long valor) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8);
+        buf.putLong(valor).flip();
+        FileChannel c = canal();
+        while (buf.hasRemaining()) {
+            c.write(buf, posicion + buf.position());
+        }
+    }
+
+    /**
+     * Las lecturas y escrituras son posicionales: el canal se comparte entre
+     * hilos y solo su apertura se sincroniza.
+     */
+    private synchronized FileChannel canal() throws IOException {
+        if (ch == null || !ch.isOpen()) {
+            ch = FileChannel.open(archivoBloqueo, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        return ch;
+    }
+
+    /**
+     * Cierra el canal después de un error de lectura. Si este proceso tiene el
+     * FileLock (que vive en el canal), cerrarlo ahora lo soltaría: se deja para
+     * cuando se suelte el bloqueo.
+     */
+    private void descartarCanal() {
+        if (!local.tryLock()) {
+            canalVencido = true;
+            return;
+        }
+        try {
+            if (local.getHoldCount() > 1) {
+                canalVencido = true;
+            } else {
+                cerrarCanal();
+            }
+        } finally {
+            local.unlock();
+        }
+    }
+
+    /**
+     * Cierra el canal; se reabre en el próximo uso. Solo sin el FileLock tomado.
+     */
+    private synchronized void cerrarCanal() {
+        canalVencido = false;
+        if (ch != null) {
+            try {
+                ch.close();
+            } catch (IOException e) {
+                // Ya no se usa; el descriptor se libera igual.
+            }
+            ch = null;
+        }
+    }
+
+    private void sinFileLock(IOException e) {
+        bloqueoArchivo = null;
+        if (!avisoSinFileLock) {
+            avisoSinFileLock = true;
+            System.out.println("Sin bloqueo entre procesos para " + archivoBloqueo + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package Modelo;
+
+import Utils.TokenizadorCampos;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ *
+ * Diario (journal) de cambios de clientes, append-only.
+ *
+ * Cada cambio se guarda como una línea en "clientes_diario.txt":
+ * SEQ|OPERACION|CEDULA|NOMBRE|TIPO|VISITAS|FECHA|TOTAL
+ *
+ * - ALTA y EDICION llevan el cliente completo.
+ * - VISITA lleva solo la fecha y el monto pagado (en TOTAL); visitas y tipo se
+ *   recalculan al aplicarla.
+ * - BAJA lleva solo la cédula.
+ *
+ * Clients.txt es una foto de los clientes hasta cierto SEQ (línea
+ * "#DIARIO,SEQ"). Al cargar se toma la foto y se aplican los registros
+ * posteriores; un checkpoint escribe una foto nueva y vacía el diario.
+ *
+ * Varias cajas pueden anexar al mismo diario: el SEQ sale de una secuencia
+ * compartida (SecuenciaIds) y se asigna con el bloqueo del diario tomado, así
+ * el orden de los SEQ es el del archivo.
+ */
+public class DiarioClientes {
+
+    /**
+     * Tipos de cambio de cliente.
+     */
+    public enum Operacion {
+        ALTA, EDICION, VISITA, BAJA
+    }
+
+    /**
+     * Un cambio de cliente, tal como se guarda en el diario.
+     */
+    public static class Registro {
+
+        private final Operacion operacion;
+        private final String cedula;
+        private final String nombre;
+        private final String tipo;
+        private final int visitas;
+        private final String fecha;
+        private final double total;
+
+        private Registro(Operacion operacion, String cedula, String nombre, String tipo,
+                int visitas, String fecha, double total) {
+            this.operacion = operacion;
+            this.cedula = limpiar(cedula);
+            this.nombre = limpiar(nombre);
+            this.tipo = limpiar(tipo);
+            this.visitas = visitas;
+            this.fecha = limpiar(fecha);
+            this.total = total;
+        }
+
+        public static Registro alta(String cedula, String nombre, String tipo, int visitas, String fecha, double total) {
+            return new Registro(Operacion.ALTA, cedula, nombre, tipo, visitas, fecha, total);
+        }
+
+        public static Registro edicion(String cedula, String nombre, String tipo, int visitas, String fecha, double total) {
+            return new Registro(Operacion.EDICION, cedula, nombre, tipo, visitas, fecha, total);
+        }
+
+        public static Registro visita(String cedula, double monto, String fecha) {
+            return new Registro(Operacion.VISITA, cedula, "", "", 0, fecha, monto);
+        }
+
+        public static Registro baja(String cedula) {
+            return new Registro(Operacion.BAJA, cedula, "", "", 0, "", 0);
+        }
+
+        public Operacion getOperacion() {
+            return operacion;
+        }
+
+        public String getCedula() {
+            return cedula;
+        }
+
+        public String getNombre() {
+            return nombre;
+        }
+
+        public String getTipo() {
+            return tipo;
+        }
+
+        public int getVisitas() {
+            return visitas;
+        }
+
+        public String getFecha() {
+            return fecha;
+        }
+
+        /**
+         * Total del cliente (ALTA/EDICION) o monto pagado (VISITA).
+         */
+        public double getTotal() {
+            return total;
+        }
+    }
+
+    /**
+     * Acción a ejecutar por cada registro al reproducir el diario.
+     */
+    public interface Aplicador {
+
+        void aplicar(Registro registro);
+    }
+
+    /**
+     * Valor de seqFoto cuando Clients.txt no tiene marca del diario.
+     */
+    public static final int SIN_FOTO = 0;
+
+    private static final String HEADER = "SEQ|OPERACION|CEDULA|NOMBRE|TIPO|VISITAS|FECHA|TOTAL";
+
+    private static final int COL_SEQ = 0;
+    private static final int COL_OPERACION = 1;
+    private static final int COL_CEDULA = 2;
+    private static final int COL_NOMBRE = 3;
+    private static final int COL_TIPO = 4;
+    private static final int COL_VISITAS = 5;
+    private static final int COL_FECHA = 6;
+    private static final int COL_TOTAL = 7;
+    private static final int COLS_MIN = 8;
+
+    private final Path archivo;
+    private final EscritorAnexos escritor;
+    private final SecuenciaIds secuencia;
+    private final CoordinacionArchivos coordinacion;
+
+    /**
+     * Último SEQ escrito (o reproducido) en el diario.
+     */
+    private int ultimoSeq = 0;
+
+    /**
+     * @param archivo archivo del diario
+     */
+    public DiarioClientes(String archivo) {
+        this.archivo = Paths.get(archivo);
+        this.escritor = EscritorAnexos.para(archivo);
+        this.secuencia = SecuenciaIds.para(archivo, '|');
+        this.coordinacion = CoordinacionArchivos.para(archivo);
+    }
+
+    /**
+     * Agrega un registro al final del diario y lo confirma según la política de
+     * fsync de EscritorAnexos (en el hilo de persistencia, al cerrar el lote).
+     *
+     * @param registro cambio a guardar
+     * @return true si quedó guardado
+     */
+    public boolean anexar(Registro registro) {
+        if (!escribir(registro)) {
+            return false;
+        }
+
+        // Fuera del bloqueo, para que varios registros compartan el mismo fsync.
+        try {
+            escritor.confirmar();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Agrega un registro al final del diario sin esperar el fsync (para cambios
+     * que ya son durables por otro medio, como los cobros de DiarioCobros).
+     *
+     * @param registro cambio a guardar
+     * @return true si quedó escrito
+     */
+    boolean escribir(Registro registro) {
+        String salto = System.lineSeparator();
+
+        try {
+            return coordinacion.conBloqueo(() -> {
+                synchronized (this) {
+                    int seq = secuencia.siguiente();
+                    String linea = seq + "|" + cuerpo(registro) + salto;
+
+                    escritor.escribir((HEADER + salto).getBytes(StandardCharsets.UTF_8),
+                            linea.getBytes(StandardCharsets.UTF_8));
+                    ultimoSeq = Math.max(ultimoSeq, seq);
+                    return true;
+                }
+            });
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Línea de un registro sin el SEQ: OPERACION|CEDULA|NOMBRE|TIPO|VISITAS|FECHA|TOTAL.
+     */
+    static String cuerpo(Registro registro) {
+        StringBuilder sb = new StringBuilder(96);
+        sb.append(registro.getOperacion()).append('|')
+                .append(registro.getCedula()).append('|')
+                .append(registro.getNombre()).append('|')
+                .append(registro.getTipo()).append('|')
+                .append(registro.getVisitas()).append('|')
+                .append(registro.getFecha()).append('|')
+                .append(registro.getTotal());
+        return sb.toString();
+    }
+
+    /**
+     * Hace un trabajo con el bloqueo del diario tomado (entre hilos y entre
+     * cajas). Se usa para leer la foto y el diario juntos, o para vaciarlo sin
+     * perder registros de otra caja.
+     *
+     * @return lo que retorna el trabajo
+     */
+    public <T, E extends Exception> T conBloqueo(CoordinacionArchivos.Trabajo<T, E> trabajo) throws E {
+        return coordinacion.conBloqueo(trabajo);
+    }
+
+    /**
+     * Igual que conBloqueo(Trabajo), para un trabajo sin resultado.
+     */
+    public <E extends Exception> void conBloqueo(CoordinacionArchivos.Tarea<E> tarea) throws E {
+        coordinacion.conBloqueo(tarea);
+    }
+
+    /**
+     * true si otra caja agregó registros o vació el diario desde la última carga
+     * (consulta el disco como mucho cada "pos.coordinacion.ms").
+     */
+    public boolean huboCambioExterno() {
+        return coordinacion.huboCambioExterno();
+    }
+
+    /**
+     * Igual que huboCambioExterno(), consultando siempre el disco.
+     */
+    public boolean huboCambioExternoAhora() {
+        return coordinacion.huboCambioExternoAhora();
+    }
+
+    /**
+     * Indica que la memoria quedó al día con el diario (por ejemplo, después de vaciarlo).
+     */
+    public void marcarAlDia() {
+        coordinacion.marcarAlDia();
+    }
+
+    /**
+     * Aplica los registros posteriores a una foto y deja el diario listo para anexar.
+     *
+     * @param seqFoto último SEQ incluido en la foto (Clients.txt), o SIN_FOTO
+     * @param aplicador acción por cada registro posterior
+     * @return cantidad de registros aplicados
+     */
+    public synchronized int reproducirDesde(int seqFoto, Aplicador aplicador) {
+        coordinacion.marcarAlDia();
+        ultimoSeq = Math.max(seqFoto, 0);
+        secuencia.observar(seqFoto);
+        int aplicados = 0;
+
+        try (BufferedReader br = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+            TokenizadorCampos t = new TokenizadorCampos('|');
+            String linea;
+            while ((linea = br.readLine()) != null) {
+                if (t.separar(linea) < COLS_MIN) {
+                    continue;
+                }
+
+                int seq = t.entero(COL_SEQ, -1);
+                int visitas = t.entero(COL_VISITAS, -1);
+                double total = t.decimal(COL_TOTAL, Double.NaN);
+                if (seq < 0 || visitas < 0 || Double.isNaN(total)) {
+                    // Encabezado o línea dañada.
+                    continue;
+                }
+
+                Registro r;
+                try {
+                    r = new Registro(Operacion.valueOf(t.texto(COL_OPERACION)),
+                            t.texto(COL_CEDULA), t.texto(COL_NOMBRE), t.texto(COL_TIPO),
+                            visitas, t.texto(COL_FECHA), total);
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+
+                if (seq > seqFoto) {
+                    aplicador.aplicar(r);
+                    aplicados++;
+                }
+                ultimoSeq = Math.max(ultimoSeq, seq);
+            }
+        } catch (NoSuchFileException e) {
+            // Todavía no hay cambios.
+        } catch (IOException e) {
+            System.out.println("Error leyendo diario de clientes: " + e.getMessage());
+        }
+        return aplicados;
+    }
+
+    /**
+     * Último SEQ escrito (o reproducido) en el diario.
+     */
+    public synchronized int getUltimoSeq() {
+        return ultimoSeq;
+    }
+
+    /**
+     * Vacía el diario después de un checkpoint. El SEQ sigue desde el último
+     * escrito, que queda guardado en la marca de la foto.
+     *
+     * @return true si se vació
+     */
+    public boolean vaciar() {
+        try {
+            return coordinacion.conBloqueo(() -> {
+                synchronized (this) {
+                    escritor.vaciar();
+                    return true;
+                }
+            });
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Quita separadores y saltos de línea de un campo de texto, así lo que se
+     * aplica en memoria es igual a lo que se reproduce después.
+     */
+    private static String limpiar(String valor) {
+        if (valor == null) {
+            return "";
+        }
+        return valor.replace('|', ' ').replace('\r', ' ').replace('\n', ' ');
+    }
+}
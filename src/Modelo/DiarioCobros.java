@@ -0,0 +1,309 @@
+package Modelo;
+
+import Utils.TokenizadorCampos;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * Diario de rehacer (redo log) de los cobros: cada cobro (UnidadCobro) se
+ * guarda acá completo, con un solo fsync, antes de escribir la factura, los
+ * pagos, el detalle y la visita del cliente en sus archivos.
+ *
+ * Formato (una línea por registro, separador '|'):
+ * - INICIO|TX|CANTIDAD
+ * - REC|TX|DESTINO|ARCHIVO|OFFSET|GENERACION|LINEA (LINEA puede tener '|')
+ * - FIN|TX|CRC32 de las líneas REC
+ * - APLICADA|TX
+ *
+ * Funcionamiento:
+ * - confirmar() escribe INICIO, los REC y FIN de una vez y hace un solo fsync
+ *   (EscritorAnexos.confirmar). Desde ahí el cobro está confirmado.
+ * - Quien confirma aplica los registros en los archivos destino (sin fsync) y
+ *   escribe APLICADA sin soltar el bloqueo del diario. Por eso una transacción
+ *   con FIN y sin APLICADA que ve otro hilo o caja es de una caja que se cayó a
+ *   mitad de aplicarla: pendientes() las retorna para aplicarlas de nuevo.
+ * - Una transacción sin FIN (o con el CRC mal) no llegó al fsync: nunca se
+ *   confirmó y se ignora.
+ * - Cuando el diario pasa "pos.cobros.bytes" (256 KB por defecto), checkpoint()
+ *   fuerza los archivos destino y lo vacía.
+ *
+ * Todas las operaciones se hacen con el bloqueo del diario tomado (conBloqueo()).
+ */
+public class DiarioCobros {
+
+    private static final Map<Path, DiarioCobros> INSTANCIAS = new ConcurrentHashMap<>();
+
+    private static final long LIMITE_BYTES = Long.getLong("pos.cobros.bytes", 256 * 1024L);
+
+    private static final String INICIO = "INICIO";
+    private static final String REC = "REC";
+    private static final String FIN = "FIN";
+    private static final String APLICADA = "APLICADA";
+
+    /**
+     * Un registro de un cobro: la línea a escribir en un archivo destino, con el
+     * largo y la generación que tenía ese archivo al confirmar (para ver, al
+     * aplicar de nuevo, qué parte ya se escribió).
+     */
+    static final class Registro {
+
+        final String destino;
+        final String archivo;
+        final long offset;
+        final long generacion;
+        final String linea;
+
+        Registro(String destino, String archivo, long offset, long generacion, String linea) {
+            this.destino = destino;
+            this.archivo = archivo;
+            this.offset = offset;
+            this.generacion = generacion;
+            this.linea = linea;
+        }
+    }
+
+    /**
+     * Los registros de un cobro.
+     */
+    static final class Transaccion {
+
+        final String id;
+        final List<Registro> registros;
+
+        Transaccion(String id, List<Registro> registros) {
+            this.id = id;
+            this.registros = registros;
+        }
+    }
+
+    private final Path archivo;
+    private final EscritorAnexos escritor;
+    private final CoordinacionArchivos coordinacion;
+
+    /**
+     * Hasta dónde se revisó el diario (todo lo anterior está aplicado), y
+     * generación del diario a la que corresponde.
+     */
+    private long revisado = 0;
+    private long generacionRevisada = -1;
+
+    /**
+     * Retorna el diario compartido para el archivo indicado.
+     */
+    public static DiarioCobros para(String archivo) {
+        Path path = Paths.get(archivo).toAbsolutePath().normalize();
+        return INSTANCIAS.computeIfAbsent(path, DiarioCobros::new);
+    }
+
+    private DiarioCobros(Path archivo) {
+        this.archivo = archivo;
+        this.escritor = EscritorAnexos.para(archivo.toString());
+        this.coordinacion = CoordinacionArchivos.para(archivo.toString());
+    }
+
+    /**
+     * Hace un trabajo con el bloqueo del diario tomado (entre hilos y entre cajas).
+     *
+     * @return lo que retorna el trabajo
+     */
+    public <T, E extends Exception> T conBloqueo(CoordinacionArchivos.Trabajo<T, E> trabajo) throws E {
+        return coordinacion.conBloqueo(trabajo);
+    }
+
+    /**
+     * Igual que conBloqueo(Trabajo), para un trabajo sin resultado.
+     */
+    public <E extends Exception> void conBloqueo(CoordinacionArchivos.Tarea<E> tarea) throws E {
+        coordinacion.conBloqueo(tarea);
+    }
+
+    /**
+     * Transacciones confirmadas y no aplicadas desde la última revisión (de una
+     * caja que se cayó a mitad de aplicarlas). Con el bloqueo tomado; después de
+     * aplicarlas se llama a alDia().
+     */
+    synchronized List<Transaccion> pendientes() throws IOException {
+        long generacion = coordinacion.generacion(0);
+        long largo = escritor.largo();
+        if (generacion != generacionRevisada || largo < revisado) {
+            // Primera revisión, o el diario se vació: se revisa desde el principio.
+            revisado = 0;
+            generacionRevisada = generacion;
+        }
+        if (largo == revisado) {
+            return new ArrayList<>();
+        }
+
+        terminarUltimaLinea(largo);
+
+        Map<String, Transaccion> confirmadas = new LinkedHashMap<>();
+        Map<String, List<Registro>> abiertas = new LinkedHashMap<>();
+        Map<String, Integer> cantidades = new LinkedHashMap<>();
+        Map<String, CRC32> crcs = new LinkedHashMap<>();
+
+        TokenizadorCampos t = new TokenizadorCampos('|', 7);
+        try (InputStream in = Files.newInputStream(archivo)) {
+            in.skipNBytes(revisado);
+            BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String linea;
+            while ((linea = br.readLine()) != null) {
+                if (t.separar(linea) < 2) {
+                    continue;
+                }
+                String tipo = t.texto(0);
+                String id = t.texto(1);
+
+                if (INICIO.equals(tipo)) {
+                    abiertas.put(id, new ArrayList<>());
+                    cantidades.put(id, t.entero(2, -1));
+                    crcs.put(id, new CRC32());
+                } else if (REC.equals(tipo) && abiertas.containsKey(id) && t.cantidad() == 7) {
+                    abiertas.get(id).add(new Registro(t.texto(2), t.crudo(3), t.largo(4, 0), t.largo(5, 0), t.crudo(6)));
+                    crcs.get(id).update((linea + "\n").getBytes(StandardCharsets.UTF_8));
+                } else if (FIN.equals(tipo) && abiertas.containsKey(id)) {
+                    List<Registro> registros = abiertas.remove(id);
+                    if (registros.size() == cantidades.get(id) && t.largo(2, -1) == crcs.get(id).getValue()) {
+                        confirmadas.put(id, new Transaccion(id, registros));
+                    }
+                } else if (APLICADA.equals(tipo)) {
+                    confirmadas.remove(id);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // Todavía no hay cobros.
+        }
+        return new ArrayList<>(confirmadas.values());
+    }
+
+    /**
+     * Mayor valor de la primera columna (el ID) entre los registros de un destino
+     * que hay en el diario, aplicados o no (por ejemplo, el mayor ID_FACTURA).
+     * Con el bloqueo tomado.
+     *
+     * @return 0 si no hay registros de ese destino
+     */
+    synchronized int mayorId(String destino) throws IOException {
+        int max = 0;
+        TokenizadorCampos t = new TokenizadorCampos('|', 7);
+        TokenizadorCampos campos = new TokenizadorCampos('|');
+        try (BufferedReader br = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+            String linea;
+            while ((linea = br.readLine()) != null) {
+                if (t.separar(linea) == 7 && t.esIgual(0, REC) && t.esIgual(2, destino)) {
+                    campos.separar(t.crudo(6));
+                    max = Math.max(max, campos.entero(0, 0));
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // Todavía no hay cobros.
+        }
+        return max;
+    }
+
+    /**
+     * Todo lo escrito hasta ahora en el diario quedó aplicado (con el bloqueo tomado).
+     */
+    synchronized void alDia() throws IOException {
+        revisado = escritor.largo();
+        generacionRevisada = coordinacion.generacion(0);
+    }
+
+    /**
+     * Escribe una transacción completa y espera el fsync (con el bloqueo tomado).
+     *
+     * @throws IOException si no quedó confirmada
+     */
+    void confirmar(Transaccion tx) throws IOException {
+        StringBuilder sb = new StringBuilder(256);
+        CRC32 crc = new CRC32();
+
+        sb.append(INICIO).append('|').append(tx.id).append('|').append(tx.registros.size()).append('\n');
+        for (Registro r : tx.registros) {
+            String rec = REC + "|" + tx.id + "|" + r.destino + "|" + r.archivo + "|" + r.offset + "|"
+                    + r.generacion + "|" + r.linea.replace('\r', ' ').replace('\n', ' ');
+            crc.update((rec + "\n").getBytes(StandardCharsets.UTF_8));
+            sb.append(rec).append('\n');
+        }
+        sb.append(FIN).append('|').append(tx.id).append('|').append(crc.getValue()).append('\n');
+
+        escritor.escribir(null, sb.toString().getBytes(StandardCharsets.UTF_8));
+        escritor.confirmar();
+    }
+
+    /**
+     * Marca una transacción como aplicada (sin fsync: si se pierde, al aplicarla
+     * de nuevo se ve que ya estaba).
+     */
+    void marcarAplicada(String id) throws IOException {
+        escritor.escribir(null, (APLICADA + "|" + id + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Si el diario pasó el límite y todo está aplicado, fuerza a disco los
+     * archivos destino y lo vacía (con el bloqueo tomado, después de alDia()).
+     */
+    synchronized void checkpointSiHaceFalta() throws IOException {
+        long largo = escritor.largo();
+        if (largo < LIMITE_BYTES || revisado != largo) {
+            return;
+        }
+
+        Set<String> destinos = new LinkedHashSet<>();
+        TokenizadorCampos t = new TokenizadorCampos('|', 7);
+        try (BufferedReader br = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+            String linea;
+            while ((linea = br.readLine()) != null) {
+                if (t.separar(linea) == 7 && t.esIgual(0, REC)) {
+                    destinos.add(t.crudo(3));
+                }
+            }
+        }
+
+        for (String destino : destinos) {
+            try (FileChannel ch = FileChannel.open(Paths.get(destino), StandardOpenOption.WRITE)) {
+                ch.force(true);
+            } catch (NoSuchFileException e) {
+                // Partición archivada: ArchivoFrio ya la dejó en disco.
+            }
+        }
+
+        escritor.vaciar();
+        alDia();
+    }
+
+    /**
+     * Si una caja se cayó a mitad de una línea, la termina para que la próxima
+     * transacción empiece en una línea nueva.
+     */
+    private void terminarUltimaLinea(long largo) throws IOException {
+        if (largo == 0) {
+            return;
+        }
+        ByteBuffer ultimo = ByteBuffer.allocate(1);
+        try (FileChannel ch = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            ch.read(ultimo, largo - 1);
+        }
+        if (ultimo.get(0) != '\n') {
+            escritor.escribir(null, "\n".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
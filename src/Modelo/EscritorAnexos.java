@@ -0,0 +1,507 @@
+package Modelo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * Escritor de appends para un archivo de datos (pedidos.txt, facturas.txt, ...).
+ *
+ * Funcionamiento:
+ * - Mantiene un FileChannel abierto por archivo (una instancia compartida por
+ *   archivo, ver para()), así un append no abre ni cierra el archivo.
+ * - escribir() agrega los bytes y retorna el offset donde quedaron;
+ *   confirmar() los hace durables según la política de fsync.
+ * - Group commit: si varios hilos confirman a la vez, un solo force() cubre
+ *   todo lo escrito hasta ese momento; los demás esperan ese mismo force().
+ *   En el hilo de PersistenciaAsincrona, confirmar() no fuerza: se hace un
+ *   solo force() por archivo al terminar cada lote de escrituras.
+ *
+ * Políticas de fsync (propiedad del sistema "pos.fsync", por defecto CADA_COMMIT):
+ * - NINGUNA: no se fuerza a disco (queda en manos del sistema operativo).
+ * - PERIODICA: un hilo de fondo fuerza cada "pos.fsync.ms" milisegundos (100 por defecto).
+ *   Si ese force() falla, confirmar() lanza el error hasta que uno funcione.
+ * - CADA_COMMIT: confirmar() retorna cuando los datos ya están en disco. En el
+ *   hilo de PersistenciaAsincrona, si el force() del lote falla, las
+ *   escrituras del lote que usaron este archivo terminan con error.
+ *
+ * Varios procesos (cajas) pueden anexar al mismo archivo: cada escritura se
+ * hace con el bloqueo del archivo (CoordinacionArchivos), así el offset que se
+ * retorna es el real y los registros no se intercalan, y se publica como cambio
+ * para que los demás procesos lo detecten.
+ *
+ * Si otra parte del programa reemplaza el archivo (por ejemplo, reescribiéndolo
+ * en un temporal y moviéndolo), debe llamar a reabrir(). Si lo reemplaza otro
+ * proceso, el canal se reabre solo: la generación publicada cambió.
+ */
+public class EscritorAnexos {
+
+    /**
+     * Políticas de fsync.
+     */
+    public enum Politica {
+        NINGUNA, PERIODICA, CADA_COMMIT
+    }
+
+    /**
+     * Foto de las métricas de un escritor. Un commit es un force() (o, con
+     * política NINGUNA, cada escritura).
+     */
+    public static class Metricas {
+
+        private final long commits;
+        private final long registros;
+        private final long bytes;
+        private final long latenciaTotalNanos;
+        private final long latenciaMaximaNanos;
+
+        Metricas(long commits, long registros, long bytes, long latenciaTotalNanos, long latenciaMaximaNanos) {
+            this.commits = commits;
+            this.registros = registros;
+            this.bytes = bytes;
+            this.latenciaTotalNanos = latenciaTotalNanos;
+            this.latenciaMaximaNanos = latenciaMaximaNanos;
+        }
+
+        public long getCommits() {
+            return commits;
+        }
+
+        public long getRegistros() {
+            return registros;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public double registrosPorCommit() {
+            return commits == 0 ? 0 : (double) registros / commits;
+        }
+
+        public double bytesPorCommit() {
+            return commits == 0 ? 0 : (double) bytes / commits;
+        }
+
+        /**
+         * Tiempo promedio desde la primera escritura de un commit hasta que quedó en disco.
+         */
+        public double latenciaPromedioMs() {
+            return commits == 0 ? 0 : latenciaTotalNanos / 1e6 / commits;
+        }
+
+        public double latenciaMaximaMs() {
+            return latenciaMaximaNanos / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("commits=%d registros=%d bytes=%d registros/commit=%.1f bytes/commit=%.0f"
+                    + " latencia promedio=%.2fms max=%.2fms",
+                    commits, registros, bytes, registrosPorCommit(), bytesPorCommit(),
+                    latenciaPromedioMs(), latenciaMaximaMs());
+        }
+    }
+
+    private static final Map<Path, EscritorAnexos> INSTANCIAS = new ConcurrentHashMap<>();
+
+    /**
+     * Escritores con datos escritos en el hilo de persistencia que esperan el force() del lote.
+     */
+    private static final Set<EscritorAnexos> PENDIENTES_LOTE = ConcurrentHashMap.newKeySet();
+
+    private static final Politica POLITICA_POR_DEFECTO = leerPolitica();
+    private static final long INTERVALO_POR_DEFECTO_MS = Long.getLong("pos.fsync.ms", 100);
+
+    private static ScheduledExecutorService temporizador;
+
+    private final Path archivo;
+    private final CoordinacionArchivos coordinacion;
+    private volatile Politica politica = POLITICA_POR_DEFECTO;
+
+    private FileChannel ch;
+
+    /**
+     * Generación del archivo (CoordinacionArchivos) cuando se abrió el canal.
+     */
+    private long generacionCanal = 0;
+
+    /**
+     * Bytes escritos y bytes cubiertos por un force(), acumulados desde el inicio
+     * (no son offsets: siguen creciendo aunque el archivo se vacíe o se reemplace).
+     */
+    private long totalEscrito = 0;
+    private long totalConfirmado = 0;
+    private boolean forzando = false;
+
+    /**
+     * Error del último force() periódico, o null si funcionó.
+     */
+    private volatile IOException fallaPeriodica;
+
+    /**
+     * Escrituras todavía no incluidas en un commit.
+     */
+    private long registrosPendientes = 0;
+    private long bytesPendientes = 0;
+    private long inicioPendientes = 0;
+
+    private long commits = 0;
+    private long registros = 0;
+    private long bytes = 0;
+    private long latenciaTotalNanos = 0;
+    private long latenciaMaximaNanos = 0;
+
+    /**
+     * Retorna el escritor compartido para el archivo indicado.
+     *
+     * @param archivo ruta del archivo de datos
+     */
+    public static EscritorAnexos para(String archivo) {
+        Path path = Paths.get(archivo).toAbsolutePath().normalize();
+        return INSTANCIAS.computeIfAbsent(path, EscritorAnexos::new);
+    }
+
+    private EscritorAnexos(Path archivo) {
+        this.archivo = archivo;
+        this.coordinacion = CoordinacionArchivos.para(archivo.toString());
+        if (politica == Politica.PERIODICA) {
+            programarPeriodico();
+        }
+    }
+
+    /**
+     * Cambia la política de fsync de este archivo.
+     */
+    public void setPolitica(Politica politica) {
+        this.politica = politica;
+        if (politica == Politica.PERIODICA) {
+            programarPeriodico();
+        }
+    }
+
+    public Politica getPolitica() {
+        return politica;
+    }
+
+    /**
+     * Agrega bytes al final del archivo (sin esperar a que estén en disco).
+     * Toma el bloqueo del archivo; quien necesite que otras operaciones queden
+     * junto con el append (por ejemplo, asignar el ID) lo toma antes.
+     *
+     * @param encabezadoSiVacio bytes a escribir antes si el archivo está vacío (o null)
+     * @param datos bytes del registro
+     * @return offset donde empiezan los datos
+     * @throws IOException si falla la escritura
+     */
+    public long escribir(byte[] encabezadoSiVacio, byte[] datos) throws IOException {
+        return coordinacion.conBloqueo(() -> {
+            synchronized (this) {
+                if (ch != null && coordinacion.generacion(generacionCanal) != generacionCanal) {
+                    // Otro proceso reemplazó o vació el archivo.
+                    cerrarCanal();
+                }
+
+                long offset;
+                try {
+                    offset = escribirEnCanal(encabezadoSiVacio, datos);
+                } catch (ClosedChannelException e) {
+                    // El canal se cerró (por ejemplo, por una interrupción): reabrir y reintentar una vez.
+                    ch = null;
+                    offset = escribirEnCanal(encabezadoSiVacio, datos);
+                }
+                coordinacion.publicarCambio();
+                return offset;
+            }
+        });
+    }
+
+    /**
+     * Hace durable lo escrito hasta ahora, según la política de fsync.
+     *
+     * @throws IOException si falla el force()
+     */
+    public void confirmar() throws IOException {
+        if (politica == Politica.PERIODICA) {
+            IOException falla = fallaPeriodica;
+            if (falla != null) {
+                throw new IOException("No se pudo sincronizar " + archivo + ": " + falla.getMessage(), falla);
+            }
+            return;
+        }
+        if (politica != Politica.CADA_COMMIT) {
+            return;
+        }
+        if (PersistenciaAsincrona.getInstancia().esHiloEscritor()) {
+            PENDIENTES_LOTE.add(this);
+            PersistenciaAsincrona.getInstancia().anotarEscritor(this);
+            return;
+        }
+        forzarHasta(totalEscritoActual());
+    }
+
+    /**
+     * escribir() + confirmar().
+     *
+     * @return offset donde empiezan los datos
+     */
+    public long anexar(byte[] encabezadoSiVacio, byte[] datos) throws IOException {
+        long offset = escribir(encabezadoSiVacio, datos);
+        confirmar();
+        return offset;
+    }
+
+    /**
+     * Tamaño actual del archivo.
+     */
+    public synchronized long largo() throws IOException {
+        return canal().size();
+    }
+
+    /**
+     * Deja el archivo vacío (en disco) y lo publica como reemplazo.
+     */
+    public void vaciar() throws IOException {
+        coordinacion.conBloqueo(() -> {
+            synchronized (this) {
+                FileChannel c = canal();
+                c.truncate(0);
+                c.force(true);
+                coordinacion.publicarReemplazo();
+                generacionCanal = coordinacion.generacion(generacionCanal);
+            }
+        });
+    }
+
+    /**
+     * Cierra el canal para que el próximo append abra el archivo actual.
+     * Se usa después de reemplazar el archivo por otro (Files.move).
+     */
+    public synchronized void reabrir() {
+        cerrarCanal();
+    }
+
+    /**
+     * Métricas acumuladas de este archivo.
+     */
+    public synchronized Metricas getMetricas() {
+        return new Metricas(commits, registros, bytes, latenciaTotalNanos, latenciaMaximaNanos);
+    }
+
+    /**
+     * Métricas de todos los archivos con escritor, por ruta.
+     */
+    public static Map<String, Metricas> metricasPorArchivo() {
+        Map<String, Metricas> res = new LinkedHashMap<>();
+        for (EscritorAnexos e : INSTANCIAS.values()) {
+            res.put(e.archivo.toString(), e.getMetricas());
+        }
+        return res;
+    }
+
+    /**
+     * Fuerza a disco los archivos escritos en el lote actual del hilo de persistencia.
+     * Lo llama PersistenciaAsincrona antes de completar los resultados del lote.
+     *
+     * @return archivos que no se pudieron forzar, con su error (vacío si todos quedaron en disco)
+     */
+    static Map<EscritorAnexos, IOException> confirmarLote() {
+        Map<EscritorAnexos, IOException> fallidos = new HashMap<>();
+        for (EscritorAnexos e : PENDIENTES_LOTE) {
+            PENDIENTES_LOTE.remove(e);
+            try {
+                e.forzarHasta(e.totalEscritoActual());
+            } catch (IOException ex) {
+                System.out.println("Error sincronizando " + e.archivo + ": " + ex.getMessage());
+                fallidos.put(e, new IOException("No se pudo sincronizar " + e.archivo + ": " + ex.getMessage(), ex));
+            }
+        }
+        return fallidos;
+    }
+
+    /**
+     * Fuerza y cierra todos los canales (al cerrar la aplicación).
+     */
+    static void cerrarTodos() {
+        for (EscritorAnexos e : INSTANCIAS.values()) {
+            try {
+                e.forzarHasta(e.totalEscritoActual());
+            } catch (IOException ex) {
+                // Se cierra igual.
+            }
+            synchronized (e) {
+                e.cerrarCanal();
+            }
+        }
+    }
+
+    private long escribirEnCanal(byte[] encabezadoSiVacio, byte[] datos) throws IOException {
+        FileChannel c = canal();
+        long inicioEscritura = System.nanoTime();
+
+        long offset = c.size();
+        ByteBuffer buf;
+        if (offset == 0 && encabezadoSiVacio != null) {
+            buf = ByteBuffer.allocate(encabezadoSiVacio.length + datos.length);
+            buf.put(encabezadoSiVacio).put(datos).flip();
+            offset = encabezadoSiVacio.length;
+        } else {
+            buf = ByteBuffer.wrap(datos);
+        }
+
+        int escritos = buf.remaining();
+        while (buf.hasRemaining()) {
+            c.write(buf);
+        }
+
+        totalEscrito += escritos;
+        if (registrosPendientes == 0) {
+            inicioPendientes = inicioEscritura;
+        }
+        registrosPendientes++;
+        bytesPendientes += escritos;
+
+        if (politica == Politica.NINGUNA) {
+            // Sin fsync: cada escritura cuenta como commit.
+            totalConfirmado = totalEscrito;
+            cerrarCommit(System.nanoTime());
+        }
+        return offset;
+    }
+
+    private synchronized long totalEscritoActual() {
+        return totalEscrito;
+    }
+
+    /**
+     * Group commit: espera a que un force() cubra "objetivo" bytes. Si no hay
+     * otro force() en curso, lo hace este hilo para todo lo escrito hasta ahora.
+     */
+    private void forzarHasta(long objetivo) throws IOException {
+        FileChannel c;
+        long cubre;
+
+        synchronized (this) {
+            while (true) {
+                if (totalConfirmado >= objetivo) {
+                    return;
+                }
+                if (!forzando) {
+                    break;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrumpido esperando el commit", e);
+                }
+            }
+            forzando = true;
+            c = canal();
+            cubre = totalEscrito;
+        }
+
+        // El force() va fuera del lock: mientras tanto otros hilos siguen escribiendo.
+        boolean ok = false;
+        try {
+            c.force(false);
+            ok = true;
+        } finally {
+            synchronized (this) {
+                forzando = false;
+                if (ok) {
+                    totalConfirmado = Math.max(totalConfirmado, cubre);
+                    cerrarCommit(System.nanoTime());
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Pasa las escrituras pendientes a las métricas como un commit.
+     */
+    private void cerrarCommit(long fin) {
+        if (registrosPendientes == 0) {
+            return;
+        }
+        long latencia = fin - inicioPendientes;
+        commits++;
+        registros += registrosPendientes;
+        bytes += bytesPendientes;
+        latenciaTotalNanos += latencia;
+        latenciaMaximaNanos = Math.max(latenciaMaximaNanos, latencia);
+        registrosPendientes = 0;
+        bytesPendientes = 0;
+    }
+
+    private FileChannel canal() throws IOException {
+        if (ch == null || !ch.isOpen()) {
+            // La generación se lee antes de abrir: si el archivo se reemplaza en el
+            // medio, la próxima escritura ve una generación distinta y reabre.
+            generacionCanal = coordinacion.generacion(0);
+            ch = FileChannel.open(archivo, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return ch;
+    }
+
+    private void cerrarCanal() {
+        if (ch != null) {
+            try {
+                ch.close();
+            } catch (IOException e) {
+                // Nada que hacer.
+            }
+            ch = null;
+        }
+    }
+
+    private static synchronized void programarPeriodico() {
+        if (temporizador != null) {
+            return;
+        }
+        temporizador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "fsync-periodico");
+            t.setDaemon(true);
+            return t;
+        });
+        temporizador.scheduleWithFixedDelay(() -> {
+            for (EscritorAnexos e : INSTANCIAS.values()) {
+                if (e.politica != Politica.PERIODICA) {
+                    continue;
+                }
+                try {
+                    e.forzarHasta(e.totalEscritoActual());
+                    e.fallaPeriodica = null;
+                } catch (IOException ex) {
+                    if (e.fallaPeriodica == null) {
+                        System.out.println("Error sincronizando " + e.archivo + ": " + ex.getMessage());
+                    }
+                    e.fallaPeriodica = ex;
+                }
+            }
+        }, INTERVALO_POR_DEFECTO_MS, INTERVALO_POR_DEFECTO_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static Politica leerPolitica() {
+        try {
+            return Politica.valueOf(System.getProperty("pos.fsync", Politica.CADA_COMMIT.name()).trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Politica.CADA_COMMIT;
+        }
+    }
+}
@@ -1,20 +1,34 @@
 package Modelo;
 
+import Utils.LectorInverso;
+import Utils.TokenizadorCampos;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  *
  * @author Jefferson Granados
- * En esta clase se maneja la persistencia de facturas mediante un archivo de texto (facturas.txt).
+ * En esta clase se maneja la persistencia de facturas mediante archivos de texto,
+ * una partición por día (facturas/AAAA-MM-DD.log, ver RegistroParticionado).
  * Se encarga de:
- * - Crear el archivo si no existe y escribir un encabezado.
- * - Generar el siguiente ID de factura de forma incremental.
- * - Guardar facturas (append) en el archivo.
- * - Buscar facturas por ID de factura, por ID de pedido o por cédula.
+ * - Generar el siguiente ID de factura de forma incremental (SecuenciaIds).
+ * - Guardar facturas (append) en la partición del día, con su encabezado.
+ * - Buscar facturas por ID de factura, por ID de pedido o por cédula (un
+ *   IndiceFacturas por partición).
  * - Listar las últimas N facturas registradas.
  *
+ * Las búsquedas por ID empiezan por la partición de hoy y siguen hacia atrás
+ * solo por los días cuyo rango de IDs contiene el buscado (RangosParticiones):
+ * la factura de un pedido abierto casi siempre es del día, y un pedido sin
+ * factura no abre ningún día anterior. El facturas.txt anterior queda como
+ * partición histórica.
+ *
  * Formato de almacenamiento:
  * ID_FACTURA|FECHA|HORA|ID_PEDIDO|CEDULA_CLIENTE|NOMBRE_CLIENTE|MESA|SUBTOTAL|IVA|TOTAL|METODO_PAGO
  */
@@ -24,64 +38,71 @@ public class FacturacionDAO {
     private static final String HEADER =
             "ID_FACTURA|FECHA|HORA|ID_PEDIDO|CEDULA_CLIENTE|NOMBRE_CLIENTE|MESA|SUBTOTAL|IVA|TOTAL|METODO_PAGO";
 
+    private static final int COL_ID = 0;
+    private static final int COL_PEDIDO = 3;
+
+    private final RegistroParticionado registro = RegistroParticionado.para(FILE_NAME);
+    private final RangosParticiones rangos = RangosParticiones.para(registro, '|', COL_ID, COL_PEDIDO);
+    private final SecuenciaIds secuencia = SecuenciaIds.para(FILE_NAME, '|');
+    private final PersistenciaAsincrona persistencia = PersistenciaAsincrona.getInstancia();
+
+    /**
+     * true cuando este proceso ya aplicó los cobros pendientes (recuperarCobros).
+     */
+    private static boolean cobrosRecuperados = false;
+
     /**
-     * Constructor: inicializa el DAO y asegura que el archivo exista.
-     * Si el archivo no existe, lo crea e inserta el encabezado.
+     * Constructor: inicializa el DAO y pone la secuencia al día con la última
+     * partición que tenga facturas (por si el ".seq" quedó atrasado). El primero
+     * del proceso aplica además los cobros que quedaron sin aplicar.
      */
     public FacturacionDAO() {
-        crearArchivoSiNoExiste();
+        recuperarSecuencia();
+        recuperarCobros(this);
     }
 
     /**
-     * Crea el archivo de facturas si no existe.
-     * En caso de crearlo, escribe el encabezado con el formato de columnas.
+     * La primera vez en el proceso aplica los cobros confirmados y sin aplicar
+     * del diario (UnidadCobro.recuperarAlIniciar), antes de cualquier búsqueda o
+     * ID nuevo: si no, un pedido cobrado justo antes de una caída se vería sin
+     * factura y se facturaría de nuevo. Un DAO creado en paralelo espera a que termine.
      */
-    private void crearArchivoSiNoExiste() {
-        File file = new File(FILE_NAME);
-        if (!file.exists()) {
-            try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))) {
-                bw.write(HEADER);
-                bw.newLine();
-            } catch (IOException e) {
-                e.printStackTrace();
+    private static synchronized void recuperarCobros(FacturacionDAO dao) {
+        if (cobrosRecuperados) {
+            return;
+        }
+        cobrosRecuperados = true;
+        new UnidadCobro(dao, new PagosFacturaDAO(), new PagosFacturaDetalleDAO()).recuperarAlIniciar();
+    }
+
+    /**
+     * Revisa la cola de las particiones desde la más nueva hasta encontrar un ID.
+     * Cada partición se revisa una sola vez por proceso (SecuenciaIds.observarCola).
+     */
+    private void recuperarSecuencia() {
+        List<RegistroParticionado.Particion> particiones = registro.particiones();
+        for (int i = particiones.size() - 1; i >= 0; i--) {
+            if (secuencia.observarCola(particiones.get(i).getRuta()) > 0) {
+                return;
             }
         }
     }
 
     /**
-     * Obtiene el siguiente ID de factura basado en el mayor ID almacenado en el archivo.
-     * Lee el archivo completo, identifica el ID máximo y retorna max + 1.
+     * Obtiene el siguiente ID de factura desde la secuencia en memoria.
+     * No lee las facturas: la secuencia se recupera desde la cola de la última
+     * partición solo al iniciar (ver SecuenciaIds).
      *
      * @return siguiente ID disponible para registrar una factura
      */
     public int siguienteIdFactura() {
-        int maxId = 0;
-
-        try (BufferedReader br = new BufferedReader(new FileReader(FILE_NAME))) {
-            String linea;
-            br.readLine(); // header
-
-            while ((linea = br.readLine()) != null) {
-                if (linea.trim().isEmpty()) continue;
-
-                String[] partes = linea.split("\\|", -1);
-                if (partes.length > 0) {
-                    try {
-                        int id = Integer.parseInt(partes[0].trim());
-                        if (id > maxId) maxId = id;
-                    } catch (NumberFormatException ignored) {}
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        return maxId + 1;
+        return secuencia.siguiente();
     }
 
     /**
-     * Guarda una factura en el archivo facturas.txt.
-     * Los datos se guardan en una línea, separados por el carácter '|'.
+     * Guarda una factura en la partición del día.
+     * Los datos se guardan en una línea, separados por el carácter '|'; si la
+     * partición es nueva, primero se escribe el encabezado.
      *
      * @param idFactura      ID de la factura
      * @param fecha          fecha de emisión
@@ -98,141 +119,200 @@ public class FacturacionDAO {
     public void guardarFactura(int idFactura, String fecha, String hora, int idPedido,
                                String cedulaCliente, String nombreCliente, String mesa,
                                int subtotal, int iva, int total, String metodoPago) {
+        persistencia.esperar(FILE_NAME);
 
-        String linea = idFactura + "|" + fecha + "|" + hora + "|" + idPedido + "|"
+        String linea = lineaFactura(idFactura, fecha, hora, idPedido, cedulaCliente, nombreCliente, mesa,
+                subtotal, iva, total, metodoPago);
+        anexarFactura(registro.particionActual(), linea, idFactura, true);
+    }
+
+    /**
+     * Línea de una factura en el formato del archivo (sin salto de línea).
+     */
+    static String lineaFactura(int idFactura, String fecha, String hora, int idPedido,
+                               String cedulaCliente, String nombreCliente, String mesa,
+                               int subtotal, int iva, int total, String metodoPago) {
+        return idFactura + "|" + fecha + "|" + hora + "|" + idPedido + "|"
                 + cedulaCliente + "|" + nombreCliente + "|" + mesa + "|"
                 + subtotal + "|" + iva + "|" + total + "|" + metodoPago;
+    }
+
+    /**
+     * Informa a la secuencia un ID de factura que existe fuera de las particiones
+     * (en el diario de cobros).
+     */
+    void observarIdFactura(int idFactura) {
+        secuencia.observar(idFactura);
+    }
+
+    /**
+     * Partición donde se guardan las facturas de hoy.
+     */
+    String particionActual() {
+        return registro.particionActual();
+    }
+
+    /**
+     * Agrega una línea de factura a una partición y la registra en su índice.
+     *
+     * @param particion partición destino
+     * @param linea línea de la factura (ver lineaFactura)
+     * @param idFactura ID de la factura (para la secuencia)
+     * @param confirmar true para hacerla durable según la política de fsync;
+     *                  false si ya lo es por otro medio (DiarioCobros)
+     * @return true si se escribió
+     */
+    boolean anexarFactura(String particion, String linea, int idFactura, boolean confirmar) {
+        String salto = System.lineSeparator();
+        byte[] encabezado = (HEADER + salto).getBytes(StandardCharsets.UTF_8);
+        byte[] contenido = linea.getBytes(StandardCharsets.UTF_8);
+        byte[] datos = (linea + salto).getBytes(StandardCharsets.UTF_8);
+
+        EscritorAnexos escritor = EscritorAnexos.para(particion);
+        IndiceFacturas indice = IndiceFacturas.para(particion);
+
+        // Se sincroniza con el índice para que el offset registrado sea el de esta línea.
+        synchronized (indice) {
+            try {
+                long offset = escritor.escribir(encabezado, datos);
+                secuencia.observar(idFactura);
+                indice.registrar(linea, offset, contenido.length, offset + datos.length);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
 
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(FILE_NAME, true))) {
-            bw.write(linea);
-            bw.newLine();
+        if (!confirmar) {
+            return true;
+        }
+        // Fuera del lock del índice, para que varios appends compartan el mismo fsync.
+        try {
+            escritor.confirmar();
+            return true;
         } catch (IOException e) {
             e.printStackTrace();
+            return false;
         }
     }
 
     /**
      * Busca una factura por su ID de factura.
-     * Recorre el archivo y retorna el arreglo de campos si encuentra coincidencia.
+     * Usa los índices en memoria (IndiceFacturas) desde la partición más nueva,
+     * solo en las particiones cuyo rango de IDs lo contiene: no recorre los archivos.
      *
      * @param idFacturaBuscada ID de la factura a buscar
      * @return arreglo con los campos de la factura si existe; null si no se encuentra
      */
     public String[] buscarFacturaPorId(int idFacturaBuscada) {
-        try (BufferedReader br = new BufferedReader(new FileReader(FILE_NAME))) {
-            String linea;
-            br.readLine(); // header
-
-            while ((linea = br.readLine()) != null) {
-                if (linea.trim().isEmpty()) continue;
-
-                String[] partes = linea.split("\\|", -1);
-                if (partes.length >= 11) {
-                    try {
-                        int id = Integer.parseInt(partes[0].trim());
-                        if (id == idFacturaBuscada) return partes;
-                    } catch (NumberFormatException ignored) {}
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+        persistencia.esperar(FILE_NAME);
+        List<RegistroParticionado.Particion> particiones = rangos.candidatas(COL_ID, idFacturaBuscada);
+        for (int i = particiones.size() - 1; i >= 0; i--) {
+            String[] factura = IndiceFacturas.para(particiones.get(i).getRuta()).buscarPorId(idFacturaBuscada);
+            if (factura != null) return factura;
         }
-
         return null;
     }
 
     /**
-     * Busca una factura por el ID del pedido asociado.
-     * Recorre el archivo y compara contra la columna ID_PEDIDO (posición 3).
+     * Busca una factura por el ID del pedido asociado (columna ID_PEDIDO, posición 3).
+     * Usa los índices en memoria (IndiceFacturas) desde la partición más nueva,
+     * solo en las particiones cuyo rango de pedidos lo contiene: no recorre los archivos.
      *
      * @param idPedidoBuscado ID del pedido a buscar
      * @return arreglo con los campos de la factura si existe; null si no se encuentra
      */
     public String[] buscarFacturaPorIdPedido(int idPedidoBuscado) {
-        try (BufferedReader br = new BufferedReader(new FileReader(FILE_NAME))) {
-            String linea;
-            br.readLine(); // header
-
-            while ((linea = br.readLine()) != null) {
-                if (linea.trim().isEmpty()) continue;
-
-                String[] partes = linea.split("\\|", -1);
-                if (partes.length >= 11) {
-                    try {
-                        int idPedido = Integer.parseInt(partes[3].trim());
-                        if (idPedido == idPedidoBuscado) return partes;
-                    } catch (NumberFormatException ignored) {}
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+        persistencia.esperar(FILE_NAME);
+        List<RegistroParticionado.Particion> particiones = rangos.candidatas(COL_PEDIDO, idPedidoBuscado);
+        for (int i = particiones.size() - 1; i >= 0; i--) {
+            String[] factura = IndiceFacturas.para(particiones.get(i).getRuta()).buscarPorIdPedido(idPedidoBuscado);
+            if (factura != null) return factura;
         }
         return null;
     }
 
     /**
-     * Lista las últimas N facturas almacenadas en el archivo.
-     * Primero carga todas las facturas en memoria y luego retorna las últimas N.
+     * Lista las últimas N facturas almacenadas.
+     * Lee la partición de hoy desde el final (LectorInverso) y pasa a las
+     * anteriores solo si faltan facturas, por lo que el costo no depende de
+     * cuántas facturas haya en total.
      *
      * @param n cantidad de facturas finales a retornar
-     * @return lista con arreglos de campos de las últimas facturas registradas
+     * @return lista con arreglos de campos de las últimas facturas registradas (en orden de archivo)
      */
     public List<String[]> listarUltimasFacturas(int n) {
-        List<String[]> todas = new ArrayList<>();
+        List<String[]> ultimas = new ArrayList<>();
+        if (n <= 0) return ultimas;
+        persistencia.esperar(FILE_NAME);
+
+        TokenizadorCampos t = new TokenizadorCampos('|');
+        List<RegistroParticionado.Particion> particiones = registro.particiones();
 
-        try (BufferedReader br = new BufferedReader(new FileReader(FILE_NAME))) {
-            String linea;
-            br.readLine(); // header
+        for (int i = particiones.size() - 1; i >= 0 && ultimas.size() < n; i--) {
+            try (LectorInverso lector = new LectorInverso(Paths.get(particiones.get(i).getRuta()))) {
+                String linea;
 
-            while ((linea = br.readLine()) != null) {
-                if (linea.trim().isEmpty()) continue;
+                while (ultimas.size() < n && (linea = lector.anterior()) != null) {
+                    if (lector.offsetLinea() == 0) break; // header
+                    if (linea.trim().isEmpty()) continue;
 
-                String[] partes = linea.split("\\|", -1);
-                if (partes.length >= 11) todas.add(partes);
+                    if (t.separar(linea) >= 11) ultimas.add(t.textos());
+                }
+            } catch (NoSuchFileException e) {
+                // Partición archivada (o registrada y todavía sin facturas).
+                ArchivoFrio frio = ArchivoFrio.abrir(particiones.get(i).getRuta());
+                if (frio != null) {
+                    agregarUltimasArchivadas(frio, n - ultimas.size(), ultimas);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
             }
+        }
+
+        Collections.reverse(ultimas);
+        return ultimas;
+    }
+
+    /**
+     * Agrega (desde la más nueva) hasta "faltan" facturas de una partición
+     * archivada. Se recorre la partición completa guardando solo las últimas:
+     * un día archivado tiene pocas facturas, y solo se llega aquí si la
+     * partición de hoy no alcanzó.
+     */
+    private void agregarUltimasArchivadas(ArchivoFrio frio, int faltan, List<String[]> ultimas) {
+        ArrayDeque<String[]> cola = new ArrayDeque<>(faltan);
+        try {
+            frio.recorrer('|', (p, offset) -> {
+                if (offset == 0 || p.cantidad() < 11) return true; // header o línea incompleta
+                if (cola.size() == faltan) cola.removeFirst();
+                cola.addLast(p.textos());
+                return true;
+            });
         } catch (IOException e) {
             e.printStackTrace();
         }
-
-        List<String[]> ultimas = new ArrayList<>();
-        for (int i = Math.max(0, todas.size() - n); i < todas.size(); i++) {
-            ultimas.add(todas.get(i));
+        while (!cola.isEmpty()) {
+            ultimas.add(cola.removeLast());
         }
-        return ultimas;
     }
 
     /**
      * Busca facturas por cédula del cliente.
-     * La comparación se realiza contra la columna CEDULA_CLIENTE (posición 4).
+     * La comparación se realiza contra la columna CEDULA_CLIENTE (posición 4),
+     * usando los índices en memoria (IndiceFacturas) de todas las particiones.
      *
      * @param cedula cédula a buscar
-     * @return lista de facturas asociadas a esa cédula; lista vacía si no hay coincidencias
+     * @return lista de facturas asociadas a esa cédula (en orden cronológico); lista vacía si no hay coincidencias
      */
     public List<String[]> buscarFacturasPorCedula(String cedula) {
         List<String[]> res = new ArrayList<>();
         if (cedula == null) return res;
+        persistencia.esperar(FILE_NAME);
 
-        String target = cedula.trim();
-
-        try (BufferedReader br = new BufferedReader(new FileReader(FILE_NAME))) {
-            String linea;
-            br.readLine(); // header
-
-            while ((linea = br.readLine()) != null) {
-                if (linea.trim().isEmpty()) continue;
-
-                String[] partes = linea.split("\\|", -1);
-                if (partes.length >= 11) {
-                    if (partes[4].trim().equalsIgnoreCase(target)) {
-                        res.add(partes);
-                    }
-                }
-            }
-        } catch (IOException e) {
-
-            e.printStackTrace();
+        for (RegistroParticionado.Particion p : registro.particiones()) {
+            res.addAll(IndiceFacturas.para(p.getRuta()).buscarPorCedula(cedula));
         }
-
         return res;
     }
 
@@ -0,0 +1,568 @@
+package Modelo;
+
+import Utils.MapaEnteroLargo;
+import Utils.TokenizadorCampos;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *
+ * Índices en memoria de un archivo de facturas (una partición diaria de
+ * FacturacionDAO, o el facturas.txt anterior):
+ * - ID_FACTURA -> registro
+ * - ID_PEDIDO -> registro
+ * - CEDULA_CLIENTE -> registros (en orden de archivo)
+ *
+ * El archivo se recorre una sola vez (en la primera consulta) y luego cada
+ * factura guardada con FacturacionDAO se agrega al índice sin volver a leer.
+ *
+ * Cada registro guarda su posición en el archivo (offset, largo) y, mientras
+ * alcance el presupuesto de memoria, también sus campos ya separados. El
+ * presupuesto es uno solo para todos los índices (todas las particiones):
+ * cuando se supera se descartan primero los campos de los índices consultados
+ * hace más tiempo (días viejos), y dentro de un índice los de las facturas más
+ * viejas. Esas consultas hacen una lectura posicionada del archivo.
+ *
+ * Igual que IndicePedidos, antes de cada consulta se compara el tamaño y la
+ * fecha de modificación del archivo: si creció se indexa la cola nueva y si
+ * cambió de otra forma se reconstruye. Además, una línea leída del disco se
+ * acepta solo si su columna de búsqueda (ID, pedido o cédula) es la buscada:
+ * si no, el archivo cambió sin que se notara y también se reconstruye.
+ *
+ * Si la partición se archivó (ArchivoFrio), el archivo original ya no existe:
+ * las posiciones siguen valiendo y las lecturas descomprimen solo el bloque
+ * del registro. Un archivo archivado no cambia más.
+ */
+public class IndiceFacturas {
+
+    private static final Map<Path, IndiceFacturas> INSTANCIAS = new ConcurrentHashMap<>();
+
+    /**
+     * Memoria aproximada (en bytes) para registros ya separados en campos,
+     * entre todos los índices.
+     */
+    private static final long PRESUPUESTO_BYTES = 4L * 1024 * 1024;
+
+    /**
+     * Bytes en memoria de todos los índices (suma de bytesEnMemoria).
+     */
+    private static final AtomicLong BYTES_TOTALES = new AtomicLong();
+
+    /**
+     * Contador para ordenar los índices por última consulta.
+     */
+    private static final AtomicLong CONSULTAS = new AtomicLong();
+
+    private static final int COLS_MIN = 11;
+    private static final int IDX_ID = 0;
+    private static final int IDX_PEDIDO = 3;
+    private static final int IDX_CEDULA = 4;
+
+    private static final int BITS_LARGO = 24;
+    private static final long MASCARA_LARGO = (1L << BITS_LARGO) - 1;
+
+    private final Path archivoDatos;
+
+    /**
+     * Registros en orden de archivo: posición empaquetada y campos (null si no están en memoria).
+     */
+    private long[] posiciones = new long[256];
+    private String[][] campos = new String[256][];
+    private int[] costos = new int[256];
+    private int cantidad = 0;
+
+    /**
+     * Primer registro que todavía conserva sus campos en memoria.
+     */
+    private int primerEnMemoria = 0;
+    private volatile long bytesEnMemoria = 0;
+
+    /**
+     * Número de la última consulta (CONSULTAS), para liberar primero los índices olvidados.
+     */
+    private volatile long ultimaConsulta = 0;
+
+    /**
+     * ID -> número de registro.
+     */
+    private final MapaEnteroLargo porId = new MapaEnteroLargo();
+    private final MapaEnteroLargo porPedido = new MapaEnteroLargo();
+    private final Map<String, Registros> porCedula = new HashMap<>();
+
+    /**
+     * Separador de líneas reutilizado al indexar (siempre bajo el lock del índice).
+     */
+    private final TokenizadorCampos tokenizador = new TokenizadorCampos('|');
+
+    private boolean cargado = false;
+
+    /**
+     * Archivo frío de la partición, si ya se archivó (null mientras exista el original).
+     */
+    private ArchivoFrio frio = null;
+    private long largoIndexado = 0;
+    private long modificadoIndexado = 0;
+
+    /**
+     * Retorna el índice compartido para el archivo de facturas indicado.
+     *
+     * @param archivoDatos ruta de facturas.txt
+     */
+    public static IndiceFacturas para(String archivoDatos) {
+        Path path = Paths.get(archivoDatos).toAbsolutePath().normalize();
+        return INSTANCIAS.computeIfAbsent(path, IndiceFacturas::new);
+    }
+
+    private IndiceFacturas(Path archivoDatos) {
+        this.archivoDatos = archivoDatos;
+    }
+
+    /**
+     * Busca una factura por ID de factura.
+     *
+     * @return campos de la factura o null si no existe
+     */
+    public String[] buscarPorId(int idFactura) {
+        String[] res;
+        synchronized (this) {
+            res = buscarUno(porId, IDX_ID, idFactura);
+        }
+        respetarPresupuesto(this);
+        return res;
+    }
+
+    /**
+     * Busca la primera factura asociada a un ID de pedido.
+     *
+     * @return campos de la factura o null si no existe
+     */
+    public String[] buscarPorIdPedido(int idPedido) {
+        String[] res;
+        synchronized (this) {
+            res = buscarUno(porPedido, IDX_PEDIDO, idPedido);
+        }
+        respetarPresupuesto(this);
+        return res;
+    }
+
+    /**
+     * Busca las facturas de una cédula (sin distinguir mayúsculas), en orden de archivo.
+     *
+     * @return lista de facturas; vacía si no hay coincidencias
+     */
+    public List<String[]> buscarPorCedula(String cedula) {
+        List<String[]> res;
+        synchronized (this) {
+            res = buscarPorCedulaEnIndice(cedula);
+        }
+        respetarPresupuesto(this);
+        return res;
+    }
+
+    private List<String[]> buscarPorCedulaEnIndice(String cedula) {
+        List<String[]> res = new ArrayList<>();
+        ultimaConsulta = CONSULTAS.incrementAndGet();
+        if (!verificarVigencia()) {
+            return res;
+        }
+
+        String objetivo = cedula.trim();
+
+        for (int intento = 0; intento < 2; intento++) {
+            Registros lista = porCedula.get(claveCedula(objetivo));
+            if (lista == null) {
+                return res;
+            }
+
+            boolean consistente = true;
+            try (FileChannel ch = abrirCanal()) {
+                for (int i = 0; i < lista.cantidad && consistente; i++) {
+                    int num = lista.numeros[i];
+                    if (campos[num] != null) {
+                        if (campos[num][IDX_CEDULA].trim().equalsIgnoreCase(objetivo)) {
+                            res.add(campos[num].clone());
+                        }
+                    } else if (separarRegistro(ch, num) && tokenizador.esIgualIgnorandoMayusculas(IDX_CEDULA, objetivo)) {
+                        res.add(tokenizador.textos());
+                    } else {
+                        consistente = false;
+                    }
+                }
+            } catch (IOException e) {
+                return res;
+            }
+
+            if (consistente) {
+                return res;
+            }
+            res.clear();
+            reconstruir();
+        }
+        return res;
+    }
+
+    /**
+     * Registra una factura recién agregada al final de facturas.txt.
+     *
+     * @param linea línea escrita (sin salto de línea)
+     * @param offset posición en bytes donde inicia la línea
+     * @param largo largo en bytes de la línea
+     * @param largoArchivo tamaño del archivo después de escribir
+     */
+    public synchronized void registrar(String linea, long offset, int largo, long largoArchivo) {
+        if (!cargado) {
+            // Todavía no se consultó: la primera consulta indexa el archivo completo.
+            return;
+        }
+        if (offset != largoIndexado) {
+            verificarVigencia();
+            return;
+        }
+
+        agregar(linea, offset, largo);
+        largoIndexado = largoArchivo;
+        modificadoIndexado = modificadoActual();
+    }
+
+    /**
+     * @param columna columna que tiene que coincidir con la clave en la línea leída
+     */
+    private String[] buscarUno(MapaEnteroLargo mapa, int columna, int clave) {
+        ultimaConsulta = CONSULTAS.incrementAndGet();
+        if (!verificarVigencia()) {
+            return null;
+        }
+
+        for (int intento = 0; intento < 2; intento++) {
+            long num = mapa.get(clave);
+            if (num == MapaEnteroLargo.AUSENTE) {
+                return null;
+            }
+
+            if (campos[(int) num] != null) {
+                return campos[(int) num].clone();
+            }
+
+            try (FileChannel ch = abrirCanal()) {
+                if (separarRegistro(ch, (int) num) && tokenizador.largo(columna, Long.MIN_VALUE) == clave) {
+                    return tokenizador.textos();
+                }
+            } catch (IOException e) {
+                return null;
+            }
+
+            // La línea ya no es la de esa clave: el archivo cambió de una forma
+            // que no se detectó. Reconstruir y reintentar.
+            reconstruir();
+        }
+        return null;
+    }
+
+    /**
+     * Canal de lectura del archivo original, o null si la partición está
+     * archivada (las lecturas van a ArchivoFrio).
+     */
+    private FileChannel abrirCanal() throws IOException {
+        return (frio != null) ? null : FileChannel.open(archivoDatos, StandardOpenOption.READ);
+    }
+
+    /**
+     * Lee la línea de un registro con una lectura posicionada y la deja separada
+     * en el tokenizador (para registros sin campos en memoria).
+     *
+     * @param ch canal del archivo original (null si está archivado)
+     * @return false si la línea en disco ya no es válida
+     */
+    private boolean separarRegistro(FileChannel ch, int num) throws IOException {
+        long pos = posiciones[num];
+        long offset = pos >>> BITS_LARGO;
+        int largo = (int) (pos & MASCARA_LARGO);
+
+        byte[] bytes;
+        if (ch == null) {
+            bytes = frio.leer(offset, largo);
+            if (bytes == null) {
+                return false;
+            }
+        } else {
+            ByteBuffer buf = ByteBuffer.allocate(largo);
+            while (buf.hasRemaining()) {
+                if (ch.read(buf, offset + buf.position()) < 0) {
+                    return false;
+                }
+            }
+            bytes = buf.array();
+        }
+
+        return tokenizador.separar(ByteBuffer.wrap(bytes), 0, bytes.length) >= COLS_MIN;
+    }
+
+    /**
+     * Compara el estado del archivo con el cubierto por el índice y lo pone al día.
+     *
+     * @return false si el archivo no existe
+     */
+    private boolean verificarVigencia() {
+        if (frio != null) {
+            // Archivada: no cambia más.
+            return true;
+        }
+
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(archivoDatos, BasicFileAttributes.class);
+        } catch (IOException e) {
+            ArchivoFrio archivado = ArchivoFrio.abrir(archivoDatos);
+            if (archivado == null) {
+                limpiar();
+                cargado = false;
+                return false;
+            }
+            // Las posiciones ya indexadas siguen valiendo si el índice cubría todo el original.
+            boolean vigente = cargado && largoIndexado == archivado.largo();
+            frio = archivado;
+            if (!vigente) {
+                reconstruir();
+            }
+            return true;
+        }
+
+        long largo = attrs.size();
+        long modificado = attrs.lastModifiedTime().toMillis();
+
+        if (!cargado) {
+            reconstruir();
+        } else if (largo == largoIndexado && modificado == modificadoIndexado) {
+            return true;
+        } else if (largo > largoIndexado && terminaEnLineaCompleta(largoIndexado)) {
+            indexarDesde(largoIndexado);
+        } else {
+            reconstruir();
+        }
+        return true;
+    }
+
+    private void reconstruir() {
+        limpiar();
+        cargado = true;
+        indexarDesde(0);
+    }
+
+    /**
+     * Indexa las líneas completas desde el offset indicado hasta el final.
+     * Si empieza en 0, la primera línea es el encabezado y se omite.
+     */
+    private void indexarDesde(long desde) {
+        long fin = desde;
+        boolean omitirPrimera = (desde == 0);
+
+        try (InputStream raw = (frio != null) ? frio.abrirDesde(desde) : abrirOriginalDesde(desde);
+                BufferedInputStream in = new BufferedInputStream(raw, 64 * 1024)) {
+
+            byte[] linea = new byte[256];
+            int largoLinea = 0;
+            long offset = desde;
+            long inicioLinea = desde;
+
+            int b;
+            while ((b = in.read()) != -1) {
+                offset++;
+                if (b != '\n') {
+                    if (largoLinea == linea.length) {
+                        linea = Arrays.copyOf(linea, largoLinea * 2);
+                    }
+                    linea[largoLinea++] = (byte) b;
+                    continue;
+                }
+
+                int largo = largoLinea;
+                if (largo > 0 && linea[largo - 1] == '\r') {
+                    largo--;
+                }
+
+                if (omitirPrimera) {
+                    omitirPrimera = false;
+                } else if (largo > 0) {
+                    agregar(new String(linea, 0, largo, StandardCharsets.UTF_8), inicioLinea, largo);
+                }
+
+                fin = offset;
+                inicioLinea = offset;
+                largoLinea = 0;
+            }
+        } catch (IOException e) {
+            // Se indexa lo que se pudo leer.
+        }
+
+        largoIndexado = fin;
+        modificadoIndexado = modificadoActual();
+    }
+
+    /**
+     * Agrega un registro a los índices si tiene el formato mínimo.
+     */
+    private void agregar(String linea, long offset, int largo) {
+        if (linea.trim().isEmpty()) {
+            return;
+        }
+        TokenizadorCampos t = tokenizador;
+        if (t.separar(linea) < COLS_MIN) {
+            return;
+        }
+        String[] partes = t.textos();
+
+        if (cantidad == posiciones.length) {
+            int nueva = cantidad * 2;
+            posiciones = Arrays.copyOf(posiciones, nueva);
+            campos = Arrays.copyOf(campos, nueva);
+            costos = Arrays.copyOf(costos, nueva);
+        }
+
+        int num = cantidad++;
+        posiciones[num] = (offset << BITS_LARGO) | (largo & MASCARA_LARGO);
+        campos[num] = partes;
+        costos[num] = estimarBytes(linea, partes.length);
+        bytesEnMemoria += costos[num];
+        BYTES_TOTALES.addAndGet(costos[num]);
+        // Un índice solo nunca pasa del presupuesto (el resto se libera al consultar).
+        liberarHasta(PRESUPUESTO_BYTES, 1);
+
+        long id = t.largo(IDX_ID, Long.MIN_VALUE);
+        if (id >= Integer.MIN_VALUE && id <= Integer.MAX_VALUE) {
+            porId.putSiAusente((int) id, num);
+        }
+        long idPedido = t.largo(IDX_PEDIDO, Long.MIN_VALUE);
+        if (idPedido >= Integer.MIN_VALUE && idPedido <= Integer.MAX_VALUE) {
+            porPedido.putSiAusente((int) idPedido, num);
+        }
+        porCedula.computeIfAbsent(claveCedula(t.texto(IDX_CEDULA)), k -> new Registros()).agregar(num);
+    }
+
+    /**
+     * Descarta los campos de los registros más viejos hasta bajar del límite.
+     *
+     * @param limite bytes que puede conservar este índice
+     * @param conservar registros más recientes que se conservan siempre
+     */
+    private void liberarHasta(long limite, int conservar) {
+        while (bytesEnMemoria > limite && primerEnMemoria < cantidad - conservar) {
+            bytesEnMemoria -= costos[primerEnMemoria];
+            BYTES_TOTALES.addAndGet(-costos[primerEnMemoria]);
+            campos[primerEnMemoria] = null;
+            primerEnMemoria++;
+        }
+    }
+
+    /**
+     * Si entre todos los índices se pasó del presupuesto, descarta campos de los
+     * índices consultados hace más tiempo (no del que se acaba de consultar).
+     * Se llama sin ningún lock de índice tomado y toma uno a la vez, así no
+     * puede trabarse con otra consulta.
+     */
+    private static void respetarPresupuesto(IndiceFacturas consultado) {
+        while (BYTES_TOTALES.get() > PRESUPUESTO_BYTES) {
+            IndiceFacturas victima = null;
+            for (IndiceFacturas i : INSTANCIAS.values()) {
+                if (i != consultado && i.bytesEnMemoria > 0
+                        && (victima == null || i.ultimaConsulta < victima.ultimaConsulta)) {
+                    victima = i;
+                }
+            }
+            if (victima == null) {
+                return;
+            }
+            synchronized (victima) {
+                long exceso = BYTES_TOTALES.get() - PRESUPUESTO_BYTES;
+                victima.liberarHasta(Math.max(0, victima.bytesEnMemoria - exceso), 0);
+            }
+        }
+    }
+
+    private void limpiar() {
+        Arrays.fill(campos, 0, cantidad, null);
+        cantidad = 0;
+        primerEnMemoria = 0;
+        BYTES_TOTALES.addAndGet(-bytesEnMemoria);
+        bytesEnMemoria = 0;
+        porId.clear();
+        porPedido.clear();
+        porCedula.clear();
+        largoIndexado = 0;
+        modificadoIndexado = 0;
+    }
+
+    private InputStream abrirOriginalDesde(long desde) throws IOException {
+        InputStream in = Files.newInputStream(archivoDatos);
+        try {
+            in.skipNBytes(desde);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+
+    private boolean terminaEnLineaCompleta(long offset) {
+        if (offset == 0) {
+            return true;
+        }
+        try (FileChannel ch = FileChannel.open(archivoDatos, StandardOpenOption.READ)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            return ch.read(b, offset - 1) == 1 && b.get(0) == '\n';
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private long modificadoActual() {
+        try {
+            return Files.getLastModifiedTime(archivoDatos).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Costo aproximado en memoria de un registro separado en campos.
+     */
+    private static int estimarBytes(String linea, int columnas) {
+        return 16 + columnas * 48 + linea.length() * 2;
+    }
+
+    private static String claveCedula(String cedula) {
+        return cedula.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Lista creciente de números de registro de una cédula.
+     */
+    private static final class Registros {
+
+        private int[] numeros = new int[4];
+        private int cantidad = 0;
+
+        void agregar(int num) {
+            if (cantidad == numeros.length) {
+                numeros = Arrays.copyOf(numeros, cantidad * 2);
+            }
+            numeros[cantidad++] = num;
+        }
+    }
+}
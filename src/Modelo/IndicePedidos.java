@@ -0,0 +1,709 @@
+package Modelo;
+
+import Utils.MapaEnteroLargo;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *
+ * Índices de pedidos.txt:
+ * - Primario persistente: ID de pedido -> (offset, largo) de su línea.
+ * - Secundario por mesa: código de mesa -> posiciones de sus pedidos, en orden de archivo.
+ *
+ * Se guarda en "pedidos.idx", junto al archivo de datos, con el formato:
+ * - Encabezado: MAGIA(int) | VERSION(int) | LARGO_DATOS(long) | MODIFICADO_DATOS(long)
+ * - Registros: ID(int) | OFFSET(long) | LARGO(int) | MESA(int)
+ *
+ * La mesa se guarda como código (ver codigoMesa): el número de la mesa, o 0 para
+ * "LLEVAR" y cualquier valor sin dígitos. El índice por mesa se arma con esos
+ * registros, sin volver a leer pedidos.txt.
+ *
+ * El encabezado guarda el tamaño y la fecha de modificación de pedidos.txt que
+ * cubre el índice. Antes de cada consulta se comparan contra el archivo real:
+ * - Si el archivo creció (append desde otra parte), se indexa solo la cola nueva.
+ * - Si se achicó o cambió sin crecer (por ejemplo al cerrar una mesa), se reconstruye.
+ * - Si el índice no existe, está dañado o es de otra versión, se reconstruye.
+ *
+ * Cuando pedidosDAO reescribe el archivo (cerrar mesa / sacar persona), entrega
+ * las posiciones nuevas con una Reconstruccion, sin recorrer el archivo otra vez.
+ *
+ * Con varias cajas sobre la misma carpeta, pedidos.idx se escribe siempre con el
+ * bloqueo de pedidos.txt (CoordinacionArchivos). Si otra caja reemplazó
+ * pedidos.txt (cambió la generación), el índice se vuelve a cargar desde
+ * pedidos.idx, que esa caja dejó al día antes de publicar el reemplazo.
+ *
+ * Una consulta por ID es una búsqueda en memoria más una lectura posicionada
+ * con FileChannel, sin recorrer el historial; una consulta por mesa cuesta la
+ * cantidad de pedidos de esa mesa.
+ */
+public class IndicePedidos {
+
+    private static final Map<Path, IndicePedidos> INSTANCIAS = new ConcurrentHashMap<>();
+
+    private static final int MAGIA = 0x50494458; // "PIDX"
+    private static final int VERSION = 2;
+    private static final int BYTES_REGISTRO = 20;
+
+    /**
+     * Columna de la mesa en pedidos.txt.
+     */
+    private static final int COL_MESA = 3;
+
+    /**
+     * Bits del valor empaquetado reservados para el largo de la línea.
+     */
+    private static final int BITS_LARGO = 24;
+    private static final long MASCARA_LARGO = (1L << BITS_LARGO) - 1;
+
+    private final Path archivoDatos;
+    private final Path archivoIndice;
+    private final char separador;
+    private final CoordinacionArchivos coordinacion;
+
+    /**
+     * ID -> (offset << BITS_LARGO) | largo.
+     */
+    private final MapaEnteroLargo posiciones = new MapaEnteroLargo();
+
+    /**
+     * Código de mesa -> posiciones empaquetadas de sus pedidos (orden de archivo).
+     */
+    private final Map<Integer, Posiciones> porMesa = new HashMap<>();
+
+    private boolean cargado = false;
+    private long largoIndexado = 0;
+    private long modificadoIndexado = 0;
+
+    /**
+     * Generación de pedidos.txt (CoordinacionArchivos) que cubre el índice en memoria.
+     */
+    private long generacionIndexada = 0;
+
+    /**
+     * Retorna el índice compartido para el archivo de pedidos indicado.
+     *
+     * @param archivoDatos ruta de pedidos.txt
+     * @param separador separador de columnas
+     */
+    public static IndicePedidos para(String archivoDatos, char separador) {
+        Path path = Paths.get(archivoDatos).toAbsolutePath().normalize();
+        return INSTANCIAS.computeIfAbsent(path, p -> new IndicePedidos(p, separador));
+    }
+
+    private IndicePedidos(Path archivoDatos, char separador) {
+        this.archivoDatos = archivoDatos;
+        this.separador = separador;
+        this.coordinacion = CoordinacionArchivos.para(archivoDatos.toString());
+
+        String nombre = archivoDatos.getFileName().toString();
+        int punto = nombre.lastIndexOf('.');
+        String base = (punto > 0) ? nombre.substring(0, punto) : nombre;
+        this.archivoIndice = archivoDatos.resolveSibling(base + ".idx");
+    }
+
+    /**
+     * Convierte el texto de la columna mesa a su código en el índice: los dígitos
+     * que contenga (igual que la búsqueda por número de mesa), o 0 si no tiene
+     * dígitos (por ejemplo "LLEVAR").
+     *
+     * @param mesa texto de la columna mesa
+     * @return código de mesa
+     */
+    public static int codigoMesa(String mesa) {
+        if (mesa == null) {
+            return 0;
+        }
+        return codigoMesa(mesa, 0, mesa.length());
+    }
+
+    /**
+     * Igual que codigoMesa(String), sobre el tramo [desde, hasta) de una línea
+     * (por ejemplo la columna mesa separada con TokenizadorCampos), sin crear un String.
+     */
+    public static int codigoMesa(CharSequence linea, int desde, int hasta) {
+        int codigo = 0;
+        for (int i = desde; i < hasta; i++) {
+            char c = linea.charAt(i);
+            if (c >= '0' && c <= '9') {
+                codigo = acumularDigito(codigo, c);
+            }
+        }
+        return codigo;
+    }
+
+    /**
+     * Busca la línea de un pedido por ID con una sola lectura posicionada.
+     *
+     * @param idPedido ID del pedido
+     * @return línea (sin salto de línea, con trim) o null si no existe
+     */
+    public synchronized String leerLinea(int idPedido) {
+        if (!verificarVigencia()) {
+            return null;
+        }
+
+        for (int intento = 0; intento < 2; intento++) {
+            long pos = posiciones.get(idPedido);
+            if (pos == MapaEnteroLargo.AUSENTE) {
+                return null;
+            }
+
+            String linea;
+            try (FileChannel ch = FileChannel.open(archivoDatos, StandardOpenOption.READ)) {
+                linea = leerEn(ch, pos);
+            } catch (IOException e) {
+                return null;
+            }
+            if (linea != null && idDeLinea(linea) == idPedido) {
+                return linea;
+            }
+
+            // El archivo cambió de una forma que no se detectó: reconstruir y reintentar.
+            reconstruir();
+        }
+        return null;
+    }
+
+    /**
+     * Retorna las líneas de los pedidos registrados con un código de mesa, en el
+     * orden del archivo. Quien llama valida la columna mesa, porque un mismo código
+     * agrupa textos distintos (por ejemplo "3" y "M3").
+     *
+     * @param codigoMesa código de mesa (ver codigoMesa)
+     * @return líneas (sin salto de línea, con trim)
+     */
+    public synchronized List<String> leerLineasPorMesa(int codigoMesa) {
+        if (!verificarVigencia()) {
+            return new ArrayList<>();
+        }
+
+        Posiciones lista = porMesa.get(codigoMesa);
+        if (lista == null || lista.cantidad == 0) {
+            return new ArrayList<>();
+        }
+
+        List<String> res = new ArrayList<>(lista.cantidad);
+        try (FileChannel ch = FileChannel.open(archivoDatos, StandardOpenOption.READ)) {
+            for (int i = 0; i < lista.cantidad; i++) {
+                String linea = leerEn(ch, lista.datos[i]);
+                if (linea != null) {
+                    res.add(linea);
+                }
+            }
+        } catch (IOException e) {
+            // Se retorna lo que se pudo leer.
+        }
+        return res;
+    }
+
+    /**
+     * Registra una línea recién agregada al final de pedidos.txt.
+     *
+     * @param idPedido ID del pedido de la línea
+     * @param codigoMesa código de la mesa del pedido
+     * @param offset posición en bytes donde inicia la línea
+     * @param largo largo en bytes de la línea (sin salto de línea)
+     * @param largoArchivo tamaño del archivo después de escribir
+     */
+    public synchronized void registrar(int idPedido, int codigoMesa, long offset, int largo, long largoArchivo) {
+        if (!cargado || offset != largoIndexado) {
+            // El índice no estaba al día antes de este append: ponerlo al día completo.
+            verificarVigencia();
+            return;
+        }
+
+        agregarEnMemoria(idPedido, codigoMesa, empaquetar(offset, largo));
+        largoIndexado = largoArchivo;
+        modificadoIndexado = modificadoActual();
+
+        coordinacion.conBloqueo(() -> {
+            try (FileChannel ch = FileChannel.open(archivoIndice, StandardOpenOption.WRITE)) {
+                ByteBuffer reg = ByteBuffer.allocate(BYTES_REGISTRO);
+                reg.putInt(idPedido).putLong(offset).putInt(largo).putInt(codigoMesa).flip();
+                ch.write(reg, ch.size());
+
+                ByteBuffer enc = ByteBuffer.allocate(16);
+                enc.putLong(largoIndexado).putLong(modificadoIndexado).flip();
+                ch.write(enc, 8);
+            } catch (IOException e) {
+                // Si falla el índice en disco, se reconstruye en el próximo arranque.
+            }
+        });
+    }
+
+    /**
+     * Inicia la reconstrucción de un pedidos.txt que se está reescribiendo.
+     * Quien reescribe debe sincronizar sobre este índice hasta llamar a aplicar().
+     */
+    public Reconstruccion nuevaReconstruccion() {
+        return new Reconstruccion();
+    }
+
+    /**
+     * Reemplaza el índice con las posiciones de una reconstrucción, una vez que el
+     * archivo reescrito quedó en su lugar, y publica el reemplazo de pedidos.txt
+     * a las demás cajas. Se llama con el bloqueo de pedidos.txt tomado.
+     *
+     * @param r posiciones de las líneas escritas en el archivo nuevo
+     */
+    public synchronized void aplicar(Reconstruccion r) {
+        coordinacion.conBloqueo(() -> {
+            limpiarMemoria();
+            cargado = true;
+            for (int i = 0; i < r.cantidad; i++) {
+                agregarEnMemoria(r.ids[i], r.mesas[i], r.posiciones[i]);
+            }
+            largoIndexado = r.largo;
+            modificadoIndexado = modificadoActual();
+            escribirIndiceCompleto();
+
+            coordinacion.publicarReemplazo();
+            generacionIndexada = coordinacion.generacion(generacionIndexada);
+        });
+    }
+
+    /**
+     * Compara el estado del archivo con el cubierto por el índice y lo pone al día.
+     *
+     * @return false si el archivo de datos no existe
+     */
+    private boolean verificarVigencia() {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(archivoDatos, BasicFileAttributes.class);
+        } catch (IOException e) {
+            limpiarMemoria();
+            cargado = false;
+            return false;
+        }
+
+        long generacion = coordinacion.generacion(generacionIndexada);
+        if (cargado && generacion != generacionIndexada) {
+            // Otra caja reemplazó pedidos.txt y dejó su índice en disco.
+            cargado = false;
+        }
+
+        if (!cargado) {
+            cargarDesdeDisco();
+        }
+
+        long largo = attrs.size();
+        long modificado = attrs.lastModifiedTime().toMillis();
+
+        if (largo == largoIndexado && modificado == modificadoIndexado) {
+            return true;
+        }
+
+        if (largo > largoIndexado && terminaEnLineaCompleta(largoIndexado)) {
+            indexarDesde(largoIndexado, true);
+        } else {
+            reconstruir();
+        }
+        return true;
+    }
+
+    /**
+     * Carga el índice persistido. Si no existe o no es válido, lo reconstruye.
+     */
+    private void cargarDesdeDisco() {
+        // Con el bloqueo: otra caja puede estar agregando registros al índice.
+        coordinacion.conBloqueo(() -> {
+            generacionIndexada = coordinacion.generacion(generacionIndexada);
+            leerIndicePersistido();
+        });
+    }
+
+    private void leerIndicePersistido() {
+        limpiarMemoria();
+        cargado = true;
+
+        boolean valido = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(archivoIndice), 64 * 1024))) {
+
+            if (in.readInt() == MAGIA && in.readInt() == VERSION) {
+                largoIndexado = in.readLong();
+                modificadoIndexado = in.readLong();
+
+                while (true) {
+                    int id;
+                    try {
+                        id = in.readInt();
+                    } catch (EOFException fin) {
+                        break;
+                    }
+                    long offset = in.readLong();
+                    int largo = in.readInt();
+                    int mesa = in.readInt();
+                    agregarEnMemoria(id, mesa, empaquetar(offset, largo));
+                }
+                valido = true;
+            }
+        } catch (IOException e) {
+            valido = false;
+        }
+
+        if (!valido) {
+            reconstruir();
+            return;
+        }
+
+        // El índice en disco no garantiza orden: cada mesa se ordena por offset.
+        for (Posiciones lista : porMesa.values()) {
+            lista.ordenar();
+        }
+    }
+
+    /**
+     * Recorre pedidos.txt completo y reescribe el índice.
+     */
+    private void reconstruir() {
+        limpiarMemoria();
+        largoIndexado = 0;
+        modificadoIndexado = 0;
+        cargado = true;
+        indexarDesde(0, false);
+        escribirIndiceCompleto();
+    }
+
+    /**
+     * Indexa las líneas completas desde el offset indicado hasta el final.
+     *
+     * @param desde offset inicial (inicio de una línea)
+     * @param persistir true para agregar los registros nuevos al índice en disco
+     */
+    private void indexarDesde(long desde, boolean persistir) {
+        ByteBuffer nuevos = persistir ? ByteBuffer.allocate(BYTES_REGISTRO * 256) : null;
+        long fin = desde;
+
+        try (InputStream raw = Files.newInputStream(archivoDatos);
+                BufferedInputStream in = new BufferedInputStream(raw, 64 * 1024)) {
+
+            in.skipNBytes(desde);
+
+            long offset = desde;
+            long inicioLinea = desde;
+            int columna = 0;
+            int id = 0;
+            boolean idValido = true;
+            boolean hayDigito = false;
+            int mesa = 0;
+            int finContenido = 0;
+            int largoLinea = 0;
+
+            int b;
+            while ((b = in.read()) != -1) {
+                offset++;
+                if (b == '\n') {
+                    int largo = finContenido;
+                    if (idValido && hayDigito && columna > 0 && id > 0) {
+                        long pos = empaquetar(inicioLinea, largo);
+                        if (agregarEnMemoria(id, mesa, pos) && nuevos != null) {
+                            if (!nuevos.hasRemaining()) {
+                                anexarRegistros(nuevos);
+                            }
+                            nuevos.putInt(id).putLong(inicioLinea).putInt(largo).putInt(mesa);
+                        }
+                    }
+                    fin = offset;
+                    inicioLinea = offset;
+                    columna = 0;
+                    id = 0;
+                    idValido = true;
+                    hayDigito = false;
+                    mesa = 0;
+                    finContenido = 0;
+                    largoLinea = 0;
+                    continue;
+                }
+
+                largoLinea++;
+                if (b != '\r') {
+                    finContenido = largoLinea;
+                }
+
+                if (b == separador) {
+                    columna++;
+                } else if (columna == 0) {
+                    if (b >= '0' && b <= '9') {
+                        id = id * 10 + (b - '0');
+                        hayDigito = true;
+                    } else if (b != ' ' && b != '\t') {
+                        idValido = false;
+                    }
+                } else if (columna == COL_MESA && b >= '0' && b <= '9') {
+                    mesa = acumularDigito(mesa, (char) b);
+                }
+            }
+        } catch (IOException e) {
+            // Se indexa lo que se pudo leer.
+        }
+
+        largoIndexado = fin;
+        modificadoIndexado = modificadoActual();
+
+        if (nuevos != null) {
+            anexarRegistros(nuevos);
+            escribirEncabezado();
+        }
+    }
+
+    /**
+     * Agrega una entrada a los dos índices en memoria. Si el ID ya existía se
+     * conserva la primera aparición (igual que la búsqueda secuencial original).
+     *
+     * @return true si se agregó
+     */
+    private boolean agregarEnMemoria(int id, int codigoMesa, long pos) {
+        if (!posiciones.putSiAusente(id, pos)) {
+            return false;
+        }
+        porMesa.computeIfAbsent(codigoMesa, k -> new Posiciones()).agregar(id, pos);
+        return true;
+    }
+
+    private void limpiarMemoria() {
+        posiciones.clear();
+        porMesa.clear();
+    }
+
+    /**
+     * Escribe el índice completo en un temporal y lo reemplaza.
+     */
+    private void escribirIndiceCompleto() {
+        coordinacion.conBloqueo(this::escribirIndiceCompletoBloqueado);
+    }
+
+    private void escribirIndiceCompletoBloqueado() {
+        Path tmp = archivoIndice.resolveSibling(archivoIndice.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(tmp), 64 * 1024))) {
+            out.writeInt(MAGIA);
+            out.writeInt(VERSION);
+            out.writeLong(largoIndexado);
+            out.writeLong(modificadoIndexado);
+
+            for (Map.Entry<Integer, Posiciones> e : porMesa.entrySet()) {
+                int mesa = e.getKey();
+                Posiciones lista = e.getValue();
+                for (int i = 0; i < lista.cantidad; i++) {
+                    long pos = lista.datos[i];
+                    out.writeInt(lista.ids[i]);
+                    out.writeLong(pos >>> BITS_LARGO);
+                    out.writeInt((int) (pos & MASCARA_LARGO));
+                    out.writeInt(mesa);
+                }
+            }
+        } catch (IOException e) {
+            return;
+        }
+
+        try {
+            try {
+                Files.move(tmp, archivoIndice, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, archivoIndice, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+        }
+    }
+
+    private void anexarRegistros(ByteBuffer nuevos) {
+        nuevos.flip();
+        if (nuevos.hasRemaining()) {
+            coordinacion.conBloqueo(() -> {
+                try (FileChannel ch = FileChannel.open(archivoIndice, StandardOpenOption.WRITE)) {
+                    ch.write(nuevos, ch.size());
+                } catch (IOException e) {
+                }
+            });
+        }
+        nuevos.clear();
+    }
+
+    private void escribirEncabezado() {
+        coordinacion.conBloqueo(() -> {
+            try (FileChannel ch = FileChannel.open(archivoIndice, StandardOpenOption.WRITE)) {
+                ByteBuffer enc = ByteBuffer.allocate(16);
+                enc.putLong(largoIndexado).putLong(modificadoIndexado).flip();
+                ch.write(enc, 8);
+            } catch (IOException e) {
+            }
+        });
+    }
+
+    /**
+     * Verifica que el byte anterior al offset sea un salto de línea
+     * (es decir, que el índice terminó justo al final de una línea).
+     */
+    private boolean terminaEnLineaCompleta(long offset) {
+        if (offset == 0) {
+            return true;
+        }
+        try (FileChannel ch = FileChannel.open(archivoDatos, StandardOpenOption.READ)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            return ch.read(b, offset - 1) == 1 && b.get(0) == '\n';
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Lectura posicionada de una línea a partir de su posición empaquetada.
+     */
+    private static String leerEn(FileChannel ch, long pos) throws IOException {
+        long offset = pos >>> BITS_LARGO;
+        int largo = (int) (pos & MASCARA_LARGO);
+
+        ByteBuffer buf = ByteBuffer.allocate(largo);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, offset + buf.position()) < 0) {
+                return null;
+            }
+        }
+        return new String(buf.array(), StandardCharsets.UTF_8).trim();
+    }
+
+    private long modificadoActual() {
+        try {
+            return Files.getLastModifiedTime(archivoDatos).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private int idDeLinea(String linea) {
+        int fin = linea.indexOf(separador);
+        if (fin < 0) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(linea.substring(0, fin).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long empaquetar(long offset, int largo) {
+        return (offset << BITS_LARGO) | (largo & MASCARA_LARGO);
+    }
+
+    /**
+     * Suma un dígito al código de mesa, sin desbordar con textos muy largos.
+     */
+    private static int acumularDigito(int codigo, char c) {
+        return (codigo < 100_000_000) ? codigo * 10 + (c - '0') : codigo;
+    }
+
+    /**
+     * Lista creciente de (ID, posición empaquetada) de una mesa.
+     */
+    private static final class Posiciones {
+
+        private int[] ids = new int[8];
+        private long[] datos = new long[8];
+        private int cantidad = 0;
+
+        void agregar(int id, long pos) {
+            if (cantidad == datos.length) {
+                ids = Arrays.copyOf(ids, cantidad * 2);
+                datos = Arrays.copyOf(datos, cantidad * 2);
+            }
+            ids[cantidad] = id;
+            datos[cantidad] = pos;
+            cantidad++;
+        }
+
+        /**
+         * Ordena por offset (la posición empaquetada ordena igual que su offset).
+         */
+        void ordenar() {
+            for (int i = 1; i < cantidad; i++) {
+                if (datos[i - 1] > datos[i]) {
+                    ordenarCompleto();
+                    return;
+                }
+            }
+        }
+
+        private void ordenarCompleto() {
+            Integer[] orden = new Integer[cantidad];
+            for (int i = 0; i < cantidad; i++) {
+                orden[i] = i;
+            }
+            Arrays.sort(orden, (a, b) -> Long.compare(datos[a], datos[b]));
+
+            int[] nuevosIds = new int[ids.length];
+            long[] nuevosDatos = new long[datos.length];
+            for (int i = 0; i < cantidad; i++) {
+                nuevosIds[i] = ids[orden[i]];
+                nuevosDatos[i] = datos[orden[i]];
+            }
+            ids = nuevosIds;
+            datos = nuevosDatos;
+        }
+    }
+
+    /**
+     * Posiciones de un pedidos.txt reescrito, en el orden en que se escribieron.
+     */
+    public static final class Reconstruccion {
+
+        private int[] ids = new int[64];
+        private int[] mesas = new int[64];
+        private long[] posiciones = new long[64];
+        private int cantidad = 0;
+        private long largo = 0;
+
+        private Reconstruccion() {
+        }
+
+        /**
+         * Registra una línea escrita en el archivo nuevo.
+         *
+         * @param idPedido ID del pedido (se ignora si no es válido)
+         * @param codigoMesa código de mesa
+         * @param offset posición en bytes donde inicia la línea
+         * @param largoLinea largo en bytes de la línea (sin salto de línea)
+         * @param largoArchivo tamaño del archivo nuevo después de escribir la línea
+         */
+        public void agregar(int idPedido, int codigoMesa, long offset, int largoLinea, long largoArchivo) {
+            largo = largoArchivo;
+            if (idPedido <= 0) {
+                return;
+            }
+            if (cantidad == ids.length) {
+                ids = Arrays.copyOf(ids, cantidad * 2);
+                mesas = Arrays.copyOf(mesas, cantidad * 2);
+                posiciones = Arrays.copyOf(posiciones, cantidad * 2);
+            }
+            ids[cantidad] = idPedido;
+            mesas[cantidad] = codigoMesa;
+            posiciones[cantidad] = empaquetar(offset, largoLinea);
+            cantidad++;
+        }
+    }
+}
@@ -0,0 +1,493 @@
+package Modelo;
+
+import Utils.TokenizadorCampos;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * Libro de movimientos de inventario (append-only).
+ *
+ * Cada cambio de stock se guarda como una línea en "inventario_movimientos.txt":
+ * SEQ|TIEMPO|ID_PRODUCTO|DELTA|TIPO|REFERENCIA
+ *
+ * - SEQ: consecutivo del movimiento (SecuenciaIds).
+ * - TIEMPO: instante en milisegundos (epoch).
+ * - DELTA: cantidad que suma (positiva) o resta (negativa) al stock.
+ * - TIPO: VENTA, REPOSICION o AJUSTE.
+ * - REFERENCIA: texto libre (por ejemplo "PEDIDO 15").
+ *
+ * El stock actual vive en memoria (productosDAO) y products.txt es una foto
+ * (snapshot) de ese stock hasta cierto movimiento. Cada vez que se escribe la
+ * foto se agrega una línea a "inventario_snapshots.txt":
+ * SEQ|TIEMPO|OFFSET_LIBRO|ID=CANT;ID=CANT;...
+ *
+ * Con eso, el stock de un producto en un instante T se obtiene tomando la foto
+ * más cercana anterior a T y reproduciendo solo los movimientos posteriores.
+ *
+ * Varias cajas pueden anexar al mismo libro. Cada append se hace con el
+ * bloqueo del libro (CoordinacionArchivos): antes de escribir se aplican los
+ * movimientos que otra caja agregó después del último conocido (seguir()),
+ * así el stock en memoria y el tamaño del libro cubierto no se saltan nada.
+ */
+public class LibroInventario {
+
+    /**
+     * Tipos de movimiento de inventario.
+     */
+    public enum Tipo {
+        VENTA, REPOSICION, AJUSTE
+    }
+
+    /**
+     * Un movimiento de stock, tal como se guarda en el libro.
+     */
+    public static class Movimiento {
+
+        private final String idProducto;
+        private final int delta;
+        private final Tipo tipo;
+        private final String referencia;
+
+        public Movimiento(String idProducto, int delta, Tipo tipo, String referencia) {
+            this.idProducto = idProducto;
+            this.delta = delta;
+            this.tipo = tipo;
+            this.referencia = (referencia == null) ? "" : referencia;
+        }
+
+        public String getIdProducto() {
+            return idProducto;
+        }
+
+        public int getDelta() {
+            return delta;
+        }
+
+        public Tipo getTipo() {
+            return tipo;
+        }
+
+        public String getReferencia() {
+            return referencia;
+        }
+    }
+
+    /**
+     * Acción a ejecutar por cada movimiento al reproducir el libro.
+     */
+    public interface Reproductor {
+
+        void aplicar(String idProducto, int delta);
+    }
+
+    /**
+     * Valor de seqFoto cuando products.txt no tiene marca del libro.
+     */
+    public static final int SIN_FOTO = -1;
+
+    private static final String HEADER = "SEQ|TIEMPO|ID_PRODUCTO|DELTA|TIPO|REFERENCIA";
+    private static final String HEADER_SNAPSHOTS = "SEQ|TIEMPO|OFFSET_LIBRO|STOCK";
+
+    private static final int COL_SEQ = 0;
+    private static final int COL_TIEMPO = 1;
+    private static final int COL_ID = 2;
+    private static final int COL_DELTA = 3;
+    private static final int COLS_MIN = 6;
+
+    private static final int COL_OFFSET_FOTO = 2;
+    private static final int COL_STOCK_FOTO = 3;
+
+    private final Path archivoLibro;
+    private final Path archivoSnapshots;
+    private final EscritorAnexos escritorLibro;
+    private final EscritorAnexos escritorSnapshots;
+    private final SecuenciaIds secuencia;
+    private final CoordinacionArchivos coordinacion;
+
+    /**
+     * Último SEQ escrito en el libro y tamaño del libro después de escribirlo.
+     */
+    private int ultimoSeq = 0;
+    private long largoLibro = 0;
+
+    /**
+     * @param archivoLibro archivo de movimientos
+     * @param archivoSnapshots archivo con el historial de fotos
+     */
+    public LibroInventario(String archivoLibro, String archivoSnapshots) {
+        this.archivoLibro = Paths.get(archivoLibro);
+        this.archivoSnapshots = Paths.get(archivoSnapshots);
+        this.secuencia = SecuenciaIds.para(archivoLibro, '|');
+        this.escritorLibro = EscritorAnexos.para(archivoLibro);
+        this.escritorSnapshots = EscritorAnexos.para(archivoSnapshots);
+        this.coordinacion = CoordinacionArchivos.para(archivoLibro);
+    }
+
+    /**
+     * Agrega varios movimientos al libro con una sola escritura, confirmada según
+     * la política de fsync de EscritorAnexos.
+     *
+     * El fsync se espera después de soltar el bloqueo del libro. Si quien llama
+     * ya lo tiene tomado (conBloqueo()), el bloqueo es reentrante y el fsync se
+     * haría con él: en ese caso usar escribir() adentro y confirmar() afuera.
+     *
+     * @param movimientos movimientos a registrar
+     * @param ajenos acción por cada movimiento que otra caja agregó antes (ver seguir())
+     * @return true si quedaron guardados
+     */
+    public boolean anexar(List<Movimiento> movimientos, Reproductor ajenos) {
+        return escribir(movimientos, ajenos) && confirmar();
+    }
+
+    /**
+     * Agrega varios movimientos al libro con una sola escritura, sin esperar el
+     * fsync. Se puede llamar con el bloqueo del libro tomado (por ejemplo, para
+     * revisar el stock y escribir la venta sin que otra caja escriba en el medio);
+     * después, sin el bloqueo, se llama a confirmar().
+     *
+     * @param movimientos movimientos a registrar
+     * @param ajenos acción por cada movimiento que otra caja agregó antes (ver seguir())
+     * @return true si quedaron escritos
+     */
+    public boolean escribir(List<Movimiento> movimientos, Reproductor ajenos) {
+        if (movimientos.isEmpty()) {
+            return true;
+        }
+
+        long ahora = System.currentTimeMillis();
+        String salto = System.lineSeparator();
+
+        try {
+            coordinacion.conBloqueo(() -> {
+                synchronized (this) {
+                    seguir(ajenos);
+
+                    StringBuilder sb = new StringBuilder(movimientos.size() * 48);
+                    int seq = 0;
+                    for (Movimiento m : movimientos) {
+                        seq = secuencia.siguiente();
+                        sb.append(seq).append('|')
+                                .append(ahora).append('|')
+                                .append(m.getIdProducto()).append('|')
+                                .append(m.getDelta()).append('|')
+                                .append(m.getTipo()).append('|')
+                                .append(m.getReferencia().replace('|', ' '))
+                                .append(salto);
+                    }
+
+                    byte[] datos = sb.toString().getBytes(StandardCharsets.UTF_8);
+                    long offset = escritorLibro.escribir((HEADER + salto).getBytes(StandardCharsets.UTF_8), datos);
+                    largoLibro = offset + datos.length;
+                    ultimoSeq = seq;
+                }
+            });
+        } catch (IOException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Espera el fsync de lo escrito con escribir() (un fsync puede cubrir las
+     * escrituras de varios hilos). Se llama sin el bloqueo del libro, para que
+     * las demás cajas no esperen el fsync.
+     *
+     * @return true si quedó en disco
+     */
+    public boolean confirmar() {
+        try {
+            escritorLibro.confirmar();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Aplica los movimientos que otra caja agregó al libro después del último
+     * conocido por este proceso.
+     *
+     * @param ajenos acción por cada movimiento nuevo
+     * @return cantidad de movimientos aplicados
+     */
+    public int seguir(Reproductor ajenos) {
+        return coordinacion.conBloqueo(() -> {
+            synchronized (this) {
+                coordinacion.marcarAlDia();
+
+                long largo;
+                try {
+                    largo = Files.size(archivoLibro);
+                } catch (IOException e) {
+                    return 0;
+                }
+                if (largo <= largoLibro) {
+                    return 0;
+                }
+
+                // Todo lo que está después de largoLibro es nuevo para este proceso.
+                int[] aplicados = {0};
+                recorrer(largoLibro, (seq, tiempo, campos, delta) -> {
+                    ajenos.aplicar(campos.texto(COL_ID), delta);
+                    ultimoSeq = Math.max(ultimoSeq, seq);
+                    aplicados[0]++;
+                    return true;
+                });
+                largoLibro = largo;
+                return aplicados[0];
+            }
+        });
+    }
+
+    /**
+     * Hace un trabajo con el bloqueo del libro tomado (entre hilos y entre
+     * cajas), por ejemplo escribir la foto sin que otra caja agregue
+     * movimientos en el medio.
+     *
+     * @return lo que retorna el trabajo
+     */
+    public <T, E extends Exception> T conBloqueo(CoordinacionArchivos.Trabajo<T, E> trabajo) throws E {
+        return coordinacion.conBloqueo(trabajo);
+    }
+
+    /**
+     * Igual que conBloqueo(Trabajo), para un trabajo sin resultado.
+     */
+    public <E extends Exception> void conBloqueo(CoordinacionArchivos.Tarea<E> tarea) throws E {
+        coordinacion.conBloqueo(tarea);
+    }
+
+    /**
+     * true si otra caja agregó movimientos desde la última vez que se siguió el
+     * libro (consulta el disco como mucho cada "pos.coordinacion.ms").
+     */
+    public boolean huboCambioExterno() {
+        return coordinacion.huboCambioExterno();
+    }
+
+    /**
+     * Reproduce los movimientos posteriores a una foto y deja el libro listo para anexar.
+     * Se llama con el bloqueo del libro tomado (ver conBloqueo()), así ninguna otra
+     * caja agrega movimientos mientras se recorre.
+     *
+     * @param seqFoto último SEQ incluido en la foto (products.txt), o SIN_FOTO si
+     *        products.txt no indica hasta dónde llega: en ese caso se toma como
+     *        vigente y no se reproduce nada
+     * @param offsetFoto tamaño del libro cuando se tomó la foto
+     * @param reproductor acción por cada movimiento posterior
+     */
+    public synchronized void reproducirDesde(int seqFoto, long offsetFoto, Reproductor reproductor) {
+        coordinacion.marcarAlDia();
+        boolean sinFoto = (seqFoto == SIN_FOTO);
+        ultimoSeq = Math.max(seqFoto, 0);
+        largoLibro = 0;
+
+        long largo;
+        try {
+            largo = Files.size(archivoLibro);
+        } catch (IOException e) {
+            return;
+        }
+
+        // Sin foto, o si el libro es más corto que la foto (se reemplazó), se recorre completo.
+        long desde = (!sinFoto && offsetFoto <= largo) ? offsetFoto : 0;
+
+        recorrer(desde, (seq, tiempo, campos, delta) -> {
+            if (!sinFoto && seq > seqFoto) {
+                reproductor.aplicar(campos.texto(COL_ID), delta);
+            }
+            ultimoSeq = Math.max(ultimoSeq, seq);
+            return true;
+        });
+        largoLibro = largo;
+    }
+
+    /**
+     * Registra una foto del stock, que cubre todos los movimientos escritos hasta ahora.
+     *
+     * @param stock ID de producto -> cantidad
+     */
+    public synchronized void registrarSnapshot(Map<String, Integer> stock) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(ultimoSeq).append('|')
+                .append(System.currentTimeMillis()).append('|')
+                .append(largoLibro).append('|');
+
+        boolean primero = true;
+        for (Map.Entry<String, Integer> e : stock.entrySet()) {
+            if (!primero) {
+                sb.append(';');
+            }
+            sb.append(e.getKey()).append('=').append(e.getValue());
+            primero = false;
+        }
+        sb.append(System.lineSeparator());
+
+        try {
+            escritorSnapshots.anexar((HEADER_SNAPSHOTS + System.lineSeparator()).getBytes(StandardCharsets.UTF_8),
+                    sb.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // La historia sigue completa en el libro; solo se pierde este punto de partida.
+        }
+    }
+
+    /**
+     * Último SEQ escrito (o reproducido) en el libro.
+     */
+    public synchronized int getUltimoSeq() {
+        return ultimoSeq;
+    }
+
+    /**
+     * Tamaño del libro que cubren los movimientos conocidos.
+     */
+    public synchronized long getLargoLibro() {
+        return largoLibro;
+    }
+
+    /**
+     * Calcula el stock que tenía un producto en un instante dado: toma la foto más
+     * cercana anterior (o igual) a ese instante y suma los movimientos posteriores
+     * hasta el instante.
+     *
+     * @param idProducto ID del producto (ignorando mayúsculas/minúsculas)
+     * @param instante instante en milisegundos (epoch)
+     * @return stock en ese instante, o null si es anterior a la primera foto
+     */
+    public synchronized Integer stockEn(String idProducto, long instante) {
+        if (idProducto == null) {
+            return null;
+        }
+        String buscado = idProducto.trim();
+
+        String[] foto = snapshotAnteriorA(instante);
+        if (foto == null) {
+            return null;
+        }
+
+        int seqFoto = Integer.parseInt(foto[COL_SEQ].trim());
+        long offsetFoto = Long.parseLong(foto[COL_OFFSET_FOTO].trim());
+
+        // Pares "ID=stock;..." de la foto, sin crear un String por par.
+        String stockFoto = foto[COL_STOCK_FOTO];
+        TokenizadorCampos pares = new TokenizadorCampos(';');
+        TokenizadorCampos par = new TokenizadorCampos('=', 1);
+        int base = 0;
+        for (int i = 0, n = pares.separar(stockFoto); i < n; i++) {
+            int igual = stockFoto.lastIndexOf('=', pares.fin(i) - 1);
+            if (igual <= pares.inicio(i)) {
+                continue;
+            }
+            par.separar(stockFoto, pares.inicio(i), igual);
+            if (par.esIgualIgnorandoMayusculas(0, buscado)) {
+                par.separar(stockFoto, igual + 1, pares.fin(i));
+                base = par.entero(0, 0);
+                break;
+            }
+        }
+
+        int[] stock = {base};
+        recorrer(offsetFoto, (seq, tiempo, campos, delta) -> {
+            if (tiempo > instante) {
+                return false;
+            }
+            if (seq > seqFoto && campos.esIgualIgnorandoMayusculas(COL_ID, buscado)) {
+                stock[0] += delta;
+            }
+            return true;
+        });
+        return stock[0];
+    }
+
+    /**
+     * Busca la última foto con TIEMPO menor o igual al instante.
+     */
+    private String[] snapshotAnteriorA(long instante) {
+        String[] elegida = null;
+
+        try (BufferedReader br = Files.newBufferedReader(archivoSnapshots, StandardCharsets.UTF_8)) {
+            TokenizadorCampos t = new TokenizadorCampos('|');
+            String linea;
+            br.readLine(); // header
+
+            while ((linea = br.readLine()) != null) {
+                if (t.separar(linea) < 4) {
+                    continue;
+                }
+                long tiempo = t.largo(COL_TIEMPO, Long.MIN_VALUE);
+                if (tiempo == Long.MIN_VALUE) {
+                    continue;
+                }
+                if (tiempo > instante) {
+                    break;
+                }
+                if (esEntero(t.largo(COL_SEQ, Long.MIN_VALUE))
+                        && t.largo(COL_OFFSET_FOTO, Long.MIN_VALUE) != Long.MIN_VALUE) {
+                    // Solo la foto elegida se convierte a String[].
+                    elegida = t.textos();
+                }
+            }
+        } catch (IOException e) {
+            return elegida;
+        }
+        return elegida;
+    }
+
+    private static boolean esEntero(long valor) {
+        return valor >= Integer.MIN_VALUE && valor <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Acción por cada movimiento leído; retorna false para detener el recorrido.
+     * Recibe la línea ya separada: el ID se lee de COL_ID solo si hace falta.
+     */
+    private interface Visitante {
+
+        boolean visitar(int seq, long tiempo, TokenizadorCampos campos, int delta);
+    }
+
+    /**
+     * Recorre los movimientos del libro desde el offset indicado (inicio de una línea).
+     */
+    private void recorrer(long desde, Visitante visitante) {
+        try (FileChannel ch = FileChannel.open(archivoLibro, StandardOpenOption.READ)) {
+            ch.position(Math.min(desde, ch.size()));
+            InputStream in = Channels.newInputStream(ch);
+            BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+
+            TokenizadorCampos t = new TokenizadorCampos('|');
+            String linea;
+            while ((linea = br.readLine()) != null) {
+                if (t.separar(linea) < COLS_MIN) {
+                    continue;
+                }
+                long seq = t.largo(COL_SEQ, Long.MIN_VALUE);
+                long tiempo = t.largo(COL_TIEMPO, Long.MIN_VALUE);
+                long delta = t.largo(COL_DELTA, Long.MIN_VALUE);
+                if (!esEntero(seq) || tiempo == Long.MIN_VALUE || !esEntero(delta)) {
+                    // Encabezado o línea dañada.
+                    continue;
+                }
+                if (!visitante.visitar((int) seq, tiempo, t, (int) delta)) {
+                    return;
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // Todavía no hay movimientos.
+        } catch (IOException e) {
+        }
+    }
+}
@@ -1,13 +1,12 @@
 package Modelo;
 
-import java.io.*;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  *
- * DAO para guardar y consultar pagos asociados a una factura en un archivo de texto (pagos_factura.txt).
- * Cada pago se almacena en una línea con separador '|', y el archivo incluye un encabezado.
+ * DAO para guardar y consultar pagos asociados a una factura en archivos de texto,
+ * una partición por día (pagos_factura/AAAA-MM-DD.log, ver RegistroParticionado).
+ * Cada pago se almacena en una línea con separador '|', y cada partición incluye un encabezado.
  *
  * @author Jefferson
  */
@@ -16,92 +15,60 @@ public class PagosFacturaDAO {
     private static final String ARCHIVO = "pagos_factura.txt";
     private static final String HEADER = "ID_FACTURA|METODO|MONTO|REFERENCIA|CEDULA_PAGADOR";
 
-    /**
-     * Constructor: asegura que el archivo exista (y crea el header si es nuevo).
-     */
-    public PagosFacturaDAO() {
-        crearArchivoSiNoExiste();
-    }
-
-    /**
-     * Crea el archivo si no existe y escribe el encabezado.
-     */
-    private void crearArchivoSiNoExiste() {
-        File file = new File(ARCHIVO);
-        if (!file.exists()) {
-            try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))) {
-                bw.write(HEADER);
-                bw.newLine();
-            } catch (IOException e) {
-
-            }
-        }
-    }
+    private final RegistroParticionado registro = RegistroParticionado.para(ARCHIVO);
+    private final PersistenciaAsincrona persistencia = PersistenciaAsincrona.getInstancia();
 
     /**
-     * Guarda un pago en el archivo (append).
+     * Guarda un pago en la partición del día (append).
      * Normaliza Strings null a "" para mantener el formato del registro.
      *
      * @return true si se guardó correctamente, false si falló la escritura.
      */
     public boolean guardarPago(int idFactura, String metodo, int monto, String referencia, String cedulaPagador) {
-        crearArchivoSiNoExiste();
+        persistencia.esperar(ARCHIVO);
+        return anexarPago(registro.particionActual(), lineaPago(idFactura, metodo, monto, referencia, cedulaPagador), true);
+    }
 
+    /**
+     * Línea de un pago en el formato del archivo (sin salto de línea).
+     * Normaliza Strings null a "" para mantener el formato del registro.
+     */
+    static String lineaPago(int idFactura, String metodo, int monto, String referencia, String cedulaPagador) {
         if (metodo == null) metodo = "";
         if (referencia == null) referencia = "";
         if (cedulaPagador == null) cedulaPagador = "";
 
-        String linea = idFactura + "|"
+        return idFactura + "|"
                 + metodo + "|"
                 + monto + "|"
                 + referencia + "|"
                 + cedulaPagador;
+    }
 
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(ARCHIVO, true))) {
-            bw.write(linea);
-            bw.newLine();
-            return true;
-        } catch (IOException e) {
+    /**
+     * Partición donde se guardan los pagos de hoy.
+     */
+    String particionActual() {
+        return registro.particionActual();
+    }
 
-            return false;
-        }
+    /**
+     * Agrega una línea de pago a una partición.
+     *
+     * @param confirmar false si la línea ya es durable por otro medio (DiarioCobros)
+     * @return true si se escribió
+     */
+    boolean anexarPago(String particion, String linea, boolean confirmar) {
+        return AlmacenPagos.para(particion, HEADER, 5).agregar(linea, confirmar);
     }
 
     /**
-     * Lee el archivo y retorna todos los pagos que pertenezcan al ID de factura indicado.
-     * Omite el encabezado y agrega cada línea encontrada como String[] (campos separados).
+     * Retorna todos los pagos que pertenezcan al ID de factura indicado, como String[] (campos separados).
+     * Se responde desde los almacenes en memoria agrupados por factura (AlmacenPagos),
+     * solo en las particiones cuyo rango de facturas la contiene, sin leer los archivos.
      */
     public List<String[]> listarPagosPorFactura(int idFacturaBuscada) {
-        crearArchivoSiNoExiste();
-
-        List<String[]> res = new ArrayList<>();
-        File f = new File(ARCHIVO);
-        if (!f.exists()) return res;
-
-        try (BufferedReader br = new BufferedReader(new FileReader(f))) {
-            String linea;
-
-            br.readLine();
-
-            while ((linea = br.readLine()) != null) {
-                linea = linea.trim();
-                if (linea.isEmpty()) continue;
-
-                String[] partes = linea.split("\\|", -1);
-
-                if (partes.length >= 5) {
-                    try {
-                        int id = Integer.parseInt(partes[0].trim());
-                        if (id == idFacturaBuscada) {
-                            res.add(partes);
-                        }
-                    } catch (NumberFormatException ignored) {}
-                }
-            }
-        } catch (IOException e) {
-
-        }
-
-        return res;
+        persistencia.esperar(ARCHIVO);
+        return AlmacenPagos.listarPorFactura(registro, HEADER, 5, idFacturaBuscada);
     }
 }
\ No newline at end of file
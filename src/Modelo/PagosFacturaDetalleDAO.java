@@ -1,13 +1,12 @@
 package Modelo;
 
-import java.io.*;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  *
  * DAO que guarda y consulta el detalle de pagos por factura (por producto)
- * en un archivo de texto plano: pagos_factura_detalle.txt.
+ * en archivos de texto plano, una partición por día
+ * (pagos_factura_detalle/AAAA-MM-DD.log, ver RegistroParticionado).
  *
  * Formato:
  * ID_FACTURA|ID_PEDIDO|METODO|REFERENCIA|CEDULA_PAGADOR|PRODUCTO|CANTIDAD|PRECIO|TOTAL_LINEA
@@ -20,92 +19,66 @@ public class PagosFacturaDetalleDAO {
     private static final String HEADER =
             "ID_FACTURA|ID_PEDIDO|METODO|REFERENCIA|CEDULA_PAGADOR|PRODUCTO|CANTIDAD|PRECIO|TOTAL_LINEA";
 
-    /**
-     * Constructor: asegura que el archivo exista con su encabezado.
-     */
-    public PagosFacturaDetalleDAO() {
-        crearArchivoSiNoExiste();
-    }
-
-    /**
-     * Crea el archivo si no existe y escribe el encabezado en la primera línea.
-     */
-    private void crearArchivoSiNoExiste() {
-        File file = new File(ARCHIVO);
-        if (!file.exists()) {
-            try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))) {
-                bw.write(HEADER);
-                bw.newLine();
-            } catch (IOException e) {
-
-            }
-        }
-    }
+    private final RegistroParticionado registro = RegistroParticionado.para(ARCHIVO);
+    private final PersistenciaAsincrona persistencia = PersistenciaAsincrona.getInstancia();
 
     /**
-     * Guarda un registro de detalle (por producto) al final del archivo.
+     * Guarda un registro de detalle (por producto) al final de la partición del día.
      * Normaliza Strings null a "" y escribe en modo append.
      *
      * @return true si se guardó, false si ocurrió un error de escritura.
      */
     public boolean guardarDetalle(int idFactura, int idPedido, String metodo, String referencia,
                                   String cedulaPagador, String producto, int cantidad, int precio, int totalLinea) {
-        crearArchivoSiNoExiste();
+        persistencia.esperar(ARCHIVO);
+        return anexarDetalle(registro.particionActual(), lineaDetalle(idFactura, idPedido, metodo, referencia,
+                cedulaPagador, producto, cantidad, precio, totalLinea), true);
+    }
 
+    /**
+     * Línea de detalle en el formato del archivo (sin salto de línea).
+     * Normaliza Strings null a "".
+     */
+    static String lineaDetalle(int idFactura, int idPedido, String metodo, String referencia,
+                               String cedulaPagador, String producto, int cantidad, int precio, int totalLinea) {
         if (metodo == null) metodo = "";
         if (referencia == null) referencia = "";
         if (cedulaPagador == null) cedulaPagador = "";
         if (producto == null) producto = "";
 
-        String linea = idFactura + "|" + idPedido + "|"
+        return idFactura + "|" + idPedido + "|"
                 + metodo + "|" + referencia + "|"
                 + cedulaPagador + "|"
                 + producto + "|"
                 + cantidad + "|"
                 + precio + "|"
                 + totalLinea;
+    }
 
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(ARCHIVO, true))) {
-            bw.write(linea);
-            bw.newLine();
-            return true;
-        } catch (IOException e) {
+    /**
+     * Partición donde se guarda el detalle de hoy.
+     */
+    String particionActual() {
+        return registro.particionActual();
+    }
 
-            return false;
-        }
+    /**
+     * Agrega una línea de detalle a una partición.
+     *
+     * @param confirmar false si la línea ya es durable por otro medio (DiarioCobros)
+     * @return true si se escribió
+     */
+    boolean anexarDetalle(String particion, String linea, boolean confirmar) {
+        return AlmacenPagos.para(particion, HEADER, 9).agregar(linea, confirmar);
     }
 
     /**
-     * Lee el archivo y devuelve todas las filas cuyo ID_FACTURA coincida.
-     * Omite el encabezado y retorna cada línea separada por campos (String[]).
+     * Devuelve todas las filas cuyo ID_FACTURA coincida, separadas por campos (String[]).
+     * Se responde desde los almacenes en memoria agrupados por factura (AlmacenPagos),
+     * solo en las particiones cuyo rango de facturas la contiene, sin leer los archivos.
      */
     public List<String[]> listarDetallePorFactura(int idFacturaBuscada) {
-        crearArchivoSiNoExiste();
-
-        List<String[]> res = new ArrayList<>();
-        File f = new File(ARCHIVO);
-        if (!f.exists()) return res;
-
-        try (BufferedReader br = new BufferedReader(new FileReader(f))) {
-            String linea;
-            br.readLine();
-
-            while ((linea = br.readLine()) != null) {
-                linea = linea.trim();
-                if (linea.isEmpty()) continue;
-
-                String[] partes = linea.split("\\|", -1);
-                if (partes.length >= 9) {
-                    try {
-                        int idFactura = Integer.parseInt(partes[0].trim());
-                        if (idFactura == idFacturaBuscada) res.add(partes);
-                    } catch (NumberFormatException ignored) {}
-                }
-            }
-        } catch (IOException e) {
-
-        }
-
-        return res;
+        persistencia.esperar(ARCHIVO);
+        return AlmacenPagos.listarPorFactura(registro, HEADER, 9, idFacturaBuscada);
     }
 }
\ No newline at end of file
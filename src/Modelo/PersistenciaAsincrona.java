@@ -0,0 +1,299 @@
+package Modelo;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * Hilo único de escritura a disco para los DAOs.
+ *
+ * Funcionamiento:
+ * - Los DAOs envían sus escrituras con enviar(archivo, trabajo) y reciben un
+ *   CompletableFuture con el resultado, así el hilo de Swing no espera al disco.
+ * - Un solo hilo (daemon) toma las escrituras de una cola acotada y las ejecuta
+ *   en el orden en que llegaron; si la cola está llena, enviar() espera a que
+ *   haya espacio.
+ * - Lecturas después de una escritura: esperar(archivo) bloquea solo si ese
+ *   archivo tiene escrituras pendientes (normalmente ya terminaron). Los DAOs
+ *   que guardan el estado en memoria (clientes, productos) lo actualizan antes
+ *   de enviar la escritura y no necesitan esperar.
+ * - Al terminar cada lote se hace un solo force() por archivo escrito
+ *   (EscritorAnexos.confirmarLote) y recién entonces se completan los
+ *   resultados del lote. Si el force() de un archivo falla, las escrituras
+ *   que lo usaron no quedaron durables: si su resultado es Boolean terminan
+ *   con false (como cuando el DAO no pudo escribir); si no, con la excepción.
+ * - Al cerrar la aplicación (shutdown hook) se vacía la cola antes de salir.
+ *
+ * Si enviar() se llama desde el mismo hilo de escritura, el trabajo se ejecuta
+ * en el momento (si se encolara, nunca se llegaría a ejecutar antes de esperarlo).
+ */
+public class PersistenciaAsincrona {
+
+    private static final int CAPACIDAD = 1024;
+
+    /**
+     * Tiempo máximo que el cierre espera a que se vacíe la cola.
+     */
+    private static final long ESPERA_CIERRE_MS = 10_000;
+
+    private static final PersistenciaAsincrona INSTANCIA = new PersistenciaAsincrona();
+
+    private final BlockingQueue<Tarea<?>> cola = new ArrayBlockingQueue<>(CAPACIDAD);
+
+    /**
+     * Última escritura enviada por archivo (para esperar(archivo)).
+     */
+    private final Map<Path, CompletableFuture<?>> ultimaPorArchivo = new ConcurrentHashMap<>();
+
+    private final Thread escritor;
+    private volatile boolean cerrada = false;
+
+    /**
+     * Escritura que está ejecutando el hilo de escritura (solo la usa ese hilo).
+     */
+    private Tarea<?> enCurso;
+
+    /**
+     * Retorna el escritor compartido por todos los DAOs.
+     */
+    public static PersistenciaAsincrona getInstancia() {
+        return INSTANCIA;
+    }
+
+    private PersistenciaAsincrona() {
+        escritor = new Thread(this::ejecutar, "persistencia");
+        escritor.setDaemon(true);
+        escritor.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::cerrar, "persistencia-cierre"));
+    }
+
+    /**
+     * Encola una escritura sobre un archivo.
+     *
+     * @param archivo archivo que modifica el trabajo (para esperar(archivo))
+     * @param trabajo escritura a ejecutar en el hilo de persistencia
+     * @return resultado del trabajo; termina con excepción si el trabajo falla
+     */
+    public <T> CompletableFuture<T> enviar(String archivo, Callable<T> trabajo) {
+        Tarea<T> tarea = new Tarea<>(trabajo);
+
+        if (Thread.currentThread() == escritor) {
+            // Forma parte del lote en curso: se confirma con él (sus archivos
+            // quedan anotados en la escritura que la envió).
+            ejecutar(tarea);
+            tarea.completar(Collections.emptyMap());
+            return tarea.resultado;
+        }
+
+        Path clave = clave(archivo);
+        boolean encolada = false;
+
+        // Registrar y encolar juntos: el orden de "ultimaPorArchivo" es el de la cola.
+        synchronized (this) {
+            if (!cerrada) {
+                ultimaPorArchivo.put(clave, tarea.resultado);
+                try {
+                    cola.put(tarea);
+                    encolada = true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        if (!encolada) {
+            // Cerrando (o interrumpido): se escribe aquí, después de lo que ya estaba en cola.
+            esperarEscritor();
+            tarea.ejecutar();
+            tarea.completar(Collections.emptyMap());
+        }
+
+        tarea.resultado.whenComplete((r, ex) -> ultimaPorArchivo.remove(clave, tarea.resultado));
+        return tarea.resultado;
+    }
+
+    /**
+     * Anota que la escritura en curso dejó datos en un archivo que se fuerza al
+     * terminar el lote. Lo llama EscritorAnexos.confirmar() en el hilo de escritura.
+     */
+    void anotarEscritor(EscritorAnexos e) {
+        if (Thread.currentThread() == escritor && enCurso != null) {
+            enCurso.escritores.add(e);
+        }
+    }
+
+    /**
+     * true si el hilo actual es el hilo de escritura.
+     */
+    public boolean esHiloEscritor() {
+        return Thread.currentThread() == escritor;
+    }
+
+    /**
+     * Espera a que terminen las escrituras ya enviadas sobre un archivo.
+     * Retorna de inmediato si no hay pendientes o si se llama desde el hilo de escritura.
+     *
+     * @param archivo archivo a consultar
+     */
+    public void esperar(String archivo) {
+        if (Thread.currentThread() == escritor) {
+            return;
+        }
+
+        CompletableFuture<?> ultima = ultimaPorArchivo.get(clave(archivo));
+        if (ultima != null) {
+            try {
+                ultima.join();
+            } catch (RuntimeException e) {
+                // La falla ya se informó a quien envió la escritura.
+            }
+        }
+    }
+
+    /**
+     * Deja de aceptar escrituras en cola y espera a que se vacíe.
+     * Lo ejecuta el shutdown hook al cerrar la aplicación.
+     */
+    public void cerrar() {
+        synchronized (this) {
+            cerrada = true;
+        }
+        esperarEscritor();
+        EscritorAnexos.cerrarTodos();
+    }
+
+    private void esperarEscritor() {
+        if (Thread.currentThread() == escritor) {
+            return;
+        }
+        try {
+            escritor.join(ESPERA_CIERRE_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Ciclo del hilo de escritura: toma todo lo que haya en cola y lo ejecuta en orden.
+     */
+    private void ejecutar() {
+        List<Tarea<?>> lote = new ArrayList<>();
+
+        while (true) {
+            Tarea<?> primera;
+            try {
+                primera = cola.poll(200, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                primera = null;
+            }
+
+            if (primera == null) {
+                if (cerrada && cola.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+
+            lote.add(primera);
+            cola.drainTo(lote);
+            for (Tarea<?> t : lote) {
+                ejecutar(t);
+            }
+            Map<EscritorAnexos, IOException> fallidos = EscritorAnexos.confirmarLote();
+            for (Tarea<?> t : lote) {
+                t.completar(fallidos);
+            }
+            lote.clear();
+        }
+    }
+
+    /**
+     * Ejecuta una escritura en el hilo de escritura, anotando los archivos que
+     * usa. Si se envió desde otra escritura, sus archivos son también de esa.
+     */
+    private void ejecutar(Tarea<?> tarea) {
+        Tarea<?> anterior = enCurso;
+        enCurso = tarea;
+        try {
+            tarea.ejecutar();
+        } finally {
+            enCurso = anterior;
+            if (anterior != null) {
+                anterior.escritores.addAll(tarea.escritores);
+            }
+        }
+    }
+
+    private static Path clave(String archivo) {
+        return Paths.get(archivo).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Una escritura encolada y su resultado.
+     */
+    private static final class Tarea<T> {
+
+        private final Callable<T> trabajo;
+        private final CompletableFuture<T> resultado = new CompletableFuture<>();
+
+        /**
+         * Archivos con datos de esta escritura que se fuerzan al terminar el lote.
+         */
+        private final Set<EscritorAnexos> escritores = new HashSet<>(2);
+
+        private T valor;
+        private Throwable error;
+
+        Tarea(Callable<T> trabajo) {
+            this.trabajo = trabajo;
+        }
+
+        void ejecutar() {
+            try {
+                valor = trabajo.call();
+            } catch (Throwable e) {
+                error = e;
+            }
+        }
+
+        /**
+         * @param sinSincronizar archivos cuyo force() del lote falló
+         */
+        @SuppressWarnings("unchecked")
+        void completar(Map<EscritorAnexos, IOException> sinSincronizar) {
+            if (error == null) {
+                for (EscritorAnexos e : escritores) {
+                    IOException falla = sinSincronizar.get(e);
+                    if (falla == null) {
+                        continue;
+                    }
+                    if (valor instanceof Boolean) {
+                        resultado.complete((T) Boolean.FALSE);
+                        return;
+                    }
+                    error = falla;
+                    break;
+                }
+            }
+
+            if (error != null) {
+                resultado.completeExceptionally(error);
+            } else {
+                resultado.complete(valor);
+            }
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package Modelo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * Archivo de páginas de tamaño fijo con buffer pool y write-ahead log, la base
+ * de AlmacenPaginado.
+ *
+ * Funcionamiento:
+ * - El archivo de datos (".db") es una sucesión de páginas de PAGINA bytes;
+ *   la página N empieza en N * PAGINA.
+ * - Buffer pool: las páginas leídas quedan en memoria (LRU, hasta
+ *   "pos.almacen.paginas" páginas, 256 por defecto).
+ * - Transacción: modificar() y nueva() trabajan sobre copias (páginas sucias)
+ *   que no se escriben hasta confirmar(); abortar() las descarta.
+ * - confirmar() agrega al log (".wal") la imagen de cada página sucia y un
+ *   registro de fin con la cantidad de páginas y el CRC32, hace force() del
+ *   log y recién después escribe las páginas en el archivo de datos (sin
+ *   force). Cuando el log pasa "pos.almacen.wal.bytes" (4 MB por defecto) se
+ *   hace un checkpoint: force() de los datos y el log vuelve a cero.
+ * - Recuperación: al abrir (y cuando otra caja confirmó) se vuelven a escribir
+ *   las páginas de las transacciones completas del log; una transacción a
+ *   medio escribir (caída durante confirmar) se descarta y se corta del log.
+ *
+ * Con varias cajas: todo se hace con el bloqueo del almacén tomado. ponerAlDia()
+ * saca del pool solo las páginas que otra caja escribió desde la última vez
+ * (las que aparecen en el log); si hubo un checkpoint en el medio (la
+ * generación cambió), vacía el pool.
+ *
+ * No es thread-safe: lo usa AlmacenPaginado con el bloqueo tomado.
+ */
+class PoolPaginas {
+
+    /**
+     * Tamaño de página en bytes.
+     */
+    static final int PAGINA = 4096;
+
+    private static final int CAPACIDAD = Math.max(16, Integer.getInteger("pos.almacen.paginas", 256));
+    private static final long LIMITE_WAL = Math.max(PAGINA, Long.getLong("pos.almacen.wal.bytes", 4L << 20));
+
+    /**
+     * Marca de fin de transacción en el log (en lugar de un número de página).
+     */
+    private static final int FIN_TRANSACCION = -1;
+
+    private final Path archivo;
+    private final Path archivoLog;
+    private final CoordinacionArchivos coordinacion;
+
+    private FileChannel datos;
+    private FileChannel log;
+
+    private final LinkedHashMap<Integer, byte[]> pool = new LinkedHashMap<Integer, byte[]>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> e) {
+            return size() > CAPACIDAD;
+        }
+    };
+
+    /**
+     * Páginas sucias de la transacción en curso.
+     */
+    private final TreeMap<Integer, byte[]> sucias = new TreeMap<>();
+
+    private int cantidad = 0;
+    private int cantidadConfirmada = 0;
+
+    /**
+     * Hasta dónde del log ya está aplicado (y visto) por esta caja, y generación
+     * del log a la que corresponde.
+     */
+    private long logAplicado = 0;
+    private long generacionLog = 0;
+
+    /**
+     * true si una transacción falló durante confirmar(): los datos pueden no
+     * tener lo que ya está en el log.
+     */
+    private boolean recuperacionPendiente = false;
+    private boolean confirmando = false;
+
+    private long aciertos = 0;
+    private long fallos = 0;
+
+    PoolPaginas(Path archivo, Path archivoLog, CoordinacionArchivos coordinacion) {
+        this.archivo = archivo;
+        this.archivoLog = archivoLog;
+        this.coordinacion = coordinacion;
+    }
+
+    /**
+     * Abre los archivos y aplica el log pendiente (con el bloqueo tomado).
+     */
+    void abrir() throws IOException {
+        if (datos == null) {
+            datos = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            log = FileChannel.open(archivoLog, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        coordinacion.marcarAlDia();
+
+        recuperar(0);
+        if (log.size() > 0) {
+            checkpoint();
+        }
+        generacionLog = coordinacion.generacion(0);
+    }
+
+    /**
+     * Cantidad de páginas (incluidas las nuevas de la transacción en curso).
+     */
+    int cantidad() {
+        return cantidad;
+    }
+
+    /**
+     * Con el bloqueo tomado: si otra caja confirmó transacciones, aplica su
+     * parte del log y saca del pool las páginas que cambiaron.
+     *
+     * @return true si había cambios de otra caja
+     */
+    boolean ponerAlDia() throws IOException {
+        if (!recuperacionPendiente && !coordinacion.huboCambioExternoAhora()) {
+            return false;
+        }
+        coordinacion.marcarAlDia();
+
+        long generacion = coordinacion.generacion(0);
+        if (recuperacionPendiente || generacion != generacionLog || logAplicado > log.size()) {
+            // Hubo un checkpoint: no se sabe qué páginas cambiaron antes.
+            pool.clear();
+            recuperar(0);
+            recuperacionPendiente = false;
+        } else {
+            for (int num : recuperar(logAplicado)) {
+                pool.remove(num);
+            }
+        }
+        generacionLog = generacion;
+        return true;
+    }
+
+    void iniciar() {
+        sucias.clear();
+        cantidadConfirmada = cantidad;
+    }
+
+    /**
+     * Página para leer (no se debe modificar el arreglo retornado).
+     */
+    byte[] leer(int num) throws IOException {
+        byte[] p = sucias.get(num);
+        if (p != null) {
+            return p;
+        }
+        p = pool.get(num);
+        if (p != null) {
+            aciertos++;
+            return p;
+        }
+
+        fallos++;
+        p = new byte[PAGINA];
+        leerCompleto(datos, ByteBuffer.wrap(p), (long) num * PAGINA);
+        pool.put(num, p);
+        return p;
+    }
+
+    /**
+     * Copia modificable de una página, dentro de la transacción en curso.
+     */
+    byte[] modificar(int num) throws IOException {
+        byte[] p = sucias.get(num);
+        if (p == null) {
+            p = leer(num).clone();
+            sucias.put(num, p);
+        }
+        return p;
+    }
+
+    /**
+     * Agrega una página vacía al final, dentro de la transacción en curso.
+     *
+     * @return número de la página
+     */
+    int nueva() {
+        int num = cantidad++;
+        sucias.put(num, new byte[PAGINA]);
+        return num;
+    }
+
+    /**
+     * Hace durable la transacción (log + force) y escribe sus páginas.
+     */
+    void confirmar() throws IOException {
+        if (sucias.isEmpty()) {
+            return;
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(sucias.size() * (4 + PAGINA) + 16);
+        for (Map.Entry<Integer, byte[]> e : sucias.entrySet()) {
+            buf.putInt(e.getKey()).put(e.getValue());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putInt(FIN_TRANSACCION).putInt(sucias.size()).putLong(crc.getValue());
+        buf.flip();
+
+        confirmando = true;
+        long pos = log.size();
+        escribirCompleto(log, buf, pos);
+        log.force(false);
+        logAplicado = pos + buf.limit();
+
+        for (Map.Entry<Integer, byte[]> e : sucias.entrySet()) {
+            escribirCompleto(datos, ByteBuffer.wrap(e.getValue()), (long) e.getKey() * PAGINA);
+            pool.put(e.getKey(), e.getValue());
+        }
+        sucias.clear();
+        cantidadConfirmada = cantidad;
+        confirmando = false;
+        coordinacion.publicarCambio();
+
+        if (logAplicado > LIMITE_WAL) {
+            checkpoint();
+        }
+    }
+
+    void abortar() {
+        if (confirmando) {
+            // Falló a mitad de confirmar(): el pool puede tener páginas que los datos no.
+            confirmando = false;
+            pool.clear();
+            recuperacionPendiente = true;
+        }
+        sucias.clear();
+        cantidad = cantidadConfirmada;
+    }
+
+    /**
+     * Aciertos y fallos del buffer pool (para diagnóstico).
+     */
+    String estadisticas() {
+        long total = aciertos + fallos;
+        return String.format("paginas=%d pool=%d aciertos=%d fallos=%d (%.1f%%)",
+                cantidad, pool.size(), aciertos, fallos, total == 0 ? 0.0 : 100.0 * aciertos / total);
+    }
+
+    /**
+     * Pasa todo el log a disco: force() de los datos y el log vuelve a cero.
+     */
+    private void checkpoint() throws IOException {
+        datos.force(true);
+        log.truncate(0);
+        log.force(true);
+        coordinacion.publicarReemplazo();
+        generacionLog = coordinacion.generacion(0);
+        logAplicado = 0;
+    }
+
+    /**
+     * Vuelve a escribir en los datos las transacciones completas del log desde
+     * una posición. Corta del log lo que quede a medio escribir.
+     *
+     * @return páginas escritas
+     */
+    private Set<Integer> recuperar(long desde) throws IOException {
+        Set<Integer> aplicadas = new HashSet<>();
+        long largo = log.size();
+        long pos = desde;
+        long fin = desde;
+
+        ByteBuffer num = ByteBuffer.allocate(4);
+        ByteBuffer trailer = ByteBuffer.allocate(12);
+        Map<Integer, byte[]> transaccion = new LinkedHashMap<>();
+        CRC32 crc = new CRC32();
+
+        while (pos + 4 <= largo) {
+            num.clear();
+            leerCompleto(log, num, pos);
+            int n = num.getInt(0);
+            pos += 4;
+
+            if (n == FIN_TRANSACCION) {
+                if (pos + 12 > largo) {
+                    break;
+                }
+                trailer.clear();
+                leerCompleto(log, trailer, pos);
+                pos += 12;
+                if (trailer.getInt(0) != transaccion.size() || trailer.getLong(4) != crc.getValue()) {
+                    break;
+                }
+
+                for (Map.Entry<Integer, byte[]> e : transaccion.entrySet()) {
+                    escribirCompleto(datos, ByteBuffer.wrap(e.getValue()), (long) e.getKey() * PAGINA);
+                    aplicadas.add(e.getKey());
+                }
+                transaccion.clear();
+                crc.reset();
+                fin = pos;
+                continue;
+            }
+
+            if (n < 0 || pos + PAGINA > largo) {
+                break;
+            }
+            byte[] p = new byte[PAGINA];
+            leerCompleto(log, ByteBuffer.wrap(p), pos);
+            pos += PAGINA;
+            crc.update(num.array(), 0, 4);
+            crc.update(p);
+            transaccion.put(n, p);
+        }
+
+        if (fin < largo) {
+            // Transacción incompleta de una caja que se cayó durante confirmar().
+            log.truncate(fin);
+        }
+        logAplicado = fin;
+        cantidad = cantidadConfirmada = (int) ((datos.size() + PAGINA - 1) / PAGINA);
+        return aplicadas;
+    }
+
+    private static void leerCompleto(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, pos + buf.position());
+            if (n < 0) {
+                // Más allá del final: el resto de la página queda en cero.
+                Arrays.fill(buf.array(), buf.position(), buf.limit(), (byte) 0);
+                buf.position(buf.limit());
+                return;
+            }
+        }
+    }
+
+    private static void escribirCompleto(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        int inicio = buf.position();
+        while (buf.hasRemaining()) {
+            ch.write(buf, pos + buf.position() - inicio);
+        }
+    }
+}
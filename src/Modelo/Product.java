@@ -1,12 +1,13 @@
 package Modelo;
 
-import javax.swing.ImageIcon;
+import Utils.CacheImagenes;
+import javax.swing.Icon;
 
 /**
  *
  * Representa la entidad Producto del sistema.
  * Guarda los datos principales (id, nombre, categoría, precio, cantidad, estado, imagen)
- * y permite cargar/escalar la imagen para mostrarla en la interfaz.
+ * y da acceso a su imagen escalada (desde CacheImagenes, sin decodificarla al crear el producto).
  *
  * @author Jefferson Granados
  */
@@ -20,10 +21,8 @@ public class Product {
     private String status;
     private String image;
 
-    private transient ImageIcon imageIcon;
-
     /**
-     * Constructor completo: asigna valores y carga el ImageIcon si hay ruta de imagen.
+     * Constructor completo: asigna valores (la imagen se carga al mostrarla).
      */
     public Product(String idProduct, String nameProduct, String category, double price, int cant, String status, String image) {
         this.idProduct = idProduct;
@@ -33,7 +32,6 @@ public class Product {
         this.cant = cant;
         this.status = status;
         this.image = image;
-        cargarImageIcon();
     }
 
     /**
@@ -45,53 +43,18 @@ public class Product {
     }
 
     /**
-     * Carga la imagen desde recursos del proyecto o desde una ruta en disco.
-     * Si logra cargarla, la escala a 100x100 y guarda el ImageIcon.
-     */
-    private void cargarImageIcon() {
-        if (image != null && !image.isEmpty()) {
-            try {
-                java.net.URL imgURL = getClass().getResource(image);
-                if (imgURL == null) {
-                    java.io.File file = new java.io.File(image);
-                    if (file.exists()) {
-                        imgURL = file.toURI().toURL();
-                    }
-                }
-
-                if (imgURL != null) {
-                    ImageIcon imgOriginal = new ImageIcon(imgURL);
-                    java.awt.Image imgEscalada = imgOriginal.getImage()
-                            .getScaledInstance(100, 100, java.awt.Image.SCALE_SMOOTH);
-                    this.imageIcon = new ImageIcon(imgEscalada);
-                }
-            } catch (Exception e) {
-                this.imageIcon = null;
-            }
-        }
-    }
-
-    /**
-     * Retorna el ImageIcon del producto; si no está cargado y hay ruta, lo carga.
+     * Retorna el ícono del producto a 100x100 (null si no tiene imagen).
      */
-    public ImageIcon getImageIcon() {
-        if (imageIcon == null && image != null && !image.isEmpty()) {
-            cargarImageIcon();
-        }
-        return imageIcon;
+    public Icon getImageIcon() {
+        return getImageIconScaled(100, 100);
     }
 
     /**
-     * Retorna un ImageIcon escalado al tamaño solicitado (si existe imagen).
+     * Retorna el ícono del producto al tamaño solicitado, desde el caché
+     * compartido (null si no tiene imagen).
      */
-    public ImageIcon getImageIconScaled(int width, int height) {
-        if (getImageIcon() != null) {
-            java.awt.Image img = imageIcon.getImage();
-            java.awt.Image imgEscalada = img.getScaledInstance(width, height,
-                    java.awt.Image.SCALE_SMOOTH);
-            return new ImageIcon(imgEscalada);
-        }
-        return null;
+    public Icon getImageIconScaled(int width, int height) {
+        return CacheImagenes.getInstancia().icono(image, width, height);
     }
 
     /**
@@ -102,12 +65,10 @@ public class Product {
     }
 
     /**
-     * Actualiza la ruta de imagen, reinicia el ImageIcon y vuelve a cargarlo.
+     * Actualiza la ruta de imagen.
      */
     public void setImage(String image) {
         this.image = image;
-        this.imageIcon = null;
-        cargarImageIcon();
     }
 
     /**
@@ -0,0 +1,289 @@
+package Modelo;
+
+import Utils.LectorMapeado;
+import Utils.TokenizadorCampos;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *
+ * Menor y mayor valor de algunas columnas numéricas (IDs) en cada partición de
+ * un RegistroParticionado, para que una búsqueda por ID abra solo las
+ * particiones que pueden tener el registro.
+ *
+ * Funcionamiento:
+ * - candidatas(columna, valor) retorna, en orden cronológico, la partición de
+ *   hoy (siempre: es la que recibe las escrituras) y las de días anteriores
+ *   cuyo rango contiene el valor.
+ * - El rango de una partición se calcula recorriéndola una vez y queda en
+ *   memoria junto con el largo que cubre: si la partición crece después (una
+ *   escritura que cruzó la medianoche), se vuelve a calcular.
+ * - Una partición archivada (ArchivoFrio) no cambia más: su rango se guarda
+ *   junto a ella ("<partición>.rangos") y los procesos siguientes solo leen
+ *   ese archivo, sin abrir ni descomprimir la partición.
+ *
+ * Como los IDs salen de secuencias crecientes, un ID nuevo queda fuera del
+ * rango de los días anteriores: una búsqueda sin resultado (lo normal al cobrar
+ * un pedido nuevo) revisa solo la partición de hoy.
+ *
+ * Una instancia por registro (ver para()); las columnas son las de la primera llamada.
+ */
+final class RangosParticiones {
+
+    private static final Map<RegistroParticionado, RangosParticiones> INSTANCIAS = new ConcurrentHashMap<>();
+
+    private static final String EXTENSION = ".rangos";
+
+    private final RegistroParticionado registro;
+    private final char separador;
+    private final int[] columnas;
+    private final String firmaColumnas;
+
+    /**
+     * Rango de cada partición ya revisada (por ruta).
+     */
+    private final Map<Path, Rango> rangos = new ConcurrentHashMap<>();
+
+    /**
+     * Retorna los rangos compartidos de un registro.
+     *
+     * @param registro registro particionado
+     * @param separador separador de columnas de sus particiones
+     * @param columnas columnas numéricas por las que se busca
+     */
+    static RangosParticiones para(RegistroParticionado registro, char separador, int... columnas) {
+        return INSTANCIAS.computeIfAbsent(registro, r -> new RangosParticiones(r, separador, columnas));
+    }
+
+    private RangosParticiones(RegistroParticionado registro, char separador, int[] columnas) {
+        this.registro = registro;
+        this.separador = separador;
+        this.columnas = columnas.clone();
+
+        StringBuilder sb = new StringBuilder();
+        for (int c : columnas) {
+            sb.append(sb.length() == 0 ? "" : ",").append(c);
+        }
+        this.firmaColumnas = sb.toString();
+    }
+
+    /**
+     * Particiones que pueden tener un registro con ese valor en la columna, en
+     * orden cronológico.
+     *
+     * @param columna una de las columnas indicadas en para()
+     * @param valor valor buscado
+     */
+    List<RegistroParticionado.Particion> candidatas(int columna, long valor) {
+        int i = posicion(columna);
+        LocalDate hoy = LocalDate.now();
+        List<RegistroParticionado.Particion> res = new ArrayList<>();
+
+        for (RegistroParticionado.Particion p : registro.particiones()) {
+            if (!p.getHasta().isBefore(hoy)) {
+                res.add(p);
+                continue;
+            }
+            Rango r = rango(Paths.get(p.getRuta()));
+            if (r == null || r.contiene(i, valor)) {
+                // Sin rango (no se pudo leer): se revisa, como antes.
+                res.add(p);
+            }
+        }
+        return res;
+    }
+
+    private int posicion(int columna) {
+        for (int i = 0; i < columnas.length; i++) {
+            if (columnas[i] == columna) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Columna sin rangos: " + columna);
+    }
+
+    /**
+     * Rango vigente de una partición cerrada; lo calcula si no hay o si la
+     * partición cambió. null si no se pudo leer.
+     */
+    private Rango rango(Path archivo) {
+        Rango actual = rangos.get(archivo);
+        if (actual != null && actual.archivada) {
+            return actual;
+        }
+
+        long largo;
+        try {
+            largo = Files.size(archivo);
+        } catch (NoSuchFileException e) {
+            largo = -1;
+        } catch (IOException e) {
+            return null;
+        }
+
+        if (largo >= 0) {
+            if (actual == null || actual.largo != largo) {
+                actual = calcular(largo, null, archivo);
+                if (actual != null) {
+                    rangos.put(archivo, actual);
+                }
+            }
+            return actual;
+        }
+
+        // Sin el original: archivada (o registrada y todavía sin registros).
+        actual = leerGuardado(archivo);
+        if (actual == null) {
+            ArchivoFrio frio = ArchivoFrio.abrir(archivo);
+            if (frio == null) {
+                return new Rango(columnas.length, 0, false);
+            }
+            actual = calcular(frio.largo(), frio, archivo);
+            if (actual == null) {
+                return null;
+            }
+            guardar(archivo, actual);
+        }
+        rangos.put(archivo, actual);
+        return actual;
+    }
+
+    /**
+     * Recorre la partición (o su ArchivoFrio) y arma su rango.
+     */
+    private Rango calcular(long largo, ArchivoFrio frio, Path archivo) {
+        Rango r = new Rango(columnas.length, largo, frio != null);
+        LectorMapeado.Visitante visitante = (campos, offset) -> {
+            if (offset > 0) {
+                // La primera línea es el encabezado.
+                for (int i = 0; i < columnas.length; i++) {
+                    long v = campos.largo(columnas[i], Long.MIN_VALUE);
+                    if (v != Long.MIN_VALUE) {
+                        r.incluir(i, v);
+                    }
+                }
+            }
+            return true;
+        };
+
+        try {
+            if (frio != null) {
+                frio.recorrer(separador, visitante);
+            } else {
+                LectorMapeado.para(archivo.toString()).recorrer(separador, visitante);
+                // Partición cerrada: no se vuelve a recorrer, no hace falta retener su mapeo.
+                LectorMapeado.liberar(archivo.toString());
+            }
+        } catch (IOException e) {
+            System.out.println("Error leyendo " + archivo + ": " + e.getMessage());
+            return null;
+        }
+        return r;
+    }
+
+    /**
+     * Rango guardado junto a una partición archivada, o null si no hay (o es
+     * de otras columnas).
+     * Formato: COLUMNAS|LARGO|MIN|MAX|MIN|MAX...
+     */
+    private Rango leerGuardado(Path archivo) {
+        List<String> lineas;
+        try {
+            lineas = Files.readAllLines(rutaGuardado(archivo), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return null;
+        }
+
+        TokenizadorCampos t = new TokenizadorCampos('|');
+        if (lineas.isEmpty() || t.separar(lineas.get(0)) != 2 + 2 * columnas.length
+                || !t.esIgual(0, firmaColumnas)) {
+            return null;
+        }
+        Rango r = new Rango(columnas.length, t.largo(1, -1), true);
+        for (int i = 0; i < columnas.length; i++) {
+            r.minimos[i] = t.largo(2 + 2 * i, Long.MAX_VALUE);
+            r.maximos[i] = t.largo(3 + 2 * i, Long.MIN_VALUE);
+        }
+        return r;
+    }
+
+    /**
+     * Guarda el rango de una partición archivada. Si falla, se vuelve a
+     * calcular en el próximo proceso.
+     */
+    private void guardar(Path archivo, Rango r) {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append(firmaColumnas).append('|').append(r.largo);
+        for (int i = 0; i < columnas.length; i++) {
+            sb.append('|').append(r.minimos[i]).append('|').append(r.maximos[i]);
+        }
+        sb.append(System.lineSeparator());
+
+        Path destino = rutaGuardado(archivo);
+        Path tmp = null;
+        try {
+            // Temporal propio: otra caja puede estar guardando el mismo rango.
+            tmp = Files.createTempFile(destino.getParent(), destino.getFileName().toString(), ".tmp");
+            Files.write(tmp, sb.toString().getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(tmp, destino, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.move(tmp, destino, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            System.out.println("Error guardando " + destino + ": " + e.getMessage());
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    // Queda un temporal; no afecta las búsquedas.
+                }
+            }
+        }
+    }
+
+    private static Path rutaGuardado(Path archivo) {
+        return archivo.resolveSibling(archivo.getFileName() + EXTENSION);
+    }
+
+    /**
+     * Menor y mayor valor de cada columna en una partición.
+     */
+    private static final class Rango {
+
+        private final long largo;
+        private final boolean archivada;
+        private final long[] minimos;
+        private final long[] maximos;
+
+        Rango(int columnas, long largo, boolean archivada) {
+            this.largo = largo;
+            this.archivada = archivada;
+            this.minimos = new long[columnas];
+            this.maximos = new long[columnas];
+            Arrays.fill(minimos, Long.MAX_VALUE);
+            Arrays.fill(maximos, Long.MIN_VALUE);
+        }
+
+        void incluir(int i, long v) {
+            minimos[i] = Math.min(minimos[i], v);
+            maximos[i] = Math.max(maximos[i], v);
+        }
+
+        boolean contiene(int i, long v) {
+            return v >= minimos[i] && v <= maximos[i];
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package Modelo;
+
+import Utils.LectorMapeado;
+import Utils.TokenizadorCampos;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * Registro append-only repartido en particiones diarias (facturas.txt,
+ * pagos_factura.txt, ...).
+ *
+ * Cada archivo base tiene una carpeta con su nombre (facturas.txt ->
+ * facturas/) con un archivo por día ("2026-10-18.log") y un manifiesto
+ * (manifiesto.txt) con una línea por partición: DESDE|HASTA|ARCHIVO.
+ *
+ * Funcionamiento:
+ * - Las escrituras van a particionActual(), el archivo del día. Al cambiar el
+ *   día se registra la partición nueva en el manifiesto y se cierra el canal
+ *   de la anterior (rotación); nada se mueve ni se reescribe.
+ * - Quien lee pide particiones(desde, hasta): solo las que se cruzan con el
+ *   rango, en orden cronológico. Las pantallas del día leen la partición de
+ *   hoy; las consultas de historial saltan los días que no piden.
+ * - El archivo único anterior, si existía, queda en su lugar como una
+ *   partición histórica desde el inicio hasta el día de la migración.
+ * - El manifiesto solo crece. Se escribe con su bloqueo tomado
+ *   (CoordinacionArchivos), así dos cajas que rotan a la vez no registran la
+ *   misma partición dos veces, y cada caja lo vuelve a leer cuando otra
+ *   publicó un cambio.
+ *
+ * Cada partición es un archivo de datos normal, con su encabezado: se escribe
+ * con EscritorAnexos y se lee con LectorMapeado, LectorInverso, IndiceFacturas
+ * o AlmacenPagos igual que antes el archivo único.
+ *
+ * Archivo frío: un hilo de fondo (daemon) comprime las particiones cerradas
+ * (días anteriores sin cambios en los últimos "pos.archivo.espera.ms", 10
+ * minutos por defecto) con ArchivoFrio, cada "pos.archivo.ms" milisegundos
+ * (una hora por defecto; 0 lo desactiva). El manifiesto no cambia: quien lee
+ * una partición cuyo archivo ya no existe la lee desde su ArchivoFrio.
+ */
+public class RegistroParticionado {
+
+    /**
+     * Una partición: un archivo con los registros de un rango de días.
+     */
+    public static final class Particion {
+
+        private final LocalDate desde;
+        private final LocalDate hasta;
+        private final Path archivo;
+
+        private Particion(LocalDate desde, LocalDate hasta, Path archivo) {
+            this.desde = desde;
+            this.hasta = hasta;
+            this.archivo = archivo;
+        }
+
+        public LocalDate getDesde() {
+            return desde;
+        }
+
+        public LocalDate getHasta() {
+            return hasta;
+        }
+
+        /**
+         * Ruta del archivo, para los para() de EscritorAnexos, LectorMapeado, etc.
+         */
+        public String getRuta() {
+            return archivo.toString();
+        }
+
+        /**
+         * true si la partición ya se comprimió (ArchivoFrio).
+         */
+        public boolean isArchivada() {
+            return !Files.exists(archivo) && ArchivoFrio.estaArchivada(archivo);
+        }
+
+        /**
+         * true si la partición tiene días dentro del rango (null = sin límite).
+         */
+        public boolean cruza(LocalDate desdeRango, LocalDate hastaRango) {
+            return (desdeRango == null || !hasta.isBefore(desdeRango))
+                    && (hastaRango == null || !desde.isAfter(hastaRango));
+        }
+    }
+
+    private static final Map<Path, RegistroParticionado> INSTANCIAS = new ConcurrentHashMap<>();
+
+    private static final String MANIFIESTO = "manifiesto.txt";
+    private static final String HEADER = "DESDE|HASTA|ARCHIVO";
+    private static final String EXTENSION = ".log";
+
+    /**
+     * Primer día de la partición histórica (el archivo único anterior).
+     */
+    private static final LocalDate INICIO_HISTORICO = LocalDate.of(1, 1, 1);
+
+    /**
+     * Tiempo sin cambios para considerar cerrada la partición de un día anterior.
+     */
+    private static final long ESPERA_ARCHIVO_MS = Long.getLong("pos.archivo.espera.ms", 10 * 60_000L);
+    private static final long INTERVALO_ARCHIVO_MS = Long.getLong("pos.archivo.ms", 60 * 60_000L);
+
+    private static ScheduledExecutorService archivador;
+
+    private final Path archivoBase;
+    private final Path carpeta;
+    private final Path manifiesto;
+    private final CoordinacionArchivos coordinacion;
+
+    /**
+     * Particiones del manifiesto, en orden cronológico (se reemplaza completa).
+     */
+    private volatile List<Particion> particiones = null;
+
+    private LocalDate diaActual = null;
+    private String rutaActual = null;
+
+    /**
+     * Retorna el registro compartido para el archivo base indicado.
+     *
+     * @param archivoBase archivo único anterior (por ejemplo "facturas.txt")
+     */
+    public static RegistroParticionado para(String archivoBase) {
+        Path path = Paths.get(archivoBase).toAbsolutePath().normalize();
+        return INSTANCIAS.computeIfAbsent(path, RegistroParticionado::new);
+    }
+
+    private RegistroParticionado(Path archivoBase) {
+        String nombre = archivoBase.getFileName().toString();
+        int punto = nombre.lastIndexOf('.');
+        String base = (punto > 0) ? nombre.substring(0, punto) : nombre;
+
+        this.archivoBase = archivoBase;
+        this.carpeta = archivoBase.resolveSibling(base);
+        this.manifiesto = carpeta.resolve(MANIFIESTO);
+        this.coordinacion = CoordinacionArchivos.para(manifiesto.toString());
+        programarArchivador();
+    }
+
+    /**
+     * Partición donde se escribe hoy. La primera llamada de cada día la
+     * registra en el manifiesto.
+     *
+     * @return ruta del archivo de la partición
+     */
+    public synchronized String particionActual() {
+        LocalDate hoy = LocalDate.now();
+        if (!hoy.equals(diaActual)) {
+            String anterior = rutaActual;
+            rutaActual = registrar(hoy);
+            diaActual = hoy;
+            if (anterior != null && !anterior.equals(rutaActual)) {
+                // Rotación: la partición de ayer ya no recibe appends.
+                EscritorAnexos.para(anterior).reabrir();
+            }
+        }
+        return rutaActual;
+    }
+
+    /**
+     * Todas las particiones, en orden cronológico.
+     */
+    public List<Particion> particiones() {
+        return vigentes();
+    }
+
+    /**
+     * Particiones con días dentro del rango, en orden cronológico.
+     *
+     * @param desde primer día (inclusive), o null para no limitar
+     * @param hasta último día (inclusive), o null para no limitar
+     */
+    public List<Particion> particiones(LocalDate desde, LocalDate hasta) {
+        List<Particion> res = new ArrayList<>();
+        for (Particion p : vigentes()) {
+            if (p.cruza(desde, hasta)) {
+                res.add(p);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Recorre las líneas de las particiones del rango, en orden cronológico.
+     * Cada partición empieza con su encabezado, que el visitante debe omitir.
+     * Las particiones archivadas se leen desde su ArchivoFrio.
+     *
+     * @param desde primer día (inclusive), o null para no limitar
+     * @param hasta último día (inclusive), o null para no limitar
+     * @param separador separador de columnas
+     * @param visitante acción por cada línea; el offset es el de su partición
+     * @return cantidad de líneas visitadas
+     * @throws IOException si falla la lectura
+     */
+    public long recorrer(LocalDate desde, LocalDate hasta, char separador,
+            LectorMapeado.Visitante visitante) throws IOException {
+        long lineas = 0;
+        boolean[] seguir = {true};
+
+        LectorMapeado.Visitante visitanteParticion = (campos, offset) -> seguir[0] = visitante.visitar(campos, offset);
+
+        for (Particion p : particiones(desde, hasta)) {
+            long leidas = LectorMapeado.para(p.getRuta()).recorrer(separador, visitanteParticion);
+            if (leidas == 0) {
+                // Sin archivo original: la partición puede estar archivada.
+                ArchivoFrio frio = ArchivoFrio.abrir(p.archivo);
+                if (frio != null) {
+                    leidas = frio.recorrer(separador, visitanteParticion);
+                }
+            }
+            lineas += leidas;
+            if (!seguir[0]) {
+                break;
+            }
+        }
+        return lineas;
+    }
+
+    /**
+     * Fecha de modificación de la partición más nueva (0 si no existe). Cambia
+     * con cada append y al rotar, así sirve para refrescar una vista.
+     */
+    public long ultimaModificacion() {
+        List<Particion> todas = vigentes();
+        if (todas.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Files.getLastModifiedTime(todas.get(todas.size() - 1).archivo).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Comprime las particiones cerradas: días anteriores a hoy cuyo archivo no
+     * cambió en los últimos ESPERA_ARCHIVO_MS. La partición de hoy nunca se archiva.
+     *
+     * @return cantidad de particiones archivadas
+     */
+    public int archivarCerradas() {
+        LocalDate hoy = LocalDate.now();
+        long limite = System.currentTimeMillis() - ESPERA_ARCHIVO_MS;
+        int archivadas = 0;
+
+        for (Particion p : vigentes()) {
+            if (!p.hasta.isBefore(hoy)) {
+                continue;
+            }
+            try {
+                if (!Files.exists(p.archivo) || Files.getLastModifiedTime(p.archivo).toMillis() > limite) {
+                    continue;
+                }
+                long liberados = ArchivoFrio.comprimir(p.getRuta());
+                if (liberados >= 0) {
+                    archivadas++;
+                }
+            } catch (IOException e) {
+                System.out.println("Error archivando " + p.archivo + ": " + e.getMessage());
+            }
+        }
+        return archivadas;
+    }
+
+    private List<Particion> vigentes() {
+        List<Particion> actuales = particiones;
+        if (actuales == null || coordinacion.huboCambioExterno()) {
+            actuales = leerManifiesto();
+            particiones = actuales;
+        }
+        return actuales;
+    }
+
+    /**
+     * Registra la partición de un día en el manifiesto (si otra caja no lo hizo
+     * antes) y retorna su ruta. La primera vez registra también el archivo
+     * único anterior como partición histórica.
+     */
+    private String registrar(LocalDate dia) {
+        Path archivo = carpeta.resolve(dia + EXTENSION);
+        String salto = System.lineSeparator();
+
+        try {
+            // La carpeta guarda también el archivo de bloqueo del manifiesto.
+            Files.createDirectories(carpeta);
+        } catch (IOException e) {
+            System.out.println("Error creando " + carpeta + ": " + e.getMessage());
+            return archivo.toString();
+        }
+
+        try {
+            return coordinacion.conBloqueo(() -> {
+                List<Particion> actuales = leerManifiesto();
+                for (Particion p : actuales) {
+                    if (p.archivo.equals(archivo)) {
+                        particiones = actuales;
+                        return p.getRuta();
+                    }
+                }
+
+                StringBuilder sb = new StringBuilder(96);
+                if (!Files.exists(manifiesto) && Files.exists(archivoBase)) {
+                    sb.append(INICIO_HISTORICO).append('|').append(dia).append('|')
+                            .append(carpeta.relativize(archivoBase)).append(salto);
+                }
+                sb.append(dia).append('|').append(dia).append('|')
+                        .append(archivo.getFileName()).append(salto);
+
+                EscritorAnexos.para(manifiesto.toString()).anexar((HEADER + salto).getBytes(StandardCharsets.UTF_8),
+                        sb.toString().getBytes(StandardCharsets.UTF_8));
+                particiones = leerManifiesto();
+                return archivo.toString();
+            });
+        } catch (IOException e) {
+            System.out.println("Error registrando partición " + archivo + ": " + e.getMessage());
+        }
+        return archivo.toString();
+    }
+
+    /**
+     * Lee el manifiesto. Si todavía no existe, el archivo único anterior (si
+     * hay) es la única partición, sin fecha final.
+     */
+    private List<Particion> leerManifiesto() {
+        coordinacion.marcarAlDia();
+        List<Particion> res = new ArrayList<>();
+
+        List<String> lineas;
+        try {
+            lineas = Files.readAllLines(manifiesto, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            if (Files.exists(archivoBase)) {
+                res.add(new Particion(INICIO_HISTORICO, LocalDate.MAX, archivoBase));
+            }
+            return Collections.unmodifiableList(res);
+        } catch (IOException e) {
+            System.out.println("Error leyendo " + manifiesto + ": " + e.getMessage());
+            List<Particion> anteriores = particiones;
+            return (anteriores != null) ? anteriores : Collections.unmodifiableList(res);
+        }
+
+        TokenizadorCampos t = new TokenizadorCampos('|');
+        for (String linea : lineas) {
+            if (t.separar(linea) < 3 || t.vacio(2)) {
+                continue;
+            }
+            try {
+                LocalDate desde = LocalDate.parse(t.texto(0));
+                LocalDate hasta = LocalDate.parse(t.texto(1));
+                res.add(new Particion(desde, hasta, carpeta.resolve(t.texto(2)).normalize()));
+            } catch (DateTimeParseException e) {
+                // Encabezado o línea incompleta.
+            }
+        }
+
+        // Orden estable: la partición histórica queda primero.
+        res.sort(Comparator.comparing(Particion::getDesde));
+        return Collections.unmodifiableList(res);
+    }
+
+    private static synchronized void programarArchivador() {
+        if (archivador != null || INTERVALO_ARCHIVO_MS <= 0) {
+            return;
+        }
+        archivador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "archivador");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        archivador.scheduleWithFixedDelay(() -> {
+            for (RegistroParticionado r : INSTANCIAS.values()) {
+                try {
+                    r.archivarCerradas();
+                } catch (RuntimeException e) {
+                    // Un error no debe cancelar las próximas pasadas.
+                    System.out.println("Error en el archivador: " + e.getMessage());
+                }
+            }
+        }, Math.min(60_000L, INTERVALO_ARCHIVO_MS), INTERVALO_ARCHIVO_MS, TimeUnit.MILLISECONDS);
+    }
+}
@@ -1,6 +1,7 @@
 package Modelo;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 
 /**
@@ -15,6 +16,8 @@ public class ReportesDAO {
 
     private static final String ARCHIVO = "Reportes.txt";
 
+    private final EscritorAnexos escritor = EscritorAnexos.para(ARCHIVO);
+
     /**
      * Constructor: inicializa el archivo de reportes si aún no existe.
      */
@@ -40,13 +43,15 @@ public class ReportesDAO {
     /**
      * Guarda un reporte agregándolo al final del archivo.
      * El formato es CSV simple separado por comas: fecha, mesa, cliente, productos, total.
+     * Usa el canal abierto de EscritorAnexos (no abre el archivo en cada reporte).
      */
     public void guardarReporte(String fecha, String mesa, String cliente,
                                String productos, String total) {
 
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(ARCHIVO, true))) {
-            bw.write(fecha + "," + mesa + "," + cliente + "," + productos + "," + total);
-            bw.newLine();
+        String linea = fecha + "," + mesa + "," + cliente + "," + productos + "," + total
+                + System.lineSeparator();
+        try {
+            escritor.anexar(null, linea.getBytes(StandardCharsets.UTF_8));
         } catch (IOException e) {
           
         }
@@ -1,8 +1,7 @@
 package Modelo;
 
-import java.io.BufferedReader;
+import Utils.LectorMapeado;
 import java.io.File;
-import java.io.FileReader;
 import java.util.ArrayList;
 
 /**
@@ -66,7 +65,8 @@ public class ReportesNegocioDAO {
      * [4] = totalConIva
      *
      * Flujo:
-     * - Lee cada línea del archivo pedidos.txt.
+     * - Recorre pedidos.txt con LectorMapeado (sobre los bytes del archivo,
+     *   sin crear un String por línea).
      * - Ignora líneas vacías.
      * - Valida que la línea tenga al menos 9 columnas.
      * - Extrae los campos necesarios.
@@ -78,26 +78,26 @@ public class ReportesNegocioDAO {
 
         ArrayList<String[]> lista = new ArrayList<>();
 
-        try (BufferedReader br = new BufferedReader(new FileReader(ARCHIVO_PEDIDOS))) {
+        // Incluir los pedidos que todavía están en cola de escritura.
+        PersistenciaAsincrona.getInstancia().esperar(ARCHIVO_PEDIDOS);
 
-            String linea;
-
-            while ((linea = br.readLine()) != null) {
-
-                if (linea.trim().isEmpty()) continue;
+        try {
+            // Recorre pedidos.txt sobre sus bytes: solo se decodifican las 5 columnas del reporte.
+            LectorMapeado.para(ARCHIVO_PEDIDOS).recorrer(',', (t, offset) -> {
 
                 // idPedido,fecha,hora,numeroMesa,idCliente,items,totalProductos,iva,totalConIva
-                String[] p = linea.split(",", -1);
-                if (p.length < 9) continue;
+                // (las líneas vacías quedan con un solo campo)
+                if (t.cantidad() < 9) return true;
 
-                String idPedido = p[0].trim();
-                String fechaHora = (p[1].trim() + " " + p[2].trim()).trim();
-                String idMesa = p[3].trim();         // "1..5" o "LLEVAR"
-                String cedula = p[4].trim();
-                String totalConIva = p[8].trim();
+                String idPedido = t.texto(0);
+                String fechaHora = (t.texto(1) + " " + t.texto(2)).trim();
+                String idMesa = t.texto(3);         // "1..5" o "LLEVAR"
+                String cedula = t.texto(4);
+                String totalConIva = t.texto(8);
 
                 lista.add(new String[]{idPedido, fechaHora, idMesa, cedula, totalConIva});
-            }
+                return true;
+            });
 
         } catch (Exception e) {
             System.out.println("Error leyendo pedidos.txt: " + e.getMessage());
@@ -0,0 +1,324 @@
+package Modelo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ * Servicio de secuencias de IDs para los archivos de texto del sistema
+ * (pedidos.txt, facturas.txt, ...).
+ *
+ * Funcionamiento:
+ * - El último ID entregado se guarda en un archivo ".seq" junto al archivo de
+ *   datos, compartido por todos los procesos (cajas) que usan la misma carpeta.
+ * - siguiente() toma un FileLock sobre el ".seq", lee el último ID, lo
+ *   incrementa y lo escribe en el mismo lugar (un registro de largo fijo, sin
+ *   reemplazar el archivo): dos procesos nunca reciben el mismo ID. Es una
+ *   lectura y una escritura de pocos bytes, sin recorrer el archivo de datos.
+ * - Al iniciar, si el ".seq" no existe o quedó atrasado (instalación existente
+ *   o caída antes de escribirlo), se toma el último ID encontrado en la cola del
+ *   archivo de datos; solo se recorre el final del archivo, nunca el historial.
+ * - Si los datos están repartidos en particiones (RegistroParticionado), el
+ *   DAO indica con observarCola() qué partición revisar (si ya está archivada
+ *   se descomprimen solo los últimos bloques de su ArchivoFrio).
+ * - Si el ".seq" no se puede usar, la secuencia sigue en memoria
+ *   (AtomicInteger), como con un solo proceso.
+ *
+ * Un ID entregado que no llegó a escribirse en el archivo de datos puede
+ * quedar como hueco, pero un ID nunca se repite.
+ */
+public class SecuenciaIds {
+
+    /**
+     * Una instancia por archivo de datos, compartida por todos los DAOs.
+     */
+    private static final Map<Path, SecuenciaIds> INSTANCIAS = new ConcurrentHashMap<>();
+
+    /**
+     * Largo del registro del ".seq": el número alineado a la izquierda,
+     * completado con espacios, y un salto de línea.
+     */
+    private static final int LARGO_REGISTRO = 20;
+
+    /**
+     * Tamaño inicial de la ventana que se lee del final del archivo al recuperar.
+     */
+    private static final int VENTANA_COLA = 64 * 1024;
+
+    private final Path archivoDatos;
+    private final Path archivoSecuencia;
+    private final char separador;
+
+    /**
+     * Último ID entregado u observado por este proceso.
+     */
+    private final AtomicInteger actual;
+
+    /**
+     * Archivos ya revisados con observarCola() y su mayor ID.
+     */
+    private final Map<Path, Integer> colasObservadas = new ConcurrentHashMap<>();
+
+    private FileChannel ch;
+
+    /**
+     * Retorna la secuencia asociada a un archivo de datos, creándola la primera vez.
+     *
+     * @param archivoDatos archivo de texto donde la primera columna es el ID
+     * @param separador separador de columnas del archivo (',' o '|')
+     * @return secuencia compartida para ese archivo
+     */
+    public static SecuenciaIds para(String archivoDatos, char separador) {
+        Path path = Paths.get(archivoDatos).toAbsolutePath().normalize();
+        return INSTANCIAS.computeIfAbsent(path, p -> new SecuenciaIds(p, separador));
+    }
+
+    /**
+     * Constructor privado: toma el mayor entre el ".seq" y la cola del archivo.
+     */
+    private SecuenciaIds(Path archivoDatos, char separador) {
+        this.archivoDatos = archivoDatos;
+        this.separador = separador;
+        this.archivoSecuencia = rutaSecuencia(archivoDatos);
+        this.actual = new AtomicInteger(maxIdEnCola(archivoDatos));
+    }
+
+    /**
+     * Entrega el siguiente ID disponible, bajo el bloqueo del ".seq".
+     *
+     * @return nuevo ID (siempre mayor a cualquier ID entregado antes, en cualquier proceso)
+     */
+    public synchronized int siguiente() {
+        for (int intento = 0; intento < 2; intento++) {
+            try {
+                FileChannel c = canal();
+                FileLock bloqueo = c.lock();
+                try {
+                    int id = Math.max(leerMarca(c), actual.get()) + 1;
+                    escribirMarca(c, id);
+                    actual.accumulateAndGet(id, Math::max);
+                    return id;
+                } finally {
+                    bloqueo.release();
+                }
+            } catch (IOException e) {
+                // Canal cerrado (por ejemplo, por una interrupción) o sin FileLock: reintentar una vez.
+                cerrarCanal();
+            }
+        }
+        return actual.incrementAndGet();
+    }
+
+    /**
+     * Informa a la secuencia que se escribió un ID en el archivo de datos.
+     * Si viene de otra fuente y supera al contador, el próximo siguiente() lo
+     * toma en cuenta.
+     *
+     * @param id ID guardado en el archivo
+     */
+    public void observar(int id) {
+        if (id <= 0) {
+            return;
+        }
+        actual.accumulateAndGet(id, Math::max);
+    }
+
+    /**
+     * Toma en cuenta el mayor ID de la cola de otro archivo con el mismo formato
+     * (por ejemplo, la partición más nueva de un RegistroParticionado). Cada
+     * archivo se revisa una sola vez por proceso.
+     *
+     * @param archivo archivo a revisar
+     * @return mayor ID encontrado en la cola (0 si no hay)
+     */
+    public int observarCola(String archivo) {
+        Path path = Paths.get(archivo).toAbsolutePath().normalize();
+        int max = colasObservadas.computeIfAbsent(path, this::maxIdEnCola);
+        observar(max);
+        return max;
+    }
+
+    /**
+     * Lee el último ID del ".seq". Retorna 0 si está vacío o dañado.
+     * Acepta también el formato anterior (solo el número, sin relleno).
+     */
+    private static int leerMarca(FileChannel c) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(LARGO_REGISTRO);
+        while (buf.hasRemaining()) {
+            if (c.read(buf, buf.position()) <= 0) {
+                break;
+            }
+        }
+        String txt = new String(buf.array(), 0, buf.position(), StandardCharsets.US_ASCII).trim();
+        try {
+            return Math.max(Integer.parseInt(txt), 0);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Escribe el registro de largo fijo al inicio del ".seq".
+     */
+    private static void escribirMarca(FileChannel c, int id) throws IOException {
+        StringBuilder sb = new StringBuilder(LARGO_REGISTRO).append(id);
+        while (sb.length() < LARGO_REGISTRO - 1) {
+            sb.append(' ');
+        }
+        sb.append('\n');
+
+        ByteBuffer buf = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.US_ASCII));
+        while (buf.hasRemaining()) {
+            c.write(buf, buf.position());
+        }
+        if (c.size() > LARGO_REGISTRO) {
+            c.truncate(LARGO_REGISTRO);
+        }
+    }
+
+    private FileChannel canal() throws IOException {
+        if (ch == null || !ch.isOpen()) {
+            ch = FileChannel.open(archivoSecuencia, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        return ch;
+    }
+
+    private void cerrarCanal() {
+        if (ch != null) {
+            try {
+                ch.close();
+            } catch (IOException e) {
+                // Nada que hacer.
+            }
+            ch = null;
+        }
+    }
+
+    /**
+     * Busca el mayor ID en las últimas líneas de un archivo.
+     * Lee una ventana del final y la duplica solo si no encontró ninguna línea válida.
+     */
+    private int maxIdEnCola(Path archivo) {
+        if (!Files.exists(archivo)) {
+            ArchivoFrio frio = ArchivoFrio.abrir(archivo);
+            return (frio != null) ? maxIdEnColaArchivada(frio) : 0;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(archivo.toFile(), "r")) {
+            long largo = raf.length();
+            long ventana = VENTANA_COLA;
+
+            while (true) {
+                long inicio = Math.max(0, largo - ventana);
+                byte[] buf = new byte[(int) (largo - inicio)];
+                raf.seek(inicio);
+                raf.readFully(buf);
+
+                int max = maxIdEnBloque(buf, inicio > 0);
+                if (max > 0 || inicio == 0) {
+                    return max;
+                }
+                ventana *= 2;
+            }
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Igual que maxIdEnCola() para una partición archivada: solo se descomprimen
+     * los bloques del final.
+     */
+    private int maxIdEnColaArchivada(ArchivoFrio frio) {
+        long largo = frio.largo();
+        long ventana = VENTANA_COLA;
+
+        while (true) {
+            long inicio = Math.max(0, largo - ventana);
+            byte[] buf = new byte[(int) (largo - inicio)];
+            try (InputStream in = frio.abrirDesde(inicio)) {
+                in.readNBytes(buf, 0, buf.length);
+            } catch (IOException e) {
+                return 0;
+            }
+
+            int max = maxIdEnBloque(buf, inicio > 0);
+            if (max > 0 || inicio == 0) {
+                return max;
+            }
+            ventana *= 2;
+        }
+    }
+
+    /**
+     * Recorre un bloque de bytes línea por línea y retorna el mayor ID de la primera columna.
+     *
+     * @param buf bytes leídos
+     * @param descartarPrimera true si el bloque empieza a mitad de una línea
+     */
+    private int maxIdEnBloque(byte[] buf, boolean descartarPrimera) {
+        int max = 0;
+        int i = 0;
+
+        if (descartarPrimera) {
+            while (i < buf.length && buf[i] != '\n') {
+                i++;
+            }
+            i++;
+        }
+
+        while (i < buf.length) {
+            int id = 0;
+            boolean digitos = false;
+            boolean valido = true;
+
+            while (i < buf.length && (buf[i] == ' ' || buf[i] == '\t')) {
+                i++;
+            }
+            while (i < buf.length && buf[i] != '\n') {
+                byte b = buf[i];
+                if (b == separador) {
+                    break;
+                }
+                if (b >= '0' && b <= '9' && valido) {
+                    id = id * 10 + (b - '0');
+                    digitos = true;
+                } else if (b != ' ' && b != '\r') {
+                    valido = false;
+                }
+                i++;
+            }
+            if (valido && digitos && i < buf.length && buf[i] == separador && id > max) {
+                max = id;
+            }
+            while (i < buf.length && buf[i] != '\n') {
+                i++;
+            }
+            i++;
+        }
+        return max;
+    }
+
+    /**
+     * Ruta del ".seq": mismo nombre del archivo de datos cambiando la extensión.
+     */
+    private static Path rutaSecuencia(Path archivoDatos) {
+        String nombre = archivoDatos.getFileName().toString();
+        int punto = nombre.lastIndexOf('.');
+        String base = (punto > 0) ? nombre.substring(0, punto) : nombre;
+        return archivoDatos.resolveSibling(base + ".seq");
+    }
+}
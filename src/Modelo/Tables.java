@@ -122,8 +122,18 @@ public class Tables {
      * @return línea lista para persistencia
      */
     public String toDataString() {
-        String personas = String.join(";", cedulas);
-        return tableId + "," + tableNumber + "," + capacity + "," + estado + "," + personas;
+        return String.join(",", toCampos());
+    }
+
+    /**
+     * Campos de la mesa, en el orden de toDataString() (para AlmacenRegistros).
+     *
+     * @return tableId, tableNumber, capacity, estado y cédulas separadas por ";"
+     */
+    public String[] toCampos() {
+        return new String[]{
+            tableId, String.valueOf(tableNumber), String.valueOf(capacity), estado.name(), String.join(";", cedulas)
+        };
     }
 
     /**
@@ -139,8 +149,16 @@ public class Tables {
      * @return objeto Tables reconstruido
      */
     public static Tables fromDataString(String linea) {
-        String[] p = linea.split(",", -1);
+        return fromCampos(linea.split(",", -1));
+    }
 
+    /**
+     * Reconstruye un objeto Tables desde sus campos (ver toCampos()).
+     *
+     * @param p campos de la mesa
+     * @return objeto Tables reconstruido
+     */
+    public static Tables fromCampos(String[] p) {
         Tables t = new Tables(
                 p[0],
                 Integer.parseInt(p[1]),
@@ -1,8 +1,9 @@
 package Modelo;
 
-import java.io.*;
-import java.nio.file.*;
-import java.util.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 
 /**
  *
@@ -12,13 +13,19 @@ import java.util.*;
  * de las mesas del sistema.
  *
  * Funciones principales:
- * - Crear e inicializar el archivo "Tables.txt" si no existe.
- * - Cargar las mesas desde el archivo hacia memoria.
- * - Guardar los cambios de la lista de mesas nuevamente en el archivo.
+ * - Crear las mesas por defecto si todavía no hay ninguna.
+ * - Cargar las mesas desde el almacén (AlmacenRegistros, "Tables.txt" con el
+ *   almacén de texto) hacia memoria, ordenadas por número.
+ * - Guardar cada mesa modificada en el almacén (por su tableId).
  * - Proveer métodos de consulta y actualización sobre las mesas.
  *
  * Implementa el patrón Singleton para garantizar una única instancia de acceso
  * a las mesas durante la ejecución del programa.
+ *
+ * Con varias cajas sobre la misma carpeta:
+ * - Las consultas recargan las mesas si la versión del almacén cambió.
+ * - Al guardar una mesa se escribe solo esa mesa; si otra caja guardó otras
+ *   mientras tanto, se recargan después de escribir.
  */
 public class TablesDAO {
 
@@ -27,25 +34,37 @@ public class TablesDAO {
      */
     private static final String ARCHIVO = "Tables.txt";
 
+    /**
+     * Columna de Tables.toCampos() con el tableId.
+     */
+    private static final int COL_ID = 0;
+
     /**
      * Instancia única del DAO (Singleton).
      */
     private static TablesDAO instancia;
 
     /**
-     * Lista en memoria con todas las mesas cargadas desde el archivo.
+     * Lista en memoria con todas las mesas cargadas desde el almacén.
      */
     private List<Tables> mesas;
 
+    private final AlmacenRegistros almacen = AlmacenRegistros.para(ARCHIVO, ',', COL_ID);
+
+    /**
+     * Versión del almacén que tiene la lista en memoria.
+     */
+    private long versionCargada = -1;
+
     /**
      * Constructor privado para patrón Singleton.
      *
-     * Inicializa la lista, crea el archivo si no existe, y carga los datos
-     * iniciales en memoria.
+     * Inicializa la lista, crea las mesas por defecto si no hay ninguna, y carga
+     * los datos iniciales en memoria.
      */
     private TablesDAO() {
         mesas = new ArrayList<>();
-        inicializarArchivo();
+        inicializarMesas();
         cargar();
     }
 
@@ -63,75 +82,140 @@ public class TablesDAO {
     }
 
     /**
-     * Crea el archivo "Tables.txt" si no existe.
-     *
-     * Si el archivo se crea por primera vez, también se generan 5 mesas por
-     * defecto con:
+     * Si el almacén no tiene mesas, genera 5 mesas por defecto con:
      * - tableId = "M1".."M5"
      * - tableNumber = 1..5
      * - capacity = 4
-     *
-     * El contenido se guarda usando el formato retornado por Tables.toDataString().
      */
-    private void inicializarArchivo() {
+    private void inicializarMesas() {
         try {
-            Path path = Paths.get(ARCHIVO);
-
-            if (!Files.exists(path)) {
-                Files.createFile(path);
+            almacen.conBloqueo(() -> {
+                boolean[] hayMesas = {false};
+                almacen.recorrer(null, null, (clave, campos) -> {
+                    hayMesas[0] = true;
+                    return false;
+                });
 
-                // Crear 5 mesas por defecto
-                List<String> lineas = new ArrayList<>();
-                for (int i = 1; i <= 5; i++) {
-                    Tables t = new Tables("M" + i, i, 4);
-                    lineas.add(t.toDataString());
+                if (!hayMesas[0]) {
+                    // Crear 5 mesas por defecto
+                    for (int i = 1; i <= 5; i++) {
+                        almacen.put(new Tables("M" + i, i, 4).toCampos());
+                    }
                 }
 
-                Files.write(path, lineas);
-            }
-
+            });
         } catch (IOException e) {
-            System.out.println("Error creando archivo Tables.txt: " + e.getMessage());
+            System.out.println("Error creando mesas: " + e.getMessage());
         }
     }
 
     /**
-     * Carga todas las mesas desde "Tables.txt" a la lista en memoria.
-     *
-     * - Limpia primero la lista actual.
-     * - Lee línea por línea.
-     * - Ignora líneas vacías.
-     * - Convierte cada línea a un objeto Tables usando Tables.fromDataString().
+     * Carga todas las mesas del almacén a la lista en memoria.
      */
     private void cargar() {
         mesas.clear();
+        mesas.addAll(leerMesas());
+    }
 
-        try (BufferedReader br = new BufferedReader(new FileReader(ARCHIVO))) {
-            String linea;
+    /**
+     * Lee las mesas del almacén, ordenadas por número, y anota la versión leída.
+     */
+    private List<Tables> leerMesas() {
+        List<Tables> leidas = new ArrayList<>();
 
-            while ((linea = br.readLine()) != null) {
-                if (!linea.trim().isEmpty()) {
-                    mesas.add(Tables.fromDataString(linea));
+        try {
+            almacen.conBloqueo(() -> {
+                versionCargada = almacen.version();
+                almacen.recorrer(null, null, (clave, campos) -> {
+                    leidas.add(Tables.fromCampos(campos));
+                    return true;
+                });
+            });
+        } catch (IOException e) {
+            System.out.println("Error cargando mesas: " + e.getMessage());
+        }
+
+        leidas.sort(Comparator.comparingInt(Tables::getTableNumber));
+        return leidas;
+    }
+
+    /**
+     * Toma las mesas guardadas por otra caja, conservando la mesa indicada (la
+     * que esta caja acaba de guardar).
+     *
+     * Si el almacén tiene las mismas mesas en el mismo orden, se reemplazan
+     * posición por posición: la lista retornada por listar() no cambia de tamaño
+     * (alguien puede estar recorriéndola).
+     *
+     * @param conservar mesa a mantener como está en memoria, o null
+     */
+    private void recargar(Tables conservar) {
+        List<Tables> leidas = leerMesas();
+        if (conservar != null) {
+            for (int i = 0; i < leidas.size(); i++) {
+                if (leidas.get(i).getTableId().equals(conservar.getTableId())) {
+                    leidas.set(i, conservar);
                 }
             }
+        }
+
+        boolean mismasMesas = leidas.size() == mesas.size();
+        for (int i = 0; mismasMesas && i < leidas.size(); i++) {
+            mismasMesas = leidas.get(i).getTableId().equals(mesas.get(i).getTableId());
+        }
+
+        if (mismasMesas) {
+            for (int i = 0; i < leidas.size(); i++) {
+                mesas.set(i, leidas.get(i));
+            }
+        } else {
+            mesas.clear();
+            mesas.addAll(leidas);
+        }
+    }
 
+    /**
+     * Recarga las mesas si otra caja cambió el almacén.
+     */
+    private void refrescarSiCambio() {
+        try {
+            if (almacen.version() != versionCargada) {
+                recargar(null);
+            }
         } catch (IOException e) {
             System.out.println("Error cargando mesas: " + e.getMessage());
         }
     }
 
     /**
-     * Guarda el estado actual de la lista de mesas en el archivo "Tables.txt".
+     * Guarda el estado de una mesa en el almacén.
      *
-     * - Sobrescribe completamente el archivo.
-     * - Escribe cada mesa usando Tables.toDataString().
-     */
-    private void guardar() {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(ARCHIVO))) {
-            for (Tables t : mesas) {
-                bw.write(t.toDataString());
-                bw.newLine();
-            }
+     * - Con el bloqueo del almacén tomado, escribe solo esta mesa
+     *   (Tables.toCampos()).
+     * - Si otra caja cambió el almacén (antes o mientras tanto), recarga las
+     *   demás mesas y conserva esta.
+     *
+     * @param mesa mesa modificada en memoria
+     */
+    private void guardar(Tables mesa) {
+        try {
+            almacen.conBloqueo(() -> {
+                long antes = almacen.version();
+                almacen.put(mesa.toCampos());
+                long despues = almacen.version();
+
+                if (antes != versionCargada || despues != antes + 1) {
+                    recargar(mesa);
+                } else {
+                    versionCargada = despues;
+                    // La mesa puede venir de una lectura anterior a la última recarga.
+                    for (int i = 0; i < mesas.size(); i++) {
+                        if (mesas.get(i).getTableId().equals(mesa.getTableId())) {
+                            mesas.set(i, mesa);
+                        }
+                    }
+                }
+            });
         } catch (IOException e) {
             System.out.println("Error guardando mesas: " + e.getMessage());
         }
@@ -142,7 +226,8 @@ public class TablesDAO {
      *
      * @return lista de mesas
      */
-    public List<Tables> listar() {
+    public synchronized List<Tables> listar() {
+        refrescarSiCambio();
         return mesas;
     }
 
@@ -152,7 +237,8 @@ public class TablesDAO {
      * @param id identificador interno (ej: "M1")
      * @return objeto Tables si existe; si no, null
      */
-    public Tables buscarPorTableId(String id) {
+    public synchronized Tables buscarPorTableId(String id) {
+        refrescarSiCambio();
         for (Tables t : mesas) {
             if (t.getTableId().equals(id)) {
                 return t;
@@ -165,12 +251,13 @@ public class TablesDAO {
      * Actualiza una mesa.
      *
      * Nota: Actualmente este método solo persiste el estado en el archivo,
-     * asumiendo que la mesa ya fue modificada en memoria.
+     * asumiendo que la mesa ya fue modificada en memoria. Si otra caja guardó
+     * otras mesas mientras tanto, se conservan sus cambios.
      *
      * @param mesa mesa que se desea actualizar
      */
-    public void actualizarMesa(Tables mesa) {
-        guardar();
+    public synchronized void actualizarMesa(Tables mesa) {
+        guardar(mesa);
     }
 
     /**
@@ -181,12 +268,12 @@ public class TablesDAO {
      *
      * @param tableId identificador interno de la mesa
      */
-    public void liberarMesa(String tableId) {
+    public synchronized void liberarMesa(String tableId) {
         Tables mesa = buscarPorTableId(tableId);
         if (mesa != null) {
             mesa.getCedulas().clear();
             mesa.setEstado(Tables.EstadoMesa.LIBRE);
-            guardar();
+            guardar(mesa);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,348 @@
+package Modelo;
+
+import Utils.TokenizadorCampos;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ *
+ * Unidad de trabajo de un cobro: junta la factura, los pagos, el detalle por
+ * producto y la visita del cliente, y los guarda como una sola transacción.
+ *
+ * Uso: factura(), pago(), detalle() y visitaCliente() solo los anotan;
+ * confirmar() los guarda todos o ninguno.
+ *
+ * Funcionamiento (ver DiarioCobros):
+ * - Con el bloqueo del diario de cobros tomado, primero se aplican las
+ *   transacciones que una caja caída dejó a medias.
+ * - Se fija el archivo destino de cada registro (la partición de hoy) y se
+ *   escribe la transacción en el diario con un solo fsync: el cobro queda
+ *   confirmado.
+ * - Se escribe cada registro en su archivo sin fsync (la durabilidad la da el
+ *   diario) y se marca la transacción como aplicada.
+ *
+ * Aplicar de nuevo es idempotente: la factura se busca por ID; los pagos, el
+ * detalle y la visita se buscan en su archivo desde el largo que tenía al
+ * confirmar, y solo se escriben los que falten.
+ *
+ * Al iniciar, el primer FacturacionDAO llama a recuperarAlIniciar() antes de
+ * cualquier búsqueda o ID nuevo: así un pedido cobrado justo antes de una caída
+ * ya tiene su factura, y la secuencia de facturas queda por encima de todo
+ * ID_FACTURA del diario. El ".seq" no se fuerza a disco: un ID de factura
+ * confirmado está en el diario (con fsync) hasta el checkpoint, que antes de
+ * vaciarlo fuerza las particiones, donde lo encuentra recuperarSecuencia().
+ */
+public class UnidadCobro {
+
+    static final String ARCHIVO = "cobros_rehacer.txt";
+
+    private static final String FACTURA = "FACTURA";
+    private static final String PAGO = "PAGO";
+    private static final String DETALLE = "DETALLE";
+    private static final String VISITA = "VISITA";
+
+    private final FacturacionDAO facturas;
+    private final PagosFacturaDAO pagos;
+    private final PagosFacturaDetalleDAO detalles;
+    private final DiarioCobros diario = DiarioCobros.para(ARCHIVO);
+
+    /**
+     * Registros anotados: {destino, línea}.
+     */
+    private final List<String[]> anotados = new ArrayList<>();
+
+    /**
+     * @param facturas DAO de facturas
+     * @param pagos DAO de pagos de factura
+     * @param detalles DAO del detalle de pagos por producto
+     */
+    public UnidadCobro(FacturacionDAO facturas, PagosFacturaDAO pagos, PagosFacturaDetalleDAO detalles) {
+        this.facturas = facturas;
+        this.pagos = pagos;
+        this.detalles = detalles;
+    }
+
+    /**
+     * Anota la factura (mismos parámetros que FacturacionDAO.guardarFactura).
+     */
+    public void factura(int idFactura, String fecha, String hora, int idPedido,
+            String cedulaCliente, String nombreCliente, String mesa,
+            int subtotal, int iva, int total, String metodoPago) {
+        anotados.add(new String[]{FACTURA, FacturacionDAO.lineaFactura(idFactura, fecha, hora, idPedido,
+            cedulaCliente, nombreCliente, mesa, subtotal, iva, total, metodoPago)});
+    }
+
+    /**
+     * Anota un pago (mismos parámetros que PagosFacturaDAO.guardarPago).
+     */
+    public void pago(int idFactura, String metodo, int monto, String referencia, String cedulaPagador) {
+        anotados.add(new String[]{PAGO, PagosFacturaDAO.lineaPago(idFactura, metodo, monto, referencia, cedulaPagador)});
+    }
+
+    /**
+     * Anota una línea de detalle (mismos parámetros que PagosFacturaDetalleDAO.guardarDetalle).
+     */
+    public void detalle(int idFactura, int idPedido, String metodo, String referencia,
+            String cedulaPagador, String producto, int cantidad, int precio, int totalLinea) {
+        anotados.add(new String[]{DETALLE, PagosFacturaDetalleDAO.lineaDetalle(idFactura, idPedido, metodo,
+            referencia, cedulaPagador, producto, cantidad, precio, totalLinea)});
+    }
+
+    /**
+     * Anota la visita del cliente (visitas + 1 y total + monto), si el cliente existe.
+     *
+     * @return true si se anotó
+     */
+    public boolean visitaCliente(String cedula, double monto, String fechaUltimaVisita) {
+        if (!ClientsDAO.getInstancia().cedulaExist(cedula)) {
+            return false;
+        }
+        anotados.add(new String[]{VISITA,
+            DiarioClientes.cuerpo(ClientsDAO.registroVisita(cedula, monto, fechaUltimaVisita))});
+        return true;
+    }
+
+    /**
+     * Guarda todo lo anotado como una transacción.
+     *
+     * @return true si el cobro quedó confirmado (durable); false si no se
+     * guardó nada
+     */
+    public boolean confirmar() {
+        if (anotados.isEmpty()) {
+            return true;
+        }
+
+        return diario.conBloqueo(() -> {
+            recuperar();
+
+            DiarioCobros.Transaccion tx;
+            try {
+                tx = new DiarioCobros.Transaccion(UUID.randomUUID().toString(), fijarDestinos());
+                diario.confirmar(tx);
+            } catch (IOException e) {
+                System.out.println("Error confirmando cobro: " + e.getMessage());
+                return false;
+            }
+
+            // Confirmado: si algo falla de aquí en adelante, se vuelve a aplicar
+            // en el próximo cobro o al reiniciar.
+            try {
+                aplicar(tx, false);
+                diario.marcarAplicada(tx.id);
+                diario.alDia();
+                diario.checkpointSiHaceFalta();
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Cobro confirmado, pendiente de aplicar: " + e.getMessage());
+            }
+            anotados.clear();
+            return true;
+        });
+    }
+
+    /**
+     * Aplica las transacciones que otra caja (o esta, antes de reiniciar) dejó
+     * confirmadas y sin aplicar. Se llama en cada confirmar() y antes de buscar
+     * la factura de un pedido a cobrar; si no hay nada nuevo en el diario no lee nada.
+     */
+    public void recuperar() {
+        try {
+            diario.conBloqueo(() -> {
+                List<DiarioCobros.Transaccion> pendientes = diario.pendientes();
+                for (DiarioCobros.Transaccion tx : pendientes) {
+                    aplicar(tx, true);
+                    diario.marcarAplicada(tx.id);
+                }
+                diario.alDia();
+            });
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error recuperando cobros: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Al iniciar: deja la secuencia de facturas por encima de todo ID_FACTURA
+     * del diario (aunque el ".seq" se haya perdido en una caída) y aplica lo pendiente.
+     */
+    void recuperarAlIniciar() {
+        try {
+            diario.conBloqueo(() -> {
+                facturas.observarIdFactura(diario.mayorId(FACTURA));
+                recuperar();
+            });
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error recuperando cobros: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Archivo destino de cada registro anotado, con su largo y generación actuales.
+     */
+    private List<DiarioCobros.Registro> fijarDestinos() throws IOException {
+        Map<String, String> particiones = new HashMap<>();
+        List<DiarioCobros.Registro> registros = new ArrayList<>(anotados.size());
+
+        for (String[] a : anotados) {
+            String archivo = particiones.computeIfAbsent(a[0], this::archivoActual);
+            Path path = Paths.get(archivo);
+            long largo;
+            try {
+                largo = Files.size(path);
+            } catch (NoSuchFileException e) {
+                largo = 0;
+            }
+            long generacion = CoordinacionArchivos.para(archivo).generacion(0);
+            registros.add(new DiarioCobros.Registro(a[0], path.toAbsolutePath().toString(), largo, generacion, a[1]));
+        }
+        return registros;
+    }
+
+    private String archivoActual(String destino) {
+        switch (destino) {
+            case FACTURA:
+                return facturas.particionActual();
+            case PAGO:
+                return pagos.particionActual();
+            case DETALLE:
+                return detalles.particionActual();
+            default:
+                return ClientsDAO.ARCHIVO_DIARIO;
+        }
+    }
+
+    /**
+     * Escribe los registros de una transacción. Si se está recuperando, antes
+     * se descartan los que ya estaban escritos.
+     */
+    private void aplicar(DiarioCobros.Transaccion tx, boolean recuperando) throws IOException {
+        List<DiarioCobros.Registro> faltan = recuperando ? faltantes(tx.registros) : tx.registros;
+        TokenizadorCampos t = new TokenizadorCampos('|');
+
+        for (DiarioCobros.Registro r : faltan) {
+            boolean ok;
+            switch (r.destino) {
+                case FACTURA:
+                    t.separar(r.linea);
+                    ok = facturas.anexarFactura(destinoEscritura(r), r.linea, t.entero(0, 0), false);
+                    break;
+                case PAGO:
+                    ok = pagos.anexarPago(destinoEscritura(r), r.linea, false);
+                    break;
+                case DETALLE:
+                    ok = detalles.anexarDetalle(destinoEscritura(r), r.linea, false);
+                    break;
+                case VISITA:
+                    // OPERACION|CEDULA|NOMBRE|TIPO|VISITAS|FECHA|TOTAL
+                    t.separar(r.linea);
+                    ok = ClientsDAO.getInstancia().sumarVisitaEnCobro(
+                            DiarioClientes.Registro.visita(t.texto(1), t.decimal(6, 0), t.texto(5)));
+                    break;
+                default:
+                    ok = true;
+            }
+            if (!ok) {
+                throw new IOException("No se pudo escribir " + r.destino + " en " + r.archivo);
+            }
+        }
+    }
+
+    /**
+     * Registros de una transacción que no aparecen en su archivo después del
+     * largo que tenía al confirmar.
+     */
+    private List<DiarioCobros.Registro> faltantes(List<DiarioCobros.Registro> registros) throws IOException {
+        List<DiarioCobros.Registro> faltan = new ArrayList<>();
+        Map<String, Map<String, Integer>> escritasPorArchivo = new HashMap<>();
+        TokenizadorCampos t = new TokenizadorCampos('|');
+
+        for (DiarioCobros.Registro r : registros) {
+            if (FACTURA.equals(r.destino)) {
+                t.separar(r.linea);
+                if (facturas.buscarFacturaPorId(t.entero(0, 0)) == null) {
+                    faltan.add(r);
+                }
+                continue;
+            }
+
+            // El diario de clientes no se vacía mientras haya cobros sin aplicar
+            // (ClientsDAO.checkpoint): si la visita se escribió, sigue ahí después
+            // del largo que tenía al confirmar.
+            boolean visita = VISITA.equals(r.destino);
+            Map<String, Integer> escritas = escritasPorArchivo.computeIfAbsent(r.archivo + "|" + r.offset,
+                    k -> contarLineas(r.archivo, r.offset, visita));
+            Integer n = escritas.get(r.linea);
+            if (n != null && n > 0) {
+                escritas.put(r.linea, n - 1);
+            } else {
+                faltan.add(r);
+            }
+        }
+        return faltan;
+    }
+
+    /**
+     * Cuenta las líneas de un archivo (o de su ArchivoFrio) desde un offset. En
+     * el diario de clientes se cuenta sin el SEQ (primer campo).
+     */
+    private static Map<String, Integer> contarLineas(String archivo, long offset, boolean sinPrimerCampo) {
+        Map<String, Integer> res = new HashMap<>();
+        Path path = Paths.get(archivo);
+
+        try (InputStream in = abrirDesde(path, offset)) {
+            if (in == null) {
+                return res;
+            }
+            BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String linea;
+            while ((linea = br.readLine()) != null) {
+                linea = linea.trim();
+                if (sinPrimerCampo) {
+                    int sep = linea.indexOf('|');
+                    linea = (sep >= 0) ? linea.substring(sep + 1) : linea;
+                }
+                res.merge(linea, 1, Integer::sum);
+            }
+        } catch (IOException e) {
+            System.out.println("Error revisando " + archivo + ": " + e.getMessage());
+        }
+        return res;
+    }
+
+    private static InputStream abrirDesde(Path path, long offset) throws IOException {
+        try {
+            InputStream in = Files.newInputStream(path);
+            if (offset > Files.size(path)) {
+                // El archivo se reemplazó por otro más corto: se revisa completo.
+                return in;
+            }
+            in.skipNBytes(offset);
+            return in;
+        } catch (NoSuchFileException e) {
+            ArchivoFrio frio = ArchivoFrio.abrir(path);
+            return (frio != null) ? frio.abrirDesde(offset) : null;
+        }
+    }
+
+    /**
+     * Partición donde escribir un registro al aplicarlo: la que se fijó al
+     * confirmar, salvo que ya se haya archivado (entonces, la de hoy).
+     */
+    private String destinoEscritura(DiarioCobros.Registro r) {
+        if (ArchivoFrio.estaArchivada(Paths.get(r.archivo))) {
+            return archivoActual(r.destino);
+        }
+        return r.archivo;
+    }
+}
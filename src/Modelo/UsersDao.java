@@ -4,93 +4,81 @@
  */
 package Modelo;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
 
 /**
  *
  * @author Personal
+ *
+ * Usuarios del sistema, guardados en AlmacenRegistros ("Users.txt" con el
+ * almacén de texto): cedula,nombre,usuario,contraseña,correo,teléfono.
+ *
+ * La clave es el usuario; la cédula tiene un índice secundario, así
+ * userExist() y validUser() no recorren todos los usuarios.
  */
 public class UsersDao {
 
-    ArrayList<Users> list;
+    private static final String ARCHIVO = "Users.txt";
 
-    public UsersDao() {
-        list = new ArrayList<>();
-        cargarDesdeTxt();
+    private static final int COL_CEDULA = 0;
+    private static final int COL_USUARIO = 2;
+    private static final int COL_PASSWORD = 3;
+    private static final int COLUMNAS = 6;
 
-    }
+    private static final String INDICE_CEDULA = "cedula";
 
-    public void cargarDesdeTxt() {
-        list.clear();
+    private final AlmacenRegistros almacen = AlmacenRegistros.para(ARCHIVO, ',', COL_USUARIO);
 
-        try (BufferedReader br = new BufferedReader(new FileReader("Users.txt"))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length == 6) {
-                    String ced = parts[0];
-                    String name = parts[1];
-                    String user = parts[2];
-                    String password = parts[3];
-                    String mail = parts[4];
-                    int phone = Integer.parseInt(parts[5]);
-
-                    list.add(new Users(user, password, mail, phone, ced, name));
-                }
-            }
-        } catch (java.io.FileNotFoundException e) {
-            
+    public UsersDao() {
+        try {
+            almacen.definirIndice(INDICE_CEDULA, campos -> (campos.length == COLUMNAS) ? campos[COL_CEDULA] : null);
         } catch (IOException e) {
             System.out.println("Error reading file.");
         }
     }
 
     public boolean addUser(Users a) {
+        // Con el bloqueo tomado, así dos cajas no registran el mismo usuario a la vez.
+        try {
+            return almacen.conBloqueo(() -> {
+                // 1) bloquear duplicados
+                if (userExist(a.getCedula(), a.getUser())) {
+                    return false;
+                }
 
-    // 1) bloquear duplicados
-    if (userExist(a.getCedula(), a.getUser())) {
-        return false;
-    }
-
-    // 2) guardar SOLO el nuevo usuario
-    try (BufferedWriter bw = new BufferedWriter(new FileWriter("Users.txt", true))) {
-        bw.write(a.getCedula() + "," + a.getName() + "," + a.getUser() + "," +
-                 a.getPassword() + "," + a.getMail() + "," + a.getPhone());
-        bw.newLine();
-    } catch (IOException e) {
-        System.out.println("Error writing file.");
-        return false;
+                // 2) guardar SOLO el nuevo usuario
+                almacen.put(new String[]{
+                    a.getCedula(), a.getName(), a.getUser(), a.getPassword(), a.getMail(), String.valueOf(a.getPhone())
+                });
+                return true;
+            });
+        } catch (IOException e) {
+            System.out.println("Error writing file.");
+            return false;
+        }
     }
 
-    // 3) actualizar memoria
-    list.add(a);
-    return true;
-}
-
-
     public boolean userExist(String ced, String user) {
-        for (Users us : list) {
-            if (us.getCedula().equals(ced) || us.getUser().equals(user)) {
+        try {
+            String[] us = almacen.get(user);
+            if (us != null && us.length == COLUMNAS) {
                 return true;
             }
+            return !almacen.buscarPorIndice(INDICE_CEDULA, ced).isEmpty();
+        } catch (IOException e) {
+            System.out.println("Error reading file.");
+            return false;
         }
-        return false;
     }
 
     public boolean validUser(String user, String pass) {
-
-        for (Users us : list) {
-            if (us.getUser().equals(user) && us.getPassword().equals(pass)) {
-                return true;
-            }
+        try {
+            String[] us = almacen.get(user);
+            return us != null && us.length == COLUMNAS && us[COL_PASSWORD].equals(pass);
+        } catch (IOException e) {
+            System.out.println("Error reading file.");
+            return false;
         }
-
-        return false;
     }
 
 }
@@ -1,22 +1,31 @@
 package Modelo;
 
+import Utils.TokenizadorCampos;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.util.Optional;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
 
 public class pedidosDAO {
 
     private static final String ARCHIVO = "pedidos.txt";
+    private static final String ARCHIVO_TMP = "pedidos_tmp.txt";
 
-    private static final String SEP = ",";
+    private static final char SEP = ',';
     private static final int COLS_MIN = 9;
 
     private static final int IDX_ID = 0;
     private static final int IDX_MESA = 3;
-    
+    private static final int IDX_CEDULA = 4;
+
+    private final SecuenciaIds secuencia = SecuenciaIds.para(ARCHIVO, ',');
+    private final IndicePedidos indice = IndicePedidos.para(ARCHIVO, ',');
+    private final PersistenciaAsincrona persistencia = PersistenciaAsincrona.getInstancia();
+    private final EscritorAnexos escritor = EscritorAnexos.para(ARCHIVO);
+    private final CoordinacionArchivos coordinacion = CoordinacionArchivos.para(ARCHIVO);
 
     public String rutaArchivoEnUso() {
         return Paths.get(ARCHIVO).toAbsolutePath().toString();
@@ -26,40 +35,27 @@ public class pedidosDAO {
         
     }
 
+    /**
+     * Retorna el siguiente ID de pedido desde la secuencia en memoria.
+     * No recorre pedidos.txt: el costo es constante sin importar el historial.
+     */
     public int siguienteId() {
-        Path path = Paths.get(ARCHIVO);
-        if (!Files.exists(path)) {
-            return 1;
-        }
-
-        int maxId = 0;
-
-        try (BufferedReader br = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                line = safeTrim(line);
-                if (line.isEmpty()) {
-                    continue;
-                }
-
-                Optional<Integer> idOpt = tryParseIdFromLine(line);
-                if (idOpt.isPresent()) {
-                    int id = idOpt.get();
-                    if (id > maxId) {
-                        maxId = id;
-                    }
-                }
-            }
-        } catch (IOException e) {
-           
-            return maxId > 0 ? (maxId + 1) : 1;
-        }
+        return secuencia.siguiente();
+    }
 
-        return maxId + 1;
+    /**
+     * Guarda la línea en el hilo de persistencia, sin bloquear a quien llama.
+     * Las consultas de este DAO esperan a que termine antes de leer.
+     *
+     * @return true si se guardó
+     */
+    public CompletableFuture<Boolean> guardarLineaAsync(String linea) {
+        return persistencia.enviar(ARCHIVO, () -> guardarLinea(linea));
     }
 
     public boolean guardarLinea(String linea) {
         linea = safeTrim(linea);
+        persistencia.esperar(ARCHIVO);
 
         if (linea.isEmpty()) {
           
@@ -71,138 +67,218 @@ public class pedidosDAO {
             return false;
         }
 
-        try (BufferedWriter bw = Files.newBufferedWriter(
-                Paths.get(ARCHIVO),
-                StandardCharsets.UTF_8,
-                StandardOpenOption.CREATE,
-                StandardOpenOption.APPEND
-        )) {
-            bw.write(linea);
-            bw.newLine();
+        String guardada = linea;
+        byte[] contenido = guardada.getBytes(StandardCharsets.UTF_8);
+        byte[] registro = (guardada + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+
+        // Se sincroniza con el índice para no intercalar un append con una reescritura;
+        // el bloqueo del archivo hace lo mismo con las demás cajas.
+        synchronized (indice) {
+            try {
+                coordinacion.conBloqueo(() -> {
+                    long offset = escritor.escribir(null, registro);
+
+                    TokenizadorCampos t = new TokenizadorCampos(SEP);
+                    t.separar(guardada);
+                    int id = t.entero(IDX_ID, 0);
+                    if (id > 0) {
+                        int codigoMesa = IndicePedidos.codigoMesa(guardada, t.inicio(IDX_MESA), t.fin(IDX_MESA));
+                        secuencia.observar(id);
+                        indice.registrar(id, codigoMesa, offset, contenido.length, offset + registro.length);
+                    }
+                });
+            } catch (IOException e) {
+
+                return false;
+            }
+        }
+
+        // Fuera del lock del índice, para que varios appends compartan el mismo fsync.
+        try {
+            escritor.confirmar();
             return true;
         } catch (IOException e) {
-            
             return false;
         }
     }
 
+    /**
+     * Busca la línea de un pedido por ID usando el índice primario (pedidos.idx).
+     * Es una búsqueda en memoria más una lectura posicionada, sin recorrer el archivo.
+     */
     public String obtenerPedidoLineaPorId(int idPedido) {
-        Path path = Paths.get(ARCHIVO);
-        if (!Files.exists(path)) {
+        if (idPedido <= 0) {
             return null;
         }
+        persistencia.esperar(ARCHIVO);
+        return indice.leerLinea(idPedido);
+    }
 
-        try (BufferedReader br = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
-            String linea;
+    /**
+     * Retorna las líneas de los pedidos de una mesa por número (los dígitos de la
+     * columna mesa, por ejemplo 3 para "3" o "M3").
+     * Usa el índice por mesa: el costo depende de los pedidos de esa mesa, no del historial.
+     */
+    public List<String> obtenerPedidosLineasPorMesa(int mesa) {
+        persistencia.esperar(ARCHIVO);
+        List<String> res = new ArrayList<>();
+        TokenizadorCampos t = new TokenizadorCampos(SEP);
 
-            while ((linea = br.readLine()) != null) {
-                linea = safeTrim(linea);
-                if (linea.isEmpty()) {
-                    continue;
-                }
+        for (String linea : indice.leerLineasPorMesa(IndicePedidos.codigoMesa(String.valueOf(mesa)))) {
+            if (t.separar(linea) < COLS_MIN) {
+                continue;
+            }
 
-                Optional<Integer> idOpt = tryParseIdFromLine(linea);
-                if (idOpt.isPresent() && idOpt.get() == idPedido) {
-                    return linea;
-                }
+            if (t.tieneDigito(IDX_MESA)
+                    && IndicePedidos.codigoMesa(linea, t.inicio(IDX_MESA), t.fin(IDX_MESA)) == mesa) {
+                res.add(linea);
             }
-        } catch (IOException e) {
-         
-        } catch (Exception e) {
-           
         }
-
-        return null;
+        return res;
     }
 
-    public List<String> obtenerPedidosLineasPorMesa(int mesa) {
-        
-        
-        Path path = Paths.get(ARCHIVO);
-        if (!Files.exists(path)) {
-            return List.of();
+    /**
+     * Retorna las líneas de los pedidos cuya columna mesa coincide con el texto
+     * indicado (sin distinguir mayúsculas), por ejemplo "3" o "LLEVAR".
+     * Usa el índice por mesa igual que la búsqueda por número.
+     */
+    public List<String> obtenerPedidosLineasPorMesa(String mesaTexto) {
+        String filtro = safeTrim(mesaTexto);
+        List<String> res = new ArrayList<>();
+        persistencia.esperar(ARCHIVO);
+        TokenizadorCampos t = new TokenizadorCampos(SEP);
+
+        for (String linea : indice.leerLineasPorMesa(IndicePedidos.codigoMesa(filtro))) {
+            if (t.separar(linea) < COLS_MIN) {
+                continue;
+            }
+
+            if (t.esIgualIgnorandoMayusculas(IDX_MESA, filtro)) {
+                res.add(linea);
+            }
         }
+        return res;
+    }
 
-        List<String> res = new ArrayList<>();
+    /**
+     * Elimina de pedidos.txt todos los pedidos de una mesa (cerrar mesa).
+     *
+     * @param mesaTexto valor de la columna mesa ("1", "2"... o "LLEVAR")
+     * @return true si borró al menos una línea
+     */
+    public boolean eliminarPedidosDeMesa(String mesaTexto) {
+        String filtro = safeTrim(mesaTexto);
+        return reescribirExcluyendo(t -> t.esIgualIgnorandoMayusculas(IDX_MESA, filtro));
+    }
 
-        try (BufferedReader br = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
-            String linea;
+    /**
+     * Elimina de pedidos.txt los pedidos de una persona en una mesa (sacar persona).
+     *
+     * @param mesaTexto valor de la columna mesa
+     * @param cedula cédula del cliente
+     * @return true si borró al menos una línea
+     */
+    public boolean eliminarPedidosDeMesaYCedula(String mesaTexto, String cedula) {
+        String filtro = safeTrim(mesaTexto);
+        String ced = safeTrim(cedula);
+        return reescribirExcluyendo(t -> t.esIgualIgnorandoMayusculas(IDX_MESA, filtro)
+                && t.esIgualIgnorandoMayusculas(IDX_CEDULA, ced));
+    }
 
-            while ((linea = br.readLine()) != null) {
-                linea = safeTrim(linea);
-                if (linea.isEmpty()) {
-                    continue;
-                }
+    /**
+     * Reescribe pedidos.txt en un temporal omitiendo las líneas que cumplen el filtro,
+     * y lo reemplaza. Mientras escribe calcula las posiciones nuevas de cada línea,
+     * así el índice queda al día sin volver a recorrer el archivo.
+     *
+     * Igual que antes, se descartan las líneas vacías o con menos de 9 columnas.
+     * El filtro recibe la línea ya separada (sin crear un String por columna).
+     *
+     * Todo se hace con el bloqueo de pedidos.txt: otra caja no puede anexar
+     * entre la lectura y el reemplazo (se perdería su pedido).
+     */
+    private boolean reescribirExcluyendo(Predicate<TokenizadorCampos> excluir) {
+        Path original = Paths.get(ARCHIVO);
+        Path temp = Paths.get(ARCHIVO_TMP);
+
+        persistencia.esperar(ARCHIVO);
+        if (!Files.exists(original)) {
+            return false;
+        }
 
-                String[] p = linea.split(SEP, -1);
-                if (p.length < COLS_MIN) {
-                    continue;
-                }
+        synchronized (indice) {
+            return coordinacion.conBloqueo(() -> {
+                IndicePedidos.Reconstruccion nuevo = indice.nuevaReconstruccion();
+                byte[] salto = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+                boolean borro = false;
+                TokenizadorCampos t = new TokenizadorCampos(SEP);
+
+                try (BufferedReader br = Files.newBufferedReader(original, StandardCharsets.UTF_8);
+                        FileOutputStream fos = new FileOutputStream(temp.toFile(), false);
+                        OutputStream out = new BufferedOutputStream(fos, 64 * 1024)) {
+
+                    long offset = 0;
+                    String linea;
+                    while ((linea = br.readLine()) != null) {
+                        if (linea.trim().isEmpty()) {
+                            continue;
+                        }
+
+                        if (t.separar(linea) < COLS_MIN) {
+                            continue;
+                        }
+
+                        if (excluir.test(t)) {
+                            borro = true;
+                            continue;
+                        }
+
+                        byte[] contenido = linea.getBytes(StandardCharsets.UTF_8);
+                        out.write(contenido);
+                        out.write(salto);
+
+                        int id = Math.max(t.entero(IDX_ID, 0), 0);
+                        long fin = offset + contenido.length + salto.length;
+                        nuevo.agregar(id, IndicePedidos.codigoMesa(linea, t.inicio(IDX_MESA), t.fin(IDX_MESA)),
+                                offset, contenido.length, fin);
+                        offset = fin;
+                    }
 
-                String mesaStr = safeTrim(p[IDX_MESA]);
-                if (mesaStr.isEmpty()) {
-                    continue;
+                    // pedidos.txt se reemplaza después: el temporal tiene que estar en disco antes.
+                    out.flush();
+                    fos.getFD().sync();
+                } catch (IOException e) {
+                    System.out.println("Error reescribiendo pedidos: " + e.getMessage());
+                    return false;
                 }
 
                 try {
-                    int mesaLinea = Integer.parseInt(mesaStr.replaceAll("[^0-9]", ""));
-                    if (mesaLinea == mesa) {
-                        res.add(linea);
+                    try {
+                        Files.move(temp, original, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (AtomicMoveNotSupportedException e) {
+                        Files.move(temp, original, StandardCopyOption.REPLACE_EXISTING);
                     }
-                } catch (Exception ignored) {
+                } catch (IOException e) {
+                    System.out.println("Error reemplazando pedidos.txt: " + e.getMessage());
+                    return false;
                 }
-            }
-        } catch (IOException e) {
-            
-        } catch (Exception e) {
-         
-        }
+                escritor.reabrir();
 
-        return res;
+                // Publica el reemplazo a las demás cajas una vez escrito el índice nuevo.
+                indice.aplicar(nuevo);
+                return borro;
+            });
+        }
     }
 
     private static String safeTrim(String s) {
         return s == null ? "" : s.trim();
     }
 
-    private static Optional<Integer> tryParseIdFromLine(String line) {
-        try {
-            String[] parts = line.split(SEP, 2);
-            if (parts.length == 0) {
-                return Optional.empty();
-            }
-
-            String idStr = safeTrim(parts[0]);
-            if (idStr.isEmpty()) {
-                return Optional.empty();
-            }
-
-            int id = Integer.parseInt(idStr);
-            if (id <= 0) {
-                return Optional.empty();
-            }
-
-            return Optional.of(id);
-        } catch (Exception e) {
-            return Optional.empty();
-        }
-    }
-
     private static boolean isLineaPedidoValidaMinima(String line) {
-        String[] p = line.split(SEP, -1);
-        if (p.length < COLS_MIN) {
-            return false;
-        }
-
-        try {
-            int id = Integer.parseInt(safeTrim(p[IDX_ID]));
-            if (id <= 0) {
-                return false;
-            }
-        } catch (Exception e) {
+        TokenizadorCampos t = new TokenizadorCampos(SEP);
+        if (t.separar(line) < COLS_MIN) {
             return false;
         }
-
-        return true;
+        return t.entero(IDX_ID, 0) > 0;
     }
-}
\ No newline at end of file
+}
@@ -1,92 +1,279 @@
 package Modelo;
 
+import Utils.TokenizadorCampos;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.SwingUtilities;
 
 /**
  *
- * DAO para administrar productos usando archivo de texto (products.txt) y una lista en memoria.
+ * DAO para administrar productos usando archivo de texto (products.txt) y un catálogo en memoria.
  * Implementa Singleton para mantener una sola instancia y ofrece CRUD + recarga desde archivo.
- * También permite registrar callbacks para notificar cambios de stock.
+ * También avisa los cambios a las vistas (CambioProductos.Escucha).
+ *
+ * Catálogo en memoria:
+ * - porId: ConcurrentHashMap con el ID normalizado (trim + minúsculas), búsquedas O(1).
+ * - ordenados / porCategoria: vistas inmutables en orden de inserción, que se
+ *   reemplazan completas en cada cambio. Se pueden leer desde cualquier hilo.
+ * - Los cambios (insertar/actualizar/eliminar/recargar) se serializan con el
+ *   lock del DAO; las lecturas no bloquean.
+ *
+ * Stock (LibroInventario):
+ * - Cada cambio de stock se agrega como movimiento al libro de inventario;
+ *   una venta o reposición es un append pequeño, sin reescribir products.txt.
+ * - products.txt es la foto del catálogo: su primera línea (#LIBRO,SEQ,OFFSET)
+ *   indica hasta qué movimiento del libro incluye. Al cargar, se aplican encima
+ *   los movimientos posteriores.
+ * - Un hilo en segundo plano compacta: reescribe products.txt con el stock
+ *   actual y registra la foto en el historial del libro.
+ * - Al insertar, actualizar o eliminar, el catálogo cambia en memoria al
+ *   momento y la foto se escribe en el hilo de persistencia
+ *   (PersistenciaAsincrona); varios cambios seguidos comparten una sola escritura.
+ *
+ * Varias cajas (CoordinacionArchivos):
+ * - Antes de cada consulta o cambio se revisa si otra caja publicó cambios:
+ *   movimientos nuevos en el libro se aplican al stock en memoria (seguir());
+ *   una foto nueva de otra caja recarga el catálogo.
+ * - Los cambios de catálogo todavía sin foto se guardan aparte (pendientesFoto)
+ *   y se vuelven a aplicar después de recargar, así no se pierden.
+ * - La foto se escribe con los bloqueos de products.txt y del libro: si otra
+ *   caja cambió algo, primero se recarga y la foto incluye los dos cambios.
+ *
+ * Avisos a las vistas (CambioProductos):
+ * - Cada cambio anota el ID y el tipo (alta, edición, baja o solo stock); los
+ *   movimientos de stock de otra caja también. Una recarga del catálogo se
+ *   anota como recarga completa.
+ * - Lo anotado durante "pos.productos.eventos.ms" (50 ms por defecto) se
+ *   entrega en un solo lote en el EDT: una ráfaga de ventas es un solo
+ *   repintado y cada vista actualiza solo las tarjetas o filas afectadas.
  *
  * @author Jefferson Granados
  */
 public class productosDAO {
 
     private static productosDAO instancia;
-    private final ArrayList<Product> list;
     private static final String ARCHIVO = "products.txt";
+    private static final String ARCHIVO_LIBRO = "inventario_movimientos.txt";
+    private static final String ARCHIVO_SNAPSHOTS = "inventario_snapshots.txt";
+
+    /**
+     * Primera columna de la línea de products.txt que indica hasta dónde llega la foto.
+     */
+    private static final String MARCA_LIBRO = "#LIBRO";
+
+    /**
+     * Compactación: se revisa cada minuto; compacta si hay muchos movimientos
+     * pendientes o si hay alguno y pasó el intervalo máximo.
+     */
+    private static final int COMPACTAR_CADA_MOVIMIENTOS = 200;
+    private static final long COMPACTAR_CADA_MS = 10 * 60 * 1000L;
+
+    /**
+     * ID normalizado -> producto.
+     */
+    private final Map<String, Product> porId = new ConcurrentHashMap<>();
+
+    /**
+     * Orden de inserción (solo se usa dentro de los métodos sincronizados).
+     */
+    private final LinkedHashMap<String, Product> orden = new LinkedHashMap<>();
+
+    /**
+     * Vistas publicadas para lectura: lista completa y categoría normalizada -> productos.
+     */
+    private volatile List<Product> ordenados = Collections.emptyList();
+    private volatile Map<String, List<Product>> porCategoria = Collections.emptyMap();
+
+    /**
+     * Ventana en la que se juntan los cambios antes de avisar a las vistas.
+     */
+    private static final long VENTANA_EVENTOS_MS = Long.getLong("pos.productos.eventos.ms", 50);
+
+    private final List<CambioProductos.Escucha> escuchas = new CopyOnWriteArrayList<>();
+
+    /**
+     * Cambios anotados que todavía no se entregaron (se usan con su propio lock,
+     * nunca se toma el del DAO estando dentro).
+     */
+    private final LinkedHashMap<String, CambioProductos.Tipo> cambiosPendientes = new LinkedHashMap<>();
+    private boolean recargaPendiente = false;
+    private boolean entregaProgramada = false;
 
-    private final List<Runnable> stockChangeCallbacks = new ArrayList<>();
+    private final ScheduledExecutorService avisos = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "avisos-productos");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final LibroInventario libro = new LibroInventario(ARCHIVO_LIBRO, ARCHIVO_SNAPSHOTS);
+    private final CoordinacionArchivos coordinacion = CoordinacionArchivos.para(ARCHIVO);
+
+    /**
+     * Cambios de catálogo desde la última foto: ID normalizado -> producto
+     * (null si se eliminó). Se vuelven a aplicar si hay que recargar.
+     */
+    private final LinkedHashMap<String, Product> pendientesFoto = new LinkedHashMap<>();
+
+    /**
+     * true si la foto recargó cambios de otra caja y falta avisar a las escuchas.
+     */
+    private final AtomicBoolean recargaSinNotificar = new AtomicBoolean(false);
+
+    /**
+     * Marca leída de products.txt: último movimiento incluido y tamaño del libro en ese momento.
+     */
+    private int seqFoto = LibroInventario.SIN_FOTO;
+    private long offsetFoto = 0;
+
+    private int movimientosSinCompactar = 0;
+    private long ultimaCompactacion = System.currentTimeMillis();
+
+    private final PersistenciaAsincrona persistencia = PersistenciaAsincrona.getInstancia();
+
+    /**
+     * true mientras haya una escritura de la foto en cola que todavía no empezó.
+     */
+    private final AtomicBoolean fotoProgramada = new AtomicBoolean(false);
 
     /**
-     * Constructor privado: inicializa la lista en memoria y carga productos desde archivo.
+     * Constructor privado: carga productos desde archivo al catálogo en memoria,
+     * aplica los movimientos pendientes del libro e inicia la compactación periódica.
      */
     private productosDAO() {
-        list = new ArrayList<>();
-        cargarProductos();
+        cargarCatalogo();
+        if (seqFoto == LibroInventario.SIN_FOTO) {
+            guardarProductos();
+        }
+        iniciarCompactacion();
     }
 
     /**
      * Retorna la única instancia del DAO (Singleton).
+     * Es seguro llamarlo desde cualquier hilo.
      */
-    public static productosDAO getInstancia() {
+    public static synchronized productosDAO getInstancia() {
         if (instancia == null) instancia = new productosDAO();
         return instancia;
     }
 
     /**
-     * Registra un callback que se ejecuta cuando cambia el stock (insert/update/delete/recarga).
+     * Registra una vista que recibe los cambios del catálogo (en lotes, en el EDT).
      */
-    public void addStockChangeCallback(Runnable callback) {
-        if (callback != null && !stockChangeCallbacks.contains(callback)) {
-            stockChangeCallbacks.add(callback);
+    public void agregarEscucha(CambioProductos.Escucha escucha) {
+        if (escucha != null && !escuchas.contains(escucha)) {
+            escuchas.add(escucha);
         }
     }
 
     /**
-     * Elimina un callback previamente registrado.
+     * Elimina una escucha previamente registrada.
      */
-    public void removeStockChangeCallback(Runnable callback) {
-        stockChangeCallbacks.remove(callback);
+    public void quitarEscucha(CambioProductos.Escucha escucha) {
+        escuchas.remove(escucha);
     }
 
     /**
-     * Ejecuta todos los callbacks registrados para notificar que hubo cambios.
+     * Anota el cambio de un producto para el próximo lote.
      */
-    private void notificarStockCambiado() {
-        for (Runnable callback : stockChangeCallbacks) {
-            if (callback != null) callback.run();
+    private void anotarCambio(String id, CambioProductos.Tipo tipo) {
+        synchronized (cambiosPendientes) {
+            CambioProductos.Tipo combinado = CambioProductos.combinar(cambiosPendientes.get(id), tipo);
+            if (combinado == null) {
+                cambiosPendientes.remove(id);
+            } else {
+                cambiosPendientes.put(id, combinado);
+            }
+            programarEntrega();
+        }
+    }
+
+    /**
+     * Anota que el catálogo se recargó (no se sabe qué cambió).
+     */
+    private void anotarRecarga() {
+        synchronized (cambiosPendientes) {
+            recargaPendiente = true;
+            programarEntrega();
+        }
+    }
+
+    /**
+     * Programa la entrega del lote al final de la ventana (con el lock de cambiosPendientes).
+     */
+    private void programarEntrega() {
+        if (entregaProgramada) {
+            return;
+        }
+        entregaProgramada = true;
+        avisos.schedule(() -> SwingUtilities.invokeLater(this::entregarCambios),
+                VENTANA_EVENTOS_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * En el EDT: entrega a las escuchas lo anotado desde el último lote.
+     */
+    private void entregarCambios() {
+        CambioProductos cambio;
+        synchronized (cambiosPendientes) {
+            entregaProgramada = false;
+            if (!recargaPendiente && cambiosPendientes.isEmpty()) {
+                return;
+            }
+            cambio = recargaPendiente
+                    ? new CambioProductos(Collections.emptyMap(), true)
+                    : new CambioProductos(cambiosPendientes, false);
+            cambiosPendientes.clear();
+            recargaPendiente = false;
+        }
+        for (CambioProductos.Escucha escucha : escuchas) {
+            try {
+                escucha.productosCambiados(cambio);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
         }
     }
 
     /**
      * Lee productos directamente desde el archivo y retorna una lista nueva (no usa la lista en memoria).
+     * El stock es el de la última foto: no incluye movimientos del libro aún no compactados.
      */
     public List<Product> listar() {
         List<Product> lista = new ArrayList<>();
+        persistencia.esperar(ARCHIVO);
         File f = new File(ARCHIVO);
         if (!f.exists()) return lista;
 
         try (BufferedReader br = new BufferedReader(new FileReader(f))) {
+            TokenizadorCampos t = new TokenizadorCampos(',');
             String line;
             while ((line = br.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty()) continue;
-
-                String[] p = line.split(",");
-                if (p.length < 6) continue;
+                if (t.separar(line) < 6) continue;
 
-                String id = p[0].trim();
-                String nombre = p[1].trim();
-                String categoria = p[2].trim();
-                double precio = Double.parseDouble(p[3].trim());
-                int cantidad = Integer.parseInt(p[4].trim());
-                String estado = p[5].trim();
-                String imagen = (p.length >= 7) ? p[6].trim() : "";
-
-                lista.add(new Product(id, nombre, categoria, precio, cantidad, estado, imagen));
+                Product producto = leerProducto(t);
+                if (producto != null) {
+                    lista.add(producto);
+                }
             }
         } catch (Exception e) {
         }
@@ -96,145 +283,594 @@ public class productosDAO {
 
     /**
      * Inserta un producto si no existe otro con el mismo ID (comparación ignorando mayúsculas/minúsculas).
-     * Guarda en archivo y notifica cambios.
+     * Programa la escritura de products.txt y notifica cambios.
      */
     public boolean insertarProducto(Product producto) {
         if (producto == null || producto.getIdProduct() == null) return false;
+        refrescarSiCambio();
 
-        String nuevoId = producto.getIdProduct().trim();
-
-        for (Product p : list) {
-            if (p.getIdProduct() != null && p.getIdProduct().trim().equalsIgnoreCase(nuevoId)) {
+        synchronized (this) {
+            String clave = normalizar(producto.getIdProduct());
+            if (orden.containsKey(clave)) {
                 return false;
             }
+            if (!registrarMovimiento(producto.getIdProduct(), producto.getCant(), "ALTA")) {
+                return false;
+            }
+            agregarAlCatalogo(producto);
+            pendientesFoto.put(clave, producto);
+            publicar();
         }
-
-        list.add(producto);
-        guardarProductos();
-        notificarStockCambiado();
-        return true;
+        boolean confirmado = libro.confirmar();
+        programarFoto();
+        anotarCambio(producto.getIdProduct(), CambioProductos.Tipo.INSERTADO);
+        return confirmado;
     }
 
     /**
-     * Retorna una copia de la lista en memoria de productos.
+     * Retorna una copia de la lista en memoria de productos (en orden de inserción).
      */
     public ArrayList<Product> obtenerTodosLosProductos() {
-        return new ArrayList<>(list);
+        refrescarSiCambio();
+        return new ArrayList<>(ordenados);
     }
 
     /**
-     * Busca un producto por ID dentro de la lista en memoria.
+     * Retorna los productos de una categoría (ignorando mayúsculas/minúsculas),
+     * en orden de inserción, usando el índice por categoría.
+     */
+    public ArrayList<Product> obtenerProductosPorCategoria(String categoria) {
+        if (categoria == null) return new ArrayList<>();
+        refrescarSiCambio();
+        List<Product> res = porCategoria.get(normalizar(categoria));
+        return (res == null) ? new ArrayList<>() : new ArrayList<>(res);
+    }
+
+    /**
+     * Busca un producto por ID (ignorando mayúsculas/minúsculas y espacios). O(1).
      */
     public Product buscarProductoPorId(String id) {
         if (id == null) return null;
-        String buscar = id.trim();
+        refrescarSiCambio();
+        return porId.get(normalizar(id));
+    }
 
-        for (Product p : list) {
-            if (p.getIdProduct() != null && p.getIdProduct().trim().equalsIgnoreCase(buscar)) {
+    /**
+     * Actualiza un producto existente (por ID) reemplazándolo en el catálogo.
+     * Programa la escritura de products.txt y notifica cambios.
+     *
+     * La cantidad tipeada queda como stock: el ajuste se calcula con el bloqueo
+     * del libro tomado y después de incorporar los movimientos de las demás
+     * cajas, así el libro termina en el mismo valor que la memoria.
+     */
+    public boolean actualizarProducto(Product producto) {
+        if (producto == null || producto.getIdProduct() == null) return false;
+
+        String clave = normalizar(producto.getIdProduct());
+        refrescarSiCambio();
+
+        synchronized (this) {
+            boolean escrito = libro.conBloqueo(() -> {
+                libro.seguir(this::aplicarMovimiento);
+
+                Product anterior = orden.get(clave);
+                if (anterior == null) {
+                    return false;
+                }
+                // Si cambió la cantidad, queda registrado como ajuste manual.
+                return registrarMovimiento(producto.getIdProduct(), producto.getCant() - anterior.getCant(), "EDICION");
+            });
+            if (!escrito) {
+                return false;
+            }
+            // put sobre una clave existente conserva la posición (igual que list.set).
+            orden.put(clave, producto);
+            porId.put(clave, producto);
+            pendientesFoto.put(clave, producto);
+            publicar();
+        }
+        boolean confirmado = libro.confirmar();
+        programarFoto();
+        anotarCambio(producto.getIdProduct(), CambioProductos.Tipo.ACTUALIZADO);
+        return confirmado;
+    }
+
+    /**
+     * Elimina un producto por ID del catálogo en memoria.
+     * Programa la escritura de products.txt y notifica cambios.
+     */
+    public boolean eliminarProducto(String id) {
+        if (id == null) return false;
+        String clave = normalizar(id);
+        refrescarSiCambio();
+
+        Product anterior;
+        synchronized (this) {
+            // Igual que actualizarProducto: la baja descuenta el stock ya al día.
+            anterior = libro.conBloqueo(() -> {
+                libro.seguir(this::aplicarMovimiento);
+
+                Product p = orden.get(clave);
+                if (p == null || !registrarMovimiento(p.getIdProduct(), -p.getCant(), "BAJA")) {
+                    return null;
+                }
                 return p;
+            });
+            if (anterior == null) {
+                return false;
             }
+            orden.remove(clave);
+            porId.remove(clave);
+            pendientesFoto.put(clave, null);
+            publicar();
         }
-        return null;
+        boolean confirmado = libro.confirmar();
+        programarFoto();
+        anotarCambio(anterior.getIdProduct(), CambioProductos.Tipo.ELIMINADO);
+        return confirmado;
     }
 
     /**
-     * Actualiza un producto existente (por ID) reemplazándolo en la lista.
-     * Guarda en archivo y notifica cambios.
+     * Descuenta stock de varios productos en una sola operación (por ejemplo, todos
+     * los ítems de un pedido):
+     * - Si algún ID no existe o no tiene stock suficiente, no se aplica ningún
+     *   cambio. El stock se revisa con el bloqueo del libro tomado y después de
+     *   incorporar los movimientos de las demás cajas, así dos cajas no venden
+     *   las mismas unidades.
+     * - Se agrega un movimiento VENTA por producto al libro de inventario, con una
+     *   sola escritura; si falla, no se aplica ningún cambio.
+     * - El fsync del libro se espera después de soltar los bloqueos, así las
+     *   demás cajas no esperan el disco de esta venta. Si falla, los movimientos
+     *   ya están escritos (y aplicados en memoria) pero no confirmados: se retorna false.
+     * - Se anota un cambio de stock por producto (se avisan juntos en un lote).
+     *
+     * @param cantidades ID de producto -> cantidad a descontar
+     * @return true si se aplicaron y guardaron todos los cambios
      */
-    public boolean actualizarProducto(Product producto) {
-        if (producto == null || producto.getIdProduct() == null) return false;
+    public boolean descontarStock(Map<String, Integer> cantidades) {
+        return descontarStock(cantidades, "");
+    }
 
-        String id = producto.getIdProduct().trim();
+    /**
+     * Igual que descontarStock(cantidades), indicando la referencia que queda en
+     * el libro (por ejemplo "PEDIDO 15").
+     */
+    public boolean descontarStock(Map<String, Integer> cantidades, String referencia) {
+        if (cantidades == null || cantidades.isEmpty()) return true;
+        refrescarSiCambio();
+
+        List<Product> productos = new ArrayList<>(cantidades.size());
+        List<LibroInventario.Movimiento> movimientos = new ArrayList<>(cantidades.size());
+        synchronized (this) {
+            boolean escrito = libro.conBloqueo(() -> {
+                libro.seguir(this::aplicarMovimiento);
+
+                // Por producto (dos IDs pueden normalizarse al mismo).
+                Map<Product, Integer> descuentos = new LinkedHashMap<>();
+                for (Map.Entry<String, Integer> e : cantidades.entrySet()) {
+                    Product p = (e.getKey() == null) ? null : porId.get(normalizar(e.getKey()));
+                    int descuento = (e.getValue() == null) ? 0 : e.getValue();
+                    if (p == null || descuento < 0) {
+                        return false;
+                    }
+                    descuentos.merge(p, descuento, Integer::sum);
+                }
+                for (Map.Entry<Product, Integer> e : descuentos.entrySet()) {
+                    Product p = e.getKey();
+                    if (p.getCant() < e.getValue()) {
+                        return false;
+                    }
+                    productos.add(p);
+                    movimientos.add(new LibroInventario.Movimiento(p.getIdProduct(), -e.getValue(),
+                            LibroInventario.Tipo.VENTA, referencia));
+                }
+                return libro.escribir(movimientos, this::aplicarMovimiento);
+            });
+            if (!escrito) {
+                return false;
+            }
 
-        for (int i = 0; i < list.size(); i++) {
-            Product actual = list.get(i);
-            if (actual.getIdProduct() != null && actual.getIdProduct().trim().equalsIgnoreCase(id)) {
-                list.set(i, producto);
-                guardarProductos();
-                notificarStockCambiado();
-                return true;
+            for (int i = 0; i < productos.size(); i++) {
+                Product p = productos.get(i);
+                p.setCant(p.getCant() + movimientos.get(i).getDelta());
             }
+            movimientosSinCompactar += movimientos.size();
         }
-
-        return false;
+        boolean confirmado = libro.confirmar();
+        for (Product p : productos) {
+            anotarCambio(p.getIdProduct(), CambioProductos.Tipo.STOCK);
+        }
+        return confirmado;
     }
 
     /**
-     * Elimina un producto por ID de la lista en memoria.
-     * Guarda en archivo y notifica cambios.
+     * Suma stock a un producto (reposición) con un solo append al libro de inventario.
+     *
+     * @param id ID del producto
+     * @param cantidad unidades que ingresan
+     * @param referencia texto libre (proveedor, documento, etc.)
+     * @return true si se registró
      */
-    public boolean eliminarProducto(String id) {
+    public boolean reponerStock(String id, int cantidad, String referencia) {
         if (id == null) return false;
-        String target = id.trim();
+        refrescarSiCambio();
 
-        for (int i = 0; i < list.size(); i++) {
-            Product p = list.get(i);
-            if (p.getIdProduct() != null && p.getIdProduct().trim().equalsIgnoreCase(target)) {
-                list.remove(i);
-                guardarProductos();
-                notificarStockCambiado();
-                return true;
+        Product p;
+        synchronized (this) {
+            p = porId.get(normalizar(id));
+            if (p == null) {
+                return false;
+            }
+            List<LibroInventario.Movimiento> mov = List.of(new LibroInventario.Movimiento(
+                    p.getIdProduct(), cantidad, LibroInventario.Tipo.REPOSICION, referencia));
+            if (!libro.anexar(mov, this::aplicarMovimiento)) {
+                return false;
+            }
+            p.setCant(p.getCant() + cantidad);
+            movimientosSinCompactar++;
+        }
+        anotarCambio(p.getIdProduct(), CambioProductos.Tipo.STOCK);
+        return true;
+    }
+
+    /**
+     * Stock que tenía un producto en un instante dado, reproduciendo el libro de
+     * inventario desde la foto más cercana anterior.
+     *
+     * @param id ID del producto
+     * @param instante instante en milisegundos (epoch)
+     * @return stock en ese instante, o null si es anterior a la primera foto registrada
+     */
+    public Integer stockEn(String id, long instante) {
+        return libro.stockEn(id, instante);
+    }
+
+    /**
+     * Compacta el libro: escribe products.txt con el stock actual y registra la foto.
+     */
+    public void compactar() {
+        guardarYNotificar();
+    }
+
+    /**
+     * Envía la escritura de products.txt al hilo de persistencia. Si ya hay una
+     * en cola sin empezar, esa misma incluirá este cambio.
+     * Se llama fuera del lock del DAO: la escritura lo toma en el hilo de persistencia.
+     */
+    private void programarFoto() {
+        if (!fotoProgramada.compareAndSet(false, true)) {
+            return;
+        }
+        persistencia.enviar(ARCHIVO, () -> {
+            fotoProgramada.set(false);
+            return guardarYNotificar();
+        });
+    }
+
+    /**
+     * Escribe la foto y, si para eso tuvo que incorporar cambios de otra caja,
+     * anota una recarga completa.
+     */
+    private boolean guardarYNotificar() {
+        boolean ok;
+        synchronized (this) {
+            ok = guardarProductos();
+        }
+        if (recargaSinNotificar.getAndSet(false)) {
+            anotarRecarga();
+        }
+        return ok;
+    }
+
+    /**
+     * Incorpora lo que otra caja publicó desde la última consulta: una foto
+     * nueva recarga el catálogo; si solo hay movimientos nuevos, se aplican al
+     * stock. Consulta el disco como mucho cada "pos.coordinacion.ms".
+     */
+    private void refrescarSiCambio() {
+        boolean foto = coordinacion.huboCambioExterno();
+        boolean movimientos = libro.huboCambioExterno();
+        if (!foto && !movimientos) {
+            return;
+        }
+
+        synchronized (this) {
+            if (foto) {
+                refrescarDesdeDisco();
+            } else {
+                // Cada movimiento aplicado anota su cambio de stock.
+                libro.seguir(this::aplicarMovimiento);
+            }
+        }
+        if (foto) {
+            anotarRecarga();
+        }
+    }
+
+    /**
+     * Vuelve a cargar el catálogo desde disco y aplica encima los cambios de
+     * este proceso que todavía no están en la foto. En los productos editados se
+     * conserva la cantidad recargada: el ajuste ya quedó en el libro.
+     */
+    private void refrescarDesdeDisco() {
+        orden.clear();
+        porId.clear();
+        cargarCatalogo();
+        if (pendientesFoto.isEmpty()) {
+            return;
+        }
+
+        for (Map.Entry<String, Product> e : pendientesFoto.entrySet()) {
+            String clave = e.getKey();
+            Product p = e.getValue();
+            Product recargado = orden.get(clave);
+
+            if (p == null) {
+                orden.remove(clave);
+                porId.remove(clave);
+            } else if (recargado != null) {
+                p.setCant(recargado.getCant());
+                orden.put(clave, p);
+                porId.put(clave, p);
+            } else {
+                agregarAlCatalogo(p);
             }
         }
+        publicar();
+    }
 
-        return false;
+    /**
+     * Aplica un movimiento del libro al stock en memoria (al cargar o al seguir
+     * los movimientos de otra caja).
+     */
+    private void aplicarMovimiento(String id, int delta) {
+        Product p = porId.get(normalizar(id));
+        if (p != null) {
+            p.setCant(p.getCant() + delta);
+            anotarCambio(p.getIdProduct(), CambioProductos.Tipo.STOCK);
+        }
+        movimientosSinCompactar++;
     }
 
     /**
-     * Guarda la lista en memoria completa en el archivo, reescribiéndolo desde cero.
+     * Escribe un ajuste manual de stock en el libro (si el cambio no es cero),
+     * sin esperar el fsync: quien llama, ya sin los bloqueos, llama a libro.confirmar().
      */
-    private void guardarProductos() {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(ARCHIVO))) {
-            for (Product p : list) {
-                String linea = (p.getIdProduct() == null ? "" : p.getIdProduct()) + ","
-                        + (p.getNameProduct() == null ? "" : p.getNameProduct()) + ","
-                        + (p.getCategory() == null ? "" : p.getCategory()) + ","
-                        + p.getPrice() + ","
-                        + p.getCant() + ","
-                        + (p.getStatus() == null ? "" : p.getStatus()) + ","
-                        + (p.getImage() == null ? "" : p.getImage());
+    private boolean registrarMovimiento(String id, int delta, String referencia) {
+        if (delta == 0) {
+            return true;
+        }
+        return libro.escribir(List.of(new LibroInventario.Movimiento(id, delta, LibroInventario.Tipo.AJUSTE, referencia)),
+                this::aplicarMovimiento);
+    }
 
-                bw.write(linea);
-                bw.newLine();
+    /**
+     * Guarda el catálogo completo en el archivo, reescribiéndolo desde cero (foto).
+     * Escribe un temporal, lo sincroniza a disco y lo mueve sobre products.txt,
+     * así una caída a mitad de la escritura no deja el archivo incompleto.
+     * La primera línea indica el último movimiento del libro incluido en la foto.
+     *
+     * Se escribe con los bloqueos de products.txt y del libro; antes se incorpora
+     * lo que otra caja haya publicado, así la foto no lo pisa.
+     *
+     * @return true si se guardó
+     */
+    private boolean guardarProductos() {
+        return coordinacion.conBloqueo(() -> libro.conBloqueo(() -> {
+            if (coordinacion.huboCambioExternoAhora()) {
+                refrescarDesdeDisco();
+                recargaSinNotificar.set(true);
+            } else if (libro.seguir(this::aplicarMovimiento) > 0) {
+                recargaSinNotificar.set(true);
             }
+            return escribirFoto();
+        }));
+    }
+
+    private boolean escribirFoto() {
+        Path destino = Paths.get(ARCHIVO);
+        Path tmp = destino.resolveSibling(ARCHIVO + ".tmp");
+
+        int seq = libro.getUltimoSeq();
+        long offset = libro.getLargoLibro();
+
+        StringBuilder sb = new StringBuilder(ordenados.size() * 64);
+        sb.append(MARCA_LIBRO).append(',').append(seq).append(',').append(offset)
+                .append(System.lineSeparator());
+        for (Product p : ordenados) {
+            sb.append(p.getIdProduct() == null ? "" : p.getIdProduct()).append(',')
+                    .append(p.getNameProduct() == null ? "" : p.getNameProduct()).append(',')
+                    .append(p.getCategory() == null ? "" : p.getCategory()).append(',')
+                    .append(p.getPrice()).append(',')
+                    .append(p.getCant()).append(',')
+                    .append(p.getStatus() == null ? "" : p.getStatus()).append(',')
+                    .append(p.getImage() == null ? "" : p.getImage())
+                    .append(System.lineSeparator());
+        }
+
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            ch.force(true);
         } catch (IOException e) {
+            return false;
         }
+
+        try {
+            try {
+                Files.move(tmp, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, destino, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        coordinacion.publicarReemplazo();
+        pendientesFoto.clear();
+
+        seqFoto = seq;
+        offsetFoto = offset;
+        movimientosSinCompactar = 0;
+        ultimaCompactacion = System.currentTimeMillis();
+
+        Map<String, Integer> stock = new LinkedHashMap<>();
+        for (Product p : ordenados) {
+            stock.put(p.getIdProduct(), p.getCant());
+        }
+        libro.registrarSnapshot(stock);
+        return true;
     }
 
     /**
-     * Carga productos desde archivo y los agrega a la lista en memoria.
+     * Carga la foto (products.txt), aplica los movimientos posteriores del libro y
+     * publica el catálogo. Si products.txt no tiene marca (instalación anterior o
+     * archivo editado a mano), se toma como vigente (quien llama registra una foto
+     * nueva). Se lee con los dos bloqueos, para que la foto y el libro coincidan.
+     */
+    private void cargarCatalogo() {
+        coordinacion.conBloqueo(() -> libro.conBloqueo(() -> {
+            coordinacion.marcarAlDia();
+            seqFoto = LibroInventario.SIN_FOTO;
+            offsetFoto = 0;
+            movimientosSinCompactar = 0;
+
+            cargarProductos();
+            libro.reproducirDesde(seqFoto, offsetFoto, this::aplicarMovimiento);
+            publicar();
+        }));
+    }
+
+    /**
+     * Inicia el hilo (daemon) que compacta el libro periódicamente.
+     */
+    private void iniciarCompactacion() {
+        ScheduledExecutorService compactador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "compactacion-inventario");
+            t.setDaemon(true);
+            return t;
+        });
+        compactador.scheduleWithFixedDelay(() -> {
+            boolean compactar;
+            synchronized (this) {
+                boolean muchos = movimientosSinCompactar >= COMPACTAR_CADA_MOVIMIENTOS;
+                boolean vencido = movimientosSinCompactar > 0
+                        && System.currentTimeMillis() - ultimaCompactacion >= COMPACTAR_CADA_MS;
+                compactar = muchos || vencido;
+            }
+            if (compactar) {
+                guardarYNotificar();
+            }
+        }, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Carga productos desde archivo y los agrega al catálogo en memoria.
+     * Si un ID aparece repetido se conserva el primero (el que encontraba la búsqueda lineal).
+     * Lee también la marca del libro (#LIBRO,SEQ,OFFSET) si existe.
      */
     private void cargarProductos() {
         File archivo = new File(ARCHIVO);
         if (!archivo.exists()) return;
 
         try (BufferedReader br = new BufferedReader(new FileReader(archivo))) {
+            TokenizadorCampos t = new TokenizadorCampos(',');
             String linea;
             while ((linea = br.readLine()) != null) {
-                String[] partes = linea.split(",");
-                if (partes.length >= 6) {
-                    String id = partes[0].trim();
-                    String nombre = partes[1].trim();
-                    String categoria = partes[2].trim();
-                    double precio = Double.parseDouble(partes[3].trim());
-                    int cantidad = Integer.parseInt(partes[4].trim());
-                    String estado = partes[5].trim();
-                    String imagen = (partes.length >= 7) ? partes[6].trim() : "";
-
-                    list.add(new Product(id, nombre, categoria, precio, cantidad, estado, imagen));
+                int campos = t.separar(linea);
+                if (campos == 3 && t.esIgual(0, MARCA_LIBRO)) {
+                    seqFoto = t.entero(1, LibroInventario.SIN_FOTO);
+                    long offset = t.largo(2, -1);
+                    if (offset < 0) {
+                        seqFoto = LibroInventario.SIN_FOTO;
+                    } else {
+                        offsetFoto = offset;
+                    }
+                    continue;
+                }
+                if (campos >= 6) {
+                    Product producto = leerProducto(t);
+                    if (producto != null) {
+                        agregarAlCatalogo(producto);
+                    }
                 }
             }
-        } catch (IOException | NumberFormatException e) {
+        } catch (IOException e) {
         }
     }
 
+    /**
+     * Arma un producto desde una línea ya separada (ID,NOMBRE,CATEGORIA,PRECIO,CANTIDAD,ESTADO[,IMAGEN]).
+     *
+     * @return el producto, o null si el precio o la cantidad no son números válidos
+     */
+    private static Product leerProducto(TokenizadorCampos t) {
+        double precio = t.decimal(3, Double.NaN);
+        long cantidad = t.largo(4, Long.MIN_VALUE);
+        if (Double.isNaN(precio) || cantidad < Integer.MIN_VALUE || cantidad > Integer.MAX_VALUE) {
+            return null;
+        }
+        return new Product(t.texto(0), t.texto(1), t.texto(2), precio, (int) cantidad,
+                t.texto(5), t.texto(6));
+    }
+
     /**
      * Recarga el inventario desde el archivo:
-     * limpia la lista, vuelve a cargar y notifica a los listeners.
+     * limpia el catálogo, vuelve a cargar y avisa una recarga completa.
      */
     public void recargarDesdeArchivo() {
-        list.clear();
-        cargarProductos();
-        notificarStockCambiado();
+        // Antes de leer, terminar la foto pendiente (si no, se perderían cambios en memoria).
+        persistencia.esperar(ARCHIVO);
+        synchronized (this) {
+            refrescarDesdeDisco();
+            if (seqFoto == LibroInventario.SIN_FOTO) {
+                guardarProductos();
+            }
+        }
+        anotarRecarga();
+    }
+
+    /**
+     * Agrega un producto al final del catálogo si su ID no existe.
+     *
+     * @return false si el ID ya existía
+     */
+    private boolean agregarAlCatalogo(Product producto) {
+        String clave = normalizar(producto.getIdProduct());
+        if (orden.containsKey(clave)) {
+            return false;
+        }
+        orden.put(clave, producto);
+        porId.put(clave, producto);
+        return true;
+    }
+
+    /**
+     * Reconstruye las vistas de lectura (lista ordenada e índice por categoría)
+     * y las publica de una sola vez.
+     */
+    private void publicar() {
+        List<Product> lista = new ArrayList<>(orden.values());
+        Map<String, List<Product>> categorias = new LinkedHashMap<>();
+
+        for (Product p : lista) {
+            String cat = normalizar(p.getCategory() == null ? "" : p.getCategory());
+            categorias.computeIfAbsent(cat, k -> new ArrayList<>()).add(p);
+        }
+        for (Map.Entry<String, List<Product>> e : categorias.entrySet()) {
+            e.setValue(Collections.unmodifiableList(e.getValue()));
+        }
+
+        ordenados = Collections.unmodifiableList(lista);
+        porCategoria = Collections.unmodifiableMap(categorias);
+    }
+
+    /**
+     * Normaliza un ID o categoría para usarlo como clave (trim + minúsculas).
+     */
+    private static String normalizar(String valor) {
+        return valor.trim().toLowerCase(Locale.ROOT);
     }
 }
\ No newline at end of file
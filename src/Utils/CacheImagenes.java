@@ -0,0 +1,424 @@
+package Utils;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.imageio.ImageIO;
+import javax.swing.CellRendererPane;
+import javax.swing.Icon;
+import javax.swing.SwingUtilities;
+
+/**
+ *
+ * Caché compartido de imágenes de productos ya escaladas, por (ruta, ancho, alto).
+ *
+ * ProductCard, panelProduct, OrderItemCard, la grilla de pedidos y la tabla de productos piden sus
+ * íconos con icono(): la misma imagen al mismo tamaño se decodifica y escala
+ * una sola vez, aunque las tarjetas y las filas se vuelvan a crear.
+ *
+ * Funcionamiento:
+ * - icono() no decodifica nada: retorna un Icon liviano que, al pintarse, busca
+ *   la imagen en el caché. Si no está, pinta un recuadro gris (placeholder) y
+ *   encarga la carga a un hilo (daemon) fuera del EDT; al terminar se repintan
+ *   los componentes que la pidieron.
+ * - Primero se busca la miniatura ya escalada en disco (MiniaturasProductos);
+ *   si no está, se decodifica el original con ImageIO, se escala a un
+ *   BufferedImage del tamaño pedido (reduciendo a la mitad por pasos, con
+ *   interpolación bilineal) y se guarda la miniatura.
+ * - LRU con presupuesto de memoria ("pos.imagenes.bytes", 8 MB por defecto,
+ *   contando 4 bytes por pixel): al pasarlo se sacan las menos usadas.
+ * - Las entradas son SoftReference: si falta memoria el GC las libera y la
+ *   próxima vez que se pinten se vuelven a cargar.
+ *
+ * La ruta se busca primero como recurso del classpath ("/img/x.png") y si no,
+ * como archivo en disco. Esa búsqueda (getResource y un stat) se hace en el
+ * hilo del caché y se recuerda por ruta, también cuando no existe: icono() y
+ * el pintado no tocan el disco.
+ */
+public class CacheImagenes {
+
+    private static final long PRESUPUESTO = Long.getLong("pos.imagenes.bytes", 8L << 20);
+
+    private static final Color PLACEHOLDER = new Color(225, 225, 225);
+
+    private static final CacheImagenes INSTANCIA = new CacheImagenes();
+
+    /**
+     * Clave del caché: ruta y tamaño.
+     */
+    private static final class Clave {
+
+        final String ruta;
+        final int ancho;
+        final int alto;
+
+        Clave(String ruta, int ancho, int alto) {
+            this.ruta = ruta;
+            this.ancho = ancho;
+            this.alto = alto;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Clave)) {
+                return false;
+            }
+            Clave c = (Clave) o;
+            return ancho == c.ancho && alto == c.alto && ruta.equals(c.ruta);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(ruta, ancho, alto);
+        }
+    }
+
+    /**
+     * Entrada del caché: la referencia sabe su clave para sacarla cuando el GC
+     * la libera.
+     */
+    private static final class Entrada extends SoftReference<BufferedImage> {
+
+        final Clave clave;
+        final long bytes;
+
+        Entrada(Clave clave, BufferedImage img, ReferenceQueue<BufferedImage> cola) {
+            super(img, cola);
+            this.clave = clave;
+            this.bytes = 4L * img.getWidth() * img.getHeight();
+        }
+    }
+
+    /**
+     * Orden de acceso: la primera es la menos usada.
+     */
+    private final LinkedHashMap<Clave, Entrada> entradas = new LinkedHashMap<>(64, 0.75f, true);
+    private final ReferenceQueue<BufferedImage> liberadas = new ReferenceQueue<>();
+    private long bytes = 0;
+
+    /**
+     * Cargas en curso y componentes a repintar cuando terminen.
+     */
+    private final Map<Clave, List<Component>> enCurso = new HashMap<>();
+
+    /**
+     * Imágenes que no se pudieron leer (no se reintentan en cada repintado).
+     */
+    private final Map<Clave, Boolean> fallidas = new HashMap<>();
+
+    /**
+     * Ubicación ya resuelta de cada ruta (vacía si no existe). Solo la llena
+     * el hilo del caché.
+     */
+    private final Map<String, Optional<URL>> ubicaciones = new HashMap<>();
+
+    private final ExecutorService cargador = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "cache-imagenes");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Retorna el caché compartido.
+     */
+    public static CacheImagenes getInstancia() {
+        return INSTANCIA;
+    }
+
+    private CacheImagenes() {
+    }
+
+    /**
+     * Ícono de una imagen escalada a ancho x alto, que se carga en segundo plano.
+     *
+     * @param ruta recurso ("/img/x.png") o archivo en disco
+     * @return el ícono, o null si la ruta está vacía o ya se sabe que no existe
+     */
+    public Icon icono(String ruta, int ancho, int alto) {
+        if (ruta == null || ruta.isBlank() || inexistente(ruta)) {
+            return null;
+        }
+        return new IconoDiferido(new Clave(ruta, ancho, alto));
+    }
+
+    /**
+     * Imagen escalada si ya está en el caché (sin cargarla).
+     */
+    public BufferedImage siEsta(String ruta, int ancho, int alto) {
+        return buscar(new Clave(ruta, ancho, alto));
+    }
+
+    /**
+     * Vacía el caché (por ejemplo, después de reemplazar la imagen de un producto).
+     */
+    public synchronized void vaciar() {
+        entradas.clear();
+        fallidas.clear();
+        ubicaciones.clear();
+        bytes = 0;
+    }
+
+    /**
+     * La imagen de una ruta cambió (producto nuevo o imagen reemplazada): en el
+     * hilo del caché vuelve a generar sus miniaturas en disco y saca del caché
+     * los tamaños viejos.
+     */
+    public void regenerar(String ruta) {
+        if (ruta == null || ruta.isBlank()) {
+            return;
+        }
+        cargador.execute(() -> {
+            MiniaturasProductos.getInstancia().generar(ruta);
+            synchronized (this) {
+                entradas.keySet().removeIf(c -> c.ruta.equals(ruta));
+                bytes = 0;
+                for (Entrada e : entradas.values()) {
+                    bytes += e.bytes;
+                }
+                fallidas.keySet().removeIf(c -> c.ruta.equals(ruta));
+                ubicaciones.remove(ruta);
+            }
+        });
+    }
+
+    private synchronized BufferedImage buscar(Clave clave) {
+        purgarLiberadas();
+        Entrada e = entradas.get(clave);
+        if (e == null) {
+            return null;
+        }
+        BufferedImage img = e.get();
+        if (img == null) {
+            quitar(clave);
+        }
+        return img;
+    }
+
+    private synchronized boolean inexistente(String ruta) {
+        Optional<URL> url = ubicaciones.get(ruta);
+        return url != null && url.isEmpty();
+    }
+
+    /**
+     * Encarga la carga de una imagen; c se repinta cuando esté lista.
+     *
+     * @return false si ya se sabe que la ruta no existe (no hay nada que pintar)
+     */
+    private synchronized boolean solicitar(Clave clave, Component c) {
+        if (inexistente(clave.ruta)) {
+            return false;
+        }
+        if (fallidas.containsKey(clave)) {
+            return true;
+        }
+        for (Component a = c; a != null; a = a.getParent()) {
+            if (a instanceof CellRendererPane) {
+                // Dentro de un renderer (tabla, lista, grilla): se repinta el componente que lo usa.
+                c = a.getParent();
+                break;
+            }
+        }
+        List<Component> esperando = enCurso.get(clave);
+        if (esperando != null) {
+            if (c != null && !esperando.contains(c)) {
+                esperando.add(c);
+            }
+            return true;
+        }
+        esperando = new ArrayList<>(2);
+        if (c != null) {
+            esperando.add(c);
+        }
+        enCurso.put(clave, esperando);
+        cargador.execute(() -> cargar(clave));
+        return true;
+    }
+
+    /**
+     * En el hilo del caché: decodifica, escala, guarda y avisa.
+     */
+    private void cargar(Clave clave) {
+        BufferedImage img = null;
+        URL url = ubicacion(clave.ruta);
+        try {
+            if (url != null) {
+                img = MiniaturasProductos.getInstancia().leer(clave.ruta, clave.ancho, clave.alto);
+            }
+            if (img == null && url != null) {
+                BufferedImage original = ImageIO.read(url);
+                if (original != null) {
+                    img = escalar(original, clave.ancho, clave.alto);
+                    MiniaturasProductos.getInstancia().guardar(clave.ruta, img);
+                }
+            }
+        } catch (Exception e) {
+            System.out.println("No se pudo cargar la imagen " + clave.ruta + ": " + e.getMessage());
+        }
+
+        List<Component> esperando;
+        synchronized (this) {
+            esperando = enCurso.remove(clave);
+            if (img != null) {
+                guardar(clave, img);
+            } else {
+                fallidas.put(clave, Boolean.TRUE);
+            }
+        }
+
+        // Si la ruta no existe también se repinta, para quitar el placeholder.
+        if ((img != null || url == null) && esperando != null && !esperando.isEmpty()) {
+            SwingUtilities.invokeLater(() -> {
+                for (Component c : esperando) {
+                    c.repaint();
+                }
+            });
+        }
+    }
+
+    private void guardar(Clave clave, BufferedImage img) {
+        quitar(clave);
+        Entrada e = new Entrada(clave, img, liberadas);
+        entradas.put(clave, e);
+        bytes += e.bytes;
+
+        Iterator<Entrada> it = entradas.values().iterator();
+        while (bytes > PRESUPUESTO && it.hasNext()) {
+            Entrada vieja = it.next();
+            if (vieja == e) {
+                break;
+            }
+            it.remove();
+            bytes -= vieja.bytes;
+        }
+    }
+
+    private void quitar(Clave clave) {
+        Entrada e = entradas.remove(clave);
+        if (e != null) {
+            bytes -= e.bytes;
+        }
+    }
+
+    /**
+     * Saca las entradas que el GC liberó.
+     */
+    private void purgarLiberadas() {
+        Object r;
+        while ((r = liberadas.poll()) != null) {
+            Entrada e = (Entrada) r;
+            if (entradas.get(e.clave) == e) {
+                quitar(e.clave);
+            }
+        }
+    }
+
+    /**
+     * En el hilo del caché: ubicación de una ruta, resuelta una sola vez.
+     */
+    private URL ubicacion(String ruta) {
+        Optional<URL> url;
+        synchronized (this) {
+            url = ubicaciones.get(ruta);
+        }
+        if (url == null) {
+            url = Optional.ofNullable(ubicar(ruta));
+            synchronized (this) {
+                ubicaciones.put(ruta, url);
+            }
+        }
+        return url.orElse(null);
+    }
+
+    static URL ubicar(String ruta) {
+        URL url = CacheImagenes.class.getResource(ruta);
+        if (url == null) {
+            File f = new File(ruta);
+            if (f.isFile()) {
+                try {
+                    url = f.toURI().toURL();
+                } catch (Exception e) {
+                    url = null;
+                }
+            }
+        }
+        return url;
+    }
+
+    /**
+     * Escala con interpolación bilineal; para reducir mucho se reduce a la
+     * mitad por pasos, así el resultado queda suave como con SCALE_SMOOTH.
+     */
+    static BufferedImage escalar(BufferedImage img, int ancho, int alto) {
+        BufferedImage actual = img;
+        int w = img.getWidth();
+        int h = img.getHeight();
+
+        do {
+            w = (w / 2 >= ancho) ? w / 2 : ancho;
+            h = (h / 2 >= alto) ? h / 2 : alto;
+
+            BufferedImage paso = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = paso.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(actual, 0, 0, w, h, null);
+            g.dispose();
+            actual = paso;
+        } while (w != ancho || h != alto);
+
+        return actual;
+    }
+
+    /**
+     * Ícono que no guarda pixeles: en cada paintIcon toma la imagen del caché.
+     */
+    private final class IconoDiferido implements Icon {
+
+        private final Clave clave;
+
+        IconoDiferido(Clave clave) {
+            this.clave = clave;
+        }
+
+        @Override
+        public void paintIcon(Component c, Graphics g, int x, int y) {
+            BufferedImage img = buscar(clave);
+            if (img != null) {
+                g.drawImage(img, x, y, null);
+                return;
+            }
+            if (!solicitar(clave, c)) {
+                return;
+            }
+            g.setColor(PLACEHOLDER);
+            g.fillRect(x, y, clave.ancho, clave.alto);
+        }
+
+        @Override
+        public int getIconWidth() {
+            return clave.ancho;
+        }
+
+        @Override
+        public int getIconHeight() {
+            return clave.alto;
+        }
+    }
+}
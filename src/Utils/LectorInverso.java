@@ -0,0 +1,147 @@
+package Utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ *
+ * Lector de líneas de un archivo de texto UTF-8 desde el final hacia el inicio.
+ *
+ * Lee bloques de tamaño fijo hacia atrás con FileChannel, así obtener las
+ * últimas N líneas cuesta lo mismo sin importar el tamaño del archivo.
+ *
+ * Manejo de UTF-8:
+ * - Las líneas se cortan por el byte '\n', que nunca aparece dentro de un
+ *   carácter multibyte en UTF-8.
+ * - Una línea se decodifica solo cuando está completa (aunque haya quedado
+ *   repartida entre dos bloques), nunca un bloque suelto, por lo que un
+ *   carácter partido entre bloques no se corrompe.
+ * - Se quita el '\r' final (archivos escritos en Windows).
+ */
+public class LectorInverso implements Closeable {
+
+    private static final int BLOQUE = 8 * 1024;
+
+    private final FileChannel ch;
+
+    /**
+     * Bytes pendientes: corresponden a [inicioPendiente, inicioPendiente + largoPendiente) del archivo.
+     */
+    private byte[] pendiente = new byte[0];
+    private int largoPendiente = 0;
+    private long inicioPendiente;
+
+    private long offsetLinea = -1;
+
+    /**
+     * Abre el archivo y se ubica al final.
+     *
+     * @param archivo archivo a leer
+     * @throws IOException si no se puede abrir
+     */
+    public LectorInverso(Path archivo) throws IOException {
+        this.ch = FileChannel.open(archivo, StandardOpenOption.READ);
+        this.inicioPendiente = ch.size();
+    }
+
+    /**
+     * Retorna la línea anterior a la última entregada (la primera llamada
+     * retorna la última línea del archivo).
+     *
+     * @return línea sin salto de línea, o null si ya se llegó al inicio
+     * @throws IOException si falla la lectura
+     */
+    public String anterior() throws IOException {
+        if (largoPendiente == 0 && inicioPendiente == 0) {
+            return null;
+        }
+
+        // Si no hay bytes cargados todavía, leer el primer bloque.
+        if (largoPendiente == 0) {
+            cargarBloqueAnterior();
+        }
+
+        // Quitar el salto de línea que termina la línea a entregar.
+        if (largoPendiente > 0 && pendiente[largoPendiente - 1] == '\n') {
+            largoPendiente--;
+        }
+
+        while (true) {
+            int salto = ultimoSalto();
+            if (salto >= 0) {
+                offsetLinea = inicioPendiente + salto + 1;
+                String linea = decodificar(salto + 1, largoPendiente);
+                largoPendiente = salto + 1;
+                return linea;
+            }
+            if (inicioPendiente == 0) {
+                offsetLinea = 0;
+                String linea = decodificar(0, largoPendiente);
+                largoPendiente = 0;
+                return linea;
+            }
+            cargarBloqueAnterior();
+        }
+    }
+
+    /**
+     * Offset en bytes donde inicia la última línea entregada por anterior().
+     * Es 0 para la primera línea del archivo (por ejemplo, un encabezado).
+     */
+    public long offsetLinea() {
+        return offsetLinea;
+    }
+
+    @Override
+    public void close() throws IOException {
+        ch.close();
+    }
+
+    /**
+     * Busca el último '\n' dentro de los bytes pendientes.
+     */
+    private int ultimoSalto() {
+        for (int i = largoPendiente - 1; i >= 0; i--) {
+            if (pendiente[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Lee el bloque anterior a los bytes pendientes y lo antepone a ellos.
+     */
+    private void cargarBloqueAnterior() throws IOException {
+        int leer = (int) Math.min(BLOQUE, inicioPendiente);
+        long desde = inicioPendiente - leer;
+
+        byte[] nuevo = new byte[leer + largoPendiente];
+        ByteBuffer buf = ByteBuffer.wrap(nuevo, 0, leer);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, desde + buf.position()) < 0) {
+                // El archivo se achicó mientras se leía: completar con lo leído.
+                Arrays.fill(nuevo, buf.position(), leer, (byte) '\n');
+                break;
+            }
+        }
+        System.arraycopy(pendiente, 0, nuevo, leer, largoPendiente);
+
+        pendiente = nuevo;
+        largoPendiente = nuevo.length;
+        inicioPendiente = desde;
+    }
+
+    private String decodificar(int desde, int hasta) {
+        if (hasta > desde && pendiente[hasta - 1] == '\r') {
+            hasta--;
+        }
+        return new String(pendiente, desde, hasta - desde, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,304 @@
+package Utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *
+ * Recorrido completo de un archivo de registros (una línea por registro)
+ * directamente sobre sus bytes, sin decodificar cada línea a String.
+ *
+ * Se usa para los recorridos de historial completo (reportes, ocupación de
+ * mesas) sobre pedidos.txt, facturas.txt y pagos. Cada línea se entrega ya
+ * separada en un TokenizadorCampos sobre los bytes UTF-8: quien recorre lee
+ * solo las columnas que necesita (texto(), entero(), esIgual()...).
+ *
+ * Funcionamiento:
+ * - El archivo se mapea en memoria (FileChannel.map) en ventanas de hasta
+ *   VENTANA bytes que terminan en un salto de línea, así ningún registro queda
+ *   repartido entre dos ventanas.
+ * - El mapeo se comparte entre recorridos (una instancia por archivo, ver para()).
+ *   Antes de cada recorrido se compara el archivo con lo mapeado:
+ *   - Si creció (appends), solo se vuelve a mapear la última ventana hasta el
+ *     nuevo final; el resto del mapeo se reutiliza.
+ *   - Si se achicó o se reemplazó (cerrar mesa, checkpoint), se mapea de nuevo.
+ * - Se quita el '\r' final (archivos escritos en Windows).
+ *
+ * En Windows un archivo mapeado no se puede reemplazar ni recortar, y los DAOs
+ * reemplazan pedidos.txt con Files.move: ahí (o con -Dpos.mmap=false) se lee
+ * con FileChannel en bloques a un buffer reutilizado, que tampoco crea Strings.
+ */
+public class LectorMapeado {
+
+    /**
+     * Acción por cada línea; retorna false para detener el recorrido.
+     */
+    public interface Visitante {
+
+        /**
+         * @param campos línea ya separada (válida solo durante la llamada)
+         * @param offset posición de la línea en el archivo
+         */
+        boolean visitar(TokenizadorCampos campos, long offset);
+    }
+
+    private static final Map<Path, LectorMapeado> INSTANCIAS = new ConcurrentHashMap<>();
+
+    /**
+     * Tamaño máximo de cada ventana mapeada.
+     */
+    private static final int VENTANA = 64 * 1024 * 1024;
+
+    /**
+     * Tamaño del bloque de lectura cuando no se mapea.
+     */
+    private static final int BLOQUE = 64 * 1024;
+
+    private static final boolean MAPEAR = Boolean.parseBoolean(System.getProperty("pos.mmap",
+            String.valueOf(!System.getProperty("os.name", "").toLowerCase().startsWith("windows"))));
+
+    private final Path archivo;
+
+    /**
+     * Ventanas mapeadas en orden de archivo; solo se reemplaza completa (copy-on-write),
+     * así un recorrido en curso sigue usando la lista que tomó.
+     */
+    private List<Ventana> ventanas = new ArrayList<>();
+
+    private long largoMapeado = 0;
+    private Object claveMapeada = null;
+
+    /**
+     * Retorna el lector compartido para el archivo indicado.
+     *
+     * @param archivo ruta del archivo
+     */
+    public static LectorMapeado para(String archivo) {
+        Path path = Paths.get(archivo).toAbsolutePath().normalize();
+        return INSTANCIAS.computeIfAbsent(path, LectorMapeado::new);
+    }
+
+    /**
+     * Descarta el lector de un archivo que se borró (por ejemplo, una partición
+     * archivada), así su mapeo deja de retener el archivo en disco y en memoria.
+     *
+     * @param archivo ruta del archivo
+     */
+    public static void liberar(String archivo) {
+        INSTANCIAS.remove(Paths.get(archivo).toAbsolutePath().normalize());
+    }
+
+    private LectorMapeado(Path archivo) {
+        this.archivo = archivo;
+    }
+
+    /**
+     * Recorre todas las líneas del archivo en orden.
+     * Si el archivo no existe no hace nada.
+     *
+     * @param separador separador de columnas (',' o '|')
+     * @param visitante acción por cada línea
+     * @return cantidad de líneas visitadas
+     * @throws IOException si falla la lectura
+     */
+    public long recorrer(char separador, Visitante visitante) throws IOException {
+        TokenizadorCampos campos = new TokenizadorCampos(separador);
+
+        if (!MAPEAR) {
+            return recorrerPorBloques(campos, visitante);
+        }
+
+        List<Ventana> actuales;
+        try {
+            actuales = actualizar();
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+
+        long lineas = 0;
+        for (int v = 0; v < actuales.size(); v++) {
+            Ventana ventana = actuales.get(v);
+            // La última ventana incluye una línea final sin salto; las demás terminan en '\n'.
+            int fin = (v == actuales.size() - 1) ? ventana.buf.limit() : ventana.util;
+
+            int inicio = 0;
+            while (inicio < fin) {
+                int salto = buscarSalto(ventana.buf, inicio, fin);
+                int finLinea = (salto < 0) ? fin : salto;
+
+                lineas++;
+                if (!visitarLinea(campos, visitante, ventana.buf, inicio, finLinea, ventana.inicio + inicio)) {
+                    return lineas;
+                }
+                inicio = finLinea + 1;
+            }
+        }
+        return lineas;
+    }
+
+    /**
+     * Pone el mapeo al día con el archivo y retorna las ventanas vigentes.
+     */
+    private synchronized List<Ventana> actualizar() throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(archivo, BasicFileAttributes.class);
+        long largo = attrs.size();
+        Object clave = attrs.fileKey();
+
+        boolean reemplazado = !Objects.equals(clave, claveMapeada) || largo < largoMapeado;
+        if (!reemplazado && largo == largoMapeado) {
+            return ventanas;
+        }
+
+        List<Ventana> nuevas;
+        long desde;
+        if (reemplazado || ventanas.isEmpty()) {
+            nuevas = new ArrayList<>();
+            desde = 0;
+        } else {
+            // Creció: se vuelve a mapear la última ventana (puede tener espacio libre) hasta el final.
+            nuevas = new ArrayList<>(ventanas);
+            desde = nuevas.remove(nuevas.size() - 1).inicio;
+        }
+
+        try (FileChannel ch = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            largo = ch.size();
+            while (desde < largo) {
+                int tam = (int) Math.min(VENTANA, largo - desde);
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, desde, tam);
+
+                int util = tam;
+                if (desde + tam < largo) {
+                    // Cortar en el último salto para no partir una línea entre ventanas.
+                    int salto = ultimoSalto(buf, tam);
+                    if (salto >= 0) {
+                        util = salto + 1;
+                    }
+                }
+
+                nuevas.add(new Ventana(desde, buf, util));
+                if (desde + tam >= largo) {
+                    break;
+                }
+                desde += util;
+            }
+        }
+
+        ventanas = nuevas;
+        largoMapeado = largo;
+        claveMapeada = clave;
+        return nuevas;
+    }
+
+    /**
+     * Recorrido sin mapear: bloques de FileChannel a un buffer reutilizado.
+     */
+    private long recorrerPorBloques(TokenizadorCampos campos, Visitante visitante) throws IOException {
+        long lineas = 0;
+        ByteBuffer buf = ByteBuffer.allocate(BLOQUE);
+
+        try (FileChannel ch = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            long offsetBuf = 0; // posición en el archivo del byte 0 de buf
+
+            while (true) {
+                boolean fin = ch.read(buf) < 0;
+                int hasta = buf.position();
+
+                int inicio = 0;
+                while (inicio < hasta) {
+                    int salto = buscarSalto(buf, inicio, hasta);
+                    if (salto < 0) {
+                        if (!fin) {
+                            break; // línea incompleta: se completa con el próximo bloque
+                        }
+                        salto = hasta;
+                    }
+
+                    lineas++;
+                    if (!visitarLinea(campos, visitante, buf, inicio, salto, offsetBuf + inicio)) {
+                        return lineas;
+                    }
+                    inicio = salto + 1;
+                }
+
+                if (fin) {
+                    return lineas;
+                }
+
+                if (inicio == 0 && hasta == buf.capacity()) {
+                    // Una línea más grande que el buffer: se agranda.
+                    ByteBuffer mayor = ByteBuffer.allocate(buf.capacity() * 2);
+                    buf.flip();
+                    mayor.put(buf);
+                    buf = mayor;
+                    continue;
+                }
+
+                // Mover la línea incompleta al inicio del buffer.
+                inicio = Math.min(inicio, hasta);
+                buf.limit(hasta).position(inicio);
+                buf.compact();
+                offsetBuf += inicio;
+            }
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+    }
+
+    private static boolean visitarLinea(TokenizadorCampos campos, Visitante visitante,
+            ByteBuffer buf, int inicio, int fin, long offset) {
+        if (fin > inicio && buf.get(fin - 1) == '\r') {
+            fin--;
+        }
+        campos.separar(buf, inicio, fin);
+        return visitante.visitar(campos, offset);
+    }
+
+    private static int buscarSalto(ByteBuffer buf, int desde, int hasta) {
+        for (int i = desde; i < hasta; i++) {
+            if (buf.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int ultimoSalto(ByteBuffer buf, int hasta) {
+        for (int i = hasta - 1; i >= 0; i--) {
+            if (buf.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Tramo mapeado del archivo. "util" es el largo hasta el último salto de línea
+     * (incluido): lo que sigue se vuelve a mapear con la ventana siguiente. En la
+     * última ventana es todo el tramo.
+     */
+    private static final class Ventana {
+
+        final long inicio;
+        final MappedByteBuffer buf;
+        final int util;
+
+        Ventana(long inicio, MappedByteBuffer buf, int util) {
+            this.inicio = inicio;
+            this.buf = buf;
+            this.util = util;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package Utils;
+
+import java.util.Arrays;
+
+/**
+ *
+ * Mapa de claves int a valores long con direccionamiento abierto.
+ *
+ * Se usa en los índices de los DAOs para guardar posiciones de registros
+ * (offset en archivo, largo, etc.) sin crear un Integer y un Long por entrada,
+ * lo que permite indexar millones de registros con poca memoria.
+ *
+ * Reglas:
+ * - La clave 0 es válida (se guarda aparte).
+ * - El valor AUSENTE se retorna cuando la clave no existe.
+ * - No es thread-safe: el dueño del mapa debe sincronizar.
+ */
+public class MapaEnteroLargo {
+
+    /**
+     * Valor que retorna get() cuando la clave no existe.
+     */
+    public static final long AUSENTE = Long.MIN_VALUE;
+
+    private static final float CARGA_MAXIMA = 0.6f;
+
+    private int[] claves;
+    private long[] valores;
+    private boolean[] usados;
+    private int tamanio;
+
+    private boolean tieneCero;
+    private long valorCero;
+
+    /**
+     * Crea el mapa con capacidad inicial por defecto.
+     */
+    public MapaEnteroLargo() {
+        this(16);
+    }
+
+    /**
+     * Crea el mapa reservando espacio para la cantidad de claves indicada.
+     *
+     * @param capacidadEsperada cantidad aproximada de claves
+     */
+    public MapaEnteroLargo(int capacidadEsperada) {
+        int cap = 16;
+        while (cap * CARGA_MAXIMA < capacidadEsperada) {
+            cap <<= 1;
+        }
+        claves = new int[cap];
+        valores = new long[cap];
+        usados = new boolean[cap];
+    }
+
+    /**
+     * Retorna el valor asociado a la clave o AUSENTE si no existe.
+     */
+    public long get(int clave) {
+        if (clave == 0) {
+            return tieneCero ? valorCero : AUSENTE;
+        }
+        int mask = claves.length - 1;
+        int i = mezclar(clave) & mask;
+        while (usados[i]) {
+            if (claves[i] == clave) {
+                return valores[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return AUSENTE;
+    }
+
+    /**
+     * Indica si la clave existe en el mapa.
+     */
+    public boolean contiene(int clave) {
+        return get(clave) != AUSENTE;
+    }
+
+    /**
+     * Asocia el valor a la clave, reemplazando el anterior si existía.
+     */
+    public void put(int clave, long valor) {
+        if (clave == 0) {
+            if (!tieneCero) {
+                tamanio++;
+            }
+            tieneCero = true;
+            valorCero = valor;
+            return;
+        }
+        if (tamanio + 1 > claves.length * CARGA_MAXIMA) {
+            crecer();
+        }
+        int mask = claves.length - 1;
+        int i = mezclar(clave) & mask;
+        while (usados[i]) {
+            if (claves[i] == clave) {
+                valores[i] = valor;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        usados[i] = true;
+        claves[i] = clave;
+        valores[i] = valor;
+        tamanio++;
+    }
+
+    /**
+     * Asocia el valor solo si la clave no existía.
+     *
+     * @return true si se insertó
+     */
+    public boolean putSiAusente(int clave, long valor) {
+        if (contiene(clave)) {
+            return false;
+        }
+        put(clave, valor);
+        return true;
+    }
+
+    /**
+     * Elimina la clave (si existe), reacomodando la cadena de colisiones.
+     */
+    public void remove(int clave) {
+        if (clave == 0) {
+            if (tieneCero) {
+                tieneCero = false;
+                tamanio--;
+            }
+            return;
+        }
+        int mask = claves.length - 1;
+        int i = mezclar(clave) & mask;
+        while (usados[i]) {
+            if (claves[i] == clave) {
+                usados[i] = false;
+                tamanio--;
+                reacomodarDesde((i + 1) & mask);
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * Recorre todas las entradas del mapa (sin orden definido).
+     */
+    public void recorrer(Visitante visitante) {
+        if (tieneCero) {
+            visitante.visitar(0, valorCero);
+        }
+        for (int i = 0; i < claves.length; i++) {
+            if (usados[i]) {
+                visitante.visitar(claves[i], valores[i]);
+            }
+        }
+    }
+
+    /**
+     * Cantidad de claves guardadas.
+     */
+    public int size() {
+        return tamanio;
+    }
+
+    /**
+     * Elimina todas las claves.
+     */
+    public void clear() {
+        Arrays.fill(usados, false);
+        tieneCero = false;
+        tamanio = 0;
+    }
+
+    private void reacomodarDesde(int i) {
+        int mask = claves.length - 1;
+        while (usados[i]) {
+            int k = claves[i];
+            long v = valores[i];
+            usados[i] = false;
+            tamanio--;
+            put(k, v);
+            i = (i + 1) & mask;
+        }
+    }
+
+    private void crecer() {
+        int[] viejasClaves = claves;
+        long[] viejosValores = valores;
+        boolean[] viejosUsados = usados;
+
+        claves = new int[viejasClaves.length << 1];
+        valores = new long[viejasClaves.length << 1];
+        usados = new boolean[viejasClaves.length << 1];
+        tamanio = tieneCero ? 1 : 0;
+
+        for (int i = 0; i < viejasClaves.length; i++) {
+            if (viejosUsados[i]) {
+                put(viejasClaves[i], viejosValores[i]);
+            }
+        }
+    }
+
+    /**
+     * Acción a ejecutar por cada entrada en recorrer().
+     */
+    public interface Visitante {
+
+        void visitar(int clave, long valor);
+    }
+
+    private static int mezclar(int x) {
+        int h = x * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
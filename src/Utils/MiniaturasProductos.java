@@ -0,0 +1,151 @@
+package Utils;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import javax.imageio.ImageIO;
+
+/**
+ *
+ * Miniaturas de las imágenes de productos guardadas en disco, ya escaladas a
+ * los tamaños que usa la interfaz: al mostrar una tarjeta se lee un PNG chico
+ * del tamaño exacto en lugar de decodificar y escalar el original.
+ *
+ * Funcionamiento:
+ * - Cada miniatura es un PNG en el directorio "pos.miniaturas.dir"
+ *   ("miniaturas" por defecto), con nombre "<ruta>@<ancho>x<alto>.png" (la
+ *   ruta con '/' y '\' cambiados por '_').
+ * - generar() decodifica el original una vez y escribe todos los TAMANIOS; lo
+ *   llama controladorProductos (por medio de CacheImagenes.regenerar) al crear
+ *   un producto o cambiarle la imagen.
+ * - leer() solo usa la miniatura si es igual o más nueva que el original; si
+ *   no existe o quedó vieja retorna null, y CacheImagenes escala el original y
+ *   guarda la miniatura para la próxima vez (un tamaño nuevo también se guarda así).
+ * - Se escribe en un temporal y se mueve (atómico): otra caja que lee al mismo
+ *   tiempo ve la miniatura vieja o la nueva, nunca una a medias.
+ */
+public class MiniaturasProductos {
+
+    /**
+     * Tamaños que usa la interfaz: OrderItemCard, ProductCard/panelProduct,
+     * tabla de productos, Product y vista previa de GestionProductos.
+     */
+    static final int[][] TAMANIOS = {{38, 38}, {70, 70}, {80, 80}, {100, 100}, {135, 135}};
+
+    private static final MiniaturasProductos INSTANCIA = new MiniaturasProductos(
+            Paths.get(System.getProperty("pos.miniaturas.dir", "miniaturas")));
+
+    private final Path directorio;
+
+    /**
+     * Retorna el almacén de miniaturas compartido.
+     */
+    public static MiniaturasProductos getInstancia() {
+        return INSTANCIA;
+    }
+
+    private MiniaturasProductos(Path directorio) {
+        this.directorio = directorio;
+    }
+
+    /**
+     * Miniatura de una imagen a un tamaño, si está al día con el original.
+     *
+     * @param ruta recurso ("/img/x.png") o archivo en disco
+     * @return la imagen del tamaño pedido, o null si hay que generarla
+     */
+    public BufferedImage leer(String ruta, int ancho, int alto) {
+        Path mini = archivo(ruta, ancho, alto);
+        try {
+            long modificada = Files.getLastModifiedTime(mini).toMillis();
+            URL fuente = CacheImagenes.ubicar(ruta);
+            if (fuente == null || modificada < ultimaModificacion(fuente)) {
+                return null;
+            }
+            BufferedImage img = ImageIO.read(mini.toFile());
+            if (img == null || img.getWidth() != ancho || img.getHeight() != alto) {
+                return null;
+            }
+            return img;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.out.println("No se pudo leer la miniatura " + mini + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Guarda una miniatura ya escalada.
+     */
+    void guardar(String ruta, BufferedImage img) {
+        Path mini = archivo(ruta, img.getWidth(), img.getHeight());
+        Path tmp = mini.resolveSibling(mini.getFileName() + ".tmp" + ProcessHandle.current().pid());
+        try {
+            Files.createDirectories(directorio);
+            if (!ImageIO.write(img, "png", tmp.toFile())) {
+                return;
+            }
+            Files.move(tmp, mini, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("No se pudo guardar la miniatura " + mini + ": " + e.getMessage());
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignorada) {
+                // Queda un temporal; se reemplaza la próxima vez.
+            }
+        }
+    }
+
+    /**
+     * Decodifica el original una vez y guarda todas las miniaturas.
+     *
+     * @return true si se generaron
+     */
+    public boolean generar(String ruta) {
+        URL fuente = CacheImagenes.ubicar(ruta);
+        if (fuente == null) {
+            return false;
+        }
+        try {
+            BufferedImage original = ImageIO.read(fuente);
+            if (original == null) {
+                return false;
+            }
+            for (int[] t : TAMANIOS) {
+                guardar(ruta, CacheImagenes.escalar(original, t[0], t[1]));
+            }
+            return true;
+        } catch (IOException e) {
+            System.out.println("No se pudieron generar las miniaturas de " + ruta + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private Path archivo(String ruta, int ancho, int alto) {
+        String nombre = ruta.replace('/', '_').replace('\\', '_').replace(':', '_');
+        return directorio.resolve(nombre + "@" + ancho + "x" + alto + ".png");
+    }
+
+    private static long ultimaModificacion(URL fuente) throws IOException {
+        if ("file".equals(fuente.getProtocol())) {
+            try {
+                return new File(fuente.toURI()).lastModified();
+            } catch (URISyntaxException e) {
+                return Long.MAX_VALUE;
+            }
+        }
+        // Recurso dentro del jar: la fecha de la entrada.
+        URLConnection con = fuente.openConnection();
+        con.setUseCaches(false);
+        return con.getLastModified();
+    }
+}
@@ -0,0 +1,468 @@
+package Utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ *
+ * Separador de registros delimitados (',' o '|') que no crea objetos por campo.
+ *
+ * Se usa en los recorridos de archivos de los DAOs y controladores en lugar de
+ * String.split: separar() solo guarda dónde empieza y termina cada campo, y los
+ * métodos de lectura trabajan directo sobre la línea original.
+ * - entero(), largo() y decimal() convierten el campo sin crear un String.
+ * - esIgual(), soloDigitos() y tieneDigito() comparan o filtran en el lugar.
+ * - texto() crea el String del campo solo cuando realmente se necesita.
+ *
+ * Fuentes: CharSequence (una línea ya leída), char[] o ByteBuffer (bytes UTF-8,
+ * por ejemplo un archivo mapeado). Con ByteBuffer los campos numéricos y las
+ * comparaciones ASCII se leen byte a byte; texto() decodifica UTF-8.
+ *
+ * Igual que split(sep, -1): conserva los campos vacíos del final. Con
+ * maxCampos, el último campo se queda con el resto de la línea (split(sep, n)).
+ * Todos los métodos de lectura ignoran los espacios al inicio y al final del campo.
+ *
+ * No es thread-safe: cada hilo (o cada recorrido) usa su propia instancia.
+ */
+public class TokenizadorCampos {
+
+    /**
+     * Potencias de 10 exactas en double (hasta 10^22).
+     */
+    private static final double[] POTENCIAS = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final char separador;
+    private final int maxCampos;
+
+    private CharSequence texto;
+    private char[] chars;
+    private ByteBuffer bytes;
+
+    private int[] inicios = new int[16];
+    private int[] fines = new int[16];
+    private int cantidad = 0;
+
+    /**
+     * @param separador separador de campos
+     */
+    public TokenizadorCampos(char separador) {
+        this(separador, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param separador separador de campos
+     * @param maxCampos cantidad máxima de campos (el último se queda con el resto)
+     */
+    public TokenizadorCampos(char separador, int maxCampos) {
+        this.separador = separador;
+        this.maxCampos = Math.max(1, maxCampos);
+    }
+
+    /**
+     * Separa una línea.
+     *
+     * @return cantidad de campos
+     */
+    public int separar(CharSequence linea) {
+        return separar(linea, 0, linea.length());
+    }
+
+    /**
+     * Separa el tramo [desde, hasta) de una línea, por ejemplo un campo que a su
+     * vez tiene subcampos (los ítems "id|cant|precio|total;..." de un pedido).
+     * Las posiciones de inicio() y fin() son sobre la línea completa.
+     *
+     * @return cantidad de campos
+     */
+    public int separar(CharSequence linea, int desde, int hasta) {
+        fuente(linea, null, null);
+        int inicio = desde;
+        for (int i = desde; i < hasta && cantidad < maxCampos - 1; i++) {
+            if (linea.charAt(i) == separador) {
+                agregar(inicio, i);
+                inicio = i + 1;
+            }
+        }
+        agregar(inicio, hasta);
+        return cantidad;
+    }
+
+    /**
+     * Separa los caracteres [desde, hasta) de un arreglo.
+     *
+     * @return cantidad de campos
+     */
+    public int separar(char[] buf, int desde, int hasta) {
+        fuente(null, buf, null);
+        int inicio = desde;
+        for (int i = desde; i < hasta && cantidad < maxCampos - 1; i++) {
+            if (buf[i] == separador) {
+                agregar(inicio, i);
+                inicio = i + 1;
+            }
+        }
+        agregar(inicio, hasta);
+        return cantidad;
+    }
+
+    /**
+     * Separa los bytes [desde, hasta) de un buffer (posiciones absolutas; no
+     * cambia la posición del buffer). El separador debe ser ASCII.
+     *
+     * @return cantidad de campos
+     */
+    public int separar(ByteBuffer buf, int desde, int hasta) {
+        fuente(null, null, buf);
+        byte sep = (byte) separador;
+        int inicio = desde;
+        for (int i = desde; i < hasta && cantidad < maxCampos - 1; i++) {
+            if (buf.get(i) == sep) {
+                agregar(inicio, i);
+                inicio = i + 1;
+            }
+        }
+        agregar(inicio, hasta);
+        return cantidad;
+    }
+
+    /**
+     * Cantidad de campos de la última línea separada.
+     */
+    public int cantidad() {
+        return cantidad;
+    }
+
+    /**
+     * Posición donde empieza el campo en la fuente (incluye espacios).
+     */
+    public int inicio(int campo) {
+        return inicios[campo];
+    }
+
+    /**
+     * Posición donde termina el campo en la fuente (exclusiva, incluye espacios).
+     */
+    public int fin(int campo) {
+        return fines[campo];
+    }
+
+    /**
+     * true si el campo no existe o solo tiene espacios.
+     */
+    public boolean vacio(int campo) {
+        if (campo >= cantidad) {
+            return true;
+        }
+        return desdeSinEspacios(campo) >= hastaSinEspacios(campo);
+    }
+
+    /**
+     * Texto del campo sin espacios al inicio ni al final ("" si no existe).
+     */
+    public String texto(int campo) {
+        if (campo >= cantidad) {
+            return "";
+        }
+        return crear(desdeSinEspacios(campo), hastaSinEspacios(campo));
+    }
+
+    /**
+     * Texto del campo tal cual (con espacios), como lo retornaría split.
+     */
+    public String crudo(int campo) {
+        if (campo >= cantidad) {
+            return "";
+        }
+        return crear(inicios[campo], fines[campo]);
+    }
+
+    /**
+     * Todos los campos como arreglo (tal cual), equivalente a split(sep, -1).
+     */
+    public String[] textos() {
+        String[] res = new String[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            res[i] = crear(inicios[i], fines[i]);
+        }
+        return res;
+    }
+
+    /**
+     * Convierte el campo a int (acepta signo).
+     *
+     * @return el número, o porDefecto si el campo no es un entero válido
+     */
+    public int entero(int campo, int porDefecto) {
+        long v = largo(campo, Long.MIN_VALUE);
+        if (v == Long.MIN_VALUE || v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) {
+            return porDefecto;
+        }
+        return (int) v;
+    }
+
+    /**
+     * Convierte el campo a long (acepta signo).
+     *
+     * @return el número, o porDefecto si el campo no es un entero válido
+     */
+    public long largo(int campo, long porDefecto) {
+        if (campo >= cantidad) {
+            return porDefecto;
+        }
+        int i = desdeSinEspacios(campo);
+        int fin = hastaSinEspacios(campo);
+        if (i >= fin) {
+            return porDefecto;
+        }
+
+        boolean negativo = false;
+        char c = caracter(i);
+        if (c == '-' || c == '+') {
+            negativo = (c == '-');
+            i++;
+            if (i >= fin) {
+                return porDefecto;
+            }
+        }
+
+        long v = 0;
+        for (; i < fin; i++) {
+            c = caracter(i);
+            if (c < '0' || c > '9') {
+                return porDefecto;
+            }
+            if (v > (Long.MAX_VALUE - (c - '0')) / 10) {
+                return porDefecto;
+            }
+            v = v * 10 + (c - '0');
+        }
+        return negativo ? -v : v;
+    }
+
+    /**
+     * Convierte el campo a double. Los valores comunes (hasta 15 dígitos
+     * significativos, como "113" o "2500.5") se calculan sin crear objetos y
+     * dan el mismo resultado que Double.parseDouble; el resto se delega en él.
+     *
+     * @return el número, o porDefecto si el campo no es un número válido
+     */
+    public double decimal(int campo, double porDefecto) {
+        if (campo >= cantidad) {
+            return porDefecto;
+        }
+        int i = desdeSinEspacios(campo);
+        int fin = hastaSinEspacios(campo);
+        if (i >= fin) {
+            return porDefecto;
+        }
+
+        int inicio = i;
+        boolean negativo = false;
+        char c = caracter(i);
+        if (c == '-' || c == '+') {
+            negativo = (c == '-');
+            i++;
+        }
+
+        long mantisa = 0;
+        int digitos = 0;
+        int decimales = 0;
+        boolean punto = false;
+        boolean hayDigito = false;
+        boolean rapido = true;
+
+        for (; i < fin; i++) {
+            c = caracter(i);
+            if (c >= '0' && c <= '9') {
+                hayDigito = true;
+                if (mantisa == 0 && c == '0' && !punto) {
+                    continue; // ceros a la izquierda
+                }
+                if (digitos >= 15) {
+                    rapido = false;
+                    break;
+                }
+                mantisa = mantisa * 10 + (c - '0');
+                if (mantisa != 0) {
+                    digitos++;
+                }
+                if (punto) {
+                    decimales++;
+                }
+            } else if (c == '.' && !punto) {
+                punto = true;
+            } else {
+                // Exponente, "NaN", "Infinity" u otro formato: lo resuelve Double.parseDouble.
+                rapido = false;
+                break;
+            }
+        }
+
+        if (rapido && hayDigito && decimales < POTENCIAS.length) {
+            double v = (decimales == 0) ? mantisa : mantisa / POTENCIAS[decimales];
+            return negativo ? -v : v;
+        }
+
+        try {
+            return Double.parseDouble(crear(inicio, fin));
+        } catch (NumberFormatException e) {
+            return porDefecto;
+        }
+    }
+
+    /**
+     * Solo los dígitos del campo como número (equivalente a
+     * Integer.parseInt(campo.replaceAll("[^0-9]", ""))).
+     *
+     * @return el número, o porDefecto si no tiene dígitos o no cabe en un int
+     */
+    public int soloDigitos(int campo, int porDefecto) {
+        if (campo >= cantidad) {
+            return porDefecto;
+        }
+        long v = 0;
+        boolean alguno = false;
+        for (int i = inicios[campo]; i < fines[campo]; i++) {
+            char c = caracter(i);
+            if (c >= '0' && c <= '9') {
+                v = v * 10 + (c - '0');
+                alguno = true;
+                if (v > Integer.MAX_VALUE) {
+                    return porDefecto;
+                }
+            }
+        }
+        return alguno ? (int) v : porDefecto;
+    }
+
+    /**
+     * true si el campo tiene al menos un dígito.
+     */
+    public boolean tieneDigito(int campo) {
+        if (campo >= cantidad) {
+            return false;
+        }
+        for (int i = inicios[campo]; i < fines[campo]; i++) {
+            char c = caracter(i);
+            if (c >= '0' && c <= '9') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compara el campo (sin espacios) con un texto.
+     */
+    public boolean esIgual(int campo, String valor) {
+        return comparar(campo, valor, false);
+    }
+
+    /**
+     * Compara el campo (sin espacios) con un texto, sin distinguir mayúsculas.
+     */
+    public boolean esIgualIgnorandoMayusculas(int campo, String valor) {
+        return comparar(campo, valor, true);
+    }
+
+    private boolean comparar(int campo, String valor, boolean ignorarMayusculas) {
+        if (campo >= cantidad || valor == null) {
+            return false;
+        }
+        int desde = desdeSinEspacios(campo);
+        int hasta = hastaSinEspacios(campo);
+
+        if (bytes != null) {
+            // Comparación sobre UTF-8: si el valor no es ASCII, se decodifica el campo.
+            for (int k = 0; k < valor.length(); k++) {
+                if (valor.charAt(k) >= 0x80) {
+                    String t = crear(desde, hasta);
+                    return ignorarMayusculas ? t.equalsIgnoreCase(valor) : t.equals(valor);
+                }
+            }
+        }
+
+        if (hasta - desde != valor.length()) {
+            return false;
+        }
+        for (int k = 0; k < valor.length(); k++) {
+            char a = caracter(desde + k);
+            char b = valor.charAt(k);
+            if (a == b) {
+                continue;
+            }
+            if (!ignorarMayusculas) {
+                return false;
+            }
+            if (Character.toUpperCase(a) != Character.toUpperCase(b)
+                    && Character.toLowerCase(a) != Character.toLowerCase(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void fuente(CharSequence t, char[] c, ByteBuffer b) {
+        texto = t;
+        chars = c;
+        bytes = b;
+        cantidad = 0;
+    }
+
+    private void agregar(int inicio, int fin) {
+        if (cantidad == inicios.length) {
+            inicios = Arrays.copyOf(inicios, cantidad * 2);
+            fines = Arrays.copyOf(fines, cantidad * 2);
+        }
+        inicios[cantidad] = inicio;
+        fines[cantidad] = fin;
+        cantidad++;
+    }
+
+    private char caracter(int i) {
+        if (texto != null) {
+            return texto.charAt(i);
+        }
+        if (chars != null) {
+            return chars[i];
+        }
+        // Bytes UTF-8: los no ASCII quedan >= 0x80 y nunca coinciden con dígitos ni separadores.
+        return (char) (bytes.get(i) & 0xFF);
+    }
+
+    private int desdeSinEspacios(int campo) {
+        int i = inicios[campo];
+        int fin = fines[campo];
+        while (i < fin && caracter(i) <= ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private int hastaSinEspacios(int campo) {
+        int inicio = inicios[campo];
+        int fin = fines[campo];
+        while (fin > inicio && caracter(fin - 1) <= ' ') {
+            fin--;
+        }
+        return fin;
+    }
+
+    private String crear(int desde, int hasta) {
+        if (texto != null) {
+            return texto.subSequence(desde, hasta).toString();
+        }
+        if (chars != null) {
+            return new String(chars, desde, hasta - desde);
+        }
+        byte[] b = new byte[hasta - desde];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = bytes.get(desde + i);
+        }
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,240 @@
+package Vista;
+
+import Modelo.Product;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Cursor;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Insets;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import javax.swing.CellRendererPane;
+import javax.swing.JComponent;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+
+/**
+ *
+ * Grilla virtualizada de productos para la pantalla de pedidos: un solo
+ * componente que pinta únicamente las celdas visibles, en lugar de un
+ * ProductCard (JPanel) por producto.
+ *
+ * Funcionamiento:
+ * - setProductos() recibe la lista ya filtrada y ordenada (viene del catálogo
+ *   de productosDAO); la grilla solo guarda esa lista.
+ * - Un único ProductCard hace de renderer compartido: para cada celda visible
+ *   se actualiza con su producto (ProductCard.actualizar) y se pinta con un
+ *   CellRendererPane, como las celdas de un JTable o JList.
+ * - Las celdas tienen todas el mismo tamaño, así la posición de cada una se
+ *   calcula (sin layout) y el hit-testing es una división: productoEn().
+ * - Implementa Scrollable: ocupa el ancho del viewport y el alto depende de la
+ *   cantidad de filas. Con miles de productos la memoria no crece (solo la
+ *   lista) y cada repintado cuesta lo mismo.
+ */
+public class GrillaProductos extends JComponent implements Scrollable {
+
+    private static final int ANCHO_MIN = 120;
+    private static final int ALTO = 150;
+
+    private static final Color CON_STOCK = new Color(80, 200, 120);
+    private static final Color SIN_STOCK = new Color(220, 60, 60);
+
+    private final int columnas;
+    private final int gap;
+
+    private List<Product> productos = Collections.emptyList();
+    private final CellRendererPane pane = new CellRendererPane();
+    private ProductCard renderer;
+
+    private Consumer<Product> alHacerClic;
+
+    public GrillaProductos(int columnas, int gap) {
+        this.columnas = Math.max(1, columnas);
+        this.gap = gap;
+
+        add(pane);
+        setOpaque(true);
+        setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                Product p = productoEn(e.getPoint());
+                if (p != null && alHacerClic != null) {
+                    alHacerClic.accept(p);
+                }
+            }
+        });
+    }
+
+    /**
+     * Reemplaza los productos mostrados (en el orden en que se muestran).
+     */
+    public void setProductos(List<Product> productos) {
+        this.productos = new ArrayList<>(productos);
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Acción al hacer clic sobre un producto (agregar al carrito).
+     */
+    public void setAlHacerClic(Consumer<Product> alHacerClic) {
+        this.alHacerClic = alHacerClic;
+    }
+
+    /**
+     * Índice del producto en un punto de la grilla, o -1 si el punto cae en un
+     * espacio entre celdas o después de la última.
+     */
+    public int indiceEn(Point punto) {
+        Insets in = getInsets();
+        int ancho = anchoCelda();
+        int x = punto.x - in.left;
+        int y = punto.y - in.top;
+        if (x < 0 || y < 0) {
+            return -1;
+        }
+
+        int col = x / (ancho + gap);
+        int fila = y / (ALTO + gap);
+        if (col >= columnas || x % (ancho + gap) >= ancho || y % (ALTO + gap) >= ALTO) {
+            return -1;
+        }
+        int i = fila * columnas + col;
+        return (i < productos.size()) ? i : -1;
+    }
+
+    /**
+     * Producto en un punto de la grilla, o null.
+     */
+    public Product productoEn(Point punto) {
+        int i = indiceEn(punto);
+        return (i < 0) ? null : productos.get(i);
+    }
+
+    /**
+     * Rectángulo de la celda de un índice.
+     */
+    public Rectangle celda(int i) {
+        Insets in = getInsets();
+        int ancho = anchoCelda();
+        int fila = i / columnas;
+        int col = i % columnas;
+        return new Rectangle(in.left + col * (ancho + gap), in.top + fila * (ALTO + gap), ancho, ALTO);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        if (isOpaque()) {
+            g.setColor(getBackground());
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        }
+        if (productos.isEmpty()) {
+            return;
+        }
+
+        // Solo las filas que cruzan el área a pintar.
+        Insets in = getInsets();
+        int primera = Math.max(0, (clip.y - in.top) / (ALTO + gap));
+        int ultima = (clip.y + clip.height - in.top) / (ALTO + gap);
+
+        for (int fila = primera; fila <= ultima; fila++) {
+            for (int col = 0; col < columnas; col++) {
+                int i = fila * columnas + col;
+                if (i >= productos.size()) {
+                    return;
+                }
+                Rectangle r = celda(i);
+                if (!r.intersects(clip)) {
+                    continue;
+                }
+                Product p = productos.get(i);
+                ProductCard card = renderer(p);
+                card.actualizar(p);
+                card.setBackground(p.getCant() <= 0 ? SIN_STOCK : CON_STOCK);
+                card.setBounds(0, 0, r.width, r.height);
+                acomodar(card);
+                pane.paintComponent(g, card, this, r.x, r.y, r.width, r.height, false);
+            }
+        }
+        pane.removeAll();
+    }
+
+    private ProductCard renderer(Product p) {
+        if (renderer == null) {
+            renderer = new ProductCard(p, () -> {
+            });
+            renderer.setOpaque(true);
+        }
+        return renderer;
+    }
+
+    /**
+     * Layout del renderer y sus paneles internos para el producto actual.
+     * validate() no sirve acá: no hace nada si el componente no tiene peer
+     * (el renderer nunca se muestra por sí mismo).
+     */
+    private static void acomodar(Container c) {
+        c.doLayout();
+        for (Component hijo : c.getComponents()) {
+            if (hijo instanceof Container) {
+                acomodar((Container) hijo);
+            }
+        }
+    }
+
+    private int anchoCelda() {
+        Insets in = getInsets();
+        int ancho = getWidth() - in.left - in.right;
+        return Math.max(ANCHO_MIN, (ancho - (columnas - 1) * gap) / columnas);
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        Insets in = getInsets();
+        int filas = (productos.size() + columnas - 1) / columnas;
+        int ancho = in.left + in.right + columnas * ANCHO_MIN + (columnas - 1) * gap;
+        int alto = in.top + in.bottom + filas * ALTO + Math.max(0, filas - 1) * gap;
+        return new Dimension(ancho, alto);
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visible, int orientation, int direction) {
+        return (orientation == SwingConstants.VERTICAL) ? 16 : 10;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visible, int orientation, int direction) {
+        return (orientation == SwingConstants.VERTICAL) ? visible.height : visible.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return true;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        // Si hay pocos productos, ocupa todo el alto (se pinta el fondo completo).
+        return getParent() instanceof JViewport && getParent().getHeight() > getPreferredSize().height;
+    }
+}
@@ -5,8 +5,8 @@
 package Vista;
 
 import Modelo.Product;
+import Utils.CacheImagenes;
 import java.awt.*;
-import java.net.URL;
 import javax.swing.*;
 
 /**
@@ -103,12 +103,11 @@ public class OrderItemCard extends javax.swing.JPanel {
         return b;
     }
 
-    private ImageIcon cargarIcono(String path, int w, int h) {
-        URL url = getClass().getResource(path);
-        if (url == null) return null;
-
-        Image img = new ImageIcon(url).getImage().getScaledInstance(w, h, Image.SCALE_SMOOTH);
-        return new ImageIcon(img);
+    /**
+     * Ícono del producto desde el caché compartido (se carga en segundo plano).
+     */
+    private Icon cargarIcono(String path, int w, int h) {
+        return CacheImagenes.getInstancia().icono(path, w, h);
     }
 
     /**
@@ -70,7 +70,7 @@ panelContenido.add(p, "products");
    
 
         productosDAO prodDao = productosDAO.getInstancia();
-        ClientsDAO clientsDao = new ClientsDAO();
+        ClientsDAO clientsDao = ClientsDAO.getInstancia();
         
         ControllerGestionMesas mesasCtrl = new ControllerGestionMesas(mesas);
 
@@ -5,10 +5,10 @@
 package Vista;
 
 import Modelo.Product;
+import Utils.CacheImagenes;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.net.URL;
 import javax.swing.*;
 
 /**
@@ -21,7 +21,10 @@ public class ProductCard extends javax.swing.JPanel {
      * Creates new form ProductCard
      */
     private JPanel top;
+    private JLabel lblImg;
+    private JLabel lblNombre;
     private JLabel lblPrecio;
+    private String imagen;
 
     public ProductCard() {
         initComponents();
@@ -39,8 +42,9 @@ public class ProductCard extends javax.swing.JPanel {
         top.setPreferredSize(new Dimension(170, 90));
         top.setOpaque(true);
 
-        JLabel lblImg = new JLabel("", JLabel.CENTER);
-        lblImg.setIcon(cargarIcono("/img/" + p.getImage(), 70, 70));
+        lblImg = new JLabel("", JLabel.CENTER);
+        imagen = p.getImage();
+        lblImg.setIcon(cargarIcono("/img/" + imagen, 70, 70));
         top.add(lblImg, BorderLayout.CENTER);
 
         JPanel bottom = new JPanel();
@@ -48,7 +52,7 @@ public class ProductCard extends javax.swing.JPanel {
         bottom.setLayout(new BoxLayout(bottom, BoxLayout.Y_AXIS));
         bottom.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
 
-        JLabel lblNombre = new JLabel(p.getNameProduct());
+        lblNombre = new JLabel(p.getNameProduct());
         lblNombre.setFont(new Font("Segoe UI", Font.BOLD, 12));
         lblNombre.setAlignmentX(Component.CENTER_ALIGNMENT);
 
@@ -81,13 +85,25 @@ public class ProductCard extends javax.swing.JPanel {
         lblPrecio.addMouseListener(click);
     }
 
-    private ImageIcon cargarIcono(String path, int w, int h) {
-        URL url = getClass().getResource(path);
-        if (url == null) {
-            return null;
+    /**
+     * Ícono del producto desde el caché compartido (se carga en segundo plano).
+     */
+    private Icon cargarIcono(String path, int w, int h) {
+        return CacheImagenes.getInstancia().icono(path, w, h);
+    }
+
+    /**
+     * Actualiza la tarjeta con los datos nuevos del producto (nombre, precio,
+     * imagen y stock) sin volver a crearla.
+     */
+    public void actualizar(Product p) {
+        lblNombre.setText(p.getNameProduct());
+        lblPrecio.setText("₡" + (int) p.getPrice());
+        if (!java.util.Objects.equals(imagen, p.getImage())) {
+            imagen = p.getImage();
+            lblImg.setIcon(cargarIcono("/img/" + imagen, 70, 70));
         }
-        Image img = new ImageIcon(url).getImage().getScaledInstance(w, h, Image.SCALE_SMOOTH);
-        return new ImageIcon(img);
+        setStockDisponible(p.getCant() > 0);
     }
 
     public void setStockDisponible(boolean disponible) {
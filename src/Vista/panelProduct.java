@@ -5,17 +5,15 @@
 package Vista;
 
 import Modelo.Product;
-import Modelo.Product;
+import Utils.CacheImagenes;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
-import java.awt.Image;
-import java.net.URL;
 import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
-import javax.swing.ImageIcon;
+import javax.swing.Icon;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JSeparator;
@@ -102,14 +100,11 @@ public class panelProduct extends javax.swing.JPanel {
         add(bottom, BorderLayout.CENTER);
     }
 
-    private ImageIcon cargarIcono(String path, int w, int h) {
-        URL url = getClass().getResource(path);
-        if (url == null) {
-            return null;
-        }
-
-        Image img = new ImageIcon(url).getImage().getScaledInstance(w, h, Image.SCALE_SMOOTH);
-        return new ImageIcon(img);
+    /**
+     * Ícono del producto desde el caché compartido (se carga en segundo plano).
+     */
+    private Icon cargarIcono(String path, int w, int h) {
+        return CacheImagenes.getInstancia().icono(path, w, h);
     }
 
     /**
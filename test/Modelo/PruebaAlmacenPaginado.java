@@ -0,0 +1,264 @@
+package Modelo;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ *
+ * Pruebas de AlmacenPaginado (árbol B+, buffer pool y write-ahead log), sin
+ * dependencias: cada caso compara el almacén contra un TreeMap con los mismos
+ * registros y corta con una excepción en la primera diferencia.
+ *
+ * Casos:
+ * - Importar un archivo de texto grande (una transacción con muchas
+ *   divisiones de hojas y de nodos internos) y leer cada registro.
+ * - put/eliminar uno por uno, en orden aleatorio, y recorridos por rango
+ *   [desde, hasta) comparados con subMap(); un recorrido que se detiene.
+ * - Índice secundario después de los cambios.
+ * - Volver a abrir el archivo (instancia nueva) y ver lo mismo.
+ * - Caída: se copia solo el log (".wal") con un ".db" vacío, como si ninguna
+ *   página de datos hubiera llegado al disco; al abrir se rehacen todas las
+ *   transacciones. Con la última transacción cortada o con el CRC mal, se
+ *   descarta solo esa.
+ *
+ * Cada caso usa su propia carpeta temporal (se borran al terminar).
+ *
+ * Uso (desde la raíz del proyecto):
+ *   ant pruebas
+ */
+public class PruebaAlmacenPaginado {
+
+    private static final int IMPORTADOS = 3000;
+    private static final int CAMBIOS = 600;
+    private static final int EN_LOG = 300;
+
+    private static final Pattern PAGINAS = Pattern.compile("paginas=(\\d+)");
+
+    public static void main(String[] args) throws Exception {
+        List<Path> carpetas = new ArrayList<>();
+        try {
+            insertarPartirYRecorrer(carpeta(carpetas));
+            rehacerDesdeElLog(carpeta(carpetas), carpeta(carpetas), carpeta(carpetas), carpeta(carpetas));
+        } finally {
+            for (Path c : carpetas) {
+                borrar(c);
+            }
+        }
+        System.out.println("PruebaAlmacenPaginado: OK");
+    }
+
+    /* ---------------- insertar, partir y recorrer ---------------- */
+
+    private static void insertarPartirYRecorrer(Path carpeta) throws IOException {
+        Path texto = carpeta.resolve("Registros.txt");
+        TreeMap<String, String[]> esperado = new TreeMap<>();
+
+        // Claves largas: pocas por nodo interno, así también se parten los internos.
+        try (Writer w = Files.newBufferedWriter(texto, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < IMPORTADOS; i++) {
+                String[] campos = registro(clave(i * 2), "importado " + i, i % 7);
+                esperado.put(campos[0], campos);
+                w.write(String.join("|", campos));
+                w.write('\n');
+            }
+        }
+
+        AlmacenPaginado almacen = new AlmacenPaginado(texto, '|', 0);
+        verificarIgual(almacen, esperado, "importación");
+        int paginas = paginas(almacen);
+        verificar(paginas > 2 * 64, "la importación debería ocupar más de 128 páginas, ocupa " + paginas);
+        System.out.println("  importación: " + IMPORTADOS + " registros en " + paginas + " páginas");
+
+        almacen.definirIndice("grupo", campos -> campos[2]);
+
+        Random r = new Random(7);
+        for (int i = 0; i < CAMBIOS; i++) {
+            int n = r.nextInt(IMPORTADOS * 2);
+            String clave = clave(n);
+            if (r.nextInt(4) == 0) {
+                boolean existia = esperado.remove(clave) != null;
+                verificar(almacen.eliminar(clave) == existia, "eliminar(" + clave + ") debería dar " + existia);
+            } else {
+                String[] campos = registro(clave, "cambio " + i + " ñá", r.nextInt(7));
+                esperado.put(clave, campos);
+                almacen.put(campos);
+            }
+        }
+        verificarIgual(almacen, esperado, "put/eliminar");
+
+        for (int i = 0; i < 50; i++) {
+            String desde = clave(r.nextInt(IMPORTADOS * 2));
+            String hasta = clave(r.nextInt(IMPORTADOS * 2));
+            if (desde.compareTo(hasta) > 0) {
+                String t = desde;
+                desde = hasta;
+                hasta = t;
+            }
+            verificarRango(almacen, esperado.subMap(desde, hasta), desde, hasta);
+        }
+        verificarRango(almacen, esperado.tailMap(clave(IMPORTADOS)), clave(IMPORTADOS), null);
+        verificarRango(almacen, esperado.headMap(clave(IMPORTADOS)), null, clave(IMPORTADOS));
+
+        // Un recorrido que se detiene no visita más registros.
+        int[] visitados = {0};
+        almacen.recorrer(null, null, (clave, campos) -> ++visitados[0] < 10);
+        verificar(visitados[0] == 10, "el recorrido debería detenerse en 10, visitó " + visitados[0]);
+
+        for (int g = 0; g < 7; g++) {
+            List<String> claves = new ArrayList<>();
+            for (String[] campos : esperado.values()) {
+                if (campos[2].equals(String.valueOf(g))) {
+                    claves.add(campos[0]);
+                }
+            }
+            verificar(almacen.buscarPorIndice("grupo", String.valueOf(g)).equals(claves),
+                    "índice grupo=" + g + " no coincide");
+        }
+        System.out.println("  put/eliminar/rangos/índice: " + esperado.size() + " registros");
+
+        AlmacenPaginado reabierto = new AlmacenPaginado(texto, '|', 0);
+        verificarIgual(reabierto, esperado, "al volver a abrir");
+        System.out.println("  al volver a abrir: OK");
+    }
+
+    /* ---------------- caída y recuperación desde el log ---------------- */
+
+    private static void rehacerDesdeElLog(Path original, Path sinDatos, Path cortado, Path crcMal) throws IOException {
+        Path texto = original.resolve("Registros.txt");
+        AlmacenPaginado almacen = new AlmacenPaginado(texto, '|', 0);
+        TreeMap<String, String[]> esperado = new TreeMap<>();
+        String ultima = null;
+
+        // Sin archivo de texto: la primera transacción solo crea el árbol. Cada
+        // put es una transacción en el log (no llega al límite del checkpoint);
+        // las claves no se repiten, así la última transacción agrega una clave.
+        for (int i = 0; i < EN_LOG; i++) {
+            String[] campos = registro(clave(i * 7919 % 100_000), "en el log " + i, i % 3);
+            esperado.put(campos[0], campos);
+            almacen.put(campos);
+            ultima = campos[0];
+        }
+        verificarIgual(almacen, esperado, "antes de la caída");
+
+        byte[] log = Files.readAllBytes(original.resolve("Registros.wal"));
+        verificar(log.length > EN_LOG * PoolPaginas.PAGINA, "el log debería tener todas las transacciones");
+
+        // Ninguna página de datos llegó al disco: todo sale del log.
+        copiarCaida(sinDatos, log, log.length);
+        AlmacenPaginado recuperado = new AlmacenPaginado(sinDatos.resolve("Registros.txt"), '|', 0);
+        verificarIgual(recuperado, esperado, "rehecho desde el log");
+        verificar(Files.size(sinDatos.resolve("Registros.wal")) == 0, "después de recuperar, el log debería quedar vacío");
+        System.out.println("  caída sin páginas de datos: " + esperado.size() + " registros rehechos");
+
+        // La última transacción quedó a medio escribir (falta el fin): se descarta.
+        TreeMap<String, String[]> sinUltima = sinUltima(esperado, ultima);
+        copiarCaida(cortado, log, log.length - 5);
+        AlmacenPaginado sinFin = new AlmacenPaginado(cortado.resolve("Registros.txt"), '|', 0);
+        verificarIgual(sinFin, sinUltima, "última transacción cortada");
+
+        // Y se puede seguir escribiendo encima.
+        String[] nuevo = registro(ultima, "después de la caída", 1);
+        sinFin.put(nuevo);
+        sinUltima.put(ultima, nuevo);
+        verificarIgual(new AlmacenPaginado(cortado.resolve("Registros.txt"), '|', 0), sinUltima, "escribir después de la caída");
+        System.out.println("  última transacción cortada: descartada");
+
+        // Un byte cambiado en la última página del log: el CRC no coincide.
+        byte[] danado = log.clone();
+        danado[danado.length - 16 - PoolPaginas.PAGINA / 2] ^= 0x5A;
+        copiarCaida(crcMal, danado, danado.length);
+        verificarIgual(new AlmacenPaginado(crcMal.resolve("Registros.txt"), '|', 0), sinUltima(esperado, ultima),
+                "CRC de la última transacción mal");
+        System.out.println("  CRC mal en la última transacción: descartada");
+    }
+
+    /**
+     * Lo esperado sin el último put (que agregó una clave nueva).
+     */
+    private static TreeMap<String, String[]> sinUltima(TreeMap<String, String[]> esperado, String ultima) {
+        TreeMap<String, String[]> res = new TreeMap<>(esperado);
+        res.remove(ultima);
+        return res;
+    }
+
+    /**
+     * Deja en una carpeta un ".db" vacío y los primeros "largo" bytes del log.
+     */
+    private static void copiarCaida(Path carpeta, byte[] log, int largo) throws IOException {
+        Files.write(carpeta.resolve("Registros.db"), new byte[0]);
+        Files.write(carpeta.resolve("Registros.wal"), Arrays.copyOf(log, largo));
+    }
+
+    /* ---------------- comparaciones ---------------- */
+
+    private static void verificarIgual(AlmacenRegistros almacen, TreeMap<String, String[]> esperado, String caso)
+            throws IOException {
+        for (Map.Entry<String, String[]> e : esperado.entrySet()) {
+            String[] campos = almacen.get(e.getKey());
+            verificar(campos != null && Arrays.equals(campos, e.getValue()),
+                    caso + ": get(" + e.getKey() + ") no coincide");
+        }
+        verificarRango(almacen, esperado, null, null);
+    }
+
+    private static void verificarRango(AlmacenRegistros almacen, Map<String, String[]> esperado,
+            String desde, String hasta) throws IOException {
+        List<String> claves = new ArrayList<>();
+        almacen.recorrer(desde, hasta, (clave, campos) -> {
+            verificar(Arrays.equals(campos, esperado.get(clave)), "recorrido: " + clave + " no coincide");
+            claves.add(clave);
+            return true;
+        });
+        verificar(claves.equals(new ArrayList<>(esperado.keySet())),
+                "recorrido [" + desde + ", " + hasta + "): " + claves.size() + " claves, se esperaban " + esperado.size());
+    }
+
+    private static void verificar(boolean condicion, String mensaje) {
+        if (!condicion) {
+            throw new IllegalStateException(mensaje);
+        }
+    }
+
+    /* ---------------- datos ---------------- */
+
+    private static String clave(int n) {
+        return String.format("%08d-registro-con-una-clave-larga-para-partir-nodos-internos", n);
+    }
+
+    private static String[] registro(String clave, String texto, int grupo) {
+        return new String[]{clave, texto, String.valueOf(grupo), "x".repeat(40)};
+    }
+
+    private static int paginas(AlmacenPaginado almacen) {
+        Matcher m = PAGINAS.matcher(almacen.estadisticas());
+        verificar(m.find(), "estadisticas() sin cantidad de páginas");
+        return Integer.parseInt(m.group(1));
+    }
+
+    private static Path carpeta(List<Path> carpetas) throws IOException {
+        Path c = Files.createTempDirectory("prueba-almacen");
+        carpetas.add(c);
+        return c;
+    }
+
+    private static void borrar(Path carpeta) throws IOException {
+        try (Stream<Path> s = Files.walk(carpeta)) {
+            for (Path p : (Iterable<Path>) s.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package Modelo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ *
+ * Pruebas del diario de rehacer de los cobros (DiarioCobros) y de su
+ * recuperación (UnidadCobro), sin dependencias: cortan con una excepción en la
+ * primera diferencia.
+ *
+ * Casos:
+ * - Formato: una transacción confirmada y sin APLICADA es pendiente, con sus
+ *   registros tal cual (la línea puede tener '|'); con APLICADA deja de serlo.
+ * - Una transacción sin FIN (caja caída a mitad de escribirla, sin salto de
+ *   línea al final) o con el CRC mal se ignora, y la siguiente se lee bien.
+ * - mayorId() ve las facturas del diario.
+ * - Caída real: otro proceso confirma un cobro (factura, dos pagos iguales y
+ *   un detalle), alcanza a escribir solo uno de los pagos y se detiene con
+ *   Runtime.halt(). Al crear el primer FacturacionDAO de este proceso se
+ *   aplica lo que falta: la factura existe una vez, los dos pagos y el detalle
+ *   están, la secuencia de facturas quedó por encima y recuperar de nuevo no
+ *   duplica nada.
+ *
+ * Escribe facturas, pagos y el diario en la carpeta actual, así que se niega a
+ * correr si no está vacía.
+ *
+ * Uso (desde la raíz del proyecto):
+ *   ant pruebas
+ */
+public class PruebaDiarioCobros {
+
+    private static final String FACTURA = "FACTURA";
+    private static final String PAGO = "PAGO";
+    private static final String DETALLE = "DETALLE";
+
+    private static final String CAER = "caer";
+    private static final String ID = "ID=";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && CAER.equals(args[0])) {
+            caerAMitadDeUnCobro();
+            return;
+        }
+
+        try (Stream<Path> s = Files.list(Paths.get("."))) {
+            if (s.findAny().isPresent()) {
+                throw new IllegalStateException("Se ejecuta en una carpeta vacía (escribe facturas y cobros en "
+                        + Paths.get("").toAbsolutePath() + ")");
+            }
+        }
+
+        formatoDelDiario();
+        recuperarDespuesDeUnaCaida();
+        System.out.println("PruebaDiarioCobros: OK");
+    }
+
+    /* ---------------- formato del diario ---------------- */
+
+    private static void formatoDelDiario() throws IOException {
+        String archivo = "diario_prueba.txt";
+        DiarioCobros diario = DiarioCobros.para(archivo);
+        EscritorAnexos escritor = EscritorAnexos.para(Paths.get(archivo).toAbsolutePath().normalize().toString());
+
+        List<DiarioCobros.Registro> registros = new ArrayList<>();
+        registros.add(new DiarioCobros.Registro(FACTURA, "/tmp/facturas.log", 120, 3,
+                "57|18/10/2026|12:00:00|9|1-1111-1111|Ana|2|1000|130|1130|EFECTIVO"));
+        registros.add(new DiarioCobros.Registro(PAGO, "/tmp/pagos.log", 0, 0, "57|EFECTIVO|1130||1-1111-1111"));
+
+        diario.conBloqueo(() -> {
+            diario.confirmar(new DiarioCobros.Transaccion("a", registros));
+            List<DiarioCobros.Transaccion> pendientes = diario.pendientes();
+            verificar(pendientes.size() == 1 && pendientes.get(0).id.equals("a"), "la transacción a debería estar pendiente");
+            verificarRegistros(pendientes.get(0).registros, registros);
+            verificar(diario.mayorId(FACTURA) == 57, "mayorId(FACTURA) debería ser 57");
+
+            diario.marcarAplicada("a");
+            verificar(diario.pendientes().isEmpty(), "con APLICADA no debería quedar pendiente");
+            diario.alDia();
+
+            // Caja caída a mitad de escribir la transacción b: sin FIN ni salto de línea.
+            escritor.escribir(null, "INICIO|b|1\nREC|b|PAGO|/tmp/pagos.log|0|0|58|EFECT"
+                    .getBytes(StandardCharsets.UTF_8));
+            verificar(diario.pendientes().isEmpty(), "una transacción sin FIN no debería estar pendiente");
+
+            List<DiarioCobros.Registro> otros = List.of(
+                    new DiarioCobros.Registro(PAGO, "/tmp/pagos.log", 40, 0, "59|TARJETA|500|1234|"));
+            diario.confirmar(new DiarioCobros.Transaccion("c", otros));
+            List<DiarioCobros.Transaccion> despues = diario.pendientes();
+            verificar(despues.size() == 1 && despues.get(0).id.equals("c"),
+                    "después de una transacción cortada, solo c debería estar pendiente");
+            verificarRegistros(despues.get(0).registros, otros);
+            diario.marcarAplicada("c");
+            diario.alDia();
+
+            // CRC que no coincide con los REC: nunca se confirmó.
+            escritor.escribir(null, "INICIO|d|1\nREC|d|PAGO|/tmp/pagos.log|0|0|60|EFECTIVO|100||\nFIN|d|12345\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            verificar(diario.pendientes().isEmpty(), "una transacción con el CRC mal no debería estar pendiente");
+        });
+        System.out.println("  formato del diario: OK");
+    }
+
+    private static void verificarRegistros(List<DiarioCobros.Registro> leidos, List<DiarioCobros.Registro> escritos) {
+        verificar(leidos.size() == escritos.size(), "cantidad de registros distinta");
+        for (int i = 0; i < leidos.size(); i++) {
+            DiarioCobros.Registro l = leidos.get(i);
+            DiarioCobros.Registro e = escritos.get(i);
+            verificar(l.destino.equals(e.destino) && l.archivo.equals(e.archivo) && l.offset == e.offset
+                    && l.generacion == e.generacion && l.linea.equals(e.linea), "registro " + i + " distinto: " + l.linea);
+        }
+    }
+
+    /* ---------------- caída a mitad de un cobro ---------------- */
+
+    /**
+     * En el proceso hijo: confirma un cobro en el diario, escribe solo uno de
+     * sus pagos y se detiene sin marcarlo como aplicado.
+     */
+    private static void caerAMitadDeUnCobro() throws IOException {
+        FacturacionDAO facturas = new FacturacionDAO();
+        PagosFacturaDAO pagos = new PagosFacturaDAO();
+        PagosFacturaDetalleDAO detalles = new PagosFacturaDetalleDAO();
+
+        int id = facturas.siguienteIdFactura();
+        String pago = PagosFacturaDAO.lineaPago(id, "EFECTIVO", 565, "", "1-1111-1111");
+
+        List<DiarioCobros.Registro> registros = new ArrayList<>();
+        registros.add(registro(FACTURA, facturas.particionActual(), FacturacionDAO.lineaFactura(id, "18/10/2026",
+                "12:00:00", 41, "1-1111-1111", "Cliente Prueba", "3", 1000, 130, 1130, "EFECTIVO")));
+        registros.add(registro(PAGO, pagos.particionActual(), pago));
+        registros.add(registro(PAGO, pagos.particionActual(), pago));
+        registros.add(registro(DETALLE, detalles.particionActual(), PagosFacturaDetalleDAO.lineaDetalle(id, 41,
+                "EFECTIVO", "", "1-1111-1111", "Café", 2, 500, 1000)));
+
+        DiarioCobros diario = DiarioCobros.para(UnidadCobro.ARCHIVO);
+        diario.conBloqueo(() -> {
+            diario.confirmar(new DiarioCobros.Transaccion("caida", registros));
+            pagos.anexarPago(pagos.particionActual(), pago, true);
+        });
+
+        System.out.println(ID + id);
+        System.out.flush();
+        Runtime.getRuntime().halt(0);
+    }
+
+    private static DiarioCobros.Registro registro(String destino, String particion, String linea) throws IOException {
+        Path path = Paths.get(particion);
+        long largo = Files.exists(path) ? Files.size(path) : 0;
+        long generacion = CoordinacionArchivos.para(particion).generacion(0);
+        return new DiarioCobros.Registro(destino, path.toAbsolutePath().toString(), largo, generacion, linea);
+    }
+
+    private static void recuperarDespuesDeUnaCaida() throws Exception {
+        int id = ejecutarCaida();
+
+        DiarioCobros diario = DiarioCobros.para(UnidadCobro.ARCHIVO);
+        verificar(diario.conBloqueo(() -> diario.pendientes().size()) == 1, "el cobro de la caja caída debería estar pendiente");
+
+        // El primer FacturacionDAO del proceso aplica lo pendiente.
+        FacturacionDAO facturas = new FacturacionDAO();
+        PagosFacturaDAO pagos = new PagosFacturaDAO();
+        PagosFacturaDetalleDAO detalles = new PagosFacturaDetalleDAO();
+        verificarCobro(facturas, pagos, detalles, id);
+        verificar(diario.conBloqueo(() -> diario.pendientes().isEmpty()), "no debería quedar nada pendiente");
+        verificar(facturas.siguienteIdFactura() > id, "la secuencia de facturas debería quedar por encima de " + id);
+
+        // Recuperar de nuevo no duplica.
+        new UnidadCobro(facturas, pagos, detalles).recuperar();
+        verificarCobro(facturas, pagos, detalles, id);
+        System.out.println("  caída a mitad de un cobro: factura " + id + " recuperada");
+    }
+
+    /**
+     * Corre caerAMitadDeUnCobro() en otra JVM, en la misma carpeta.
+     *
+     * @return ID de la factura del cobro
+     */
+    private static int ejecutarCaida() throws Exception {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process p = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                PruebaDiarioCobros.class.getName(), CAER).redirectErrorStream(true).start();
+        String salida = new String(p.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        p.waitFor();
+
+        for (String linea : salida.split("\\R")) {
+            if (linea.startsWith(ID)) {
+                return Integer.parseInt(linea.substring(ID.length()).trim());
+            }
+        }
+        throw new IllegalStateException("El proceso hijo no informó la factura:\n" + salida);
+    }
+
+    private static void verificarCobro(FacturacionDAO facturas, PagosFacturaDAO pagos,
+            PagosFacturaDetalleDAO detalles, int id) {
+        verificar(facturas.buscarFacturaPorId(id) != null, "la factura " + id + " debería existir");
+        int veces = 0;
+        for (String[] f : facturas.listarUltimasFacturas(50)) {
+            if (f[0].trim().equals(String.valueOf(id))) {
+                veces++;
+            }
+        }
+        verificar(veces == 1, "la factura " + id + " debería estar una vez, está " + veces);
+        int cantPagos = pagos.listarPagosPorFactura(id).size();
+        verificar(cantPagos == 2, "deberían quedar los 2 pagos, hay " + cantPagos);
+        int cantDetalle = detalles.listarDetallePorFactura(id).size();
+        verificar(cantDetalle == 1, "debería quedar 1 línea de detalle, hay " + cantDetalle);
+    }
+
+    private static void verificar(boolean condicion, String mensaje) {
+        if (!condicion) {
+            throw new IllegalStateException(mensaje);
+        }
+    }
+}